@@ -20,15 +20,15 @@ import com.handley.myapplication.tcp.MyClient;
 import com.handley.myapplication.tcp.MyServer;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 // 演示 MyAudioClient 向 MyAudioServer 发送(含私有协议头的)文件数据流，解码播放。
 public class OpusActivityTcp extends AppCompatActivity {
 
     private static final String TAG = Utils.TAG + "OpusActivityTcp";
-    private final BlockingQueue<MyFrame> frameQueue = new LinkedBlockingQueue<>(50); // 帧缓冲队列
+    private final BlockingQueue<MyFrame> frameQueue = new ArrayBlockingQueue<>(50); // 帧缓冲队列（数组实现，入队不分配节点）
     private Button videoBtn, audioBtn;
     private MyServer myServer;
     private MyClient myClient;
@@ -91,7 +91,10 @@ public class OpusActivityTcp extends AppCompatActivity {
         myServer = new MyServer((frame) -> {
             // 处理接收到的帧数据
             Log.d(TAG, "Received frame: type=" + frame.header.type + ", size=" + frame.header.dataLen + ", timestamp=" + frame.header.timestamp);
-            if (frame.header.type != MediaMessageHeader.OPUS) return;
+            if (frame.header.type != MediaMessageHeader.OPUS) {
+                frame.release();
+                return;
+            }
 
             frame.header.timestamp /= 1000;//转换为毫秒
             if (startTime == Long.MIN_VALUE) {
@@ -107,6 +110,7 @@ public class OpusActivityTcp extends AppCompatActivity {
             boolean offer = frameQueue.offer(frame);
             if (!offer) {
                 Log.w(TAG, "frameQueue.offer() failed");
+                frame.release();
             }
         }, port);
         myServer.start();
@@ -126,14 +130,20 @@ public class OpusActivityTcp extends AppCompatActivity {
                     // 1. 控制解码时机（输入速度）
                     controlSpeed(frame.header.timestamp, 10);
 
-                    // 2. 解码Opus数据
-                    byte[] pcmData = decodeData(frame.frameData, frame.header.timestamp);
+                    // 2. 解码Opus数据，数据已拷贝进解码器，帧缓冲区还给池
+                    long pts = frame.header.timestamp;
+                    byte[] pcmData;
+                    try {
+                        pcmData = decodeData(frame.frameData, frame.header.dataLen, pts);
+                    } finally {
+                        frame.release();
+                    }
                     if (pcmData.length == 0) {
                         continue;
                     }
 
                     // 3. 控制播放时机（输出速度）
-                    controlSpeed(frame.header.timestamp, 1);
+                    controlSpeed(pts, 1);
 
                     // 4. 播放音频（示例：AudioTrack）
                     audioTrack.write(pcmData, 0, pcmData.length);
@@ -146,7 +156,7 @@ public class OpusActivityTcp extends AppCompatActivity {
     }
 
     // 播放线程中的解码方法
-    private byte[] decodeData(byte[] data, long pts) {
+    private byte[] decodeData(byte[] data, int length, long pts) {
         if (mediaCodec == null) {
             return new byte[0];
         }
@@ -157,8 +167,8 @@ public class OpusActivityTcp extends AppCompatActivity {
         int inputBufferIndex = mediaCodec.dequeueInputBuffer(10000);
         if (inputBufferIndex >= 0) {
             ByteBuffer buffer = inputBuffers[inputBufferIndex];
-            buffer.put(data);
-            mediaCodec.queueInputBuffer(inputBufferIndex, 0, data.length, pts, 0);
+            buffer.put(data, 0, length); // 池中的缓冲区可能比帧数据大
+            mediaCodec.queueInputBuffer(inputBufferIndex, 0, length, pts, 0);
         }
 
         // 从解码器获取输出
@@ -0,0 +1,64 @@
+package com.handley.myapplication.common;
+
+import java.nio.ByteBuffer;
+
+// CRC32C（Castagnoli，多项式 0x82F63B78），结果与 java.util.zip.CRC32C 相同。
+// java.util.zip.CRC32C 在 minSdk 29 上不可用，这里用 slicing-by-8 查表实现，每次处理8个字节。
+public final class Crc32c {
+
+    private static final int POLY = 0x82F63B78;
+    private static final int[][] TABLE = new int[8][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[0][i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int t = 1; t < 8; t++) {
+                TABLE[t][i] = (TABLE[t - 1][i] >>> 8) ^ TABLE[0][TABLE[t - 1][i] & 0xFF];
+            }
+        }
+    }
+
+    private Crc32c() {
+    }
+
+    public static int compute(byte[] data, int offset, int length) {
+        return update(0, data, offset, length);
+    }
+
+    // 在已有的 crc（上一次的返回值，初始为0）基础上继续计算
+    public static int update(int crc, byte[] data, int offset, int length) {
+        int[] t0 = TABLE[0], t1 = TABLE[1], t2 = TABLE[2], t3 = TABLE[3];
+        int[] t4 = TABLE[4], t5 = TABLE[5], t6 = TABLE[6], t7 = TABLE[7];
+        int c = ~crc;
+        int i = offset;
+        int end = offset + length;
+        for (; i <= end - 8; i += 8) {
+            int lo = c ^ ((data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16
+                    | (data[i + 3] & 0xFF) << 24);
+            c = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF] ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24]
+                    ^ t3[data[i + 4] & 0xFF] ^ t2[data[i + 5] & 0xFF] ^ t1[data[i + 6] & 0xFF] ^ t0[data[i + 7] & 0xFF];
+        }
+        for (; i < end; i++) {
+            c = (c >>> 8) ^ t0[(c ^ data[i]) & 0xFF];
+        }
+        return ~c;
+    }
+
+    // 计算 buffer 的 [position, limit)，不改变 position
+    public static int compute(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return compute(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        int c = ~0;
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            c = (c >>> 8) ^ TABLE[0][(c ^ buffer.get(i)) & 0xFF];
+        }
+        return ~c;
+    }
+}
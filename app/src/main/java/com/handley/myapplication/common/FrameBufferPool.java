@@ -0,0 +1,165 @@
+package com.handley.myapplication.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 帧缓冲池：按2的幂分级（1KB起）复用 byte[] 和 MyFrame 对象，稳定接收时不再分配内存。
+// obtain() 得到的帧引用计数为1，使用者处理完调用 release()，计数归零后缓冲区回到池中。
+// 忘记 release() 不会出错，只是缓冲区交给GC，不能复用（outstanding 计数会一直增长）。线程安全。
+public class FrameBufferPool {
+
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int MIN_SHIFT = 10;                               // 最小一级 1KB
+    private static final long DEFAULT_MAX_RETAINED_BYTES = 32 * 1024 * 1024; // 池中最多保留的空闲字节数
+    private static final int MAX_FREE_FRAMES = 256;
+
+    private final int maxFrameSize;
+    private final long maxRetainedBytes;
+    private final byte[][][] freeBuffers; // [级别][栈]
+    private final int[] freeCounts;
+    private final MyFrame[] freeFrames = new MyFrame[MAX_FREE_FRAMES];
+    private int freeFrameCount;
+    private long retainedBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong outstandingBytes = new AtomicLong();
+    private final AtomicInteger outstandingBuffers = new AtomicInteger();
+
+    public FrameBufferPool() {
+        this(DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public FrameBufferPool(int maxFrameSize) {
+        this(maxFrameSize, DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    public FrameBufferPool(int maxFrameSize, long maxRetainedBytes) {
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("Invalid max frame size " + maxFrameSize);
+        }
+        this.maxFrameSize = maxFrameSize;
+        this.maxRetainedBytes = maxRetainedBytes;
+        int classes = classIndex(maxFrameSize) + 1;
+        freeBuffers = new byte[classes][][];
+        freeCounts = new int[classes];
+        for (int i = 0; i < classes; i++) {
+            freeBuffers[i] = new byte[4][];
+        }
+    }
+
+    // 取一帧，frameData 长度至少为 dataLen（按级别向上取整），超过最大帧大小抛出 IllegalArgumentException
+    public MyFrame obtain(int dataLen) {
+        byte[] buffer = acquire(dataLen);
+        MyFrame frame;
+        synchronized (this) {
+            frame = freeFrameCount > 0 ? freeFrames[--freeFrameCount] : null;
+            if (frame != null) {
+                freeFrames[freeFrameCount] = null;
+            }
+        }
+        if (frame == null) {
+            frame = new MyFrame(new MediaMessageHeader(), buffer, this);
+        } else {
+            frame.reuse(buffer);
+        }
+        frame.header.dataLen = dataLen;
+        return frame;
+    }
+
+    // 取一个长度至少为 size 的缓冲区
+    public byte[] acquire(int size) {
+        if (size < 0 || size > maxFrameSize) {
+            throw new IllegalArgumentException("Frame size " + size + " out of range, max " + maxFrameSize);
+        }
+        int index = classIndex(size);
+        byte[] buffer = null;
+        synchronized (this) {
+            if (freeCounts[index] > 0) {
+                int top = --freeCounts[index];
+                buffer = freeBuffers[index][top];
+                freeBuffers[index][top] = null;
+                retainedBytes -= buffer.length;
+            }
+        }
+        if (buffer != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            buffer = new byte[1 << (index + MIN_SHIFT)];
+        }
+        outstandingBytes.addAndGet(buffer.length);
+        outstandingBuffers.incrementAndGet();
+        return buffer;
+    }
+
+    // 归还 acquire() 得到的缓冲区，归还后不能再使用
+    public void release(byte[] buffer) {
+        outstandingBytes.addAndGet(-buffer.length);
+        outstandingBuffers.decrementAndGet();
+        int index = classIndex(buffer.length);
+        if (buffer.length != 1 << (index + MIN_SHIFT) || index >= freeCounts.length) {
+            return; // 不是池中分配的
+        }
+        synchronized (this) {
+            if (retainedBytes + buffer.length > maxRetainedBytes) {
+                return; // 空闲缓冲区太多，交给GC
+            }
+            byte[][] stack = freeBuffers[index];
+            if (freeCounts[index] == stack.length) {
+                byte[][] grown = new byte[stack.length * 2][];
+                System.arraycopy(stack, 0, grown, 0, stack.length);
+                freeBuffers[index] = stack = grown;
+            }
+            stack[freeCounts[index]++] = buffer;
+            retainedBytes += buffer.length;
+        }
+    }
+
+    // MyFrame 引用计数归零时调用
+    void recycle(MyFrame frame) {
+        byte[] buffer = frame.frameData;
+        frame.frameData = null;
+        release(buffer);
+        synchronized (this) {
+            if (freeFrameCount < MAX_FREE_FRAMES) {
+                freeFrames[freeFrameCount++] = frame;
+            }
+        }
+    }
+
+    private static int classIndex(int size) {
+        if (size <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT; // ceil(log2(size)) - MIN_SHIFT
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    // 从池中复用的次数
+    public long getHits() {
+        return hits.get();
+    }
+
+    // 池中没有合适的缓冲区而新分配的次数
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // 已借出未归还的字节数（按级别大小计）
+    public long getOutstandingBytes() {
+        return outstandingBytes.get();
+    }
+
+    public int getOutstandingBuffers() {
+        return outstandingBuffers.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FrameBufferPool{hits=" + getHits() + " misses=" + getMisses() + " outstandingBytes="
+                + getOutstandingBytes() + " outstandingBuffers=" + getOutstandingBuffers() + "}";
+    }
+}
@@ -7,6 +7,17 @@ public class MediaMessageHeader {
 
     public static final int MAGIC = 0x0133C96C;
     public static final int SIZE = 21; // 4+1+8+4+4 bytes
+    // v2 帧头：魔数不同（旧的接收端不会误解析），在v1的21字节后追加扩展：version(1)+flags(1)+streamId(2)+sequence(4)+crc32c(4)
+    public static final int MAGIC_V2 = 0x0233C96C;
+    public static final int EXTENSION_SIZE = 12;
+    public static final int SIZE_V2 = SIZE + EXTENSION_SIZE;
+    public static final byte VERSION_2 = 2;
+
+    // v2 帧标志
+    public static final int FLAG_KEY_FRAME = 0x01;    // 关键帧，可以从这里开始解码
+    public static final int FLAG_CODEC_CONFIG = 0x02; // 只包含参数集等解码器配置数据
+    public static final int FLAG_DISCARDABLE = 0x04;  // 不被其他帧参考，拥塞时可以丢弃
+    public static final int FLAG_HAS_CRC = 0x08;      // crc32c 字段有效（帧数据的CRC32C）
 
     // 媒体类型常量
     public static final byte PCM = 0;
@@ -14,12 +25,67 @@ public class MediaMessageHeader {
     public static final byte H264 = 2;
     public static final byte H265 = 3;
     public static final byte VP8 = 4;
+    // 长度前缀格式：每个NAL前带4字节大端长度，不带起始码（AVCC/HVCC），接收端不需要查找起始码
+    public static final byte H264_AVCC = 5;
+    public static final byte H265_HVCC = 6;
+    // 控制消息：接收端的反馈（帧数据为 WindowReport），不是媒体数据，由 MyServer/AdaptiveFrameSink 处理
+    public static final byte FEEDBACK = 7;
 
     public int magic;
     public byte type;
     public long timestamp;
     public int rotation;
     public int dataLen;
+    // 以下为v2扩展字段，v1帧头为0
+    public int flags;
+    public int streamId;  // 0~65535
+    public int sequence;  // 每个 streamId 各自递增
+    public int crc32c;
+
+    // 复制所有字段
+    public void copyFrom(MediaMessageHeader other) {
+        magic = other.magic;
+        type = other.type;
+        timestamp = other.timestamp;
+        rotation = other.rotation;
+        dataLen = other.dataLen;
+        flags = other.flags;
+        streamId = other.streamId;
+        sequence = other.sequence;
+        crc32c = other.crc32c;
+    }
+
+    public boolean isV2() {
+        return magic == MAGIC_V2;
+    }
+
+    // 帧头长度
+    public int size() {
+        return isV2() ? SIZE_V2 : SIZE;
+    }
+
+    public boolean isKeyFrame() {
+        return (flags & FLAG_KEY_FRAME) != 0;
+    }
+
+    public boolean isCodecConfig() {
+        return (flags & FLAG_CODEC_CONFIG) != 0;
+    }
+
+    public boolean isDiscardable() {
+        return (flags & FLAG_DISCARDABLE) != 0;
+    }
+
+    // 设置帧数据的CRC32C
+    public void setCrc32c(byte[] data, int offset, int length) {
+        crc32c = Crc32c.compute(data, offset, length);
+        flags |= FLAG_HAS_CRC;
+    }
+
+    // 校验帧数据，没有CRC时返回true
+    public boolean checkCrc32c(byte[] data, int offset, int length) {
+        return (flags & FLAG_HAS_CRC) == 0 || crc32c == Crc32c.compute(data, offset, length);
+    }
 
     // 从字节数组解析对象（小端序）
     public static MediaMessageHeader parse(byte[] data) {
@@ -36,6 +102,9 @@ public class MediaMessageHeader {
         header.timestamp = buffer.getLong();
         header.rotation = buffer.getInt();
         header.dataLen = buffer.getInt();
+        if (header.isV2() && data.length >= SIZE_V2) {
+            parseExtensionInto(data, SIZE, header);
+        }
 
         return header;
     }
@@ -74,9 +143,121 @@ public class MediaMessageHeader {
         return header;
     }
 
+    // 从 src 的当前位置解析到已有对象中（小端序，v1或v2），position 前进 size()。不分配内存，支持直接内存，不修改 src 的字节序
+    public static MediaMessageHeader parseInto(ByteBuffer src, MediaMessageHeader out) {
+        if (src.remaining() < SIZE) {
+            throw new IllegalArgumentException("Invalid header data");
+        }
+        int pos = src.position();
+        boolean littleEndian = src.order() == ByteOrder.LITTLE_ENDIAN;
+        if (littleEndian) {
+            out.magic = src.getInt(pos);
+            out.type = src.get(pos + 4);
+            out.timestamp = src.getLong(pos + 5);
+            out.rotation = src.getInt(pos + 13);
+            out.dataLen = src.getInt(pos + 17);
+        } else {
+            out.magic = Integer.reverseBytes(src.getInt(pos));
+            out.type = src.get(pos + 4);
+            out.timestamp = Long.reverseBytes(src.getLong(pos + 5));
+            out.rotation = Integer.reverseBytes(src.getInt(pos + 13));
+            out.dataLen = Integer.reverseBytes(src.getInt(pos + 17));
+        }
+        if (out.isV2()) {
+            if (src.remaining() < SIZE_V2) {
+                throw new IllegalArgumentException("Incomplete v2 header");
+            }
+            int ext = pos + SIZE;
+            if (src.get(ext) != VERSION_2) {
+                throw new IllegalArgumentException("Unsupported header version " + src.get(ext));
+            }
+            out.flags = src.get(ext + 1) & 0xFF;
+            if (littleEndian) {
+                out.streamId = src.getShort(ext + 2) & 0xFFFF;
+                out.sequence = src.getInt(ext + 4);
+                out.crc32c = src.getInt(ext + 8);
+            } else {
+                out.streamId = Short.reverseBytes(src.getShort(ext + 2)) & 0xFFFF;
+                out.sequence = Integer.reverseBytes(src.getInt(ext + 4));
+                out.crc32c = Integer.reverseBytes(src.getInt(ext + 8));
+            }
+        } else {
+            out.flags = 0;
+            out.streamId = 0;
+            out.sequence = 0;
+            out.crc32c = 0;
+        }
+        src.position(pos + out.size());
+        return out;
+    }
+
+    // 解析v2扩展（帧头第21字节开始的12字节），扩展版本不是2时抛出 IllegalArgumentException
+    public static MediaMessageHeader parseExtensionInto(byte[] data, int offset, MediaMessageHeader out) {
+        if (data == null || data.length - offset < EXTENSION_SIZE) {
+            throw new IllegalArgumentException("Invalid header extension");
+        }
+        if (data[offset] != VERSION_2) {
+            throw new IllegalArgumentException("Unsupported header version " + data[offset]);
+        }
+        out.flags = data[offset + 1] & 0xFF;
+        out.streamId = (data[offset + 2] & 0xFF) | ((data[offset + 3] & 0xFF) << 8);
+        out.sequence = readIntLe(data, offset + 4);
+        out.crc32c = readIntLe(data, offset + 8);
+        return out;
+    }
+
+    // 从字节数组的 offset 处解析21字节的基本字段到已有对象中（小端序），不分配内存。v2扩展用 parseExtensionInto() 解析
+    public static MediaMessageHeader parseInto(byte[] data, int offset, MediaMessageHeader out) {
+        if (data == null || data.length - offset < SIZE) {
+            throw new IllegalArgumentException("Invalid header data");
+        }
+        out.magic = readIntLe(data, offset);
+        out.type = data[offset + 4];
+        out.timestamp = (readIntLe(data, offset + 5) & 0xFFFFFFFFL) | ((long) readIntLe(data, offset + 9) << 32);
+        out.rotation = readIntLe(data, offset + 13);
+        out.dataLen = readIntLe(data, offset + 17);
+        return out;
+    }
+
+    private static int readIntLe(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16)
+                | (data[offset + 3] << 24);
+    }
+
+    // 序列化到 dst 的当前位置（小端序），position 前进 size()。不分配内存，不修改 dst 的字节序
+    public void writeTo(ByteBuffer dst) {
+        if (dst.remaining() < size()) {
+            throw new IllegalArgumentException("Not enough space for header");
+        }
+        int pos = dst.position();
+        boolean littleEndian = dst.order() == ByteOrder.LITTLE_ENDIAN;
+        if (littleEndian) {
+            dst.putInt(pos, magic);
+            dst.put(pos + 4, type);
+            dst.putLong(pos + 5, timestamp);
+            dst.putInt(pos + 13, rotation);
+            dst.putInt(pos + 17, dataLen);
+        } else {
+            dst.putInt(pos, Integer.reverseBytes(magic));
+            dst.put(pos + 4, type);
+            dst.putLong(pos + 5, Long.reverseBytes(timestamp));
+            dst.putInt(pos + 13, Integer.reverseBytes(rotation));
+            dst.putInt(pos + 17, Integer.reverseBytes(dataLen));
+        }
+        if (isV2()) {
+            int ext = pos + SIZE;
+            dst.put(ext, VERSION_2);
+            dst.put(ext + 1, (byte) flags);
+            dst.putShort(ext + 2, littleEndian ? (short) streamId : Short.reverseBytes((short) streamId));
+            dst.putInt(ext + 4, littleEndian ? sequence : Integer.reverseBytes(sequence));
+            dst.putInt(ext + 8, littleEndian ? crc32c : Integer.reverseBytes(crc32c));
+        }
+        dst.position(pos + size());
+    }
+
     // 将对象序列化为字节数组（小端序）
     public byte[] toBytes() {
-        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(size());
         buffer.order(ByteOrder.LITTLE_ENDIAN);
 
         buffer.putInt(magic);
@@ -84,6 +265,13 @@ public class MediaMessageHeader {
         buffer.putLong(timestamp);
         buffer.putInt(rotation);
         buffer.putInt(dataLen);
+        if (isV2()) {
+            buffer.put(VERSION_2);
+            buffer.put((byte) flags);
+            buffer.putShort((short) streamId);
+            buffer.putInt(sequence);
+            buffer.putInt(crc32c);
+        }
 
         return buffer.array();
     }
@@ -1,13 +1,57 @@
 package com.handley.myapplication.common;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 // 帧封装类
+// 来自 FrameBufferPool 的帧：frameData 长度可能大于 header.dataLen，有效数据以 header.dataLen 为准；
+// 处理完调用 release() 归还缓冲区，需要交给多个使用者时先 retain()。
 public class MyFrame {
 
     public final MediaMessageHeader header;
-    public final byte[] frameData;
+    public byte[] frameData;
+
+    private final FrameBufferPool pool;
+    private final AtomicInteger refCount = new AtomicInteger(1);
 
     public MyFrame(MediaMessageHeader header, byte[] frameData) {
+        this(header, frameData, null);
+    }
+
+    MyFrame(MediaMessageHeader header, byte[] frameData, FrameBufferPool pool) {
         this.header = header;
         this.frameData = frameData;
+        this.pool = pool;
+    }
+
+    // 增加一个引用
+    public MyFrame retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            refCount.getAndDecrement();
+            throw new IllegalStateException("Frame already released");
+        }
+        return this;
+    }
+
+    // 释放一个引用，计数归零后缓冲区回到池中，之后不能再访问 frameData
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            if (pool != null) {
+                pool.recycle(this);
+            }
+        } else if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("Frame released too many times");
+        }
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+
+    // 从池中重新取出
+    void reuse(byte[] frameData) {
+        this.frameData = frameData;
+        refCount.set(1);
     }
 }
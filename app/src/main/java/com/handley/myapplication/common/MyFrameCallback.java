@@ -1,6 +1,17 @@
 package com.handley.myapplication.common;
 
+// 帧的所有权交给回调：处理完（包括不需要的帧）调用 frame.release() 把缓冲区还给池
 public interface MyFrameCallback {
 
     void onFrameReceived(MyFrame frame);
+
+    // 服务端同时接收多个连接时使用，connectionId 区分连接（每个连接内再用 header.streamId 区分流）。
+    // 默认忽略连接号，所有连接的帧交给 onFrameReceived(frame)
+    default void onFrameReceived(int connectionId, MyFrame frame) {
+        onFrameReceived(frame);
+    }
+
+    // 连接断开，可以清理该连接的状态
+    default void onConnectionClosed(int connectionId) {
+    }
 }
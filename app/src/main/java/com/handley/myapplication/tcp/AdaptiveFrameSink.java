@@ -0,0 +1,166 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.video.KeyFrameDetector;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// 按接收端的窗口报告调整发送：包装一个支持反馈的 FrameSink，连接后先请求报告，由后台线程读取反馈。
+// 接收端队列占用超过 highWatermark 时丢弃不被参考的视频帧，超过 criticalWatermark 时丢弃视频直到下一个关键帧，
+// 参数集和音频不丢。接收端的队列因此保持在低水位，端到端延迟不会随着积压增长。
+// 传输不支持反馈时原样转发。send() 只能在一个线程中调用。
+public class AdaptiveFrameSink implements FrameSink {
+
+    public static final float DEFAULT_HIGH_WATERMARK = 0.5f;
+    public static final float DEFAULT_CRITICAL_WATERMARK = 0.8f;
+    private static final long REPORT_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(1); // 报告过期后按不拥塞处理
+
+    private final FrameSink sink;
+    private final FrameSource feedback;
+    private final float highWatermark;
+    private final float criticalWatermark;
+    private final Thread feedbackThread;
+    private volatile float fillRatio;
+    private volatile long reportNs = Long.MIN_VALUE;
+    private volatile long reports;
+    private boolean waitingForKeyFrame;
+    private long reportsAtKeyFrame; // 等到的关键帧发出时已收到的报告数
+    private volatile long sent;
+    private volatile long droppedNonReference;
+    private volatile long droppedToKeyFrame;
+
+    public AdaptiveFrameSink(FrameSink sink) throws IOException {
+        this(sink, DEFAULT_HIGH_WATERMARK, DEFAULT_CRITICAL_WATERMARK);
+    }
+
+    // 水位为接收端队列占用比例（0~1）
+    public AdaptiveFrameSink(FrameSink sink, float highWatermark, float criticalWatermark) throws IOException {
+        if (highWatermark <= 0 || highWatermark > criticalWatermark || criticalWatermark > 1) {
+            throw new IllegalArgumentException("Invalid watermarks " + highWatermark + "/" + criticalWatermark);
+        }
+        this.sink = sink;
+        this.highWatermark = highWatermark;
+        this.criticalWatermark = criticalWatermark;
+        this.feedback = sink.feedback();
+        if (feedback != null) {
+            try {
+                sink.send(WindowReport.requestFrame());
+            } catch (IOException e) {
+                sink.close();
+                throw e;
+            }
+            feedbackThread = new Thread(this::readFeedback, "FeedbackReader");
+            feedbackThread.start();
+        } else {
+            feedbackThread = null;
+        }
+    }
+
+    @Override
+    public void send(MyFrame frame) throws IOException {
+        if (isVideo(frame.header.type) && shouldDrop(frame)) {
+            frame.release();
+            return;
+        }
+        sink.send(frame);
+        sent++;
+    }
+
+    private boolean shouldDrop(MyFrame frame) {
+        int kind = KeyFrameDetector.classify(frame.header, frame.frameData);
+        if (kind == KeyFrameDetector.CONFIG) {
+            return false;
+        }
+        if (kind == KeyFrameDetector.KEY) {
+            if (waitingForKeyFrame) {
+                waitingForKeyFrame = false;
+                reportsAtKeyFrame = reports;
+            }
+            return false;
+        }
+        if (waitingForKeyFrame) {
+            droppedToKeyFrame++;
+            return true;
+        }
+        long now = System.nanoTime();
+        long lastReport = reportNs;
+        float fill = lastReport != Long.MIN_VALUE && now - lastReport < REPORT_TIMEOUT_NS ? fillRatio : 0f;
+        // 关键帧发出后要等新的报告，旧报告中的积压可能已经被丢掉的帧消化了
+        if (fill >= criticalWatermark && reports > reportsAtKeyFrame) {
+            waitingForKeyFrame = true;
+            droppedToKeyFrame++;
+            return true;
+        }
+        if (fill >= highWatermark && KeyFrameDetector.isDiscardable(frame.header, frame.frameData)) {
+            droppedNonReference++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isVideo(byte type) {
+        return type != MediaMessageHeader.PCM && type != MediaMessageHeader.OPUS
+                && type != MediaMessageHeader.FEEDBACK;
+    }
+
+    private void readFeedback() {
+        WindowReport report = new WindowReport();
+        try (feedback) {
+            MyFrame frame;
+            while ((frame = feedback.readFrame()) != null) {
+                if (WindowReport.parseInto(frame, report)) {
+                    fillRatio = report.fillRatio();
+                    reportNs = System.nanoTime();
+                    reports++;
+                }
+                frame.release();
+            }
+        } catch (IOException e) {
+            // 连接已关闭
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sink.close();
+        } finally {
+            if (feedbackThread != null) {
+                try {
+                    feedbackThread.join(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // 最近一次报告中接收端队列的占用比例
+    public float getFillRatio() {
+        return fillRatio;
+    }
+
+    public long getReports() {
+        return reports;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getDroppedNonReference() {
+        return droppedNonReference;
+    }
+
+    public long getDroppedToKeyFrame() {
+        return droppedToKeyFrame;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveFrameSink{sent=" + sent + " droppedNonReference=" + droppedNonReference
+                + " droppedToKeyFrame=" + droppedToKeyFrame + " reports=" + reports + " fillRatio=" + fillRatio + "}";
+    }
+}
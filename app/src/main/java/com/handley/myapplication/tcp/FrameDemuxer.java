@@ -0,0 +1,225 @@
+package com.handley.myapplication.tcp;
+
+import android.util.Log;
+
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.common.MyFrameCallback;
+import com.handley.myapplication.common.Utils;
+import com.handley.myapplication.video.KeyFrameDetector;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 音视频复用一个连接时的分流：作为 MyServer/MyNioServer 的回调，按 header.type（可再按 streamId）
+// 把帧放进各路自己的队列，每路一个投递线程调用该路的消费者。
+// 接收线程只做非阻塞入队，某一路队列满时该路丢到下一个关键帧（参数集不丢），不会因为视频解码慢或大的IDR帧拖住音频；
+// 投递线程按路设置线程优先级，音频路可以设高优先级。
+public class FrameDemuxer implements MyFrameCallback {
+
+    private static final String TAG = Utils.TAG + "FrameDemuxer";
+    public static final int ANY_STREAM = -1;
+
+    private final CopyOnWriteArrayList<Route> routes = new CopyOnWriteArrayList<>();
+    private final AtomicLong unrouted = new AtomicLong();
+    private volatile boolean running;
+
+    // 添加一路：types 中任一类型、且 streamId 匹配（ANY_STREAM 表示不限）的帧交给 consumer。
+    // 一帧只交给第一个匹配的路。consumer 在该路的投递线程中调用，负责 release 帧
+    public Route addRoute(String name, int streamId, int capacity, int threadPriority, MyFrameCallback consumer,
+            byte... types) {
+        if (types.length == 0) {
+            throw new IllegalArgumentException("Route " + name + " has no types");
+        }
+        Route route = new Route(name, streamId, capacity, threadPriority, consumer, types);
+        routes.add(route);
+        if (running) {
+            route.start();
+        }
+        return route;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (Route route : routes) {
+            route.start();
+        }
+    }
+
+    // 停止投递线程，队列中未投递的帧释放
+    public synchronized void stop() {
+        running = false;
+        for (Route route : routes) {
+            route.stop();
+        }
+    }
+
+    @Override
+    public void onFrameReceived(MyFrame frame) {
+        for (Route route : routes) {
+            if (route.matches(frame)) {
+                route.offer(frame);
+                return;
+            }
+        }
+        unrouted.incrementAndGet();
+        frame.release();
+    }
+
+    // 没有匹配的路而丢弃的帧数
+    public long getUnrouted() {
+        return unrouted.get();
+    }
+
+    // 一路：自己的队列、投递线程和统计
+    public final class Route {
+        private final String name;
+        private final int streamId;
+        private final int threadPriority;
+        private final MyFrameCallback consumer;
+        private final byte[] types;
+        private final BlockingQueue<MyFrame> queue;
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private boolean waitingForKeyFrame; // 队列溢出后等关键帧，受 Route 的锁保护
+        private Thread thread;
+
+        private Route(String name, int streamId, int capacity, int threadPriority, MyFrameCallback consumer,
+                byte[] types) {
+            this.name = name;
+            this.streamId = streamId;
+            this.threadPriority = threadPriority;
+            this.consumer = consumer;
+            this.types = types.clone();
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private boolean matches(MyFrame frame) {
+            if (streamId != ANY_STREAM && frame.header.streamId != streamId) {
+                return false;
+            }
+            for (byte type : types) {
+                if (frame.header.type == type) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // 与 FrameRelay 相同的丢帧策略：队列满时丢掉队列中的帧，之后丢到下一个关键帧；参数集一直保留，
+        // 否则之后的关键帧无法解码。音频等没有帧间依赖的类型每一帧都是关键帧，效果是丢掉积压的旧帧。
+        // MyNioServer 的多个 I/O 线程可能同时调用，所以加锁
+        private synchronized void offer(MyFrame frame) {
+            int kind = KeyFrameDetector.classify(frame.header, frame.frameData);
+            if (waitingForKeyFrame) {
+                if (kind == KeyFrameDetector.DELTA) {
+                    drop(frame);
+                    return;
+                }
+                if (kind == KeyFrameDetector.KEY) {
+                    waitingForKeyFrame = false;
+                }
+            }
+            if (queue.offer(frame)) {
+                return;
+            }
+
+            // 队列满：保留其中的参数集，其他帧全部丢弃。当前帧是关键帧时从它重新开始
+            int size = queue.size();
+            for (int i = 0; i < size; i++) {
+                MyFrame queued = queue.poll();
+                if (queued == null) {
+                    break; // 投递线程同时取走了剩下的帧
+                }
+                if (KeyFrameDetector.classify(queued.header, queued.frameData) == KeyFrameDetector.CONFIG) {
+                    queue.offer(queued); // 刚腾出了位置，一定能放回
+                } else {
+                    drop(queued);
+                }
+            }
+            waitingForKeyFrame = kind != KeyFrameDetector.KEY;
+            if (kind == KeyFrameDetector.DELTA || !queue.offer(frame)) {
+                drop(frame); // 放不下说明队列中全是参数集，容量太小
+            }
+        }
+
+        private void drop(MyFrame frame) {
+            dropped.incrementAndGet();
+            frame.release();
+        }
+
+        private synchronized void start() {
+            if (thread != null) {
+                return;
+            }
+            thread = new Thread(this::deliver, "Demux-" + name);
+            thread.setPriority(threadPriority);
+            thread.start();
+        }
+
+        private synchronized void stop() {
+            if (thread == null) {
+                return;
+            }
+            thread.interrupt();
+            try {
+                thread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+            MyFrame frame;
+            while ((frame = queue.poll()) != null) {
+                frame.release();
+            }
+        }
+
+        private void deliver() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                MyFrame frame;
+                try {
+                    frame = queue.poll(50, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (frame != null) {
+                    delivered.incrementAndGet();
+                    try {
+                        consumer.onFrameReceived(frame);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Route " + name + " consumer error: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        // 队列满或等关键帧而丢弃的帧数
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        // 当前排队的帧数
+        public int getQueued() {
+            return queue.size();
+        }
+
+        @Override
+        public String toString() {
+            return "Route{" + name + " delivered=" + getDelivered() + " dropped=" + getDropped() + " queued="
+                    + getQueued() + "}";
+        }
+    }
+}
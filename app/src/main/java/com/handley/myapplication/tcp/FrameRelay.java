@@ -0,0 +1,302 @@
+package com.handley.myapplication.tcp;
+
+import android.util.Log;
+
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.common.MyFrameCallback;
+import com.handley.myapplication.common.Utils;
+import com.handley.myapplication.video.KeyFrameDetector;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 转发：作为 MyServer/MyNioServer 的回调接收一路输入，再原样发给连接到 subscriberPort 的所有订阅者。
+// 所有订阅者共用同一个帧缓冲区（每个订阅者 retain 一次，发完 release），不按订阅者拷贝帧数据；
+// 转发的帧不能再被修改。每个订阅者有自己的发送队列和发送线程，队列满（消费太慢）时按策略处理：
+// DROP_TO_KEY_FRAME 清空队列并丢帧直到下一个关键帧，DISCONNECT 直接断开。
+// 新订阅者和丢帧恢复时都从关键帧开始，关键帧不带参数集时先补发缓存的最近一组参数集。
+public class FrameRelay implements MyFrameCallback {
+    private static final String TAG = Utils.TAG + "FrameRelay";
+    private static final int MAX_CONFIG_FRAMES = 4;
+
+    public enum SlowConsumerPolicy {
+        DROP_TO_KEY_FRAME,
+        DISCONNECT
+    }
+
+    private final int subscriberPort;
+    private final int queueCapacity;
+    private final SlowConsumerPolicy policy;
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final List<MyFrame> configFrames = new ArrayList<>(); // 最近一组参数集，只在接收线程中访问
+    private final AtomicInteger nextSubscriberId = new AtomicInteger(1);
+    private boolean lastWasConfig;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptThread;
+    private volatile boolean isRunning = false;
+
+    // queueCapacity 要大于 MAX_CONFIG_FRAMES，恢复时补发的参数集和关键帧能放进空队列
+    public FrameRelay(int subscriberPort, int queueCapacity, SlowConsumerPolicy policy) {
+        if (queueCapacity <= MAX_CONFIG_FRAMES) {
+            throw new IllegalArgumentException("Queue capacity too small: " + queueCapacity);
+        }
+        this.subscriberPort = subscriberPort;
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+    }
+
+    public synchronized void start() throws IOException {
+        if (isRunning) {
+            Log.w(TAG, "Relay already running");
+            return;
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(subscriberPort));
+        isRunning = true;
+        acceptThread = new Thread(() -> {
+            while (isRunning) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    addSubscriber(channel);
+                } catch (IOException e) {
+                    if (isRunning) {
+                        Log.e(TAG, "Accept error: " + e.getMessage());
+                    }
+                    break;
+                }
+            }
+        }, "RelayAccept");
+        acceptThread.start();
+        Log.i(TAG, "Relay started on port " + subscriberPort + " policy=" + policy);
+    }
+
+    // 先停止输入（MyServer），再停止转发
+    public synchronized void stop() {
+        isRunning = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing server channel: " + e.getMessage());
+        }
+        if (acceptThread != null) {
+            try {
+                acceptThread.join(500);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while stopping accept thread");
+            }
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close("relay stopped");
+        }
+        for (MyFrame frame : configFrames) {
+            frame.release();
+        }
+        configFrames.clear();
+    }
+
+    // 也可以直接添加已连接的订阅者（例如本地录制用的 Pipe/Socket）
+    public Subscriber addSubscriber(SocketChannel channel) {
+        Subscriber subscriber = new Subscriber(nextSubscriberId.getAndIncrement(), channel);
+        subscribers.add(subscriber);
+        subscriber.start();
+        Log.i(TAG, "Subscriber connected: id=" + subscriber.id);
+        return subscriber;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public List<Subscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    // 接收线程调用。帧的所有权交给转发，这里 release 输入方的引用
+    @Override
+    public void onFrameReceived(MyFrame frame) {
+        int kind = KeyFrameDetector.classify(frame.header, frame.frameData);
+        if (kind == KeyFrameDetector.CONFIG) {
+            cacheConfig(frame);
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(frame, kind);
+        }
+        if (kind != KeyFrameDetector.CONFIG) {
+            lastWasConfig = false;
+        }
+        frame.release();
+    }
+
+    // 连续的参数集消息算一组，新的一组替换旧的
+    private void cacheConfig(MyFrame frame) {
+        if (!lastWasConfig || configFrames.size() == MAX_CONFIG_FRAMES) {
+            for (MyFrame old : configFrames) {
+                old.release();
+            }
+            configFrames.clear();
+        }
+        configFrames.add(frame.retain());
+        lastWasConfig = true;
+    }
+
+    public final class Subscriber {
+        private final int id;
+        private final SocketChannel channel;
+        private final BlockingQueue<MyFrame> queue;
+        private final ByteBuffer headerBuffer = ByteBuffer.allocateDirect(MediaMessageHeader.SIZE_V2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer[] gather = new ByteBuffer[2];
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private boolean waitingForKeyFrame = true; // 只在接收线程中访问
+        private volatile boolean closed;
+        private Thread senderThread;
+
+        private Subscriber(int id, SocketChannel channel) {
+            this.id = id;
+            this.channel = channel;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        private void start() {
+            senderThread = new Thread(this::sendLoop, "RelaySend-" + id);
+            senderThread.start();
+        }
+
+        // 接收线程调用
+        private void offer(MyFrame frame, int kind) {
+            if (closed) {
+                return;
+            }
+            if (waitingForKeyFrame) {
+                if (kind == KeyFrameDetector.CONFIG) {
+                    return; // 已经在 configFrames 中，等到关键帧时和它一起发出
+                }
+                if (kind != KeyFrameDetector.KEY) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                // 只有关键帧结束等待：先补发缓存的参数集，再发关键帧
+                waitingForKeyFrame = false;
+                for (MyFrame config : configFrames) {
+                    enqueue(config, KeyFrameDetector.CONFIG);
+                }
+            }
+            enqueue(frame, kind);
+        }
+
+        private void enqueue(MyFrame frame, int kind) {
+            frame.retain();
+            if (queue.offer(frame)) {
+                if (closed) {
+                    drain(); // 与 close() 同时发生时，保证帧都被释放
+                }
+                return;
+            }
+            frame.release();
+            dropped.incrementAndGet();
+            if (policy == SlowConsumerPolicy.DISCONNECT) {
+                close("slow consumer");
+                return;
+            }
+            // 队列中的帧全部丢弃，等下一个关键帧。当前帧本身是关键帧时从它重新开始，
+            // 是参数集时已经在缓存中，恢复时补发
+            MyFrame queued;
+            while ((queued = queue.poll()) != null) {
+                queued.release();
+                dropped.incrementAndGet();
+            }
+            waitingForKeyFrame = true;
+            if (kind == KeyFrameDetector.KEY) {
+                offer(frame, kind);
+            }
+        }
+
+        private void sendLoop() {
+            try {
+                while (!closed) {
+                    MyFrame frame = queue.take();
+                    try {
+                        write(frame);
+                        sent.incrementAndGet();
+                    } finally {
+                        frame.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.i(TAG, "Subscriber sender interrupted: id=" + id);
+            } catch (IOException e) {
+                close(e.getMessage());
+            }
+        }
+
+        // 帧头和帧数据一次 gathering write，帧数据直接从共享的缓冲区写出
+        private void write(MyFrame frame) throws IOException {
+            headerBuffer.clear();
+            frame.header.writeTo(headerBuffer);
+            headerBuffer.flip();
+            gather[0] = headerBuffer;
+            gather[1] = ByteBuffer.wrap(frame.frameData, 0, frame.header.dataLen);
+            while (gather[1].hasRemaining() || headerBuffer.hasRemaining()) {
+                channel.write(gather);
+            }
+            gather[1] = null;
+        }
+
+        private void close(String reason) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscribers.remove(this);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing subscriber: " + e.getMessage());
+            }
+            if (senderThread != null && senderThread != Thread.currentThread()) {
+                senderThread.interrupt();
+            }
+            drain();
+            Log.i(TAG, "Subscriber closed: id=" + id + " reason=" + reason + " sent=" + sent + " dropped=" + dropped);
+        }
+
+        private void drain() {
+            MyFrame frame;
+            while ((frame = queue.poll()) != null) {
+                frame.release();
+            }
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public long getSent() {
+            return sent.get();
+        }
+
+        // 因为等关键帧或队列满而没有发送的帧数
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+}
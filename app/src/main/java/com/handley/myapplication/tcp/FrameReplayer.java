@@ -0,0 +1,203 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.video.AvccConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// 按帧头时间戳回放 dump 文件：逐帧解析 MediaMessageHeader，在 (时间戳 - 第一帧时间戳) / speed 时刻发送该帧，
+// 模拟真实摄像头/麦克风的发送节奏。speed 为 AS_FAST_AS_POSSIBLE 时不等待，逐帧尽快发送。
+// 循环回放时时间戳和 v2 的 sequence 接着上一轮递增，接收端看到的是一条连续的流。
+public class FrameReplayer {
+
+    public static final float AS_FAST_AS_POSSIBLE = 0f;
+    private static final long LATE_THRESHOLD_NS = 10_000_000; // 比计划晚10ms以上算迟到
+
+    private final float speed;
+    private final TimeUnit timestampUnit;
+    private final boolean loop;
+    private final FrameBufferPool bufferPool = new FrameBufferPool();
+    private int[] streamIds = new int[4]; // 每个 streamId 的 sequence 偏移和本轮帧数
+    private int[] sequenceOffsets = new int[4];
+    private int[] loopFrames = new int[4];
+    private int streamCount;
+    private volatile long framesSent;
+    private volatile int loops;
+    private volatile long lateFrames;
+    private volatile long maxLateNs;
+    private volatile boolean avccOutput;
+
+    // timestampUnit 是 dump 文件中帧头时间戳的单位（视频dump为毫秒，fake-dump.opus 为微秒）
+    public FrameReplayer(float speed, TimeUnit timestampUnit, boolean loop) {
+        if (speed < 0 || Float.isNaN(speed)) {
+            throw new IllegalArgumentException("Invalid speed " + speed);
+        }
+        this.speed = speed;
+        this.timestampUnit = timestampUnit;
+        this.loop = loop;
+    }
+
+    // 为true时把 Annex-B 的 H264/H265 帧转成 AVCC/HVCC（4字节长度前缀）发送，帧类型改为 H264_AVCC/H265_HVCC。
+    // 没有协商过程，接收端必须支持这两种类型（H264ActivityTcpSv/H265ActivityTcpSv 都支持）
+    public void setAvccOutput(boolean avccOutput) {
+        this.avccOutput = avccOutput;
+    }
+
+    // 从文件开头回放到 out，每帧 flush 一次。不循环时文件结束返回；线程被中断时在帧边界返回
+    public void replay(FileChannel file, OutputStream out) throws IOException {
+        replay(file, new OutputStreamFrameSink(out));
+    }
+
+    // 回放到任意传输的 sink（帧的所有权交给 sink），不关闭 sink
+    public void replay(FileChannel file, FrameSink sink) throws IOException {
+        long startNs = System.nanoTime();
+        long firstTimestamp = Long.MIN_VALUE;
+        long timestampOffset = 0;
+        do {
+            file.position(0);
+            MediaFrameReader frameReader = new MediaFrameReader(file, bufferPool);
+            long loopFirst = Long.MIN_VALUE;
+            long loopLast = Long.MIN_VALUE;
+            int count = 0;
+            Arrays.fill(loopFrames, 0);
+
+            MyFrame frame;
+            while ((frame = frameReader.readFrame()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    frame.release();
+                    return;
+                }
+                MediaMessageHeader header = frame.header;
+                if (loopFirst == Long.MIN_VALUE) {
+                    loopFirst = header.timestamp;
+                }
+                loopLast = header.timestamp;
+                count++;
+
+                header.timestamp += timestampOffset;
+                if (header.isV2()) {
+                    int index = streamIndex(header.streamId);
+                    header.sequence += sequenceOffsets[index];
+                    loopFrames[index]++;
+                }
+                if (firstTimestamp == Long.MIN_VALUE) {
+                    firstTimestamp = header.timestamp;
+                }
+                if (!waitUntil(startNs, header.timestamp - firstTimestamp)) {
+                    frame.release();
+                    return;
+                }
+                if (avccOutput) {
+                    frame = toAvcc(frame);
+                }
+
+                sink.send(frame); // 之后不能再访问 frame
+                framesSent++;
+            }
+            if (count == 0) {
+                return; // 空文件，不能循环
+            }
+
+            // 下一轮接在这一轮最后一帧之后，间隔取本轮的平均帧间隔
+            long span = loopLast - loopFirst;
+            timestampOffset += span + (count > 1 ? Math.max(span / (count - 1), 1) : 1);
+            for (int i = 0; i < streamCount; i++) {
+                sequenceOffsets[i] += loopFrames[i];
+            }
+            loops++;
+        } while (loop && !Thread.currentThread().isInterrupted());
+    }
+
+    // 等到媒体时间 mediaTime（时间戳单位）按 speed 换算后的发送时刻。等待中被中断返回false
+    private boolean waitUntil(long startNs, long mediaTime) {
+        if (speed == AS_FAST_AS_POSSIBLE) {
+            return true;
+        }
+        long targetNs = startNs + (long) (timestampUnit.toNanos(mediaTime) / speed);
+        long waitNs = targetNs - System.nanoTime();
+        if (waitNs > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        } else if (-waitNs > LATE_THRESHOLD_NS) {
+            lateFrames++;
+            maxLateNs = Math.max(maxLateNs, -waitNs);
+        }
+        return true;
+    }
+
+    // Annex-B 帧转成 AVCC/HVCC，其他类型原样返回。全是4字节起始码时原地转换，否则转换到池中的新缓冲区并释放原帧
+    private MyFrame toAvcc(MyFrame frame) {
+        byte avccType;
+        if (frame.header.type == MediaMessageHeader.H264) {
+            avccType = MediaMessageHeader.H264_AVCC;
+        } else if (frame.header.type == MediaMessageHeader.H265) {
+            avccType = MediaMessageHeader.H265_HVCC;
+        } else {
+            return frame;
+        }
+        if (!AvccConverter.annexBToAvccInPlace(frame.frameData, 0, frame.header.dataLen)) {
+            byte[] converted = AvccConverter.annexBToAvcc(frame.frameData, 0, frame.header.dataLen);
+            MyFrame copy = bufferPool.obtain(converted.length);
+            copy.header.copyFrom(frame.header);
+            copy.header.dataLen = converted.length;
+            System.arraycopy(converted, 0, copy.frameData, 0, converted.length);
+            frame.release();
+            frame = copy;
+        }
+        MediaMessageHeader header = frame.header;
+        header.type = avccType;
+        if ((header.flags & MediaMessageHeader.FLAG_HAS_CRC) != 0) {
+            header.setCrc32c(frame.frameData, 0, header.dataLen); // 数据变了，原来的CRC不再有效
+        }
+        return frame;
+    }
+
+    private int streamIndex(int streamId) {
+        for (int i = 0; i < streamCount; i++) {
+            if (streamIds[i] == streamId) {
+                return i;
+            }
+        }
+        if (streamCount == streamIds.length) {
+            streamIds = Arrays.copyOf(streamIds, streamCount * 2);
+            sequenceOffsets = Arrays.copyOf(sequenceOffsets, streamCount * 2);
+            loopFrames = Arrays.copyOf(loopFrames, streamCount * 2);
+        }
+        streamIds[streamCount] = streamId;
+        return streamCount++;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    // 已完成的轮数
+    public int getLoops() {
+        return loops;
+    }
+
+    // 发送端跟不上计划（比计划晚10ms以上）的帧数
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    public long getMaxLateUs() {
+        return maxLateNs / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameReplayer{speed=" + speed + " loop=" + loop + " framesSent=" + framesSent + " loops=" + loops
+                + " lateFrames=" + lateFrames + " maxLateUs=" + getMaxLateUs() + "}";
+    }
+}
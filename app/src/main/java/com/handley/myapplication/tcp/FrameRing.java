@@ -0,0 +1,182 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// 单生产者单消费者的无锁环形队列，传递帧的引用（不拷贝帧数据）。
+// tail 只由生产者写，槽位和游标用 lazySet 发布，get 读取，不需要锁。消费者用 CAS 移动 head 认领帧：
+// 关闭时读取线程、关闭线程（drain）和生产者（put 中补救）可能同时取帧，每一帧只会被一方取走。
+// 队列满/空时先自旋，再 yield，最后 park，对方操作后按需 unpark。
+public final class FrameRing {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 10;
+    private static final long PARK_NS = TimeUnit.MILLISECONDS.toNanos(1); // 错过 unpark 时最多多等1ms
+
+    private final AtomicReferenceArray<MyFrame> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // 下一个读取的位置
+    private final AtomicLong tail = new AtomicLong(); // 下一个写入的位置
+    private volatile Thread parkedConsumer;
+    private volatile Thread parkedProducer;
+    private volatile boolean closed;
+    private volatile boolean drained; // 消费者已关闭并开始 drain，之后写入的帧没有人取
+
+    // capacity 向上取整为2的幂
+    public FrameRing(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    // 生产者调用，队列满返回false
+    public boolean offer(MyFrame frame) {
+        return offer(frame, true);
+    }
+
+    // lazy 为false时用 volatile 写发布 tail，保证之后读取 drained 不会被重排到发布之前
+    private boolean offer(MyFrame frame, boolean lazy) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        slots.lazySet((int) t & mask, frame);
+        if (lazy) {
+            tail.lazySet(t + 1);
+        } else {
+            tail.set(t + 1);
+        }
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    // 消费者调用，队列空返回null
+    public MyFrame poll() {
+        MyFrame frame;
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) {
+                return null;
+            }
+            int index = (int) h & mask;
+            frame = slots.get(index);
+            if (head.compareAndSet(h, h + 1)) {
+                // 移动 head 后生产者可能已经写入了下一圈的帧，只清除自己取走的这一帧
+                slots.compareAndSet(index, frame, null);
+                break;
+            }
+        }
+        Thread producer = parkedProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        return frame;
+    }
+
+    // 生产者调用，队列满时等待。环已关闭时抛出 IOException（帧未入队，由调用方处理）。
+    // 检查 closed 之后、入队之前消费者可能已经关闭并 drain 完，这时由生产者释放刚写入的帧
+    public void put(MyFrame frame) throws IOException {
+        int tries = 0;
+        while (true) {
+            if (closed) {
+                throw new IOException("Ring closed");
+            }
+            if (offer(frame, false)) {
+                if (drained) {
+                    drain();
+                }
+                return;
+            }
+            tries = backoff(tries, true);
+        }
+    }
+
+    // 消费者调用，队列空时等待。环已关闭且没有剩余的帧时返回null
+    public MyFrame take() throws IOException {
+        int tries = 0;
+        while (true) {
+            MyFrame frame = poll();
+            if (frame != null) {
+                return frame;
+            }
+            if (closed) {
+                return poll(); // 关闭前写入的帧
+            }
+            tries = backoff(tries, false);
+        }
+    }
+
+    private int backoff(int tries, boolean producer) throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException("Interrupted while waiting on ring");
+        }
+        if (tries < SPIN_TRIES) {
+            return tries + 1; // 自旋，马上重试
+        }
+        if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else if (producer) {
+            parkedProducer = Thread.currentThread();
+            if (size() > mask && !closed) { // 登记后再检查一次，避免错过对方的 unpark
+                LockSupport.parkNanos(this, PARK_NS);
+            }
+            parkedProducer = null;
+        } else {
+            parkedConsumer = Thread.currentThread();
+            if (size() == 0 && !closed) {
+                LockSupport.parkNanos(this, PARK_NS);
+            }
+            parkedConsumer = null;
+        }
+        return tries + 1;
+    }
+
+    // 任意一端关闭，唤醒等待的线程。消费者仍可以取出已写入的帧
+    public void close() {
+        closed = true;
+        Thread thread = parkedConsumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        thread = parkedProducer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // 消费者关闭后调用，释放没有取走的帧。之后 put() 写入的帧由生产者释放
+    public void drain() {
+        drained = true;
+        MyFrame frame;
+        while ((frame = poll()) != null) {
+            frame.release();
+        }
+    }
+}
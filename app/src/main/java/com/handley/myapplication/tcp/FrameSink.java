@@ -0,0 +1,18 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// 一个连接的发送端
+public interface FrameSink extends Closeable {
+
+    // 发送一帧，帧的所有权交给 sink（发送完或出错时由 sink release），调用后不能再访问 frame
+    void send(MyFrame frame) throws IOException;
+
+    // 接收端发回的反馈，传输不支持时返回null。可以在另一个线程中读取，sink 关闭后读到流结束或 IOException
+    default FrameSource feedback() throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// 一个连接的接收端
+public interface FrameSource extends Closeable {
+
+    // 阻塞读取下一帧，帧的所有权交给调用者（处理完 release）；连接正常结束返回null
+    MyFrame readFrame() throws IOException;
+
+    // 反方向发给发送端的 sink（接收窗口报告等反馈），传输不支持时返回null。只在读取线程中使用，不需要单独关闭
+    default FrameSink feedback() throws IOException {
+        return null;
+    }
+}
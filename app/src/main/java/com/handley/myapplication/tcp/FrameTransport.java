@@ -0,0 +1,23 @@
+package com.handley.myapplication.tcp;
+
+import java.io.IOException;
+
+// MyServer/MyClient 下面的传输层：服务端 bind() 后循环 accept() 得到每个连接的 FrameSource，
+// 客户端 connect() 得到 FrameSink。帧格式都是 MediaMessageHeader + 帧数据，上层的 MyFrameCallback 不变。
+public interface FrameTransport {
+
+    // 服务端开始监听
+    void bind() throws IOException;
+
+    // 阻塞等待下一个连接，close() 后抛出 IOException
+    FrameSource accept() throws IOException;
+
+    // 客户端连接到服务端
+    FrameSink connect() throws IOException;
+
+    // 停止监听，唤醒阻塞在 accept() 中的线程。已建立的连接由各自的 source/sink 关闭
+    void close();
+
+    // close() 之后返回true，此时 accept() 的异常表示传输已停止，而不是单个连接出错
+    boolean isClosed();
+}
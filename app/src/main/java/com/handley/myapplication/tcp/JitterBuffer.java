@@ -0,0 +1,198 @@
+package com.handley.myapplication.tcp;
+
+// UDP 接收端的重排序/抖动缓冲区：按 RTP 序号顺序交出包，乱序到达的包在这里等齐。
+// 缺包时先等 reorderDelay（可能只是乱序），之后每隔 nackInterval 请求一次重传，最多 MAX_NACKS 次；
+// 缺包超过 latencyBudget 仍没有到达就放弃，返回 GAP，后面的包继续交出，一个丢包不会卡住整条流。
+// 包按到齐的顺序尽快交出，不额外缓冲，按时间戳播放的节奏由解码/渲染端控制。只在接收线程中使用。
+final class JitterBuffer {
+
+    static final int SLOTS = 1024;
+    static final int NONE = -1; // 下一个包还没到
+    static final int GAP = -2;  // 放弃了一个缺失的包
+    private static final int MASK = SLOTS - 1;
+    private static final int MAX_NACKS = 4;
+    private static final int INITIAL_PACKET_SIZE = 1500;
+
+    private final long latencyBudgetNs;
+    private final long reorderDelayNs;
+    private final long nackIntervalNs;
+    private final byte[][] packets = new byte[SLOTS][];
+    private final int[] lengths = new int[SLOTS];
+    private final boolean[] present = new boolean[SLOTS];
+    private final long[] missingSince = new long[SLOTS];
+    private final long[] lastNack = new long[SLOTS];
+    private final int[] nackCount = new int[SLOTS];
+    private long next = -1;    // 下一个要交出的扩展序号（32位以上不回绕）
+    private long highest = -1; // 已知的最大扩展序号
+    private long end = Long.MAX_VALUE;
+    private volatile long received;
+    private volatile long duplicates;
+    private volatile long late;
+    private volatile long overflow;
+    private volatile long nacked;
+    private volatile long recovered;
+    private volatile long lost;
+
+    JitterBuffer(long latencyBudgetNs) {
+        this.latencyBudgetNs = latencyBudgetNs;
+        this.reorderDelayNs = Math.min(latencyBudgetNs / 10, 20_000_000);
+        this.nackIntervalNs = Math.max(latencyBudgetNs / (MAX_NACKS + 1), 1_000_000);
+    }
+
+    // 放入一个包（拷贝），太晚、重复或超出窗口的包丢弃
+    void insert(byte[] packet, int length, long nowNs) {
+        int sequence = RtpPacket.sequence(packet);
+        if (next < 0) {
+            // 从流的第一个包开始等，开头丢失或乱序的包也能请求重传；中途加入的流从这个包开始
+            int first = RtpPacket.firstSequence(packet);
+            next = ((sequence - first) & 0xFFFF) < SLOTS ? first : sequence;
+            highest = next - 1;
+        }
+        long ext = extend(sequence);
+        if (ext < next || ext >= end) {
+            late++;
+            return;
+        }
+        if (ext >= next + SLOTS) {
+            overflow++; // 窗口满了，之后按缺包请求重传
+            return;
+        }
+        received++;
+        for (long s = highest + 1; s < ext; s++) {
+            markMissing(s, nowNs);
+        }
+        int index = (int) ext & MASK;
+        if (ext > highest) {
+            highest = ext;
+            nackCount[index] = 0;
+        } else if (present[index]) {
+            duplicates++;
+            return;
+        } else if (nackCount[index] > 0) {
+            recovered++;
+        }
+        if (packets[index] == null || packets[index].length < length) {
+            packets[index] = new byte[Math.max(length, INITIAL_PACKET_SIZE)];
+        }
+        System.arraycopy(packet, 0, packets[index], 0, length);
+        lengths[index] = length;
+        present[index] = true;
+    }
+
+    // 发送端结束（BYE），nextSequence 之前还没收到的包继续等到预算用完
+    void markEnd(int nextSequence, long nowNs) {
+        if (next < 0) {
+            next = nextSequence;
+            highest = nextSequence - 1;
+        }
+        long ext = extend(nextSequence);
+        if (ext < next) {
+            ext = next;
+        }
+        for (long s = highest + 1; s < ext && s < next + SLOTS; s++) {
+            markMissing(s, nowNs);
+            highest = s;
+        }
+        end = ext;
+    }
+
+    // 返回可以交出的下一个包的槽位（用 packet()/length() 读取，下次调用前有效），或者 NONE/GAP
+    int poll(long nowNs) {
+        if (next < 0 || next > highest) {
+            return NONE;
+        }
+        int index = (int) next & MASK;
+        if (present[index]) {
+            present[index] = false;
+            next++;
+            return index;
+        }
+        if (nowNs - missingSince[index] < latencyBudgetNs) {
+            return NONE;
+        }
+        lost++;
+        next++;
+        return GAP;
+    }
+
+    byte[] packet(int index) {
+        return packets[index];
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    // 把现在需要请求重传的序号写入 out，返回个数
+    int collectNacks(long nowNs, int[] out) {
+        int count = 0;
+        for (long s = next; s <= highest && count < out.length; s++) {
+            int index = (int) s & MASK;
+            if (present[index] || nackCount[index] >= MAX_NACKS || nowNs - missingSince[index] < reorderDelayNs
+                    || nowNs - lastNack[index] < nackIntervalNs || nowNs - missingSince[index] >= latencyBudgetNs) {
+                continue;
+            }
+            lastNack[index] = nowNs;
+            nackCount[index]++;
+            nacked++;
+            out[count++] = (int) s & 0xFFFF;
+        }
+        return count;
+    }
+
+    // 有缺失的包在等待（需要定时检查重传和放弃）
+    boolean hasMissing() {
+        return next >= 0 && next <= highest;
+    }
+
+    // 发送端已结束，所有的包都已交出或放弃
+    boolean isFinished() {
+        return next >= end;
+    }
+
+    private void markMissing(long sequence, long nowNs) {
+        int index = (int) sequence & MASK;
+        present[index] = false;
+        missingSince[index] = nowNs;
+        lastNack[index] = nowNs - nackIntervalNs; // 过了 reorderDelay 就可以请求
+        nackCount[index] = 0;
+    }
+
+    // 16位序号按离 highest 最近的方向扩展
+    private long extend(int sequence) {
+        long base = Math.max(highest, next);
+        return base + (short) (sequence - (int) base);
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    long getDuplicates() {
+        return duplicates;
+    }
+
+    // 已经交出或放弃之后才到达的包
+    long getLate() {
+        return late;
+    }
+
+    long getNacked() {
+        return nacked;
+    }
+
+    // 请求重传后收到的包
+    long getRecovered() {
+        return recovered;
+    }
+
+    long getLost() {
+        return lost;
+    }
+
+    @Override
+    public String toString() {
+        return "JitterBuffer{received=" + received + " duplicates=" + duplicates + " late=" + late + " overflow="
+                + overflow + " nacked=" + nacked + " recovered=" + recovered + " lost=" + lost + "}";
+    }
+}
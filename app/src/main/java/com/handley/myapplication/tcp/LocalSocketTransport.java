@@ -0,0 +1,131 @@
+package com.handley.myapplication.tcp;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.common.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+
+// 本机跨进程的 Unix 域套接字传输（Android 抽象命名空间，名字不对应文件）。帧格式和 TcpTransport 相同，
+// 但不经过 TCP/IP 协议栈：没有校验和、拥塞控制和 Nagle，也不占用端口。
+public class LocalSocketTransport implements FrameTransport {
+    private static final String TAG = Utils.TAG + "LocalSocketTransport";
+    private static final int SOCKET_BUFFER_SIZE = 256 * 1024;
+
+    private final String name;
+    private final FrameBufferPool bufferPool;
+    private volatile LocalServerSocket serverSocket;
+    private volatile boolean closed;
+
+    public LocalSocketTransport(String name) {
+        this(name, new FrameBufferPool());
+    }
+
+    public LocalSocketTransport(String name, FrameBufferPool bufferPool) {
+        this.name = name;
+        this.bufferPool = bufferPool;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void bind() throws IOException {
+        closed = false;
+        serverSocket = new LocalServerSocket(name);
+        Log.i(TAG, "Listening on @" + name);
+    }
+
+    @Override
+    public FrameSource accept() throws IOException {
+        LocalSocket socket = serverSocket.accept();
+        if (closed) {
+            socket.close(); // close() 中用于唤醒 accept() 的连接
+            throw new IOException("Transport closed");
+        }
+        socket.setReceiveBufferSize(SOCKET_BUFFER_SIZE);
+        Log.i(TAG, "Client connected on @" + name);
+        return new LocalFrameSource(socket);
+    }
+
+    @Override
+    public FrameSink connect() throws IOException {
+        LocalSocket socket = new LocalSocket();
+        try {
+            socket.connect(new LocalSocketAddress(name, LocalSocketAddress.Namespace.ABSTRACT));
+            socket.setSendBufferSize(SOCKET_BUFFER_SIZE);
+            return new OutputStreamFrameSink(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        socket.close();
+                    }
+                }
+            };
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // LocalServerSocket.close() 不会唤醒阻塞在 accept() 中的线程，自己连一次把它唤醒
+    @Override
+    public void close() {
+        if (closed || serverSocket == null) {
+            return;
+        }
+        closed = true;
+        try (LocalSocket wakeup = new LocalSocket()) {
+            wakeup.connect(new LocalSocketAddress(name, LocalSocketAddress.Namespace.ABSTRACT));
+        } catch (IOException e) {
+            Log.w(TAG, "Wakeup connect failed: " + e.getMessage());
+        }
+        try {
+            serverSocket.close();
+            Log.i(TAG, "closeServerSocket()");
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing server socket: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private final class LocalFrameSource implements FrameSource {
+        private final LocalSocket socket;
+        private final MediaFrameReader frameReader;
+
+        LocalFrameSource(LocalSocket socket) throws IOException {
+            this.socket = socket;
+            this.frameReader = new MediaFrameReader(socket.getInputStream(), bufferPool);
+        }
+
+        @Override
+        public MyFrame readFrame() throws IOException {
+            return frameReader.readFrame();
+        }
+
+        @Override
+        public void close() throws IOException {
+            frameReader.releasePendingFrame();
+            Log.i(TAG, "Connection closed, skipped=" + frameReader.getSkippedBytes() + " frames="
+                    + frameReader.getFrameCount() + " reads=" + frameReader.getReadCount() + " " + bufferPool);
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// 同进程内的传输：不经过 socket 和内核协议栈，每个连接一个 FrameRing，帧的引用直接交给服务端，
+// 不序列化也不拷贝帧数据。服务端和客户端使用同一个 LoopbackTransport 对象。
+// 每个连接另有一个小的反方向环用于反馈（接收窗口报告）。
+// 客户端可以在服务端 bind() 之前 connect()，连接排队等待 accept()。
+public class LoopbackTransport implements FrameTransport {
+
+    public static final int DEFAULT_RING_CAPACITY = 64;
+
+    private final int ringCapacity;
+    private static final int FEEDBACK_RING_CAPACITY = 8;
+
+    private final BlockingQueue<FrameRing[]> pendingConnections = new LinkedBlockingQueue<>(); // {帧, 反馈}
+    private volatile boolean closed;
+
+    public LoopbackTransport() {
+        this(DEFAULT_RING_CAPACITY);
+    }
+
+    public LoopbackTransport(int ringCapacity) {
+        this.ringCapacity = ringCapacity;
+    }
+
+    @Override
+    public void bind() {
+        closed = false;
+    }
+
+    @Override
+    public FrameSource accept() throws IOException {
+        while (!closed) {
+            FrameRing[] rings;
+            try {
+                rings = pendingConnections.poll(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while accepting");
+            }
+            if (rings != null) {
+                return new RingFrameSource(rings[0], new RingFrameSink(rings[1], null));
+            }
+        }
+        throw new IOException("Transport closed");
+    }
+
+    // 检查 closed 和入队在同一个锁内，不会在 close() 清空队列之后再放入没人 accept 的连接
+    @Override
+    public synchronized FrameSink connect() throws IOException {
+        if (closed) {
+            throw new IOException("Transport closed");
+        }
+        FrameRing ring = new FrameRing(ringCapacity);
+        FrameRing feedbackRing = new FrameRing(FEEDBACK_RING_CAPACITY);
+        pendingConnections.add(new FrameRing[]{ring, feedbackRing});
+        return new RingFrameSink(ring, new RingFrameSource(feedbackRing, null));
+    }
+
+    // 没有被 accept() 的连接也一起关闭
+    @Override
+    public synchronized void close() {
+        closed = true;
+        FrameRing[] rings;
+        while ((rings = pendingConnections.poll()) != null) {
+            rings[0].close();
+            rings[0].drain();
+            rings[1].close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private static final class RingFrameSource implements FrameSource {
+        private final FrameRing ring;
+        private final RingFrameSink feedback;
+
+        RingFrameSource(FrameRing ring, RingFrameSink feedback) {
+            this.ring = ring;
+            this.feedback = feedback;
+        }
+
+        @Override
+        public MyFrame readFrame() throws IOException {
+            return ring.take();
+        }
+
+        @Override
+        public FrameSink feedback() {
+            return feedback;
+        }
+
+        // 反馈环由读取反馈的一端取完剩余的消息
+        @Override
+        public void close() {
+            ring.close();
+            ring.drain();
+            if (feedback != null) {
+                feedback.close();
+            }
+        }
+    }
+
+    private static final class RingFrameSink implements FrameSink {
+        private final FrameRing ring;
+        private final RingFrameSource feedback;
+
+        RingFrameSink(FrameRing ring, RingFrameSource feedback) {
+            this.ring = ring;
+            this.feedback = feedback;
+        }
+
+        @Override
+        public FrameSource feedback() {
+            return feedback;
+        }
+
+        @Override
+        public void send(MyFrame frame) throws IOException {
+            try {
+                ring.put(frame);
+            } catch (IOException e) {
+                frame.release();
+                throw e;
+            }
+        }
+
+        // 服务端读完已发送的帧后得到流结束
+        @Override
+        public void close() {
+            ring.close();
+            if (feedback != null) {
+                feedback.ring.close();
+            }
+        }
+    }
+}
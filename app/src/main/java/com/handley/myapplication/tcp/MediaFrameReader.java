@@ -0,0 +1,323 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+// 从字节流中读取(含私有协议头的)帧，支持v1和v2帧头。帧头损坏时不断开连接，而是逐字节向后查找下一个魔数，
+// 候选帧头通过类型、长度、时间戳检查后继续读取，并统计跳过的字节数。
+// v2帧头带CRC时校验帧数据，校验失败的帧丢弃；按 streamId 检查 sequence 连续性，统计丢失的帧数。
+// 传入 FrameBufferPool 时帧数据从池中借用（使用者处理完调用 MyFrame.release()），否则每帧新分配。非线程安全。
+// 数据先批量读入一个直接内存的读缓冲区，一次 read 可以带回多个小帧，帧头直接在缓冲区中解析；
+// TCP 分多次送达的大帧循环读取直到读满，不会因为不完整的读取断开连接。
+// 非阻塞通道上读到一半的帧和重新同步的进度保存在对象中，可以每个连接一个对象，由一个线程驱动多个连接。
+public class MediaFrameReader {
+
+    public static final int MAX_FRAME_SIZE = FrameBufferPool.DEFAULT_MAX_FRAME_SIZE; // 不使用缓冲池时的单帧数据上限
+    public static final int DEFAULT_READ_BUFFER_SIZE = 128 * 1024;
+    private static final long MAX_TIMESTAMP_JUMP = 60 * 1000;   // 重新同步时允许的时间戳跳变（毫秒）
+    private static final byte MAX_TYPE = MediaMessageHeader.FEEDBACK;
+
+    private final ReadableByteChannel channel;
+    private final FrameBufferPool pool;
+    private final int maxFrameSize;
+    private final ByteBuffer readBuffer; // 读模式：position 到 limit 之间是未处理的数据
+    private final MediaMessageHeader header = new MediaMessageHeader(); // 解析用，复用
+    private final long[] lastTimestamps = new long[MAX_TYPE + 1]; // 每种类型最近一帧的时间戳
+    private int[] streamIds = new int[4];   // 出现过的 streamId 及其下一个期望的 sequence
+    private int[] nextSequences = new int[4];
+    private int streamCount;
+    private boolean endOfStream;
+    private boolean resyncing;       // 重新同步中，当前位置是下一个候选帧头
+    private MyFrame pendingFrame;    // 帧头已解析、帧数据还没读满的帧
+    private int pendingLength;
+    private long readCount;
+    private long frameCount;
+    private long skippedBytes;
+    private int resyncCount;
+    private int lastSkipped;
+    private int crcErrors;
+    private long lostFrames;
+
+    public MediaFrameReader(InputStream inputStream) {
+        this(inputStream, null);
+    }
+
+    // 帧数据从 pool 中借用，单帧大小上限为 pool 的最大帧大小
+    public MediaFrameReader(InputStream inputStream, FrameBufferPool pool) {
+        this(Channels.newChannel(inputStream), pool, DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    // channel 可以是阻塞模式，也可以是非阻塞模式（由 Selector 驱动，见 MyNioServer）
+    public MediaFrameReader(ReadableByteChannel channel, FrameBufferPool pool) {
+        this(channel, pool, DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    public MediaFrameReader(ReadableByteChannel channel, FrameBufferPool pool, int readBufferSize) {
+        if (readBufferSize < MediaMessageHeader.SIZE_V2) {
+            throw new IllegalArgumentException("Read buffer too small: " + readBufferSize);
+        }
+        this.channel = channel;
+        this.pool = pool;
+        this.maxFrameSize = pool != null ? pool.getMaxFrameSize() : MAX_FRAME_SIZE;
+        this.readBuffer = ByteBuffer.allocateDirect(readBufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        readBuffer.limit(0);
+        Arrays.fill(lastTimestamps, Long.MIN_VALUE);
+    }
+
+    // 读取下一帧。阻塞通道：流正常结束返回null；非阻塞通道：暂时没有完整的帧也返回null，
+    // 已读到的部分（帧头、部分帧数据、重新同步的进度）保留到下次调用，用 isEndOfStream() 区分。
+    // 帧头或帧数据不完整时抛出 EOFException
+    public MyFrame readFrame() throws IOException {
+        while (true) {
+            if (pendingFrame == null) {
+                int valid = resyncing ? resync() : nextHeader();
+                if (valid <= 0) {
+                    return null;
+                }
+                pendingFrame = pool != null ? pool.obtain(header.dataLen)
+                        : new MyFrame(new MediaMessageHeader(), new byte[header.dataLen]);
+                pendingFrame.header.copyFrom(header);
+                pendingLength = 0;
+            }
+
+            MyFrame frame = pendingFrame;
+            if (!readPayload(frame)) {
+                if (!endOfStream) {
+                    return null;
+                }
+                pendingFrame = null;
+                frame.release();
+                throw new EOFException("Incomplete frame data: expected " + frame.header.dataLen);
+            }
+            pendingFrame = null;
+            if (!frame.header.checkCrc32c(frame.frameData, 0, frame.header.dataLen)) {
+                frame.release();
+                crcErrors++; // 帧边界是完整的，只丢弃这一帧
+                continue;
+            }
+            lastTimestamps[frame.header.type] = frame.header.timestamp;
+            if (frame.header.isV2()) {
+                checkSequence(frame.header);
+            }
+            frameCount++;
+            return frame;
+        }
+    }
+
+    // 流已结束，并且缓冲区中的数据都已处理
+    public boolean isEndOfStream() {
+        return endOfStream && pendingFrame == null && !readBuffer.hasRemaining();
+    }
+
+    // 连接异常关闭时调用，把读到一半的帧还给缓冲池
+    public void releasePendingFrame() {
+        if (pendingFrame != null) {
+            pendingFrame.release();
+            pendingFrame = null;
+        }
+    }
+
+    // 解析下一个帧头到 header 中，返回1；数据暂时不够或流正常结束返回0（帧头损坏时进入重新同步）
+    private int nextHeader() throws IOException {
+        if (!fill(MediaMessageHeader.SIZE)) {
+            if (endOfStream && readBuffer.hasRemaining()) {
+                throw new EOFException("Unexpected end of stream: " + readBuffer.remaining() + "/"
+                        + MediaMessageHeader.SIZE + " bytes");
+            }
+            return 0;
+        }
+        int valid = parseHeader(false);
+        if (valid < 0 && endOfStream) {
+            throw new EOFException("Incomplete v2 header");
+        }
+        if (valid != 0) {
+            return valid > 0 ? 1 : 0;
+        }
+        resyncing = true;
+        resyncCount++;
+        lastSkipped = 0;
+        skip(1);
+        return resync();
+    }
+
+    // 在读缓冲区的当前位置解析帧头（至少已有 SIZE 字节）。合法时消费帧头并返回1，不合法返回0（不消费），
+    // v2帧头的扩展数据还不够返回-1
+    private int parseHeader(boolean resync) throws IOException {
+        int pos = readBuffer.position();
+        int magic = readBuffer.getInt(pos);
+        if (magic == MediaMessageHeader.MAGIC_V2) {
+            if (!fill(MediaMessageHeader.SIZE_V2)) {
+                return -1;
+            }
+            pos = readBuffer.position(); // fill() 可能移动了数据
+            if (readBuffer.get(pos + MediaMessageHeader.SIZE) != MediaMessageHeader.VERSION_2) {
+                return 0;
+            }
+        } else if (magic != MediaMessageHeader.MAGIC) {
+            return 0;
+        }
+        MediaMessageHeader.parseInto(readBuffer, header);
+        if (!isValid(header, resync)) {
+            readBuffer.position(pos);
+            return 0;
+        }
+        return 1;
+    }
+
+    // 从当前位置逐字节向后查找下一个合法帧头，找到后解析到 header 中并返回1。
+    // 数据暂时不够返回0（下次从同一位置继续），流结束时丢弃剩余数据并返回0
+    private int resync() throws IOException {
+        while (true) {
+            if (!fill(MediaMessageHeader.SIZE)) {
+                if (endOfStream) {
+                    skip(readBuffer.remaining()); // 剩下的不足一个帧头，也丢弃了
+                    resyncing = false;
+                }
+                return 0;
+            }
+            // 先比较魔数的第一个字节（v1/v2相同），大部分位置不需要解析整个帧头
+            if (readBuffer.get(readBuffer.position()) == (byte) MediaMessageHeader.MAGIC) {
+                int valid = parseHeader(true);
+                if (valid > 0) {
+                    resyncing = false;
+                    return 1;
+                }
+                if (valid < 0) {
+                    if (endOfStream) {
+                        skip(readBuffer.remaining());
+                        resyncing = false;
+                    }
+                    return 0;
+                }
+            }
+            skip(1);
+        }
+    }
+
+    private void skip(int n) {
+        readBuffer.position(readBuffer.position() + n);
+        skippedBytes += n;
+        lastSkipped += n;
+    }
+
+    // 读缓冲区中至少有 n 字节未处理的数据时返回true；数据不足时一次读入尽量多的数据。
+    // 流结束，或非阻塞通道暂时没有数据时返回false
+    private boolean fill(int n) throws IOException {
+        if (readBuffer.remaining() >= n) {
+            return true;
+        }
+        if (endOfStream) {
+            return false;
+        }
+        readBuffer.compact();
+        try {
+            while (readBuffer.position() < n) {
+                readCount++;
+                int read = channel.read(readBuffer);
+                if (read < 0) {
+                    endOfStream = true;
+                    return false;
+                }
+                if (read == 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            readBuffer.flip();
+        }
+    }
+
+    // 先取读缓冲区中已有的数据，不足部分按读缓冲区大小分块读入再拷贝，单帧大于读缓冲区时也能读满。
+    // 返回false表示数据暂时不够或流提前结束
+    private boolean readPayload(MyFrame frame) throws IOException {
+        int len = frame.header.dataLen;
+        while (pendingLength < len) {
+            if (!readBuffer.hasRemaining() && !fill(1)) {
+                return false;
+            }
+            int n = Math.min(readBuffer.remaining(), len - pendingLength);
+            readBuffer.get(frame.frameData, pendingLength, n);
+            pendingLength += n;
+        }
+        return true;
+    }
+
+    // 帧头合法性检查。resync 为true时额外要求时间戳不回退且不跳变太多，降低在帧数据中误认魔数的概率
+    private boolean isValid(MediaMessageHeader header, boolean resync) {
+        if ((header.magic != MediaMessageHeader.MAGIC && header.magic != MediaMessageHeader.MAGIC_V2)
+                || header.type < 0 || header.type > MAX_TYPE || header.dataLen < 0 || header.dataLen > maxFrameSize) {
+            return false;
+        }
+        if (resync && header.timestamp < 0) {
+            return false;
+        }
+        long last = lastTimestamps[header.type];
+        return !resync || last == Long.MIN_VALUE
+                || (header.timestamp >= last && header.timestamp - last <= MAX_TIMESTAMP_JUMP);
+    }
+
+    // 按 streamId 检查 sequence 是否连续，统计丢失（或乱序）的帧数
+    private void checkSequence(MediaMessageHeader header) {
+        int index = 0;
+        while (index < streamCount && streamIds[index] != header.streamId) {
+            index++;
+        }
+        if (index == streamCount) {
+            if (streamCount == streamIds.length) {
+                streamIds = Arrays.copyOf(streamIds, streamCount * 2);
+                nextSequences = Arrays.copyOf(nextSequences, streamCount * 2);
+            }
+            streamIds[index] = header.streamId;
+            streamCount++;
+        } else if (header.sequence != nextSequences[index]) {
+            int gap = header.sequence - nextSequences[index];
+            lostFrames += gap > 0 ? gap : 1; // 回退视为乱序，计1
+        }
+        nextSequences[index] = header.sequence + 1;
+    }
+
+    // 从 channel 读取的次数（系统调用次数）
+    public long getReadCount() {
+        return readCount;
+    }
+
+    // 成功读取的帧数，getReadCount() / getFrameCount() 即平均每帧的读取次数
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    // 重新同步时累计跳过的字节数
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    public int getResyncCount() {
+        return resyncCount;
+    }
+
+    // 最近一次重新同步跳过的字节数
+    public int getLastSkipped() {
+        return lastSkipped;
+    }
+
+    // CRC校验失败而丢弃的帧数
+    public int getCrcErrors() {
+        return crcErrors;
+    }
+
+    // 根据 sequence 推算出的丢失帧数（v2帧头）
+    public long getLostFrames() {
+        return lostFrames;
+    }
+}
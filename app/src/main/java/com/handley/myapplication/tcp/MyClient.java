@@ -10,8 +10,14 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
 
 public class MyClient {
 
@@ -19,12 +25,49 @@ public class MyClient {
     private final Context context;
     private final String fileName;
     private final int port;
+    private final boolean zeroCopy;
+    private final FrameReplayer replayer;
+    private final FrameTransport transport; // 回放模式使用
+    private final boolean adaptive; // 回放模式按接收端的窗口报告丢帧
     private Thread clientThread;
 
     public MyClient(Context context, String fileName, int port) {
+        this(context, fileName, port, false);
+    }
+
+    // zeroCopy 为true时用 FileChannel.transferTo 发送，由内核直接从文件拷贝到 socket（sendfile），
+    // 不经过用户态缓冲区，用于压测和推送录制好的流
+    public MyClient(Context context, String fileName, int port, boolean zeroCopy) {
         this.context = context;
         this.fileName = fileName;
         this.port = port;
+        this.zeroCopy = zeroCopy;
+        this.replayer = null;
+        this.transport = null;
+        this.adaptive = false;
+    }
+
+    // 按帧头时间戳逐帧回放（可加速、循环），模拟真实的发送节奏
+    public MyClient(Context context, String fileName, int port, FrameReplayer replayer) {
+        this(context, fileName, new TcpTransport(port), replayer);
+    }
+
+    // 通过任意传输回放，例如同进程的 LoopbackTransport（不经过 socket）
+    public MyClient(Context context, String fileName, FrameTransport transport, FrameReplayer replayer) {
+        this(context, fileName, transport, replayer, false);
+    }
+
+    // adaptive 为true时用 AdaptiveFrameSink 发送：接收端（MyServer.setReceiveWindow）队列积压时丢弃非参考帧，
+    // 严重积压时丢到下一个关键帧。传输不支持反馈时和普通回放一样
+    public MyClient(Context context, String fileName, FrameTransport transport, FrameReplayer replayer,
+            boolean adaptive) {
+        this.context = context;
+        this.fileName = fileName;
+        this.port = -1;
+        this.zeroCopy = false;
+        this.replayer = replayer;
+        this.transport = transport;
+        this.adaptive = adaptive;
     }
 
     public void start() {
@@ -33,63 +76,136 @@ public class MyClient {
             return;
         }
 
-        clientThread = new Thread(() -> {
-            Socket socket = null;
-            OutputStream outputStream = null;
-            FileInputStream fis = null;
-            BufferedInputStream bis = null;
-
-            try {
-                // 1. 获取dump文件路径
-                File dumpFile = AssetsFileCopier.copyAssetToExternalFilesDir(this.context, this.fileName);
-                if (!dumpFile.exists()) {
-                    Log.e(TAG, "Dump file not found: " + dumpFile.getAbsolutePath());
-                    return;
-                }
+        if (replayer != null) {
+            clientThread = new Thread(this::sendFramesPaced);
+        } else if (zeroCopy) {
+            clientThread = new Thread(this::sendFileZeroCopy);
+        } else {
+            clientThread = new Thread(() -> {
+                Socket socket = null;
+                OutputStream outputStream = null;
+                FileInputStream fis = null;
+                BufferedInputStream bis = null;
 
-                // 2. 连接到服务器
-                socket = new Socket("127.0.0.1", this.port);
-                outputStream = socket.getOutputStream();
-                Log.i(TAG, "Connected to server");
+                try {
+                    // 1. 获取dump文件路径
+                    File dumpFile = AssetsFileCopier.copyAssetToExternalFilesDir(this.context, this.fileName);
+                    if (!dumpFile.exists()) {
+                        Log.e(TAG, "Dump file not found: " + dumpFile.getAbsolutePath());
+                        return;
+                    }
 
-                // 3. 读取并发送文件
-                fis = new FileInputStream(dumpFile);
-                bis = new BufferedInputStream(fis);
-                byte[] buffer = new byte[4096 * 5];
-                int bytesRead;
+                    // 2. 连接到服务器
+                    socket = new Socket("127.0.0.1", this.port);
+                    outputStream = socket.getOutputStream();
+                    Log.i(TAG, "Connected to server");
 
-                while ((bytesRead = bis.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                    outputStream.flush();
-                }
+                    // 3. 读取并发送文件
+                    fis = new FileInputStream(dumpFile);
+                    bis = new BufferedInputStream(fis);
+                    long startNs = System.nanoTime();
+                    long bytes = copyStream(bis, outputStream);
 
-                Log.i(TAG, "File transfer completed");
-            } catch (IOException e) {
-                Log.e(TAG, "Client error: " + e.getMessage());
-            } finally {
-                // 4. 关闭资源
-                try {
-                    if (bis != null) {
-                        bis.close();
-                    }
-                    if (fis != null) {
-                        fis.close();
-                    }
-                    if (outputStream != null) {
-                        outputStream.close();
-                    }
-                    if (socket != null) {
-                        socket.close();
-                    }
+                    Log.i(TAG, "File transfer completed, " + formatThroughput(bytes, System.nanoTime() - startNs));
                 } catch (IOException e) {
-                    Log.e(TAG, "Error closing resources: " + e.getMessage());
+                    Log.e(TAG, "Client error: " + e.getMessage());
+                } finally {
+                    // 4. 关闭资源
+                    try {
+                        if (bis != null) {
+                            bis.close();
+                        }
+                        if (fis != null) {
+                            fis.close();
+                        }
+                        if (outputStream != null) {
+                            outputStream.close();
+                        }
+                        if (socket != null) {
+                            socket.close();
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "Error closing resources: " + e.getMessage());
+                    }
                 }
-            }
-        });
+            });
+        }
 
         clientThread.start();
     }
 
+    // zeroCopy 模式的发送线程。SocketChannel 在线程被中断时关闭，stop() 可以立即结束发送
+    private void sendFileZeroCopy() {
+        File dumpFile = AssetsFileCopier.copyAssetToExternalFilesDir(this.context, this.fileName);
+        if (!dumpFile.exists()) {
+            Log.e(TAG, "Dump file not found: " + dumpFile.getAbsolutePath());
+            return;
+        }
+
+        try (SocketChannel socketChannel = SocketChannel.open(new InetSocketAddress("127.0.0.1", this.port));
+                FileInputStream fis = new FileInputStream(dumpFile);
+                FileChannel fileChannel = fis.getChannel()) {
+            Log.i(TAG, "Connected to server (zero copy)");
+            long startNs = System.nanoTime();
+            long bytes = transferFile(fileChannel, socketChannel);
+            Log.i(TAG, "File transfer completed, " + formatThroughput(bytes, System.nanoTime() - startNs));
+        } catch (IOException e) {
+            Log.e(TAG, "Client error: " + e.getMessage());
+        }
+    }
+
+    // 回放模式的发送线程，每帧到时间就发出去
+    private void sendFramesPaced() {
+        File dumpFile = AssetsFileCopier.copyAssetToExternalFilesDir(this.context, this.fileName);
+        if (!dumpFile.exists()) {
+            Log.e(TAG, "Dump file not found: " + dumpFile.getAbsolutePath());
+            return;
+        }
+
+        try (FrameSink sink = adaptive ? new AdaptiveFrameSink(transport.connect()) : transport.connect();
+                FileInputStream fis = new FileInputStream(dumpFile);
+                FileChannel fileChannel = fis.getChannel()) {
+            Log.i(TAG, "Connected to server (paced replay), transport=" + transport.getClass().getSimpleName()
+                    + " adaptive=" + adaptive);
+            replayer.replay(fileChannel, sink);
+            Log.i(TAG, "Replay finished, " + replayer + (adaptive ? " " + sink : ""));
+        } catch (IOException e) {
+            Log.e(TAG, "Client error: " + e.getMessage() + " " + replayer);
+        }
+    }
+
+    // 原来的发送方式：20KB 缓冲区循环读写，每块都 flush。返回发送的字节数
+    static long copyStream(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[4096 * 5];
+        long total = 0;
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+            outputStream.flush();
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    // 从文件当前位置发送到结尾。transferTo 每次可能只发送一部分（socket 发送缓冲区满、单次上限），循环直到发完。
+    // 返回发送的字节数
+    static long transferFile(FileChannel fileChannel, WritableByteChannel target) throws IOException {
+        long position = fileChannel.position();
+        long size = fileChannel.size();
+        long start = position;
+        while (position < size) {
+            position += fileChannel.transferTo(position, size - position, target);
+        }
+        fileChannel.position(position);
+        return position - start;
+    }
+
+    static String formatThroughput(long bytes, long elapsedNs) {
+        double seconds = Math.max(elapsedNs, 1) / 1e9;
+        return bytes + " bytes in " + String.format(Locale.US, "%.1f", seconds * 1000) + " ms ("
+                + String.format(Locale.US, "%.1f", bytes / seconds / (1024 * 1024)) + " MB/s)";
+    }
+
     public void stop() {
         if (clientThread != null && clientThread.isAlive()) {
             clientThread.interrupt();
@@ -0,0 +1,341 @@
+package com.handley.myapplication.tcp;
+
+
+import android.util.Log;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.common.MyFrameCallback;
+import com.handley.myapplication.common.Utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 基于 Selector 的服务端：少量固定的 I/O 线程（默认1个）用非阻塞 SocketChannel 同时接收多个连接，
+// 不需要每个连接一个线程。每个连接有自己的 MediaFrameReader 保存读到一半的帧和重新同步的状态，
+// 帧通过 MyFrameCallback.onFrameReceived(connectionId, frame) 交出，帧内的 header.streamId 可以进一步区分流。
+// 回调在 I/O 线程中执行，会阻塞同一线程上的所有连接，只应做入队等快速操作。
+public class MyNioServer {
+    private static final String TAG = Utils.TAG + "MyNioServer";
+    static final int MAX_FRAMES_PER_ROUND = 32; // 每个连接每轮最多交出的帧数，避免一个连接占住线程
+    private static final long ACCEPT_RETRY_MS = 100; // accept 失败后暂停接收新连接的时间
+
+    private final MyFrameCallback myFrameCallback;
+    private final int port;
+    private final FrameBufferPool bufferPool;
+    private final IoThread[] ioThreads;
+    private final AtomicInteger nextConnectionId = new AtomicInteger(1);
+    private ServerSocketChannel serverChannel;
+    private int acceptCount;
+    private boolean acceptPaused; // accept 失败后暂停了 OP_ACCEPT，只在第一个 I/O 线程中访问
+    private long acceptRetryAtNs; // 恢复 OP_ACCEPT 的时刻
+    private volatile boolean isRunning = false;
+
+    public MyNioServer(MyFrameCallback callback, int port) {
+        this(callback, port, 1, new FrameBufferPool());
+    }
+
+    public MyNioServer(MyFrameCallback callback, int port, int ioThreadCount, FrameBufferPool bufferPool) {
+        if (ioThreadCount <= 0) {
+            throw new IllegalArgumentException("Invalid I/O thread count " + ioThreadCount);
+        }
+        this.myFrameCallback = callback;
+        this.port = port;
+        this.bufferPool = bufferPool;
+        this.ioThreads = new IoThread[ioThreadCount];
+    }
+
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    // 当前连接数
+    public int getConnectionCount() {
+        int count = 0;
+        for (IoThread ioThread : ioThreads) {
+            if (ioThread != null) {
+                count += ioThread.connectionCount;
+            }
+        }
+        return count;
+    }
+
+    public synchronized void start() {
+        if (isRunning) {
+            Log.w(TAG, "Server already running");
+            return;
+        }
+
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            for (int i = 0; i < ioThreads.length; i++) {
+                ioThreads[i] = new IoThread("NioServerIo-" + i, Selector.open());
+            }
+            // 第一个 I/O 线程同时负责 accept，新连接按轮询分给各个线程
+            serverChannel.register(ioThreads[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            Log.e(TAG, "Server error: " + e.getMessage());
+            closeServerChannel();
+            return;
+        }
+
+        isRunning = true;
+        for (IoThread ioThread : ioThreads) {
+            ioThread.start();
+        }
+        Log.i(TAG, "Server started on port " + port + " ioThreads=" + ioThreads.length);
+    }
+
+    public synchronized void stop() {
+        isRunning = false;
+
+        closeServerChannel();
+
+        for (IoThread ioThread : ioThreads) {
+            if (ioThread == null) {
+                continue;
+            }
+            ioThread.selector.wakeup();
+            try {
+                ioThread.join(500);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while stopping I/O thread");
+            }
+        }
+    }
+
+    private void closeServerChannel() {
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+                Log.i(TAG, "closeServerChannel()");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing server channel: " + e.getMessage());
+        }
+    }
+
+    // 只在第一个 I/O 线程中调用。accept 失败（如文件描述符耗尽）时待接收的连接还在，OP_ACCEPT 一直就绪，
+    // 所以先取消 OP_ACCEPT，ACCEPT_RETRY_MS 之后由 resumeAccept() 恢复，避免 select 空转
+    private void accept(SelectionKey key) {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (isRunning) {
+                    Log.e(TAG, "Accept error, retry in " + ACCEPT_RETRY_MS + "ms: " + e.getMessage());
+                }
+                key.interestOps(0);
+                acceptPaused = true;
+                acceptRetryAtNs = System.nanoTime() + ACCEPT_RETRY_MS * 1_000_000;
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+            } catch (IOException e) {
+                Log.e(TAG, "Configure channel error: " + e.getMessage());
+                closeQuietly(channel);
+                continue;
+            }
+            IoThread target = ioThreads[acceptCount++ % ioThreads.length];
+            target.pendingChannels.add(channel);
+            target.selector.wakeup();
+        }
+    }
+
+    // 每个连接的状态
+    private static final class Connection {
+        final int id;
+        final SocketChannel channel;
+        final MediaFrameReader frameReader;
+        int resyncCount;
+        boolean backlogged; // 读缓冲区中还有没交出的帧，不等 OP_READ 继续处理
+
+        Connection(int id, SocketChannel channel, MediaFrameReader frameReader) {
+            this.id = id;
+            this.channel = channel;
+            this.frameReader = frameReader;
+        }
+    }
+
+    private final class IoThread extends Thread {
+        final Selector selector;
+        final ConcurrentLinkedQueue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        final ArrayDeque<Connection> backlog = new ArrayDeque<>();
+        volatile int connectionCount;
+
+        IoThread(String name, Selector selector) {
+            super(name);
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning) {
+                    // 有积压的连接时不阻塞等待，accept 暂停时最多等到恢复的时刻
+                    if (!backlog.isEmpty()) {
+                        selector.selectNow();
+                    } else if (acceptPaused && this == ioThreads[0]) {
+                        selector.select(Math.max((acceptRetryAtNs - System.nanoTime()) / 1_000_000, 1));
+                    } else {
+                        selector.select();
+                    }
+                    registerPendingChannels();
+                    if (this == ioThreads[0]) {
+                        resumeAccept();
+                    }
+
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept(key);
+                        } else if (key.isReadable()) {
+                            Connection connection = (Connection) key.attachment();
+                            if (!connection.backlogged) {
+                                readConnection(key, connection);
+                            }
+                        }
+                    }
+
+                    for (int i = backlog.size(); i > 0; i--) {
+                        Connection connection = backlog.poll();
+                        connection.backlogged = false;
+                        SelectionKey key = connection.channel.keyFor(selector);
+                        if (key != null && key.isValid()) {
+                            readConnection(key, connection);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // 只有 Selector 本身出错才会到这里，连接和 accept 的错误在各自的处理中关闭对应的连接
+                if (isRunning) {
+                    Log.e(TAG, "I/O thread error: " + e);
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        // accept 暂停的时间到了，重新关注 OP_ACCEPT
+        private void resumeAccept() {
+            if (!acceptPaused || System.nanoTime() - acceptRetryAtNs < 0) {
+                return;
+            }
+            acceptPaused = false;
+            SelectionKey key = serverChannel.keyFor(selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(SelectionKey.OP_ACCEPT);
+            }
+        }
+
+        private void registerPendingChannels() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                Connection connection = new Connection(nextConnectionId.getAndIncrement(), channel,
+                        new MediaFrameReader(channel, bufferPool));
+                try {
+                    channel.register(selector, SelectionKey.OP_READ, connection);
+                    connectionCount++;
+                    Log.i(TAG, "Client connected: id=" + connection.id + " " + channel.getRemoteAddress());
+                } catch (IOException e) {
+                    Log.e(TAG, "Register error: " + e.getMessage());
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        // 交出读缓冲区和 socket 中已有的完整帧，最多 MAX_FRAMES_PER_ROUND 个
+        private void readConnection(SelectionKey key, Connection connection) {
+            MediaFrameReader frameReader = connection.frameReader;
+            try {
+                for (int i = 0; i < MAX_FRAMES_PER_ROUND; i++) {
+                    MyFrame frame = frameReader.readFrame();
+                    if (frame == null) {
+                        if (frameReader.isEndOfStream()) {
+                            Log.i(TAG, "End of stream reached, id=" + connection.id + " skipped="
+                                    + frameReader.getSkippedBytes() + " crcErrors=" + frameReader.getCrcErrors()
+                                    + " lostFrames=" + frameReader.getLostFrames() + " frames="
+                                    + frameReader.getFrameCount() + " reads=" + frameReader.getReadCount());
+                            closeConnection(key, connection);
+                        }
+                        return;
+                    }
+                    if (frameReader.getResyncCount() != connection.resyncCount) {
+                        connection.resyncCount = frameReader.getResyncCount();
+                        Log.w(TAG, "Resynchronized after invalid header, id=" + connection.id + " skipped "
+                                + frameReader.getLastSkipped() + " bytes, total=" + frameReader.getSkippedBytes());
+                    }
+
+                    // 帧的所有权交给回调
+                    if (myFrameCallback != null) {
+                        myFrameCallback.onFrameReceived(connection.id, frame);
+                    } else {
+                        frame.release();
+                    }
+                }
+                // 达到上限，剩下的数据可能已经全部在读缓冲区中，不会再触发 OP_READ
+                connection.backlogged = true;
+                backlog.add(connection);
+            } catch (IOException | RuntimeException e) {
+                // 只关闭出错的连接（读取失败或回调抛出异常），同一线程上的其他连接不受影响
+                Log.e(TAG, "Client connection error: id=" + connection.id + " " + e);
+                closeConnection(key, connection);
+            }
+        }
+
+        private void closeConnection(SelectionKey key, Connection connection) {
+            key.cancel();
+            closeQuietly(connection.channel);
+            connection.frameReader.releasePendingFrame();
+            connectionCount--;
+            if (myFrameCallback != null) {
+                myFrameCallback.onConnectionClosed(connection.id);
+            }
+        }
+
+        private void closeAll() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    closeConnection(key, (Connection) key.attachment());
+                }
+            }
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                closeQuietly(channel);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing channel: " + e.getMessage());
+        }
+    }
+}
@@ -3,28 +3,47 @@ package com.handley.myapplication.tcp;
 
 import android.util.Log;
 
+import com.handley.myapplication.common.FrameBufferPool;
 import com.handley.myapplication.common.MediaMessageHeader;
 import com.handley.myapplication.common.MyFrame;
 import com.handley.myapplication.common.MyFrameCallback;
 import com.handley.myapplication.common.Utils;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
 
 public class MyServer {
     private static final String TAG = Utils.TAG + "MyServer";
+    private static final long REPORT_INTERVAL_MS = 100; // 接收窗口报告的间隔
+    private static final long ACCEPT_RETRY_MS = 100;
     private final MyFrameCallback myFrameCallback;
-    private final int port;
-    private ServerSocket serverSocket;
+    private final FrameTransport transport; // 默认本机TCP，同进程内可以用 LoopbackTransport
     private Thread serverThread;
     private volatile boolean isRunning = false;
+    private int nextConnectionId = 1;
+    private volatile ReceiveWindow receiveWindow; // 为空时不发送报告
+    private final FrameBufferPool reportPool = new FrameBufferPool(WindowReport.SIZE);
 
     public MyServer(MyFrameCallback callback, int port) {
+        this(callback, new TcpTransport(port));
+    }
+
+    // maxFrameSize 等参数通过 bufferPool 配置，帧数据从池中借用，回调处理完帧后调用 MyFrame.release()
+    public MyServer(MyFrameCallback callback, int port, FrameBufferPool bufferPool) {
+        this(callback, new TcpTransport(port, bufferPool));
+    }
+
+    public MyServer(MyFrameCallback callback, FrameTransport transport) {
         this.myFrameCallback = callback;
-        this.port = port;
+        this.transport = transport;
+    }
+
+    // 设置接收队列后，请求了报告的发送端（AdaptiveFrameSink）会定期收到队列水位，拥塞时在发送端丢帧
+    public void setReceiveWindow(ReceiveWindow receiveWindow) {
+        this.receiveWindow = receiveWindow;
+    }
+
+    public FrameTransport getTransport() {
+        return transport;
     }
 
     public void start() {
@@ -36,74 +55,113 @@ public class MyServer {
         isRunning = true;
         serverThread = new Thread(() -> {
             try {
-                serverSocket = new ServerSocket(this.port);
-                Log.i(TAG, "Server started on port " + this.port);
+                transport.bind();
+                Log.i(TAG, "Server started, transport=" + transport.getClass().getSimpleName());
 
                 while (isRunning) {
-                    try (Socket clientSocket = serverSocket.accept();
-                            InputStream inputStream = clientSocket.getInputStream();
-                            BufferedInputStream bis = new BufferedInputStream(inputStream)) {
-
-                        Log.i(TAG, "Client connected: " + clientSocket.getInetAddress());
-                        processClientData(bis);
+                    // accept 失败（如文件描述符暂时耗尽）和单个连接出错一样只记录日志，传输关闭后才退出
+                    try (FrameSource source = transport.accept()) {
+                        processClientData(nextConnectionId++, source);
                     } catch (IOException e) {
-                        if (isRunning) {
-                            Log.e(TAG, "Client connection error: " + e.getMessage());
+                        if (!isRunning || transport.isClosed()) {
+                            break;
+                        }
+                        Log.e(TAG, "Client connection error: " + e.getMessage());
+                        try {
+                            Thread.sleep(ACCEPT_RETRY_MS); // 避免 accept 一直失败时空转
+                        } catch (InterruptedException interrupted) {
+                            break;
                         }
                     }
                 }
             } catch (IOException e) {
-                Log.e(TAG, "Server error: " + e.getMessage());
+                if (isRunning) {
+                    Log.e(TAG, "Server error: " + e.getMessage());
+                }
             } finally {
-                closeServerSocket();
+                transport.close();
             }
         });
 
         serverThread.start();
     }
 
-    private void processClientData(BufferedInputStream bis) throws IOException {
-        byte[] headerBuffer = new byte[MediaMessageHeader.SIZE];
-        int bytesRead;
+    // 同一时间只处理一个连接，需要同时接收多路时使用 MyNioServer
+    private void processClientData(int connectionId, FrameSource source) throws IOException {
+        Thread reportThread = null;
+        try {
+            while (isRunning) {
+                // 1. 读取帧头和帧数据
+                MyFrame frame = source.readFrame();
+                if (frame == null) {
+                    Log.i(TAG, "End of stream reached, connectionId=" + connectionId);
+                    break;
+                }
 
-        while (isRunning) {
-            // 1. 读取帧头
-            bytesRead = bis.read(headerBuffer, 0, MediaMessageHeader.SIZE);
-            if (bytesRead != MediaMessageHeader.SIZE) {
-                if (bytesRead == -1) {
-                    Log.i(TAG, "End of stream reached");
-                } else {
-                    Log.w(TAG, "Incomplete header: " + bytesRead + " bytes");
+                // 发送端请求接收报告，不交给回调
+                if (frame.header.type == MediaMessageHeader.FEEDBACK) {
+                    frame.release();
+                    if (reportThread == null && receiveWindow != null) {
+                        FrameSink feedback = source.feedback();
+                        Log.i(TAG, "Receive window reports " + (feedback != null ? "enabled" : "unsupported")
+                                + ", connectionId=" + connectionId);
+                        if (feedback != null) {
+                            reportThread = startReportThread(connectionId, feedback);
+                        }
+                    }
+                    continue;
                 }
-                break;
-            }
 
-            // 2. 解析帧头
-            MediaMessageHeader header = MediaMessageHeader.parse(headerBuffer);
-            if (header.magic != MediaMessageHeader.MAGIC) {
-                Log.e(TAG, "Invalid magic number: 0x" + Integer.toHexString(header.magic));
-                break;
+                // 2. 回调帧数据，帧的所有权交给回调
+                if (myFrameCallback != null) {
+                    myFrameCallback.onFrameReceived(connectionId, frame);
+                } else {
+                    frame.release();
+                }
             }
-
-            // 3. 读取帧数据
-            byte[] frameData = new byte[header.dataLen];
-            bytesRead = bis.read(frameData, 0, header.dataLen);
-            if (bytesRead != header.dataLen) {
-                Log.e(TAG, "Incomplete frame data: expected " + header.dataLen + ", got " + bytesRead);
-                break;
+        } finally {
+            if (reportThread != null) {
+                reportThread.interrupt();
+                try {
+                    reportThread.join(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
-
-            // 4. 回调帧数据
             if (myFrameCallback != null) {
-                myFrameCallback.onFrameReceived(new MyFrame(header, frameData));
+                myFrameCallback.onConnectionClosed(connectionId);
             }
         }
     }
 
+    // 按固定间隔把接收队列的水位报告给发送端，不依赖帧的到达：回调阻塞在入队（队列已满）时，
+    // 发送端也能持续收到高水位报告，不会因为报告过期而按不拥塞处理
+    private Thread startReportThread(int connectionId, FrameSink feedback) {
+        Thread thread = new Thread(() -> {
+            WindowReport report = new WindowReport();
+            try {
+                while (isRunning) {
+                    ReceiveWindow window = receiveWindow;
+                    if (window != null) {
+                        feedback.send(window.snapshot(report).toFrame(reportPool));
+                    }
+                    Thread.sleep(REPORT_INTERVAL_MS);
+                }
+            } catch (InterruptedException e) {
+                // 连接结束
+            } catch (IOException e) {
+                // 报告发不出去不影响接收
+                Log.w(TAG, "Disable receive window reports: " + e.getMessage() + ", connectionId=" + connectionId);
+            }
+        }, "WindowReport-" + connectionId);
+        thread.start();
+        return thread;
+    }
+
     public void stop() {
         isRunning = false;
 
-        closeServerSocket();
+        transport.close();
 
         if (serverThread != null && serverThread.isAlive()) {
             serverThread.interrupt();
@@ -114,15 +172,4 @@ public class MyServer {
             }
         }
     }
-
-    private void closeServerSocket() {
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-                Log.i(TAG, "closeServerSocket()");
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error closing server socket: " + e.getMessage());
-        }
-    }
-}
\ No newline at end of file
+}
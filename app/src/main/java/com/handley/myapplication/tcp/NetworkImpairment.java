@@ -0,0 +1,82 @@
+package com.handley.myapplication.tcp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// 丢包/抖动模拟：发送端的每个 UDP 包按 lossRate 随机丢弃，其余的延迟 0~maxJitterMs 后再发出（延迟不同的包会乱序）。
+// 用于在本机回环上测试 UdpTransport 的重排序和重传，seed 固定时丢包序列可以复现。
+public class NetworkImpairment {
+
+    private final double lossRate;
+    private final long maxJitterUs;
+    private final Random random;
+    private final ScheduledExecutorService scheduler;
+    private volatile long sent;
+    private volatile long dropped;
+
+    public NetworkImpairment(double lossRate, int maxJitterMs, long seed) {
+        if (lossRate < 0 || lossRate >= 1) {
+            throw new IllegalArgumentException("Invalid loss rate " + lossRate);
+        }
+        this.lossRate = lossRate;
+        this.maxJitterUs = TimeUnit.MILLISECONDS.toMicros(maxJitterMs);
+        this.random = new Random(seed);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "NetworkImpairment");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 代替 socket.send(packet)，packet 在返回后可以复用
+    public void send(DatagramSocket socket, DatagramPacket packet) throws IOException {
+        long delayUs;
+        synchronized (this) {
+            if (random.nextDouble() < lossRate) {
+                dropped++;
+                return;
+            }
+            delayUs = maxJitterUs > 0 ? (long) (random.nextDouble() * maxJitterUs) : 0;
+            sent++;
+        }
+        if (delayUs == 0) {
+            socket.send(packet);
+            return;
+        }
+        byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+        DatagramPacket copy = packet.getAddress() != null
+                ? new DatagramPacket(data, data.length, packet.getSocketAddress())
+                : new DatagramPacket(data, data.length);
+        scheduler.schedule(() -> {
+            try {
+                socket.send(copy);
+            } catch (IOException e) {
+                // 发送端已关闭或接收端不在（ICMP 端口不可达），和真实网络一样丢弃
+            }
+        }, delayUs, TimeUnit.MICROSECONDS);
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkImpairment{lossRate=" + lossRate + " maxJitterUs=" + maxJitterUs + " sent=" + sent
+                + " dropped=" + dropped + "}";
+    }
+}
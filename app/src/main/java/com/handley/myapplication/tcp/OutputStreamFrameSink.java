@@ -0,0 +1,39 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// 把帧序列化（帧头 + 帧数据）写到字节流，每帧 flush 一次
+public class OutputStreamFrameSink implements FrameSink {
+
+    private final OutputStream outputStream;
+    private final byte[] headerBytes = new byte[MediaMessageHeader.SIZE_V2];
+    private final ByteBuffer headerBuffer = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+    public OutputStreamFrameSink(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void send(MyFrame frame) throws IOException {
+        try {
+            headerBuffer.clear();
+            frame.header.writeTo(headerBuffer);
+            outputStream.write(headerBytes, 0, frame.header.size());
+            outputStream.write(frame.frameData, 0, frame.header.dataLen);
+            outputStream.flush();
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
@@ -0,0 +1,30 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.MyFrame;
+
+import java.util.concurrent.BlockingQueue;
+
+// 接收端帧队列的当前水位，MyServer 定期把它作为 WindowReport 发回给发送端。
+// 直接读取解码线程的帧队列，不需要在入队/出队时额外记账
+public class ReceiveWindow {
+
+    private final BlockingQueue<MyFrame> queue;
+
+    public ReceiveWindow(BlockingQueue<MyFrame> queue) {
+        this.queue = queue;
+    }
+
+    // 字节数遍历队列求和（队列只有几十帧，按报告间隔调用），与解码线程并发时是近似值
+    public WindowReport snapshot(WindowReport out) {
+        int frames = 0;
+        long bytes = 0;
+        for (MyFrame frame : queue) {
+            frames++;
+            bytes += frame.header.dataLen;
+        }
+        out.queuedFrames = frames;
+        out.capacityFrames = frames + queue.remainingCapacity();
+        out.queuedBytes = (int) Math.min(bytes, Integer.MAX_VALUE);
+        return out;
+    }
+}
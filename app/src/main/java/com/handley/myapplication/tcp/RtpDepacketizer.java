@@ -0,0 +1,120 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+
+import java.util.Arrays;
+
+// RtpPacketizer 的逆过程：按序号顺序输入包，收到 marker 包时拼出完整的帧。
+// H.264 的单NAL包和 FU-A 分片还原为带4字节起始码的 Annex-B 数据，其他类型直接拼接载荷。
+// 中间有包丢失时调用 reset()，丢弃拼了一半的帧，之后的包直到下一个帧起始包都丢弃。
+final class RtpDepacketizer {
+
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+
+    private final FrameBufferPool pool;
+    private final MediaMessageHeader header = new MediaMessageHeader();
+    private byte[] buffer = new byte[64 * 1024];
+    private int length;
+    private boolean assembling;
+    private boolean nalUnits;
+    private long framesDropped;
+
+    RtpDepacketizer(FrameBufferPool pool) {
+        this.pool = pool;
+    }
+
+    // 输入一个合法的 RTP 包（RtpPacket.isValid），一帧的最后一个包返回帧，否则返回null。FU-A 包的内容会被修改
+    MyFrame push(byte[] packet, int packetLength) {
+        int info = RtpPacket.info(packet);
+        if ((info & RtpPacket.INFO_FRAME_START) != 0) {
+            if (assembling) {
+                framesDropped++; // 上一帧的 marker 包丢了
+            }
+            startFrame(packet, info);
+        } else if (!assembling) {
+            return null;
+        }
+
+        int payload = RtpPacket.OVERHEAD;
+        if (nalUnits && packetLength > payload) {
+            int nalType = packet[payload] & 0x1F;
+            if (nalType == RtpPacketizer.FU_A && packetLength > payload + 1) {
+                int fuHeader = packet[payload + 1] & 0xFF;
+                if ((fuHeader & 0x80) != 0) { // 第一个分片，还原NAL头
+                    append(START_CODE, 0, START_CODE.length);
+                    packet[payload + 1] = (byte) ((packet[payload] & 0xE0) | (fuHeader & 0x1F));
+                    append(packet, payload + 1, packetLength - payload - 1);
+                } else {
+                    append(packet, payload + 2, packetLength - payload - 2);
+                }
+            } else {
+                append(START_CODE, 0, START_CODE.length);
+                append(packet, payload, packetLength - payload);
+            }
+        } else {
+            append(packet, payload, packetLength - payload);
+        }
+        if (assembling && RtpPacket.marker(packet)) {
+            return finishFrame();
+        }
+        return null;
+    }
+
+    // 有包丢失，当前帧不完整
+    void reset() {
+        if (assembling) {
+            framesDropped++;
+            assembling = false;
+        }
+    }
+
+    long getFramesDropped() {
+        return framesDropped;
+    }
+
+    private void startFrame(byte[] packet, int info) {
+        int ext = RtpPacket.EXTENSION_DATA;
+        header.magic = (info & 0x03) == 2 ? MediaMessageHeader.MAGIC_V2 : MediaMessageHeader.MAGIC;
+        header.type = (byte) (RtpPacket.payloadType(packet) - RtpPacket.PAYLOAD_TYPE_BASE);
+        header.timestamp = RtpPacket.readLong(packet, ext);
+        header.rotation = RtpPacket.readInt(packet, ext + 8);
+        header.sequence = RtpPacket.readInt(packet, ext + 12);
+        header.streamId = RtpPacket.readShort(packet, ext + 16);
+        header.flags = packet[ext + 18] & 0xFF;
+        header.crc32c = 0;
+        nalUnits = (info & RtpPacket.INFO_NAL_UNITS) != 0;
+        length = 0;
+        assembling = true;
+    }
+
+    private void append(byte[] src, int offset, int count) {
+        if (!assembling) {
+            return;
+        }
+        if (length + count > buffer.length) {
+            if (length + count > pool.getMaxFrameSize()) {
+                reset(); // 超过最大帧大小
+                return;
+            }
+            buffer = Arrays.copyOf(buffer, Math.min(Math.max(buffer.length * 2, length + count),
+                    pool.getMaxFrameSize()));
+        }
+        System.arraycopy(src, offset, buffer, length, count);
+        length += count;
+    }
+
+    private MyFrame finishFrame() {
+        assembling = false;
+        MyFrame frame = pool.obtain(length);
+        frame.header.copyFrom(header);
+        frame.header.dataLen = length;
+        System.arraycopy(buffer, 0, frame.frameData, 0, length);
+        // H.264 的起始码可能被统一成4字节，CRC 按还原后的数据重新计算
+        if ((header.flags & MediaMessageHeader.FLAG_HAS_CRC) != 0) {
+            frame.header.setCrc32c(frame.frameData, 0, length);
+        }
+        return frame;
+    }
+}
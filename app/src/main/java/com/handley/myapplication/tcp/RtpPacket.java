@@ -0,0 +1,163 @@
+package com.handley.myapplication.tcp;
+
+import java.nio.ByteBuffer;
+
+// UDP 传输用到的包格式，字段都是网络字节序（大端）：
+// RTP（RFC 3550）固定头12字节 + 头扩展（profile 0xC96C，6个字）携带 MediaMessageHeader 中 RTP 头放不下的字段：
+//   timestamp(8) rotation(4) sequence(4) streamId(2) flags(1) info(1，bit7为帧的第一个包，bit6为按NAL打包，低2位为帧头版本)
+//   firstSequence(2，这条流第一个包的 RTP 序号，接收端据此请求重传开头丢失的包) reserved(2)
+// 载荷类型 = 96 + MediaMessageHeader.type。RTCP 和 RTP 复用同一个端口（RFC 5761），按第二个字节区分：
+//   NACK 为 RFC 4585 的 Generic NACK（PT=205，FMT=1），BYE（PT=203）后面多带4字节：发送端下一个序号，接收端据此判断流是否收全。
+final class RtpPacket {
+
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 12;
+    static final int EXTENSION_PROFILE = 0xC96C;
+    static final int EXTENSION_WORDS = 6;
+    static final int EXTENSION_SIZE = 4 + EXTENSION_WORDS * 4;
+    static final int OVERHEAD = HEADER_SIZE + EXTENSION_SIZE;
+    static final int PAYLOAD_TYPE_BASE = 96;
+    static final int INFO_FRAME_START = 0x80;
+    static final int INFO_NAL_UNITS = 0x40; // 载荷为 RFC 6184 的单NAL包或 FU-A 分片
+    static final int EXTENSION_DATA = HEADER_SIZE + 4;
+    private static final int INFO_OFFSET = EXTENSION_DATA + 19;
+    private static final int FIRST_SEQUENCE_OFFSET = EXTENSION_DATA + 20;
+
+    static final int RTCP_BYE = 203;
+    static final int RTCP_RTPFB = 205;
+    static final int RTCP_FMT_NACK = 1;
+    static final int BYE_SIZE = 12;
+    static final int MAX_NACK_ENTRIES = 64;
+
+    private RtpPacket() {
+    }
+
+    static boolean isRtcp(byte[] packet, int length) {
+        if (length < 8) {
+            return false;
+        }
+        int type = packet[1] & 0xFF;
+        return type >= 200 && type <= 206;
+    }
+
+    // 版本、头扩展和长度都合法的 RTP 包
+    static boolean isValid(byte[] packet, int length) {
+        return length >= OVERHEAD && (packet[0] & 0xFF) >> 6 == VERSION && (packet[0] & 0x10) != 0
+                && (packet[0] & 0x0F) == 0 && readShort(packet, HEADER_SIZE) == EXTENSION_PROFILE
+                && readShort(packet, HEADER_SIZE + 2) == EXTENSION_WORDS;
+    }
+
+    static int sequence(byte[] packet) {
+        return readShort(packet, 2);
+    }
+
+    static boolean marker(byte[] packet) {
+        return (packet[1] & 0x80) != 0;
+    }
+
+    static int info(byte[] packet) {
+        return packet[INFO_OFFSET] & 0xFF;
+    }
+
+    static int firstSequence(byte[] packet) {
+        return readShort(packet, FIRST_SEQUENCE_OFFSET);
+    }
+
+    static int payloadType(byte[] packet) {
+        return packet[1] & 0x7F;
+    }
+
+    static int ssrc(byte[] packet) {
+        return readInt(packet, 8);
+    }
+
+    static int rtcpType(byte[] packet) {
+        return packet[1] & 0xFF;
+    }
+
+    static int rtcpFormat(byte[] packet) {
+        return packet[0] & 0x1F;
+    }
+
+    // RTCP 包中发送该包的一方的 SSRC
+    static int rtcpSenderSsrc(byte[] packet) {
+        return readInt(packet, 4);
+    }
+
+    // NACK 中被请求重传的媒体流 SSRC
+    static int nackMediaSsrc(byte[] packet) {
+        return readInt(packet, 8);
+    }
+
+    static void writeBye(ByteBuffer dst, int ssrc, int nextSequence) {
+        dst.put((byte) (VERSION << 6 | 1));
+        dst.put((byte) RTCP_BYE);
+        dst.putShort((short) (BYE_SIZE / 4 - 1));
+        dst.putInt(ssrc);
+        dst.putInt(nextSequence & 0xFFFF);
+    }
+
+    // BYE 中的发送端下一个序号，没有时返回-1
+    static int byeNextSequence(byte[] packet, int length) {
+        return length >= BYE_SIZE ? readInt(packet, 8) & 0xFFFF : -1;
+    }
+
+    // 把 sequences[0, count) 编码为 Generic NACK，每项 PID + 后面16个序号的位图 BLP
+    static void writeNack(ByteBuffer dst, int senderSsrc, int mediaSsrc, int[] sequences, int count) {
+        int start = dst.position();
+        dst.put((byte) (VERSION << 6 | RTCP_FMT_NACK));
+        dst.put((byte) RTCP_RTPFB);
+        dst.putShort((short) 0); // 长度最后填
+        dst.putInt(senderSsrc);
+        dst.putInt(mediaSsrc);
+        int i = 0;
+        while (i < count) {
+            int pid = sequences[i++];
+            int blp = 0;
+            while (i < count) {
+                int offset = (sequences[i] - pid - 1) & 0xFFFF;
+                if (offset >= 16) {
+                    break;
+                }
+                blp |= 1 << offset;
+                i++;
+            }
+            dst.putShort((short) pid);
+            dst.putShort((short) blp);
+        }
+        dst.putShort(start + 2, (short) ((dst.position() - start) / 4 - 1));
+    }
+
+    // 解析 Generic NACK，请求的序号写入 out，返回个数
+    static int readNack(byte[] packet, int length, int[] out) {
+        int words = readShort(packet, 2) + 1;
+        int end = Math.min(length, words * 4);
+        int count = 0;
+        for (int pos = 12; pos + 4 <= end; pos += 4) {
+            int pid = readShort(packet, pos);
+            int blp = readShort(packet, pos + 2);
+            if (count < out.length) {
+                out[count++] = pid;
+            }
+            for (int bit = 0; bit < 16 && count < out.length; bit++) {
+                if ((blp & (1 << bit)) != 0) {
+                    out[count++] = (pid + bit + 1) & 0xFFFF;
+                }
+            }
+        }
+        return count;
+    }
+
+    static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+                | (data[offset + 3] & 0xFF);
+    }
+
+    static long readLong(byte[] data, int offset) {
+        return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,147 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.video.StartCodeScanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// 把一帧拆成 RTP 包。H.264 Annex-B 帧按 RFC 6184 打包：不超过 maxPayload 的 NAL 单独一个包，
+// 更大的 NAL 拆成 FU-A 分片；Opus 等音频帧一个包；其他类型（H.265、VP8、AVCC）按 maxPayload 直接切分。
+// 每帧最后一个包设置 marker，第一个包在头扩展中标记帧起始，接收端丢包后据此重新对齐到下一帧。
+final class RtpPacketizer {
+
+    static final int DEFAULT_MAX_PAYLOAD = 1200; // 加上 RTP/UDP/IP 头不超过常见的 1500 MTU
+    static final int FU_A = 28;
+    private static final int FU_START = 0x80;
+    private static final int FU_END = 0x40;
+
+    interface PacketConsumer {
+        // packet 从 position 到 limit 为一个完整的包，只在回调期间有效
+        void onPacket(ByteBuffer packet) throws IOException;
+    }
+
+    private final int ssrc;
+    private final int maxPayload;
+    private final ByteBuffer packet;
+    private int[] nalStarts = new int[16];
+    private int[] nalEnds = new int[16];
+    private final int firstSequence;
+    private int sequence;
+    private boolean frameStart;
+    private boolean nalUnits;
+
+    RtpPacketizer(int ssrc, int maxPayload, int initialSequence) {
+        this.ssrc = ssrc;
+        this.maxPayload = maxPayload;
+        this.packet = ByteBuffer.allocate(RtpPacket.OVERHEAD + maxPayload);
+        this.sequence = initialSequence & 0xFFFF;
+        this.firstSequence = sequence;
+    }
+
+    // 下一个包的序号
+    int getSequence() {
+        return sequence;
+    }
+
+    // 返回这一帧的包数。帧的所有权不转移
+    int packetize(MyFrame frame, PacketConsumer out) throws IOException {
+        int first = sequence;
+        frameStart = true;
+        MediaMessageHeader header = frame.header;
+        if (header.type == MediaMessageHeader.H264 && packetizeAnnexB(frame, out)) {
+            return (sequence - first) & 0xFFFF;
+        }
+        nalUnits = false;
+        byte[] data = frame.frameData;
+        int length = header.dataLen;
+        int pos = 0;
+        do {
+            int size = Math.min(maxPayload, length - pos);
+            emit(header, pos + size == length, out, data, pos, size, -1, -1);
+            pos += size;
+        } while (pos < length);
+        return (sequence - first) & 0xFFFF;
+    }
+
+    // 帧中没有起始码时返回false，按普通数据切分
+    private boolean packetizeAnnexB(MyFrame frame, PacketConsumer out) throws IOException {
+        byte[] data = frame.frameData;
+        int length = frame.header.dataLen;
+        int count = 0;
+        int pos = StartCodeScanner.indexOf(data, 0, length);
+        while (pos >= 0) {
+            int start = pos + 3;
+            int next = StartCodeScanner.indexOf(data, start, length);
+            int end = next < 0 ? length : next;
+            while (end > start && data[end - 1] == 0) {
+                end--; // 下一个4字节起始码的前导0和 trailing_zero_8bits
+            }
+            if (end > start) {
+                if (count == nalStarts.length) {
+                    nalStarts = Arrays.copyOf(nalStarts, count * 2);
+                    nalEnds = Arrays.copyOf(nalEnds, count * 2);
+                }
+                nalStarts[count] = start;
+                nalEnds[count++] = end;
+            }
+            pos = next;
+        }
+        if (count == 0) {
+            return false;
+        }
+        nalUnits = true;
+        for (int i = 0; i < count; i++) {
+            boolean lastNal = i == count - 1;
+            int start = nalStarts[i];
+            int nalLength = nalEnds[i] - start;
+            if (nalLength <= maxPayload) {
+                emit(frame.header, lastNal, out, data, start, nalLength, -1, -1);
+                continue;
+            }
+            // FU indicator 保留 F/NRI，FU header 带原NAL类型，原NAL头不发送
+            int indicator = (data[start] & 0xE0) | FU_A;
+            int nalType = data[start] & 0x1F;
+            int fragmentSize = maxPayload - 2;
+            for (int p = start + 1; p < nalEnds[i]; p += fragmentSize) {
+                int size = Math.min(fragmentSize, nalEnds[i] - p);
+                boolean lastFragment = p + size == nalEnds[i];
+                int fuHeader = nalType | (p == start + 1 ? FU_START : 0) | (lastFragment ? FU_END : 0);
+                emit(frame.header, lastNal && lastFragment, out, data, p, size, indicator, fuHeader);
+            }
+        }
+        return true;
+    }
+
+    private void emit(MediaMessageHeader header, boolean marker, PacketConsumer out, byte[] data, int offset,
+                      int length, int fuIndicator, int fuHeader) throws IOException {
+        packet.clear();
+        packet.put((byte) (RtpPacket.VERSION << 6 | 0x10)); // X=1
+        packet.put((byte) ((marker ? 0x80 : 0) | (RtpPacket.PAYLOAD_TYPE_BASE + header.type)));
+        packet.putShort((short) sequence);
+        packet.putInt((int) header.timestamp);
+        packet.putInt(ssrc);
+        packet.putShort((short) RtpPacket.EXTENSION_PROFILE);
+        packet.putShort((short) RtpPacket.EXTENSION_WORDS);
+        packet.putLong(header.timestamp);
+        packet.putInt(header.rotation);
+        packet.putInt(header.sequence);
+        packet.putShort((short) header.streamId);
+        packet.put((byte) header.flags);
+        packet.put((byte) ((frameStart ? RtpPacket.INFO_FRAME_START : 0) | (nalUnits ? RtpPacket.INFO_NAL_UNITS : 0)
+                | (header.isV2() ? 2 : 1)));
+        packet.putShort((short) firstSequence);
+        packet.putShort((short) 0);
+        if (fuIndicator >= 0) {
+            packet.put((byte) fuIndicator);
+            packet.put((byte) fuHeader);
+        }
+        packet.put(data, offset, length);
+        packet.flip();
+        frameStart = false;
+        sequence = (sequence + 1) & 0xFFFF;
+        out.onPacket(packet);
+    }
+}
@@ -0,0 +1,408 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// 放在共享内存（mmap 的文件或 Android SharedMemory）中的单生产者单消费者字节环，两个进程各自映射同一块内存。
+// 记录格式和 TCP 流相同：MediaMessageHeader + 帧数据，记录可以跨过环的末尾回绕。
+// 控制区布局（小端序，游标各占一个缓存行）：
+//   0 magic  4 capacity  8 producerState  12 consumerState  16 producerPid  20 consumerPid
+//   64 tail(long)  128 head(long)  192 数据区
+// tail 只由生产者写、head 只由消费者写。跨进程不能 unpark 对方，等待时自旋、yield 后定时 park 轮询，不用 futex。
+// 游标和状态用 release 写、acquire 读：写完记录再发布 tail，看到 tail 后才读记录；head 同理。
+// 两个进程共享的只有这块内存，所以顺序保证必须落在内存访问本身（处理器屏障），不能靠本进程的 volatile 字段。
+// 两端连接时记录自己的 pid，等待中定期检查对端进程是否还在，对端没有 close() 就退出时不会永远等下去。
+public final class SharedMemoryRing {
+
+    public static final int HEADER_SIZE = 192;
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_CONNECTED = 1;
+    public static final int STATE_CLOSED = 2;
+
+    private static final int RING_MAGIC = 0x474E5253; // "SRNG"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int PRODUCER_STATE_OFFSET = 8;
+    private static final int CONSUMER_STATE_OFFSET = 12;
+    private static final int PRODUCER_PID_OFFSET = 16;
+    private static final int CONSUMER_PID_OFFSET = 20;
+    private static final int TAIL_OFFSET = 64;
+    private static final int HEAD_OFFSET = 128;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 10;
+    private static final long PARK_NS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int LIVENESS_CHECK_TRIES = 512; // park 阶段每隔这么多次（约100ms）检查一次对端进程
+    public static final int MY_PID = readPid();
+
+    private final ByteBuffer control;
+    private final ByteBuffer data; // 只用绝对位置和本端私有的 position，两端各有自己的 SharedMemoryRing 对象
+    private final int capacity;
+    private final int mask;
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(MediaMessageHeader.SIZE_V2)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final MediaMessageHeader header = new MediaMessageHeader();
+    private final ControlAccess access;
+
+    private SharedMemoryRing(ByteBuffer memory, int capacity) {
+        this.control = memory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.access = ControlAccess.forBuffer(control);
+        memory = memory.duplicate();
+        memory.position(HEADER_SIZE);
+        memory.limit(HEADER_SIZE + capacity);
+        this.data = memory.slice();
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    // 需要的共享内存大小，capacity 为数据区大小（2的幂）
+    public static int memorySize(int capacity) {
+        return HEADER_SIZE + capacity;
+    }
+
+    // 创建方初始化控制区。memory 至少 memorySize(capacity) 字节
+    public static SharedMemoryRing create(ByteBuffer memory, int capacity) {
+        if (capacity < MediaMessageHeader.SIZE_V2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        if (memory.capacity() < memorySize(capacity)) {
+            throw new IllegalArgumentException("Memory too small: " + memory.capacity());
+        }
+        SharedMemoryRing ring = new SharedMemoryRing(memory, capacity);
+        ring.control.putInt(CAPACITY_OFFSET, capacity);
+        ring.reset();
+        ring.access.setIntRelease(ring.control, MAGIC_OFFSET, RING_MAGIC); // 最后发布魔数，attach 看到魔数时控制区已初始化
+        return ring;
+    }
+
+    // 另一个进程映射同一块内存后附加，控制区不合法时抛出 IOException
+    public static SharedMemoryRing attach(ByteBuffer memory) throws IOException {
+        ByteBuffer control = memory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (memory.capacity() < HEADER_SIZE || control.getInt(MAGIC_OFFSET) != RING_MAGIC) {
+            throw new IOException("Not a shared memory ring");
+        }
+        int capacity = control.getInt(CAPACITY_OFFSET);
+        if (Integer.bitCount(capacity) != 1 || memory.capacity() < memorySize(capacity)) {
+            throw new IOException("Invalid ring capacity " + capacity);
+        }
+        return new SharedMemoryRing(memory, capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // 已写入还没有读取的字节数
+    public int size() {
+        return (int) (access.getLongAcquire(control, TAIL_OFFSET) - access.getLongAcquire(control, HEAD_OFFSET));
+    }
+
+    public int getProducerState() {
+        return access.getIntAcquire(control, PRODUCER_STATE_OFFSET);
+    }
+
+    public int getConsumerState() {
+        return access.getIntAcquire(control, CONSUMER_STATE_OFFSET);
+    }
+
+    public int getProducerPid() {
+        return access.getIntAcquire(control, PRODUCER_PID_OFFSET);
+    }
+
+    public int getConsumerPid() {
+        return access.getIntAcquire(control, CONSUMER_PID_OFFSET);
+    }
+
+    // 连接时先写 pid 再写 CONNECTED 状态，对方看到 CONNECTED 时 pid 已经可见
+    public void setProducerPid(int pid) {
+        access.setIntRelease(control, PRODUCER_PID_OFFSET, pid);
+    }
+
+    public void setConsumerPid(int pid) {
+        access.setIntRelease(control, CONSUMER_PID_OFFSET, pid);
+    }
+
+    // pid 为0表示不知道对端进程（还没有连接或读不到 pid），按存活处理。pid 被复用时会误判为存活
+    public static boolean isProcessAlive(int pid) {
+        return pid <= 0 || new File("/proc/" + pid).exists();
+    }
+
+    // 状态用 release 写：对方看到 CLOSED 时，之前发布的游标和记录也都可见
+    public void setProducerState(int state) {
+        access.setIntRelease(control, PRODUCER_STATE_OFFSET, state);
+    }
+
+    public void setConsumerState(int state) {
+        access.setIntRelease(control, CONSUMER_STATE_OFFSET, state);
+    }
+
+    // 一个连接结束后由消费者一端调用，清空游标供下一个连接使用。生产者状态最后写，看到 IDLE 时游标已清空
+    public void reset() {
+        access.setLongRelease(control, TAIL_OFFSET, 0);
+        access.setLongRelease(control, HEAD_OFFSET, 0);
+        access.setIntRelease(control, PRODUCER_PID_OFFSET, 0);
+        access.setIntRelease(control, CONSUMER_PID_OFFSET, 0);
+        access.setIntRelease(control, CONSUMER_STATE_OFFSET, STATE_IDLE);
+        access.setIntRelease(control, PRODUCER_STATE_OFFSET, STATE_IDLE);
+    }
+
+    // 生产者调用。空间不够时等待，消费者已关闭时抛出 IOException。帧的所有权不转移
+    public void write(MyFrame frame) throws IOException {
+        MediaMessageHeader frameHeader = frame.header;
+        int headerSize = frameHeader.size();
+        int recordSize = headerSize + frameHeader.dataLen;
+        if (recordSize > capacity) {
+            throw new IOException("Frame too large for ring: " + frameHeader.dataLen);
+        }
+        long tail = control.getLong(TAIL_OFFSET); // 只有本端写 tail，不需要 acquire
+        int tries = 0;
+        while (true) {
+            if (getConsumerState() == STATE_CLOSED) {
+                throw new IOException("Consumer closed");
+            }
+            if (isLivenessCheckDue(tries) && !isProcessAlive(getConsumerPid())) {
+                throw new IOException("Consumer process died");
+            }
+            // acquire：看到 head 之后才能覆盖消费者已经读完的数据
+            if (capacity - (int) (tail - access.getLongAcquire(control, HEAD_OFFSET)) >= recordSize) {
+                break;
+            }
+            tries = backoff(tries);
+        }
+
+        headerBuffer.clear();
+        frameHeader.writeTo(headerBuffer);
+        put(tail, headerBuffer.array(), 0, headerSize);
+        put(tail + headerSize, frame.frameData, 0, frameHeader.dataLen);
+        access.setLongRelease(control, TAIL_OFFSET, tail + recordSize); // release：记录写完后再发布 tail
+    }
+
+    // 消费者调用。没有数据时等待，生产者关闭且数据读完后返回null。帧数据从 pool 借用
+    public MyFrame read(FrameBufferPool pool) throws IOException {
+        long head = control.getLong(HEAD_OFFSET); // 只有本端写 head，不需要 acquire
+        int tries = 0;
+        long tail;
+        // acquire：看到 tail 之后再读记录
+        while ((tail = access.getLongAcquire(control, TAIL_OFFSET)) == head) {
+            if (getProducerState() == STATE_CLOSED) {
+                if (access.getLongAcquire(control, TAIL_OFFSET) == head) {
+                    return null;
+                }
+                continue; // 关闭前刚写入的记录
+            }
+            if (isLivenessCheckDue(tries) && !isProcessAlive(getProducerPid())) {
+                setProducerState(STATE_CLOSED); // 生产者进程没有关闭就退出了，替它关闭，读完剩下的记录后结束
+                continue;
+            }
+            tries = backoff(tries);
+        }
+        int available = (int) (tail - head);
+
+        headerBuffer.clear();
+        get(head, headerBuffer.array(), 0, Math.min(available, MediaMessageHeader.SIZE_V2));
+        headerBuffer.limit(Math.min(available, MediaMessageHeader.SIZE_V2));
+        int magic = headerBuffer.getInt(0);
+        if (magic != MediaMessageHeader.MAGIC && magic != MediaMessageHeader.MAGIC_V2) {
+            throw new IOException("Corrupted ring record, magic=" + Integer.toHexString(magic));
+        }
+        try {
+            MediaMessageHeader.parseInto(headerBuffer, header);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted ring record: " + e.getMessage());
+        }
+        int headerSize = header.size();
+        if (header.dataLen < 0 || header.dataLen > available - headerSize) {
+            throw new IOException("Corrupted ring record, dataLen=" + header.dataLen);
+        }
+        MyFrame frame;
+        try {
+            frame = pool.obtain(header.dataLen);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Frame too large: " + header.dataLen);
+        }
+        frame.header.copyFrom(header);
+        get(head + headerSize, frame.frameData, 0, header.dataLen);
+        access.setLongRelease(control, HEAD_OFFSET, head + headerSize + header.dataLen); // release：数据读完后再发布 head，生产者才能覆盖
+        return frame;
+    }
+
+    private void put(long position, byte[] src, int offset, int length) {
+        int index = (int) position & mask;
+        int first = Math.min(length, capacity - index);
+        data.position(index);
+        data.put(src, offset, first);
+        if (first < length) {
+            data.position(0);
+            data.put(src, offset + first, length - first);
+        }
+    }
+
+    private void get(long position, byte[] dst, int offset, int length) {
+        int index = (int) position & mask;
+        int first = Math.min(length, capacity - index);
+        data.position(index);
+        data.get(dst, offset, first);
+        if (first < length) {
+            data.position(0);
+            data.get(dst, offset + first, length - first);
+        }
+    }
+
+    private static boolean isLivenessCheckDue(int tries) {
+        return tries > SPIN_TRIES + YIELD_TRIES && tries % LIVENESS_CHECK_TRIES == 0;
+    }
+
+    // 从 /proc/self 得到本进程的 pid（JVM 和 Android 都可用），读不到时为0
+    private static int readPid() {
+        try {
+            return Integer.parseInt(new File("/proc/self").getCanonicalFile().getName());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int backoff(int tries) throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException("Interrupted while waiting on shared ring");
+        }
+        if (tries < SPIN_TRIES) {
+            return tries + 1;
+        }
+        if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NS);
+        }
+        return tries + 1;
+    }
+
+    // 控制区的 acquire/release 读写。JVM 和 Android 13 以上用 ByteBuffer 视图 VarHandle，直接在这次访问上带顺序语义；
+    // 更早的 Android 没有 VarHandle，用 Unsafe 的 loadFence/storeFence 包住普通读写（ART 一直提供这两个方法）。
+    // 两者都不可用时退化为普通读写，只在 x86 这类 TSO 处理器上成立
+    private abstract static class ControlAccess {
+
+        abstract long getLongAcquire(ByteBuffer buffer, int offset);
+
+        abstract void setLongRelease(ByteBuffer buffer, int offset, long value);
+
+        abstract int getIntAcquire(ByteBuffer buffer, int offset);
+
+        abstract void setIntRelease(ByteBuffer buffer, int offset, int value);
+
+        // VarHandle 的原子访问要求地址对齐，先试读一次，不支持或没有对齐时用屏障
+        static ControlAccess forBuffer(ByteBuffer control) {
+            try {
+                ControlAccess access = new VarHandleAccess();
+                access.getLongAcquire(control, TAIL_OFFSET);
+                access.getIntAcquire(control, PRODUCER_STATE_OFFSET);
+                return access;
+            } catch (LinkageError | IllegalStateException | UnsupportedOperationException e) {
+                return FenceAccess.INSTANCE;
+            }
+        }
+    }
+
+    // 单独的类，没有 VarHandle 的系统上不会加载
+    private static final class VarHandleAccess extends ControlAccess {
+        private static final VarHandle LONG_VIEW =
+                MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+        private static final VarHandle INT_VIEW =
+                MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+        @Override
+        long getLongAcquire(ByteBuffer buffer, int offset) {
+            return (long) LONG_VIEW.getAcquire(buffer, offset);
+        }
+
+        @Override
+        void setLongRelease(ByteBuffer buffer, int offset, long value) {
+            LONG_VIEW.setRelease(buffer, offset, value);
+        }
+
+        @Override
+        int getIntAcquire(ByteBuffer buffer, int offset) {
+            return (int) INT_VIEW.getAcquire(buffer, offset);
+        }
+
+        @Override
+        void setIntRelease(ByteBuffer buffer, int offset, int value) {
+            INT_VIEW.setRelease(buffer, offset, value);
+        }
+    }
+
+    private static final class FenceAccess extends ControlAccess {
+        static final FenceAccess INSTANCE = new FenceAccess();
+        private static final MethodHandle LOAD_FENCE;
+        private static final MethodHandle STORE_FENCE;
+
+        static {
+            MethodHandle loadFence = null;
+            MethodHandle storeFence = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                Object unsafe = field.get(null);
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                loadFence = lookup.unreflect(unsafeClass.getMethod("loadFence")).bindTo(unsafe);
+                storeFence = lookup.unreflect(unsafeClass.getMethod("storeFence")).bindTo(unsafe);
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                loadFence = null;
+                storeFence = null;
+            }
+            LOAD_FENCE = loadFence;
+            STORE_FENCE = storeFence;
+        }
+
+        // 普通读之后的 load 屏障，后面的读写不会提前到这次读之前
+        @Override
+        long getLongAcquire(ByteBuffer buffer, int offset) {
+            long value = buffer.getLong(offset);
+            fence(LOAD_FENCE);
+            return value;
+        }
+
+        // 普通写之前的 store 屏障，前面的读写不会推迟到这次写之后
+        @Override
+        void setLongRelease(ByteBuffer buffer, int offset, long value) {
+            fence(STORE_FENCE);
+            buffer.putLong(offset, value);
+        }
+
+        @Override
+        int getIntAcquire(ByteBuffer buffer, int offset) {
+            int value = buffer.getInt(offset);
+            fence(LOAD_FENCE);
+            return value;
+        }
+
+        @Override
+        void setIntRelease(ByteBuffer buffer, int offset, int value) {
+            fence(STORE_FENCE);
+            buffer.putInt(offset, value);
+        }
+
+        private static void fence(MethodHandle fence) {
+            if (fence == null) {
+                return;
+            }
+            try {
+                fence.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
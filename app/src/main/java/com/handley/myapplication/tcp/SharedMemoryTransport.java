@@ -0,0 +1,187 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+// 跨进程的共享内存传输：服务端 bind() 时创建并映射文件（例如应用私有目录或 /dev/shm 下），
+// 客户端 connect() 映射同一个文件，帧经过 SharedMemoryRing 传递，不经过 socket 和内核协议栈，
+// 每帧只在写入和读出时各拷贝一次。同一时间只有一个连接，连接两端都关闭后可以再次 connect()。
+// 两端各自只写自己的状态，清空环（reset）只由消费者一端（服务端进程）在本进程的锁内完成：
+// 消费者关闭时生产者已关闭就马上清空，否则由下一次 accept() 看到生产者关闭后清空，不需要跨进程的 CAS。
+public class SharedMemoryTransport implements FrameTransport {
+
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+    private static final long ACCEPT_POLL_MS = 10;
+    private static final long CONNECT_WAIT_MS = 1000; // 上一个连接等服务端清空环的最长时间
+
+    private final File file;
+    private final int capacity;
+    private final FrameBufferPool bufferPool;
+    private SharedMemoryRing serverRing;
+    private volatile boolean closed;
+
+    public SharedMemoryTransport(File file) {
+        this(file, DEFAULT_CAPACITY, new FrameBufferPool());
+    }
+
+    // capacity 为数据区大小（2的幂），要大于最大的一帧
+    public SharedMemoryTransport(File file, int capacity, FrameBufferPool bufferPool) {
+        this.file = file;
+        this.capacity = capacity;
+        this.bufferPool = bufferPool;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void bind() throws IOException {
+        closed = false;
+        serverRing = SharedMemoryRing.create(map(true, SharedMemoryRing.memorySize(capacity)), capacity);
+    }
+
+    // 等待客户端 connect()。上一个连接的接收端关闭后才能接受下一个
+    @Override
+    public FrameSource accept() throws IOException {
+        while (!closed) {
+            synchronized (this) {
+                int producerState = serverRing.getProducerState();
+                int consumerState = serverRing.getConsumerState();
+                if (consumerState == SharedMemoryRing.STATE_CLOSED
+                        && (producerState != SharedMemoryRing.STATE_CONNECTED
+                        || !SharedMemoryRing.isProcessAlive(serverRing.getProducerPid()))) {
+                    serverRing.reset(); // 上一个连接的生产者在接收端之后关闭（或没有关闭就退出了）
+                } else if (producerState != SharedMemoryRing.STATE_IDLE
+                        && consumerState == SharedMemoryRing.STATE_IDLE) {
+                    serverRing.setConsumerPid(SharedMemoryRing.MY_PID);
+                    serverRing.setConsumerState(SharedMemoryRing.STATE_CONNECTED);
+                    return new RingFrameSource(serverRing);
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(ACCEPT_POLL_MS);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while accepting");
+            }
+        }
+        throw new IOException("Transport closed");
+    }
+
+    // 上一个连接已关闭、还没有被服务端清空时最多等 CONNECT_WAIT_MS。上一个生产者进程没有关闭就退出时替它关闭，
+    // 服务端读完剩下的帧后清空；服务端进程已经退出时由这里清空
+    @Override
+    public FrameSink connect() throws IOException {
+        SharedMemoryRing ring = SharedMemoryRing.attach(map(false, 0));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_WAIT_MS);
+        while (true) {
+            int producerState = ring.getProducerState();
+            if (producerState == SharedMemoryRing.STATE_IDLE) {
+                ring.setProducerPid(SharedMemoryRing.MY_PID);
+                ring.setProducerState(SharedMemoryRing.STATE_CONNECTED);
+                return new RingFrameSink(ring);
+            }
+            if (producerState == SharedMemoryRing.STATE_CONNECTED) {
+                if (SharedMemoryRing.isProcessAlive(ring.getProducerPid())) {
+                    throw new IOException("Shared memory ring busy: " + file);
+                }
+                ring.setProducerState(SharedMemoryRing.STATE_CLOSED);
+            } else if (ring.getConsumerState() != SharedMemoryRing.STATE_IDLE
+                    && !SharedMemoryRing.isProcessAlive(ring.getConsumerPid())) {
+                ring.reset(); // 消费者进程已经退出，没有人会清空
+                continue;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("Shared memory ring busy: " + file);
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(ACCEPT_POLL_MS);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while connecting");
+            }
+        }
+    }
+
+    // 映射在 GC 回收 MappedByteBuffer 时解除，文件保留给下一次 bind() 覆盖
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private MappedByteBuffer map(boolean create, int size) throws IOException {
+        if (create) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    private final class RingFrameSource implements FrameSource {
+        private final SharedMemoryRing ring;
+
+        RingFrameSource(SharedMemoryRing ring) {
+            this.ring = ring;
+        }
+
+        @Override
+        public MyFrame readFrame() throws IOException {
+            return ring.read(bufferPool);
+        }
+
+        // 生产者已经关闭时由这里清空环，否则由下一次 accept() 清空
+        @Override
+        public void close() {
+            synchronized (SharedMemoryTransport.this) {
+                ring.setConsumerState(SharedMemoryRing.STATE_CLOSED);
+                if (ring.getProducerState() == SharedMemoryRing.STATE_CLOSED) {
+                    ring.reset();
+                }
+            }
+        }
+    }
+
+    private static final class RingFrameSink implements FrameSink {
+        private final SharedMemoryRing ring;
+
+        RingFrameSink(SharedMemoryRing ring) {
+            this.ring = ring;
+        }
+
+        @Override
+        public void send(MyFrame frame) throws IOException {
+            try {
+                ring.write(frame);
+            } finally {
+                frame.release();
+            }
+        }
+
+        // 只标记关闭，环由消费者一端清空
+        @Override
+        public void close() {
+            ring.setProducerState(SharedMemoryRing.STATE_CLOSED);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.handley.myapplication.tcp;
+
+import android.util.Log;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.common.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+// 本机 TCP 传输（127.0.0.1:port）。接收端用 MediaFrameReader 分帧，帧数据从 bufferPool 借用
+public class TcpTransport implements FrameTransport {
+    private static final String TAG = Utils.TAG + "TcpTransport";
+    private static final String HOST = "127.0.0.1";
+
+    private final int port;
+    private final FrameBufferPool bufferPool;
+    private volatile ServerSocketChannel serverChannel;
+
+    public TcpTransport(int port) {
+        this(port, new FrameBufferPool());
+    }
+
+    // maxFrameSize 等参数通过 bufferPool 配置
+    public TcpTransport(int port, FrameBufferPool bufferPool) {
+        this.port = port;
+        this.bufferPool = bufferPool;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void bind() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        Log.i(TAG, "Listening on port " + port);
+    }
+
+    @Override
+    public FrameSource accept() throws IOException {
+        SocketChannel clientChannel = serverChannel.accept();
+        Log.i(TAG, "Client connected: " + clientChannel.getRemoteAddress());
+        return new TcpFrameSource(clientChannel);
+    }
+
+    // 关闭 Nagle，每帧 flush 后立即发出
+    @Override
+    public FrameSink connect() throws IOException {
+        Socket socket = new Socket(HOST, port);
+        socket.setTcpNoDelay(true);
+        return new TcpFrameSink(socket);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+                Log.i(TAG, "closeServerSocket()");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing server socket: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return serverChannel == null || !serverChannel.isOpen();
+    }
+
+    private final class TcpFrameSource implements FrameSource {
+        private final SocketChannel channel;
+        // 帧头损坏时在流中查找下一个魔数重新同步，不断开连接；大帧分多次到达时读满为止
+        private final MediaFrameReader frameReader;
+        private FrameSink feedback;
+        private int resyncCount;
+
+        TcpFrameSource(SocketChannel channel) {
+            this.channel = channel;
+            this.frameReader = new MediaFrameReader(channel, bufferPool);
+        }
+
+        @Override
+        public MyFrame readFrame() throws IOException {
+            MyFrame frame = frameReader.readFrame();
+            if (frameReader.getResyncCount() != resyncCount) {
+                resyncCount = frameReader.getResyncCount();
+                Log.w(TAG, "Resynchronized after invalid header, skipped " + frameReader.getLastSkipped()
+                        + " bytes, total=" + frameReader.getSkippedBytes() + " resyncCount=" + resyncCount);
+            }
+            return frame;
+        }
+
+        // 反馈和帧数据走同一个 TCP 连接的反方向，由读取线程直接写出（阻塞写，报告很小）
+        @Override
+        public FrameSink feedback() {
+            if (feedback == null) {
+                feedback = new OutputStreamFrameSink(Channels.newOutputStream(channel));
+            }
+            return feedback;
+        }
+
+        @Override
+        public void close() throws IOException {
+            frameReader.releasePendingFrame();
+            Log.i(TAG, "Connection closed, skipped=" + frameReader.getSkippedBytes() + " crcErrors="
+                    + frameReader.getCrcErrors() + " lostFrames=" + frameReader.getLostFrames() + " frames="
+                    + frameReader.getFrameCount() + " reads=" + frameReader.getReadCount() + " " + bufferPool);
+            channel.close();
+        }
+    }
+
+    private final class TcpFrameSink extends OutputStreamFrameSink {
+        private final Socket socket;
+        private FrameSource feedback;
+
+        TcpFrameSink(Socket socket) throws IOException {
+            super(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            this.socket = socket;
+        }
+
+        @Override
+        public synchronized FrameSource feedback() throws IOException {
+            if (feedback == null) {
+                MediaFrameReader reader = new MediaFrameReader(socket.getInputStream(), bufferPool);
+                feedback = new FrameSource() {
+                    @Override
+                    public MyFrame readFrame() throws IOException {
+                        return reader.readFrame();
+                    }
+
+                    @Override
+                    public void close() {
+                        reader.releasePendingFrame();
+                    }
+                };
+            }
+            return feedback;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                socket.close();
+            }
+        }
+    }
+}
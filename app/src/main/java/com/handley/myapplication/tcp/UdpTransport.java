@@ -0,0 +1,407 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MyFrame;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 可选的 UDP 传输：帧由 RtpPacketizer 打成 RTP 包发送，丢一个包只影响它所在的帧，
+// 不会像 TCP 那样因为一个丢失的分段阻塞后面所有的音视频数据（队头阻塞）。
+// 接收端用 JitterBuffer 重排序，缺包时向发送端发 NACK，发送端从最近 HISTORY_PACKETS 个包中重传；
+// 超过 latencyBudgetMs 仍没有收到就放弃这一帧继续往后走。重传使用原序号，不单独开 RTX 流。
+// 服务端同一时间接收一个发送端（按第一个包的 SSRC 锁定），发送端 close() 时发 BYE 结束这条流；
+// 发送端没有发 BYE 就消失（进程被杀、网络断开）时，SENDER_TIMEOUT_BUDGETS 个延迟预算内没有它的包也结束这条流。
+public class UdpTransport implements FrameTransport {
+
+    public static final int DEFAULT_LATENCY_BUDGET_MS = 200;
+    private static final String HOST = "127.0.0.1";
+    private static final int HISTORY_PACKETS = 1024;
+    private static final int MAX_PACKET_SIZE = 2048;
+    private static final int SOCKET_BUFFER_SIZE = 1024 * 1024;
+    private static final int BYE_REPEAT = 3;
+    private static final int IDLE_TIMEOUT_MS = 100;
+    private static final int MISSING_TIMEOUT_MS = 2; // 有缺包时按这个间隔检查重传和放弃
+    private static final int SENDER_TIMEOUT_BUDGETS = 10;
+
+    private final String host;
+    private final int port;
+    private final FrameBufferPool bufferPool;
+    private final int latencyBudgetMs;
+    private final NetworkImpairment impairment;
+    private final AtomicLong retransmitted = new AtomicLong();
+    private final Random random = new Random();
+    private volatile DatagramSocket serverSocket;
+    private volatile UdpFrameSource currentSource;
+    private volatile int finishedSsrc; // 上一条已结束的流，它迟到的包不能被当成新的流
+    private volatile boolean closed;
+
+    public UdpTransport(int port) {
+        this(HOST, port, new FrameBufferPool(), DEFAULT_LATENCY_BUDGET_MS, null);
+    }
+
+    // impairment 不为null时，发送端的媒体包经过丢包/抖动模拟再发出
+    public UdpTransport(String host, int port, FrameBufferPool bufferPool, int latencyBudgetMs,
+                        NetworkImpairment impairment) {
+        this.host = host;
+        this.port = port;
+        this.bufferPool = bufferPool;
+        this.latencyBudgetMs = latencyBudgetMs;
+        this.impairment = impairment;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void bind() throws IOException {
+        closed = false;
+        DatagramSocket socket = new DatagramSocket(null);
+        socket.setReceiveBufferSize(SOCKET_BUFFER_SIZE);
+        socket.bind(new InetSocketAddress(port));
+        serverSocket = socket;
+    }
+
+    // UDP 没有连接，直接返回接收下一条流的 source，第一个包到达时锁定发送端
+    @Override
+    public FrameSource accept() throws IOException {
+        if (closed || serverSocket == null) {
+            throw new IOException("Transport closed");
+        }
+        UdpFrameSource source = new UdpFrameSource(serverSocket);
+        currentSource = source;
+        return source;
+    }
+
+    @Override
+    public FrameSink connect() throws IOException {
+        DatagramSocket socket = new DatagramSocket();
+        socket.setSendBufferSize(SOCKET_BUFFER_SIZE);
+        socket.connect(new InetSocketAddress(host, port));
+        return new UdpFrameSink(socket);
+    }
+
+    // 关闭 socket，唤醒阻塞在 readFrame() 中的线程
+    @Override
+    public void close() {
+        closed = true;
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // 以下统计为当前（或最近一个）接收流的
+    public long getReceivedPackets() {
+        UdpFrameSource source = currentSource;
+        return source != null ? source.jitterBuffer.getReceived() : 0;
+    }
+
+    public long getNackedPackets() {
+        UdpFrameSource source = currentSource;
+        return source != null ? source.jitterBuffer.getNacked() : 0;
+    }
+
+    // 请求重传后收到的包
+    public long getRecoveredPackets() {
+        UdpFrameSource source = currentSource;
+        return source != null ? source.jitterBuffer.getRecovered() : 0;
+    }
+
+    // 超过延迟预算放弃的包
+    public long getLostPackets() {
+        UdpFrameSource source = currentSource;
+        return source != null ? source.jitterBuffer.getLost() : 0;
+    }
+
+    // 因为缺包没有交出的帧
+    public long getDroppedFrames() {
+        UdpFrameSource source = currentSource;
+        return source != null ? source.droppedFrames : 0;
+    }
+
+    // 所有发送端重传的包数
+    public long getRetransmittedPackets() {
+        return retransmitted.get();
+    }
+
+    @Override
+    public String toString() {
+        UdpFrameSource source = currentSource;
+        return "UdpTransport{port=" + port + " latencyBudgetMs=" + latencyBudgetMs + " retransmitted="
+                + retransmitted + " droppedFrames=" + getDroppedFrames() + " "
+                + (source != null ? source.jitterBuffer : "") + "}";
+    }
+
+    private final class UdpFrameSource implements FrameSource {
+        private final DatagramSocket socket;
+        private final JitterBuffer jitterBuffer = new JitterBuffer(TimeUnit.MILLISECONDS.toNanos(latencyBudgetMs));
+        private final RtpDepacketizer depacketizer = new RtpDepacketizer(bufferPool);
+        private final DatagramPacket receivePacket = new DatagramPacket(new byte[MAX_PACKET_SIZE], MAX_PACKET_SIZE);
+        private final int[] nackSequences = new int[RtpPacket.MAX_NACK_ENTRIES];
+        private final ByteBuffer nackBuffer = ByteBuffer.allocate(12 + 4 * RtpPacket.MAX_NACK_ENTRIES);
+        private final DatagramPacket nackPacket = new DatagramPacket(nackBuffer.array(), 0);
+        private final int ssrc = random.nextInt();
+        private SocketAddress sender;
+        private int senderSsrc;
+        private int timeoutMs = -1;
+        private long lastPacketNs; // 最近一次收到锁定的发送端的包
+        private volatile long droppedFrames;
+
+        UdpFrameSource(DatagramSocket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public MyFrame readFrame() throws IOException {
+            while (true) {
+                long now = System.nanoTime();
+                MyFrame frame = drain(now);
+                if (frame != null) {
+                    return frame;
+                }
+                if (jitterBuffer.isFinished()) {
+                    finishedSsrc = senderSsrc;
+                    return null;
+                }
+                // 超时前缺的包早已超过延迟预算被放弃，能交出的帧都交出了，只剩拼到一半的帧
+                if (sender != null && now - lastPacketNs
+                        > TimeUnit.MILLISECONDS.toNanos((long) latencyBudgetMs * SENDER_TIMEOUT_BUDGETS)) {
+                    depacketizer.reset();
+                    droppedFrames = depacketizer.getFramesDropped();
+                    finishedSsrc = senderSsrc; // 它迟到的包不能被当成新的流
+                    return null;
+                }
+                sendNacks(now);
+                receive(jitterBuffer.hasMissing() ? MISSING_TIMEOUT_MS : IDLE_TIMEOUT_MS);
+            }
+        }
+
+        // 按序号交出已经到齐的包，拼出一帧就返回
+        private MyFrame drain(long now) {
+            while (true) {
+                int index = jitterBuffer.poll(now);
+                if (index == JitterBuffer.NONE) {
+                    return null;
+                }
+                MyFrame frame = null;
+                if (index == JitterBuffer.GAP) {
+                    depacketizer.reset();
+                } else {
+                    frame = depacketizer.push(jitterBuffer.packet(index), jitterBuffer.length(index));
+                }
+                droppedFrames = depacketizer.getFramesDropped();
+                if (frame != null) {
+                    return frame;
+                }
+            }
+        }
+
+        private void receive(int timeout) throws IOException {
+            if (closed) {
+                throw new IOException("Transport closed");
+            }
+            if (timeout != timeoutMs) {
+                socket.setSoTimeout(timeout);
+                timeoutMs = timeout;
+            }
+            receivePacket.setLength(MAX_PACKET_SIZE);
+            try {
+                socket.receive(receivePacket);
+            } catch (SocketTimeoutException e) {
+                return;
+            }
+            byte[] data = receivePacket.getData();
+            int length = receivePacket.getLength();
+            long now = System.nanoTime();
+            if (RtpPacket.isRtcp(data, length)) {
+                if (RtpPacket.rtcpType(data) == RtpPacket.RTCP_BYE && sender != null
+                        && RtpPacket.rtcpSenderSsrc(data) == senderSsrc) {
+                    lastPacketNs = now;
+                    int nextSequence = RtpPacket.byeNextSequence(data, length);
+                    if (nextSequence >= 0) {
+                        jitterBuffer.markEnd(nextSequence, now);
+                    }
+                }
+                return;
+            }
+            if (!RtpPacket.isValid(data, length)) {
+                return;
+            }
+            int packetSsrc = RtpPacket.ssrc(data);
+            if (sender == null) {
+                if (packetSsrc == finishedSsrc) {
+                    return;
+                }
+                sender = receivePacket.getSocketAddress();
+                senderSsrc = packetSsrc;
+            } else if (packetSsrc != senderSsrc) {
+                return; // 其他发送端的包
+            }
+            lastPacketNs = now;
+            jitterBuffer.insert(data, length, now);
+        }
+
+        private void sendNacks(long now) throws IOException {
+            if (sender == null || !jitterBuffer.hasMissing()) {
+                return;
+            }
+            int count = jitterBuffer.collectNacks(now, nackSequences);
+            if (count == 0) {
+                return;
+            }
+            nackBuffer.clear();
+            RtpPacket.writeNack(nackBuffer, ssrc, senderSsrc, nackSequences, count);
+            nackPacket.setData(nackBuffer.array(), 0, nackBuffer.position());
+            nackPacket.setSocketAddress(sender);
+            socket.send(nackPacket);
+        }
+
+        // socket 属于 transport，下一条流继续使用
+        @Override
+        public void close() {
+            depacketizer.reset();
+        }
+    }
+
+    private final class UdpFrameSink implements FrameSink, RtpPacketizer.PacketConsumer {
+        private final DatagramSocket socket;
+        private final int ssrc = random.nextInt();
+        private final RtpPacketizer packetizer;
+        private final DatagramPacket sendPacket = new DatagramPacket(new byte[0], 0);
+        private final byte[][] history = new byte[HISTORY_PACKETS][];
+        private final int[] historyLengths = new int[HISTORY_PACKETS];
+        private final Thread nackThread;
+
+        UdpFrameSink(DatagramSocket socket) {
+            this.socket = socket;
+            this.packetizer = new RtpPacketizer(ssrc, RtpPacketizer.DEFAULT_MAX_PAYLOAD, random.nextInt());
+            this.nackThread = new Thread(this::nackLoop, "UdpNack");
+            nackThread.start();
+        }
+
+        @Override
+        public void send(MyFrame frame) throws IOException {
+            try {
+                packetizer.packetize(frame, this);
+            } finally {
+                frame.release();
+            }
+        }
+
+        // 发送前留一份用于重传
+        @Override
+        public void onPacket(ByteBuffer packet) throws IOException {
+            byte[] data = packet.array();
+            int length = packet.remaining();
+            int index = RtpPacket.sequence(data) % HISTORY_PACKETS;
+            synchronized (history) {
+                if (history[index] == null) {
+                    history[index] = new byte[MAX_PACKET_SIZE];
+                }
+                System.arraycopy(data, 0, history[index], 0, length);
+                historyLengths[index] = length;
+            }
+            sendPacket.setData(data, 0, length);
+            transmit(sendPacket);
+        }
+
+        private void transmit(DatagramPacket packet) throws IOException {
+            try {
+                if (impairment != null) {
+                    impairment.send(socket, packet);
+                } else {
+                    socket.send(packet);
+                }
+            } catch (PortUnreachableException e) {
+                // 接收端还没有启动，按丢包处理
+            }
+        }
+
+        private void nackLoop() {
+            DatagramPacket in = new DatagramPacket(new byte[MAX_PACKET_SIZE], MAX_PACKET_SIZE);
+            DatagramPacket out = new DatagramPacket(new byte[MAX_PACKET_SIZE], 0);
+            int[] sequences = new int[RtpPacket.MAX_NACK_ENTRIES * 17];
+            while (!socket.isClosed()) {
+                try {
+                    in.setLength(MAX_PACKET_SIZE);
+                    socket.receive(in);
+                    byte[] data = in.getData();
+                    if (!RtpPacket.isRtcp(data, in.getLength()) || RtpPacket.rtcpType(data) != RtpPacket.RTCP_RTPFB
+                            || RtpPacket.rtcpFormat(data) != RtpPacket.RTCP_FMT_NACK
+                            || RtpPacket.nackMediaSsrc(data) != ssrc) {
+                        continue;
+                    }
+                    int count = RtpPacket.readNack(data, in.getLength(), sequences);
+                    for (int i = 0; i < count; i++) {
+                        if (retransmit(sequences[i], out)) {
+                            transmit(out);
+                            retransmitted.incrementAndGet();
+                        }
+                    }
+                } catch (PortUnreachableException e) {
+                    // 之前发出的包被 ICMP 拒绝，继续等待
+                } catch (IOException e) {
+                    break; // socket 已关闭
+                }
+            }
+        }
+
+        // 历史中还有这个序号的包时拷贝到 out
+        private boolean retransmit(int sequence, DatagramPacket out) {
+            int index = sequence % HISTORY_PACKETS;
+            synchronized (history) {
+                byte[] packet = history[index];
+                if (packet == null || RtpPacket.sequence(packet) != sequence) {
+                    return false; // 已经被更新的包覆盖
+                }
+                System.arraycopy(packet, 0, out.getData(), 0, historyLengths[index]);
+                out.setLength(historyLengths[index]);
+                return true;
+            }
+        }
+
+        // 发 BYE（不经过丢包模拟），再等一个延迟预算的时间响应最后几个包的 NACK
+        @Override
+        public void close() throws IOException {
+            ByteBuffer bye = ByteBuffer.allocate(RtpPacket.BYE_SIZE);
+            RtpPacket.writeBye(bye, ssrc, packetizer.getSequence());
+            DatagramPacket byePacket = new DatagramPacket(bye.array(), bye.position());
+            try {
+                for (int i = 0; i < BYE_REPEAT; i++) {
+                    socket.send(byePacket);
+                }
+                Thread.sleep(latencyBudgetMs);
+            } catch (PortUnreachableException e) {
+                // 接收端已经不在
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                socket.close();
+            }
+            try {
+                nackThread.join(latencyBudgetMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
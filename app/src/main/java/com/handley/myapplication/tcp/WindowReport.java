@@ -0,0 +1,65 @@
+package com.handley.myapplication.tcp;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// 接收窗口报告：接收端帧队列中等待解码的帧数、字节数和队列容量。
+// 放在 FEEDBACK 类型消息的帧数据中（12字节小端序：queuedFrames(4) capacityFrames(4) queuedBytes(4)），
+// 帧头时间戳为接收端生成报告的时间（毫秒）。帧数据为空的 FEEDBACK 消息是发送端请求接收报告。
+public class WindowReport {
+
+    public static final int SIZE = 12;
+
+    public int queuedFrames;
+    public int capacityFrames;
+    public int queuedBytes;
+
+    // 队列占用比例 0~1，容量未知时为0
+    public float fillRatio() {
+        return capacityFrames > 0 ? Math.min(1f, (float) queuedFrames / capacityFrames) : 0f;
+    }
+
+    // 序列化为一条 FEEDBACK 消息，帧数据从 pool 借用
+    public MyFrame toFrame(FrameBufferPool pool) {
+        MyFrame frame = pool.obtain(SIZE);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = MediaMessageHeader.FEEDBACK;
+        frame.header.timestamp = System.currentTimeMillis();
+        ByteBuffer buffer = ByteBuffer.wrap(frame.frameData, 0, SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(queuedFrames);
+        buffer.putInt(capacityFrames);
+        buffer.putInt(queuedBytes);
+        return frame;
+    }
+
+    // 发送端请求接收报告的消息
+    public static MyFrame requestFrame() {
+        MyFrame frame = new MyFrame(new MediaMessageHeader(), new byte[0]);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = MediaMessageHeader.FEEDBACK;
+        frame.header.timestamp = System.currentTimeMillis();
+        return frame;
+    }
+
+    // 从 FEEDBACK 消息解析到已有对象中，不是报告（类型不对或长度不够）时返回false
+    public static boolean parseInto(MyFrame frame, WindowReport out) {
+        if (frame.header.type != MediaMessageHeader.FEEDBACK || frame.header.dataLen < SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frame.frameData, 0, SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        out.queuedFrames = buffer.getInt();
+        out.capacityFrames = buffer.getInt();
+        out.queuedBytes = buffer.getInt();
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "WindowReport{queuedFrames=" + queuedFrames + " capacityFrames=" + capacityFrames + " queuedBytes="
+                + queuedBytes + "}";
+    }
+}
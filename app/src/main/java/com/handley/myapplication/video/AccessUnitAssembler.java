@@ -0,0 +1,175 @@
+package com.handley.myapplication.video;
+
+import android.media.MediaCodec;
+import java.util.Arrays;
+
+// 访问单元组装器：把属于同一帧的NAL（含多slice、SPS/PPS/SEI）拼成一个缓冲区，一帧只提交一次解码器。
+// 帧边界：AUD、SPS、PPS、SEI 等出现在 slice 之后，或 first_mb_in_slice == 0 的 slice。
+// H265 模式下按 2字节NAL头判断：VPS/SPS/PPS/AUD/前缀SEI，或 first_slice_segment_in_pic_flag == 1 的 slice。
+// add() 返回的是上一个完整的帧，两个缓冲区轮换使用，返回值在下一次 add()/flush() 之前有效。
+public class AccessUnitAssembler {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final boolean hevc;
+    private AccessUnit current;
+    private AccessUnit completed;
+
+    public AccessUnitAssembler() {
+        this(false);
+    }
+
+    // hevc 为 true 时按 H265 NAL 组装
+    public AccessUnitAssembler(boolean hevc) {
+        this.hevc = hevc;
+        current = new AccessUnit(hevc);
+        completed = new AccessUnit(hevc);
+    }
+
+    // 添加一个NAL，如果它开始了新的一帧，返回之前组装好的一帧，否则返回null
+    public AccessUnit add(NalUnit nal) {
+        if (nal.length < 1) {
+            return null;
+        }
+
+        AccessUnit result = null;
+        if (startsNewAccessUnit(nal)) {
+            result = swap();
+        }
+        current.append(nal);
+        return result;
+    }
+
+    // 数据结束（或一条消息结束），返回剩余的一帧，没有返回null
+    public AccessUnit flush() {
+        return current.length > 0 ? swap() : null;
+    }
+
+    // 丢弃一个不能解码的slice（不加入帧中）。它开始新的一帧时返回之前组装好的一帧；
+    // 它属于正在组装的图像时，已经组装的部分也整帧丢弃，不把半帧图像送给解码器，返回null
+    public AccessUnit discard(NalUnit nal) {
+        if (nal.length < 1 || current.sliceCount == 0) {
+            return null;
+        }
+        if (startsNewAccessUnit(nal)) {
+            return swap();
+        }
+        current.clear();
+        return null;
+    }
+
+    // 丢弃正在组装的数据
+    public void reset() {
+        current.clear();
+    }
+
+    private boolean startsNewAccessUnit(NalUnit nal) {
+        if (current.sliceCount == 0) {
+            return false; // 当前帧还没有 slice，SPS/PPS/SEI 等都属于当前帧
+        }
+        if (hevc) {
+            return H265Nal.startsNewAccessUnit(nal);
+        }
+
+        int nalType = nal.type();
+        switch (nalType) {
+            case 1: // 非IDR Slice
+            case 5: // IDR
+                // first_mb_in_slice 为 ue(v)，等于0时第一个比特为1
+                return nal.length > 1 && (nal.get(1) & 0x80) != 0;
+            case 6:  // SEI
+            case 7:  // SPS
+            case 8:  // PPS
+            case 9:  // AUD
+            case 14: // Prefix NAL
+            case 15: // Subset SPS
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private AccessUnit swap() {
+        AccessUnit done = current;
+        done.finish();
+        current = completed;
+        current.clear();
+        completed = done;
+        return done;
+    }
+
+    // 一帧数据（4字节起始码的 Annex-B 格式）
+    public static class AccessUnit {
+
+        public byte[] data = new byte[INITIAL_CAPACITY];
+        public int length;
+        public int flags;      // MediaCodec.BUFFER_FLAG_*
+        public int sliceCount; // slice 数量，0 表示只有参数集等非图像数据
+        public boolean hasIdr;           // H265 为 IRAP
+        public boolean hasParameterSets;
+        private final boolean hevc;
+
+        AccessUnit(boolean hevc) {
+            this.hevc = hevc;
+        }
+
+        public boolean isKeyFrame() {
+            return (flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        }
+
+        public boolean isCodecConfig() {
+            return (flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+        }
+
+        void append(NalUnit nal) {
+            int size = NalUnit.START_CODE.length + nal.length;
+            if (length + size > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + size));
+            }
+            System.arraycopy(NalUnit.START_CODE, 0, data, length, NalUnit.START_CODE.length);
+            nal.copyTo(data, length + NalUnit.START_CODE.length);
+            length += size;
+
+            if (hevc) {
+                int nalType = H265Nal.type(nal);
+                if (H265Nal.isVcl(nalType)) {
+                    sliceCount++;
+                }
+                if (H265Nal.isIrap(nalType)) {
+                    hasIdr = true;
+                }
+                if (H265Nal.isParameterSet(nalType)) {
+                    hasParameterSets = true;
+                }
+                return;
+            }
+
+            int nalType = nal.type();
+            if (nalType == 1 || nalType == 5) {
+                sliceCount++;
+            }
+            if (nalType == 5) {
+                hasIdr = true;
+            }
+            if (nalType == 7 || nalType == 8) {
+                hasParameterSets = true;
+            }
+        }
+
+        void finish() {
+            if (sliceCount == 0) {
+                flags = hasParameterSets ? MediaCodec.BUFFER_FLAG_CODEC_CONFIG : 0;
+            } else {
+                flags = hasIdr ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+            }
+        }
+
+        void clear() {
+            length = 0;
+            flags = 0;
+            sliceCount = 0;
+            hasIdr = false;
+            hasParameterSets = false;
+        }
+    }
+}
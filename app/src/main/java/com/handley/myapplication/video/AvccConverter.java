@@ -0,0 +1,97 @@
+package com.handley.myapplication.video;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Annex-B（起始码分隔）与 AVCC/HVCC（4字节大端长度前缀）互相转换，H264/H265 通用。
+// 4字节起始码和4字节长度一样长，所以两个方向都可以原地转换（Annex-B 中有3字节起始码时除外）。
+public final class AvccConverter {
+
+    private AvccConverter() {
+    }
+
+    // Annex-B 转 AVCC，返回新数组。起始码之前的数据会被丢弃
+    public static byte[] annexBToAvcc(byte[] data, int offset, int length) {
+        H264StreamReader reader = new H264StreamReader();
+        NalUnit nal = new NalUnit();
+        int size = 0;
+        reader.reset(data, offset, length);
+        while (readNal(reader, nal)) {
+            size += AvccNalReader.LENGTH_SIZE + nal.length;
+        }
+
+        byte[] out = new byte[size];
+        ByteBuffer buffer = ByteBuffer.wrap(out);
+        reader.reset(data, offset, length);
+        while (readNal(reader, nal)) {
+            buffer.putInt(nal.length);
+            nal.copyTo(out, buffer.position());
+            buffer.position(buffer.position() + nal.length);
+        }
+        return out;
+    }
+
+    // Annex-B 原地转成 AVCC：要求数据以起始码开头且全部是4字节起始码，否则不修改数据并返回false
+    public static boolean annexBToAvccInPlace(byte[] data, int offset, int length) {
+        H264StreamReader reader = new H264StreamReader();
+        NalUnit nal = new NalUnit();
+        int expected = offset + 4; // 下一个NAL应该开始的位置
+        reader.reset(data, offset, length);
+        while (readNal(reader, nal)) {
+            if (nal.offset != expected || data[nal.offset - 4] != 0) {
+                return false;
+            }
+            expected = nal.offset + nal.length + 4;
+        }
+        if (expected - 4 != offset + length) {
+            return false; // 空数据或末尾有多余的数据
+        }
+
+        reader.reset(data, offset, length);
+        while (readNal(reader, nal)) {
+            writeInt(data, nal.offset - 4, nal.length);
+        }
+        return true;
+    }
+
+    // AVCC 转 Annex-B（4字节起始码），返回新数组
+    public static byte[] avccToAnnexB(byte[] data, int offset, int length) {
+        byte[] out = new byte[length];
+        System.arraycopy(data, offset, out, 0, length);
+        avccToAnnexBInPlace(out, 0, length);
+        return out;
+    }
+
+    // AVCC 原地转成 Annex-B，长度字段不合法时抛出 IllegalArgumentException（此时数据可能已部分转换）
+    public static void avccToAnnexBInPlace(byte[] data, int offset, int length) {
+        int pos = offset;
+        int end = offset + length;
+        while (pos < end) {
+            if (end - pos < AvccNalReader.LENGTH_SIZE) {
+                throw new IllegalArgumentException("Truncated NAL length at " + pos);
+            }
+            int nalLength = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                    | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            if (nalLength < 0 || nalLength > end - pos - AvccNalReader.LENGTH_SIZE) {
+                throw new IllegalArgumentException("Invalid NAL length " + nalLength + " at " + pos);
+            }
+            System.arraycopy(NalUnit.START_CODE, 0, data, pos, NalUnit.START_CODE.length);
+            pos += AvccNalReader.LENGTH_SIZE + nalLength;
+        }
+    }
+
+    private static boolean readNal(H264StreamReader reader, NalUnit nal) {
+        try {
+            return reader.readNextNalUnit(nal);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // reset() 模式下不读取输入流，不会发生
+        }
+    }
+
+    private static void writeInt(byte[] data, int pos, int value) {
+        data[pos] = (byte) (value >>> 24);
+        data[pos + 1] = (byte) (value >>> 16);
+        data[pos + 2] = (byte) (value >>> 8);
+        data[pos + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,44 @@
+package com.handley.myapplication.video;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// 长度前缀（AVCC/HVCC）格式的NAL读取器：每个NAL前带4字节大端长度，不带起始码。
+// 直接按长度跳到下一个NAL，不需要逐字节查找起始码。调用 reset() 在消息数据上反复使用，不拷贝也不分配。
+public class AvccNalReader implements NalSource {
+
+    public static final int LENGTH_SIZE = 4;
+
+    private byte[] data;
+    private ByteBuffer dataView;
+    private int pos;
+    private int end;
+
+    public void reset(byte[] data, int offset, int length) {
+        if (this.data != data || dataView == null) {
+            this.data = data;
+            dataView = ByteBuffer.wrap(data);
+        }
+        pos = offset;
+        end = offset + length;
+    }
+
+    // 长度越界时抛出 IOException（数据损坏），剩余数据不足一个长度字段时视为结束
+    @Override
+    public boolean readNextNalUnit(NalUnit out) throws IOException {
+        if (end - pos < LENGTH_SIZE) {
+            pos = end;
+            return false;
+        }
+        int nalLength = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+        int nalStart = pos + LENGTH_SIZE;
+        if (nalLength < 0 || nalLength > end - nalStart) {
+            pos = end;
+            throw new IOException("Invalid NAL length " + nalLength + ", remaining " + (end - nalStart));
+        }
+        out.set(dataView, nalStart, nalLength);
+        pos = nalStart + nalLength;
+        return true;
+    }
+}
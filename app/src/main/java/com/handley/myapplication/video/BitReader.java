@@ -0,0 +1,181 @@
+package com.handley.myapplication.video;
+
+import java.nio.ByteBuffer;
+
+// H264 码流位读取器：64位缓存，按字节填充，读取时自动去掉防竞争字节（0x000003 中的 0x03）。
+// ue(v)/se(v) 用 Long.numberOfLeadingZeros 一次算出前导0个数。可通过 reset() 反复使用。
+// 读取超出数据末尾时抛出 IndexOutOfBoundsException。
+public class BitReader {
+
+    private ByteBuffer data;
+    private byte[] array;   // data 对应的数组，用于判断 reset() 时是否需要重新包装
+    private int pos;        // 下一个要装入缓存的字节位置
+    private int end;
+    private int zeroCount;  // 已装入的连续0x00字节数，用于识别防竞争字节
+    private int rbspBytes;  // 已装入缓存的有效字节数（不含防竞争字节）
+    private long cache;     // 左对齐的缓存位
+    private int cacheBits;  // 缓存中的有效位数
+    private int start;
+    private int stopBit = -1; // rbsp_stop_one_bit 的位置（有效数据的位下标），懒计算
+
+    public BitReader() {
+    }
+
+    public BitReader(byte[] data, int offset) {
+        reset(data, offset, data.length - offset);
+    }
+
+    public void reset(byte[] data, int offset, int length) {
+        if (array != data || this.data == null) {
+            array = data;
+            this.data = ByteBuffer.wrap(data);
+        }
+        init(offset, offset + length);
+    }
+
+    // 从NAL的第 skip 个字节开始读取（通常 skip=1 跳过NAL头）
+    public void reset(NalUnit nal, int skip) {
+        array = null;
+        data = nal.data;
+        init(nal.offset + skip, nal.offset + nal.length);
+    }
+
+    private void init(int from, int to) {
+        pos = from;
+        start = from;
+        end = to;
+        zeroCount = 0;
+        rbspBytes = 0;
+        cache = 0;
+        cacheBits = 0;
+        stopBit = -1;
+    }
+
+    // 读取指定位数（0~32）
+    public int readBits(int numBits) {
+        if (numBits < 0 || numBits > 32) {
+            throw new IllegalArgumentException("Invalid bit count " + numBits);
+        }
+        if (numBits == 0) {
+            return 0;
+        }
+        if (cacheBits < numBits) {
+            refill();
+            if (cacheBits < numBits) {
+                throw new IndexOutOfBoundsException("BitReader overrun: need " + numBits + " bits, " + cacheBits + " left");
+            }
+        }
+        int result = (int) (cache >>> (64 - numBits));
+        cache <<= numBits;
+        cacheBits -= numBits;
+        return result;
+    }
+
+    // 跳过指定位数
+    public void skipBits(int numBits) {
+        while (numBits > 32) {
+            readBits(32);
+            numBits -= 32;
+        }
+        readBits(numBits);
+    }
+
+    // 读取布尔值
+    public boolean readBool() {
+        return readBits(1) != 0;
+    }
+
+    // 读取无符号指数哥伦布编码
+    public int readUE() {
+        if (cacheBits < 32) {
+            refill();
+        }
+        int leadingZeroBits = Long.numberOfLeadingZeros(cache);
+        int codeBits = 2 * leadingZeroBits + 1;
+        if (codeBits <= cacheBits) {
+            // 常见情况：整个码字都在缓存中
+            long value = cache >>> (64 - codeBits);
+            cache <<= codeBits;
+            cacheBits -= codeBits;
+            return (int) (value - 1);
+        }
+
+        // 码字超过缓存（前导0多于28个）
+        leadingZeroBits = 0;
+        while (!readBool()) {
+            if (++leadingZeroBits > 31) {
+                throw new IllegalStateException("Invalid Exp-Golomb code");
+            }
+        }
+        long suffix = leadingZeroBits == 0 ? 0 : readBits(leadingZeroBits) & 0xFFFFFFFFL;
+        return (int) ((1L << leadingZeroBits) - 1 + suffix);
+    }
+
+    // 读取有符号指数哥伦布编码
+    public int readSE() {
+        long ue = readUE() & 0xFFFFFFFFL;
+        return (int) ((ue & 1) != 0 ? (ue + 1) / 2 : -(ue / 2));
+    }
+
+    // 已读取的有效数据位数（不含防竞争字节）
+    public int bitPosition() {
+        return rbspBytes * 8 - cacheBits;
+    }
+
+    public boolean isByteAligned() {
+        return (cacheBits & 7) == 0;
+    }
+
+    // more_rbsp_data()：当前位置之后是否还有 rbsp_stop_one_bit 之前的数据
+    public boolean moreRbspData() {
+        if (stopBit < 0) {
+            stopBit = findStopBit();
+        }
+        return bitPosition() < stopBit;
+    }
+
+    // 最后一个非0字节的最低位1即停止位，换算成去掉防竞争字节后的位下标
+    private int findStopBit() {
+        // 跳过末尾的 0x00 和 cabac_zero_word（0x000003）
+        int last = end - 1;
+        while (last >= start) {
+            byte b = data.get(last);
+            if (b == 0 || (b == 0x03 && last - 2 >= start && data.get(last - 1) == 0 && data.get(last - 2) == 0)) {
+                last--;
+            } else {
+                break;
+            }
+        }
+        if (last < start) {
+            return 0;
+        }
+        int emulationBytes = 0;
+        int zeros = 0;
+        for (int i = start; i < last; i++) {
+            byte b = data.get(i);
+            if (zeros >= 2 && b == 0x03) {
+                emulationBytes++;
+                zeros = 0;
+            } else {
+                zeros = b == 0 ? zeros + 1 : 0;
+            }
+        }
+        int lastByte = data.get(last) & 0xFF;
+        return (last - start - emulationBytes) * 8 + 7 - Integer.numberOfTrailingZeros(lastByte);
+    }
+
+    // 按字节装入缓存，直到缓存多于56位或数据结束
+    private void refill() {
+        while (cacheBits <= 56 && pos < end) {
+            int b = data.get(pos++) & 0xFF;
+            if (zeroCount >= 2 && b == 0x03) {
+                zeroCount = 0; // 防竞争字节，丢弃
+                continue;
+            }
+            zeroCount = b == 0 ? zeroCount + 1 : 0;
+            cache |= (long) b << (56 - cacheBits);
+            cacheBits += 8;
+            rbspBytes++;
+        }
+    }
+}
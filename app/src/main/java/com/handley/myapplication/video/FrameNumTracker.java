@@ -0,0 +1,104 @@
+package com.handley.myapplication.video;
+
+// 跟踪一路H264流的 frame_num 连续性，发现丢帧或slice损坏后进入"丢弃到下一个IDR"状态，
+// 避免把缺少参考帧的数据送给解码器（浪费解码时间，还会花屏好几秒）。
+// 刚开始时也处于丢弃状态，从第一个IDR开始输出。非线程安全，只在解码线程中使用。
+public class FrameNumTracker {
+
+    private final SliceHeader header = new SliceHeader();
+    private boolean discarding = true;
+    private int prevRefFrameNum;  // 上一个参考帧的 frame_num（标准中的 PrevRefFrameNum）
+    private int currentFrameNum;  // 当前图像的 frame_num，同一图像的后续slice必须一致
+    private boolean inPicture;    // 已收到当前图像的第一个slice
+    private int gapCount;         // 检测到的 frame_num 跳变次数
+    private int corruptCount;     // 解析失败的slice数
+    private int discardedCount;   // 丢弃的NAL数
+
+    // 检查一个NAL（不带起始码），返回false表示应该丢弃。SPS/PPS需要在调用前先放入参数集缓存。
+    // 被丢弃的slice可能是已经组装了一部分的图像的后续slice，调用方用 AccessUnitAssembler.discard() 整帧丢弃
+    public boolean accept(NalUnit nal, ParameterSetCache parameterSets) {
+        int nalType = nal.type();
+        if (nalType != 1 && nalType != 5) {
+            // SPS/PPS/SEI/AUD等不参与参考关系，总是保留（丢弃slice后只剩这些数据的帧由调用方跳过）
+            return true;
+        }
+
+        try {
+            header.parse(nal, parameterSets);
+        } catch (IllegalArgumentException e) {
+            corruptCount++;
+            return drop();
+        }
+
+        if (header.isIdr()) {
+            // IDR 不依赖任何参考帧，从这里恢复
+            discarding = false;
+            startPicture();
+            return true;
+        }
+        if (discarding) {
+            return drop();
+        }
+
+        if (header.firstMbInSlice == 0) {
+            // 新图像：frame_num 只能等于 PrevRefFrameNum（第二场）或 PrevRefFrameNum+1
+            int maxFrameNum = 1 << header.sps.log2MaxFrameNum;
+            if (header.frameNum != prevRefFrameNum && header.frameNum != (prevRefFrameNum + 1) % maxFrameNum
+                    && !header.sps.gapsInFrameNumAllowed) {
+                gapCount++;
+                return drop();
+            }
+            startPicture();
+        } else if (!inPicture || header.frameNum != currentFrameNum) {
+            // 图像的第一个slice丢了
+            gapCount++;
+            return drop();
+        }
+        return true;
+    }
+
+    private void startPicture() {
+        currentFrameNum = header.frameNum;
+        inPicture = true;
+        if (header.isReference()) {
+            prevRefFrameNum = header.frameNum;
+        }
+    }
+
+    // 进入丢弃状态，返回false
+    private boolean drop() {
+        discarding = true;
+        inPicture = false;
+        discardedCount++;
+        return false;
+    }
+
+    // 最近一次解析的slice头
+    public SliceHeader lastHeader() {
+        return header;
+    }
+
+    public boolean isDiscarding() {
+        return discarding;
+    }
+
+    public int gapCount() {
+        return gapCount;
+    }
+
+    public int corruptCount() {
+        return corruptCount;
+    }
+
+    public int discardedCount() {
+        return discardedCount;
+    }
+
+    // 流重新开始（如重新连接），等待下一个IDR
+    public void reset() {
+        discarding = true;
+        inPicture = false;
+        prevRefFrameNum = 0;
+        currentFrameNum = 0;
+    }
+}
@@ -11,12 +11,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.handley.myapplication.R;
 import com.handley.myapplication.common.AssetsFileCopier;
 import com.handley.myapplication.common.Utils;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 // 使用 MediaCodec 解码 test.h264 文件，渲染到 SurfaceView 上
@@ -24,14 +20,17 @@ public class H264ActivitySv extends AppCompatActivity implements SurfaceHolder.C
 
     private static final String TAG = Utils.TAG + "H264ActivitySv";
     private static final String MIME_TYPE = "video/avc";
-    private static final int FRAME_RATE = 25; // 假设帧率
-    private static final long FRAME_INTERVAL_US = 1000000 / FRAME_RATE;
+    private static final int DEFAULT_FRAME_RATE = 25; // SPS中没有帧率信息时使用
+    // 从第几帧开始播放（通过帧索引跳到之前最近的IDR），例如 adb shell am start --ei start_frame 500 -n ...
+    public static final String EXTRA_START_FRAME = "start_frame";
 
     private MediaCodec mediaCodec;
     private SurfaceView surfaceView;
     private Thread decoderThread;
     private File h264File;
     private volatile boolean isRunning = false;
+    private int startFrame; // EXTRA_START_FRAME，默认从头播放
+    private long frameIntervalUs = 1000000 / DEFAULT_FRAME_RATE; // 帧间隔，按SPS中的帧率计算
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -40,6 +39,7 @@ public class H264ActivitySv extends AppCompatActivity implements SurfaceHolder.C
         surfaceView = findViewById(R.id.surface_view);
         surfaceView.getHolder().addCallback(this);
         h264File = AssetsFileCopier.copyAssetToExternalFilesDir(this, "test.h264");
+        startFrame = getIntent().getIntExtra(EXTRA_START_FRAME, 0);
     }
 
     @Override
@@ -63,14 +63,13 @@ public class H264ActivitySv extends AppCompatActivity implements SurfaceHolder.C
             byte[] sps = spsPps[0];
             byte[] pps = spsPps[1];
 
-            // 从SPS中解析视频宽高
-            int[] dimensions = Utils.parseSps(sps);
+            // 从SPS中解析视频宽高、帧率
+            SpsInfo spsInfo = Utils.parseSpsInfo(sps);
+            int frameRate = spsInfo.frameRate(DEFAULT_FRAME_RATE);
+            frameIntervalUs = 1000000 / frameRate;
 
             // 创建并配置MediaFormat
-            MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, dimensions[0], dimensions[1]);
-            format.setByteBuffer("csd-0", ByteBuffer.wrap(Utils.addStartCode(sps)));
-            format.setByteBuffer("csd-1", ByteBuffer.wrap(Utils.addStartCode(pps)));
-            format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+            MediaFormat format = Utils.createVideoFormat(MIME_TYPE, spsInfo, sps, pps, DEFAULT_FRAME_RATE);
 
             // 初始化MediaCodec
             final boolean software = false; // 是否使用软件解码器
@@ -83,8 +82,8 @@ public class H264ActivitySv extends AppCompatActivity implements SurfaceHolder.C
             decoderThread = new Thread(new DecoderRunnable(h264File));
             //decoderThread.setPriority(Thread.MAX_PRIORITY); // 设置高优先级
             decoderThread.start();
-            Log.i(TAG, "startDecoder() soft=" + software + " dimensions=" + dimensions[0] + "x" + dimensions[1]);
-        } catch (IOException e) {
+            Log.i(TAG, "startDecoder() soft=" + software + " " + spsInfo);
+        } catch (IOException | IllegalArgumentException e) {
             e.printStackTrace();
         }
     }
@@ -119,77 +118,35 @@ public class H264ActivitySv extends AppCompatActivity implements SurfaceHolder.C
 
         @Override
         public void run() {
-            try (InputStream is = new BufferedInputStream(new FileInputStream(h264File))) {
-                H264StreamReader streamReader = new H264StreamReader(is);
+            try (MappedH264Reader reader = new MappedH264Reader(h264File)) {
+                NalUnit nal = new NalUnit(); // 复用的NAL视图
+                seekToKeyFrame(reader, startFrame);
 
-                boolean isWaitingForIDR = false;
-                ByteArrayOutputStream currentFrame = new ByteArrayOutputStream();
+                AccessUnitAssembler assembler = new AccessUnitAssembler(); // 按帧组装NAL，一帧提交一次
 
                 while (isRunning) {
-                    // 计算当前帧应该显示的时间（微秒）
-                    long presentationTimeUs = calculatePresentationTime();
-
-                    byte[] nal = streamReader.readNextNalUnit();
-                    if (nal == null) {
-                        break; // 没有更多数据
+                    AccessUnitAssembler.AccessUnit accessUnit;
+                    if (reader.readNextNalUnit(nal)) {
+                        accessUnit = assembler.add(nal);
+                        if (accessUnit == null) {
+                            continue; // 当前帧还没有组装完
+                        }
+                    } else {
+                        accessUnit = assembler.flush();
+                        if (accessUnit == null) {
+                            break; // 没有更多数据
+                        }
                     }
 
-                    if (nal.length < 1) {
-                        continue;
-                    }
+                    // 计算当前帧应该显示的时间（微秒）
+                    long presentationTimeUs = calculatePresentationTime();
+                    //Log.v(TAG, "accessUnit length=" + accessUnit.length + " flags=" + accessUnit.flags + " frameCounter=" + frameCounter + " presentationTimeUs=" + presentationTimeUs);
 
-                    int nalType = nal[0] & 0x1F;
-                    //Log.v(TAG, "nalType=" + nalType + " isWaitingForIDR=" + isWaitingForIDR + " frameCounter=" + frameCounter + " presentationTimeUs=" + presentationTimeUs);
-                    switch (nalType) {
-                        case 7: // SPS
-                            isWaitingForIDR = true;
-                            currentFrame.write(new byte[]{0, 0, 0, 1});
-                            currentFrame.write(nal);
-                            break;
-
-                        case 8: // PPS
-                            if (isWaitingForIDR) {
-                                currentFrame.write(new byte[]{0, 0, 0, 1});
-                                currentFrame.write(nal);
-                            }
-                            break;
-
-                        case 6: // SEI
-                            if (isWaitingForIDR) {
-                                currentFrame.write(new byte[]{0, 0, 0, 1});
-                                currentFrame.write(nal);
-                            }
-                            break;
-
-                        case 5: // IDR
-                            if (isWaitingForIDR) {
-                                currentFrame.write(new byte[]{0, 0, 0, 1});
-                                currentFrame.write(nal);
-                                submitFrame(currentFrame.toByteArray(), presentationTimeUs);
-                                currentFrame.reset();
-                                isWaitingForIDR = false;
-                                frameCounter++;
-                            } else {
-                                // 提交单个NAL单元
-                                submitSingleFrame(nal, presentationTimeUs);
-                                frameCounter++;
-                            }
-                            break;
-
-                        case 1: // 非IDR Slice
-                            if (isWaitingForIDR) {
-                                // 错误处理：预期IDR但遇到普通帧
-                                currentFrame.reset();
-                                isWaitingForIDR = false;
-                            }
-                            submitSingleFrame(nal, presentationTimeUs);
-                            frameCounter++;
-                            break;
-
-                        default:
-                            // 其他NAL类型（可选处理）
-                            break;
+                    submitFrame(accessUnit, presentationTimeUs);
+                    if (accessUnit.sliceCount == 0) {
+                        continue; // 只有参数集，不占用显示时间
                     }
+                    frameCounter++;
 
                     // 控制播放速度
                     controlPlaybackSpeed(presentationTimeUs);
@@ -205,15 +162,30 @@ public class H264ActivitySv extends AppCompatActivity implements SurfaceHolder.C
             }
         }
 
+        // 跳到指定帧之前最近的IDR，帧计数从该帧开始
+        private void seekToKeyFrame(MappedH264Reader reader, int frame) throws IOException {
+            if (frame <= 0) {
+                return;
+            }
+            H264FileIndex index = H264FileIndex.load(h264File);
+            int keyFrame = index.keyFrameBefore(frame);
+            if (keyFrame > 0) {
+                reader.seek(index.offset(keyFrame));
+                frameCounter = keyFrame;
+            }
+            Log.i(TAG, "seekToKeyFrame() frame=" + frame + " keyFrame=" + keyFrame + " frameCount=" + index.frameCount());
+        }
+
         // 计算当前帧的呈现时间
         private long calculatePresentationTime() {
             if (startTimeNs == -1) {
-                startTimeNs = System.nanoTime();
-                return 0;
+                // 从中间帧开始播放时，把开始时间往前推，保证后续帧按间隔播放
+                startTimeNs = System.nanoTime() - frameCounter * frameIntervalUs * 1000;
+                return frameCounter * frameIntervalUs;
             }
 
             // 计算基于帧计数的时间
-            return frameCounter * FRAME_INTERVAL_US;
+            return frameCounter * frameIntervalUs;
         }
 
         // 控制播放速度
@@ -241,23 +213,17 @@ public class H264ActivitySv extends AppCompatActivity implements SurfaceHolder.C
             }
         }
 
-        private void submitSingleFrame(byte[] nal, long pts) {
-            ByteBuffer frameData = ByteBuffer.allocate(nal.length + 4);
-            frameData.putInt(0x00000001); // 统一使用4字节起始码
-            frameData.put(nal);
-            frameData.flip();
-            submitFrame(frameData.array(), pts);
-        }
-
-        private void submitFrame(byte[] frameData, long presentationTimeUs) {
+        // 提交一帧（可能包含多个NAL），带上关键帧/配置帧标志
+        private void submitFrame(AccessUnitAssembler.AccessUnit accessUnit, long presentationTimeUs) {
             try {
                 int inputBufferIndex = mediaCodec.dequeueInputBuffer(10000);
                 if (inputBufferIndex >= 0) {
                     ByteBuffer inputBuffer = mediaCodec.getInputBuffer(inputBufferIndex);
                     inputBuffer.clear();
-                    inputBuffer.put(frameData);
+                    inputBuffer.put(accessUnit.data, 0, accessUnit.length);
 
-                    mediaCodec.queueInputBuffer(inputBufferIndex, 0, frameData.length, presentationTimeUs, 0);
+                    mediaCodec.queueInputBuffer(inputBufferIndex, 0, accessUnit.length, presentationTimeUs,
+                            accessUnit.flags);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -1,354 +1,90 @@
 package com.handley.myapplication.video;
 
-import android.media.MediaCodec;
 import android.media.MediaFormat;
-import android.os.Bundle;
 import android.util.Log;
-import android.view.Surface;
-import android.view.SurfaceHolder;
-import android.view.SurfaceView;
-import android.view.View;
-import android.widget.Button;
 
-import androidx.appcompat.app.AppCompatActivity;
-
-import com.handley.myapplication.R;
 import com.handley.myapplication.common.MediaMessageHeader;
 import com.handley.myapplication.common.MyFrame;
 import com.handley.myapplication.common.Utils;
-import com.handley.myapplication.tcp.MyClient;
-import com.handley.myapplication.tcp.MyServer;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 // 演示 MyVideoClient 向 MyVideoServer 发送(含私有协议头的)文件数据流，解码播放。
-public class H264ActivityTcpSv extends AppCompatActivity implements SurfaceHolder.Callback {
+public class H264ActivityTcpSv extends TcpDecodeActivity {
 
     private static final String TAG = Utils.TAG + "H264ActivityTcpSv";
-    private final BlockingQueue<MyFrame> frameQueue = new LinkedBlockingQueue<>(25); // 帧缓冲队列
-    private SurfaceView surfaceView;
-    private Button videoBtn, audioBtn;
-    private Surface surface;
-    private MyServer myServer;
-    private MyClient myClient;
-    private MediaCodec mediaCodec;
-    private long startTime = Long.MIN_VALUE; // 播放开始时间（毫秒）
-    private Thread decodeThread;
-    private volatile boolean decodeThreadRunning = false;
-
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
-        surfaceView = findViewById(R.id.surface_view);
-        surfaceView.getHolder().addCallback(this);
-        videoBtn = findViewById(R.id.video_btn);
-        audioBtn = findViewById(R.id.audio_btn);
-        videoBtn.setVisibility(View.VISIBLE);
-        audioBtn.setVisibility(View.GONE);
-
-        initTcp();
-
-        startDecodeThread();
-
-        Log.i(TAG, "onCreate()");
-    }
-
-    private void initTcp() {
-        final int port = 23334;
+    private final ParameterSetCache parameterSets = new ParameterSetCache(); // 重复的SPS/PPS不会触发重新配置
+    private final FrameNumTracker frameNumTracker = new FrameNumTracker(); // 检测丢帧，丢到下一个IDR
+    private int nextSequence = -1; // v2帧头中下一个期望的序号，只在解码线程使用
 
-        // 点击启动客户端发送文件
-        videoBtn.setOnClickListener(v -> {
-            myClient = new MyClient(this, "dump.h264", port);
-            myClient.start();
-            videoBtn.setEnabled(false);// 防止重复点击
-        });
-
-        // 创建并启动服务器
-        myServer = new MyServer((frame) -> {
-            // 处理接收到的帧数据
-            Log.d(TAG, "Received frame: type=" + frame.header.type + ", length=" + frame.header.dataLen + ", timestamp=" + frame.header.timestamp);
-            if (frame.header.type != MediaMessageHeader.H264) return;
-
-            if (startTime == Long.MIN_VALUE) {
-                long currentTime = System.nanoTime() / 1000000;
-                startTime = currentTime - frame.header.timestamp;
-                Log.i(TAG, "onFrameReceived init currentTime=" + currentTime + " pts=" + frame.header.timestamp + " startTime=" + startTime);
-            }
-
-            // 将帧存入队列，视频帧不能丢失，否则后续解不出来。要丢就得一直丢到下一个i帧。
-            try {
-                frameQueue.put(frame);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        }, port);
-        myServer.start();
+    public H264ActivityTcpSv() {
+        this(23334);
     }
 
-    // 启动解码播放线程
-    private void startDecodeThread() {
-        decodeThreadRunning = true;
-        decodeThread = new Thread(() -> {
-            while (decodeThreadRunning && !Thread.interrupted()) {
-                try {
-                    MyFrame frame = frameQueue.poll(50, TimeUnit.MILLISECONDS);
-                    if (frame == null) {
-                        continue;
-                    }
-
-                    // 1. 控制解码时机
-                    controlSpeed(frame.header.timestamp, 30);
-
-                    // 2. 处理H264数据
-                    decodeData(frame.frameData, frame.header.timestamp);
-                    Log.v(TAG, "decode pts=" + frame.header.timestamp);
-
-                    // 3. 处理解码输出
-                    drainOutput();
-                } catch (Exception e) {
-                    Log.e(TAG, "DecodeThread ex=" + e.getMessage());
-                }
-            }
-        }, "DecodeThread");
-        decodeThread.start();
+    protected H264ActivityTcpSv(int port) {
+        super("video/avc", false, port, "dump.h264");
     }
 
-
-    // 处理H264数据
-    private void decodeData(byte[] data, long pts) {
-        if (surface == null) {
-            Log.w(TAG, "Decode " + " surface=" + surface);
-            return;
-        }
-
-        byte[] sps = null, pps = null;
-        try (InputStream is = new ByteArrayInputStream(data)) {
-            H264StreamReader streamReader = new H264StreamReader(is);
-            boolean isWaitingForIDR = false;
-            ByteArrayOutputStream currentFrame = new ByteArrayOutputStream();
-            while (true) {
-                byte[] nal = streamReader.readNextNalUnit();
-                if (nal == null) {
-                    break; // 没有更多数据
-                }
-
-                if (nal.length < 1) {
-                    continue;
-                }
-
-                int nalType = nal[0] & 0x1F;
-                Log.v(TAG, "decodeData() nalType=" + nalType + " len=" + nal.length + " pts=" + pts);
-                switch (nalType) {
-                    case 7: // SPS
-                        isWaitingForIDR = true;
-                        currentFrame.write(new byte[]{0, 0, 0, 1});
-                        currentFrame.write(nal);
-                        sps = nal;
-                        break;
-
-                    case 8: // PPS
-                        if (isWaitingForIDR) {
-                            currentFrame.write(new byte[]{0, 0, 0, 1});
-                            currentFrame.write(nal);
-                            pps = nal;
-                        }
-                        break;
-
-                    case 6: // SEI
-                        if (isWaitingForIDR) {
-                            currentFrame.write(new byte[]{0, 0, 0, 1});
-                            currentFrame.write(nal);
-                        }
-                        break;
-
-                    case 5: // IDR
-                        if (isWaitingForIDR) {
-                            currentFrame.write(new byte[]{0, 0, 0, 1});
-                            currentFrame.write(nal);
-                            configMediaCodec(sps, pps);
-                            submitFrame(currentFrame.toByteArray(), pts);//带 sps pps 的I帧，直接提交
-                            currentFrame.reset();
-                            isWaitingForIDR = false;
-                        } else {
-                            submitSingleFrame(nal, pts);//不带 sps pps 的I帧，补起始码后提交
-                        }
-                        break;
-
-                    case 1: // 非IDR Slice
-                        if (isWaitingForIDR) {
-                            currentFrame.reset();
-                            isWaitingForIDR = false;
-                        }
-                        submitSingleFrame(nal, pts);//P帧，补起始码后提交
-                        break;
-
-                    default:
-                        // 其他NAL类型
-                        break;
-                }
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "H264 processing error", e);
-        }
+    @Override
+    protected boolean isSupportedType(byte type) {
+        return type == MediaMessageHeader.H264 || type == MediaMessageHeader.H264_AVCC;
     }
 
-    private synchronized void submitSingleFrame(byte[] nal, long pts) {
-        if (mediaCodec == null) {
-            Log.e(TAG, "submitSingleFrame: mediaCodec is null");
-            return;
+    @Override
+    protected boolean acceptNal(NalUnit nal) {
+        int nalType = nal.type();
+        if (nalType == 7 || nalType == 8) { // SPS/PPS
+            updateParameterSets(nal, nalType);
         }
-        ByteBuffer frameData = ByteBuffer.allocate(nal.length + 4);
-        frameData.putInt(0x00000001); // 统一使用4字节起始码
-        frameData.put(nal);
-        frameData.flip();
-        submitFrame(frameData.array(), pts);
+        return checkFrameNum(nal);
     }
 
-    private synchronized void submitFrame(byte[] frameData, long presentationTimeUs) {
-        if (mediaCodec == null) {
-            return;
-        }
+    // 更新参数集缓存，与缓存逐字节相同的SPS/PPS直接忽略
+    private void updateParameterSets(NalUnit nal, int nalType) {
         try {
-            int inputBufferIndex = mediaCodec.dequeueInputBuffer(10000);
-            if (inputBufferIndex >= 0) {
-                ByteBuffer inputBuffer = mediaCodec.getInputBuffer(inputBufferIndex);
-                if (inputBuffer != null) {
-                    inputBuffer.clear();
-                    inputBuffer.put(frameData);
-                    mediaCodec.queueInputBuffer(inputBufferIndex, 0, frameData.length, presentationTimeUs, 0);
-                }
+            boolean changed = nalType == 7 ? parameterSets.putSps(nal) : parameterSets.putPps(nal);
+            if (changed) {
+                parameterSetsChanged = true;
+                Log.i(TAG, "Parameter set changed: " + (nalType == 7 ? parameterSets.lastSps() : parameterSets.lastPps()));
             }
-        } catch (Exception e) {
-            Log.e(TAG, "submitFrame error", e);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid parameter set nalType=" + nalType + " " + e.getMessage());
         }
     }
 
-    private synchronized void drainOutput() {
-        if (mediaCodec == null) {
-            return;
-        }
-        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
-        int outputBufferIndex;
-
-        while ((outputBufferIndex = mediaCodec.dequeueOutputBuffer(bufferInfo, 10000)) >= 0) {
-            // 控制渲染时机
-            controlSpeed(bufferInfo.presentationTimeUs, 2);
-
-            // 渲染帧
-            Log.v(TAG, "releaseOutputBuffer pts=" + bufferInfo.presentationTimeUs);
-            mediaCodec.releaseOutputBuffer(outputBufferIndex, true);
-        }
-    }
-
-    private synchronized void configMediaCodec(byte[] sps, byte[] pps) {
-        if (mediaCodec != null) {
+    // v2帧头可以直接从序号发现丢帧，不用等解析slice。序号不连续说明中间丢了帧，直接进入丢弃状态，等下一个IDR
+    @Override
+    protected void checkFrame(MyFrame frame) {
+        if (!frame.header.isV2()) {
             return;
         }
-        try {
-            if (sps == null || pps == null) {
-                Log.w(TAG, "initMediaCodecIfNeeded: SPS/PPS not available");
-                return;
-            }
-
-            // 从SPS中解析视频宽高
-            int[] dimensions = Utils.parseSps(sps);
-
-            // 创建并配置MediaFormat
-            String MIME_TYPE = "video/avc";
-            MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, dimensions[0], dimensions[1]);
-            format.setByteBuffer("csd-0", ByteBuffer.wrap(Utils.addStartCode(sps)));
-            format.setByteBuffer("csd-1", ByteBuffer.wrap(Utils.addStartCode(pps)));
-            format.setInteger(MediaFormat.KEY_FRAME_RATE, 25);
-
-            // 初始化MediaCodec
-            final boolean software = false; // 是否使用软件解码器
-            mediaCodec = software ? Utils.findSoftwareDecoder(MIME_TYPE) : MediaCodec.createDecoderByType(MIME_TYPE);
-            mediaCodec.configure(format, surface, null, 0);
-            mediaCodec.start();
-
-            Log.i(TAG, "initMediaCodecIfNeeded() soft=" + software + " dimensions=" + dimensions[0] + "x" + dimensions[1]);
-        } catch (IOException | IllegalStateException e) {
-            Log.e(TAG, "initMediaCodecIfNeeded failed", e);
+        if (nextSequence >= 0 && frame.header.sequence != nextSequence) {
+            Log.w(TAG, "Sequence gap: expected " + nextSequence + " got " + frame.header.sequence);
+            frameNumTracker.reset();
+            assembler.reset();
         }
+        nextSequence = frame.header.sequence + 1;
     }
 
-    // 控制速度(pts 时间戳ms，ahead 提前多少ms)
-    private void controlSpeed(long pts, long ahead) {
-        long targetTime = startTime + pts;
-        long currentTime = System.nanoTime() / 1000000;
-        long sleepTime = targetTime - currentTime - ahead;
-        Log.v(TAG, "controlSpeed pts=" + pts + " ahead=" + ahead + " targetTime=" + targetTime + " currentTime=" + currentTime + " sleepTime=" + sleepTime);
-
-        // 如果太快，等待一段时间
-        if (sleepTime > 1) {
-            try {
-                Thread.sleep(sleepTime);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+    // 检查slice的 frame_num 连续性，返回false表示丢弃该NAL
+    private boolean checkFrameNum(NalUnit nal) {
+        boolean wasDiscarding = frameNumTracker.isDiscarding();
+        boolean accepted = frameNumTracker.accept(nal, parameterSets);
+        if (wasDiscarding != frameNumTracker.isDiscarding()) {
+            Log.w(TAG, (wasDiscarding ? "Recovered at IDR " : "Frame loss, discard until next IDR ")
+                    + frameNumTracker.lastHeader() + " gaps=" + frameNumTracker.gapCount()
+                    + " corrupt=" + frameNumTracker.corruptCount() + " discarded=" + frameNumTracker.discardedCount());
         }
+        return accepted;
     }
 
+    // 创建MediaFormat（宽高、帧率来自SPS）
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        release();
-    }
-
-    private synchronized void release() {
-        // 停止 tcp
-        if (myServer != null) {
-            myServer.stop();
-            myServer = null;
-        }
-        if (myClient != null) {
-            myClient.stop();
-            myClient = null;
+    protected MediaFormat createMediaFormat() {
+        SpsInfo spsInfo = parameterSets.lastSps();
+        byte[] sps = parameterSets.lastSpsBytes();
+        byte[] pps = parameterSets.lastPpsBytes();
+        if (sps == null || pps == null) {
+            return null;
         }
-
-        // 释放解码器
-        if (mediaCodec != null) {
-            mediaCodec.stop();
-            mediaCodec.release();
-            mediaCodec = null;
-        }
-
-        // 停止线程
-        decodeThreadRunning = false;
-        if (decodeThread != null) {
-            decodeThread.interrupt();
-            try {
-                decodeThread.join(200);
-            } catch (InterruptedException ignored) {
-            }
-        }
-
-        Log.i(TAG, "release()");
-    }
-
-    @Override
-    public void surfaceCreated(SurfaceHolder holder) {
-        surface = holder.getSurface();
-        Log.i(TAG, "Surface created");
-    }
-
-    @Override
-    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-        Log.i(TAG, "Surface changed: " + width + "x" + height);
-    }
-
-    @Override
-    public void surfaceDestroyed(SurfaceHolder holder) {
-        Log.i(TAG, "Surface destroyed");
-        release();
-        finish();//此类只为了演示解码渲染，不考虑 ui 交互。
+        return Utils.createVideoFormat("video/avc", spsInfo, sps, pps, DEFAULT_FRAME_RATE);
     }
-}
\ No newline at end of file
+}
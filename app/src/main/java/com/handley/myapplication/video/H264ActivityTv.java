@@ -11,12 +11,9 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.handley.myapplication.R;
 import com.handley.myapplication.common.AssetsFileCopier;
 import com.handley.myapplication.common.Utils;
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 // 使用 MediaCodec 解码 test.h264 文件，渲染到 TextureView 上
@@ -24,8 +21,9 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
 
     private static final String TAG = Utils.TAG + "H264ActivityTv";
     private static final String MIME_TYPE = "video/avc";
-    private static final int FRAME_RATE = 25; // 假设帧率
-    private static final long FRAME_INTERVAL_US = 1000000 / FRAME_RATE;
+    private static final int DEFAULT_FRAME_RATE = 25; // SPS中没有帧率信息时使用
+    // 从第几帧开始播放（通过帧索引跳到之前最近的IDR），例如 adb shell am start --ei start_frame 500 -n ...
+    public static final String EXTRA_START_FRAME = "start_frame";
 
     private MediaCodec mediaCodec;
     private TextureView textureView;
@@ -33,6 +31,8 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
     private Thread decoderThread;
     private File h264File;
     private volatile boolean isRunning = false;
+    private int startFrame; // EXTRA_START_FRAME，默认从头播放
+    private long frameIntervalUs = 1000000 / DEFAULT_FRAME_RATE; // 帧间隔，按SPS中的帧率计算
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,6 +41,7 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
         textureView = findViewById(R.id.texture_view);
         textureView.setSurfaceTextureListener(this);
         h264File = AssetsFileCopier.copyAssetToExternalFilesDir(this, "test.h264");
+        startFrame = getIntent().getIntExtra(EXTRA_START_FRAME, 0);
     }
 
     // TextureView回调方法
@@ -73,14 +74,13 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
             byte[] sps = spsPps[0];
             byte[] pps = spsPps[1];
 
-            // 从SPS中解析视频宽高
-            int[] dimensions = Utils.parseSps(sps);
+            // 从SPS中解析视频宽高、帧率
+            SpsInfo spsInfo = Utils.parseSpsInfo(sps);
+            int frameRate = spsInfo.frameRate(DEFAULT_FRAME_RATE);
+            frameIntervalUs = 1000000 / frameRate;
 
             // 创建并配置MediaFormat
-            MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, dimensions[0], dimensions[1]);
-            format.setByteBuffer("csd-0", ByteBuffer.wrap(Utils.addStartCode(sps)));
-            format.setByteBuffer("csd-1", ByteBuffer.wrap(Utils.addStartCode(pps)));
-            format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+            MediaFormat format = Utils.createVideoFormat(MIME_TYPE, spsInfo, sps, pps, DEFAULT_FRAME_RATE);
 
             // 初始化MediaCodec
             final boolean software = false; // 是否使用软件解码器
@@ -93,8 +93,8 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
             decoderThread = new Thread(new DecoderRunnable(h264File));
             //decoderThread.setPriority(Thread.MAX_PRIORITY); // 设置高优先级
             decoderThread.start();
-            Log.i(TAG, "startDecoder() software=" + software + " dimensions=" + dimensions[0] + "x" + dimensions[1]);
-        } catch (IOException e) {
+            Log.i(TAG, "startDecoder() software=" + software + " " + spsInfo);
+        } catch (IOException | IllegalArgumentException e) {
             e.printStackTrace();
         }
     }
@@ -129,8 +129,9 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
 
         @Override
         public void run() {
-            try (InputStream is = new BufferedInputStream(new FileInputStream(h264File))) {
-                H264StreamReader streamReader = new H264StreamReader(is);
+            try (MappedH264Reader reader = new MappedH264Reader(h264File)) {
+                NalUnit nal = new NalUnit(); // 复用的NAL视图
+                seekToKeyFrame(reader, startFrame);
 
                 boolean isWaitingForIDR = false;
                 ByteArrayOutputStream currentFrame = new ByteArrayOutputStream();
@@ -139,8 +140,7 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
                     // 计算当前帧应该显示的时间（微秒）
                     long presentationTimeUs = calculatePresentationTime();
 
-                    byte[] nal = streamReader.readNextNalUnit();
-                    if (nal == null) {
+                    if (!reader.readNextNalUnit(nal)) {
                         break; // 没有更多数据
                     }
 
@@ -148,34 +148,30 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
                         continue;
                     }
 
-                    int nalType = nal[0] & 0x1F;
+                    int nalType = nal.type();
                     Log.d(TAG, "nalType=" + nalType + " isWaitingForIDR=" + isWaitingForIDR + " frameCounter="
                             + frameCounter + " presentationTimeUs=" + presentationTimeUs);
                     switch (nalType) {
                         case 7: // SPS
                             isWaitingForIDR = true;
-                            currentFrame.write(new byte[]{0, 0, 0, 1});
-                            currentFrame.write(nal);
+                            nal.writeTo(currentFrame);
                             break;
 
                         case 8: // PPS
                             if (isWaitingForIDR) {
-                                currentFrame.write(new byte[]{0, 0, 0, 1});
-                                currentFrame.write(nal);
+                                nal.writeTo(currentFrame);
                             }
                             break;
 
                         case 6: // SEI
                             if (isWaitingForIDR) {
-                                currentFrame.write(new byte[]{0, 0, 0, 1});
-                                currentFrame.write(nal);
+                                nal.writeTo(currentFrame);
                             }
                             break;
 
                         case 5: // IDR
                             if (isWaitingForIDR) {
-                                currentFrame.write(new byte[]{0, 0, 0, 1});
-                                currentFrame.write(nal);
+                                nal.writeTo(currentFrame);
                                 submitFrame(currentFrame.toByteArray(), presentationTimeUs, true);
                                 currentFrame.reset();
                                 isWaitingForIDR = false;
@@ -216,15 +212,30 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
             }
         }
 
+        // 跳到指定帧之前最近的IDR，帧计数从该帧开始
+        private void seekToKeyFrame(MappedH264Reader reader, int frame) throws IOException {
+            if (frame <= 0) {
+                return;
+            }
+            H264FileIndex index = H264FileIndex.load(h264File);
+            int keyFrame = index.keyFrameBefore(frame);
+            if (keyFrame > 0) {
+                reader.seek(index.offset(keyFrame));
+                frameCounter = keyFrame;
+            }
+            Log.i(TAG, "seekToKeyFrame() frame=" + frame + " keyFrame=" + keyFrame + " frameCount=" + index.frameCount());
+        }
+
         // 计算当前帧的呈现时间
         private long calculatePresentationTime() {
             if (startTimeNs == -1) {
-                startTimeNs = System.nanoTime();
-                return 0;
+                // 从中间帧开始播放时，把开始时间往前推，保证后续帧按间隔播放
+                startTimeNs = System.nanoTime() - frameCounter * frameIntervalUs * 1000;
+                return frameCounter * frameIntervalUs;
             }
 
             // 计算基于帧计数的时间
-            return frameCounter * FRAME_INTERVAL_US;
+            return frameCounter * frameIntervalUs;
         }
 
         // 控制播放速度
@@ -252,12 +263,22 @@ public class H264ActivityTv extends AppCompatActivity implements TextureView.Sur
             }
         }
 
-        private void submitSingleFrame(byte[] nal, long pts, boolean isKeyFrame) {
-            ByteBuffer frameData = ByteBuffer.allocate(nal.length + 4);
-            frameData.putInt(0x00000001); // 统一使用4字节起始码
-            frameData.put(nal);
-            frameData.flip();
-            submitFrame(frameData.array(), pts, isKeyFrame);
+        // 直接把NAL写入解码器输入缓冲区（统一使用4字节起始码），不经过中间数组
+        private void submitSingleFrame(NalUnit nal, long pts, boolean isKeyFrame) {
+            try {
+                int inputBufferIndex = mediaCodec.dequeueInputBuffer(10000);
+                if (inputBufferIndex >= 0) {
+                    ByteBuffer inputBuffer = mediaCodec.getInputBuffer(inputBufferIndex);
+                    inputBuffer.clear();
+                    int size = nal.writeTo(inputBuffer);
+                    Log.v(TAG, "submitSingleFrame() inputBufferIndex=" + inputBufferIndex + " size=" + size
+                            + " presentationTimeUs=" + pts + " isKeyFrame=" + isKeyFrame);
+                    mediaCodec.queueInputBuffer(inputBufferIndex, 0, size, pts,
+                            isKeyFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
 
         private void submitFrame(byte[] frameData, long presentationTimeUs, boolean isKeyFrame) {
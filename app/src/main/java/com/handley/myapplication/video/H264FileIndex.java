@@ -0,0 +1,203 @@
+package com.handley.myapplication.video;
+
+import android.util.Log;
+import com.handley.myapplication.common.Utils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+// H264 文件帧索引：记录每个访问单元（一帧，含前面的SPS/PPS/SEI）在文件中的位置、大小和类型，帧号即下标。
+// 索引保存在同目录的 .idx 文件中，源文件大小或修改时间变化时自动重建。用于直接跳到任意帧之前最近的IDR开始解码。
+public class H264FileIndex {
+
+    private static final String TAG = Utils.TAG + "H264FileIndex";
+    private static final int MAGIC = 0x48494458; // "HIDX"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".idx";
+    private static final int HEADER_SIZE = 28;  // magic, version, 源文件大小, 修改时间, 帧数
+    private static final int ENTRY_SIZE = 13;   // offset(long) + size(int) + type(byte)
+
+    private final long[] offsets;    // 帧在文件中的位置（指向第一个NAL的 0x000001 起始码）
+    private final int[] sizes;       // 帧大小（到下一帧开头）
+    private final byte[] types;      // 帧中第一个 slice 的NAL类型（5=IDR，1=非IDR）
+    private final int[] keyFrames;   // 每一帧之前（含）最近的IDR帧号，没有则为-1
+
+    private H264FileIndex(long[] offsets, int[] sizes, byte[] types) {
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.types = types;
+        this.keyFrames = new int[types.length];
+        int lastKeyFrame = -1;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == 5) {
+                lastKeyFrame = i;
+            }
+            keyFrames[i] = lastKeyFrame;
+        }
+    }
+
+    // 加载索引，索引文件不存在或已过期时重新扫描源文件并保存
+    public static H264FileIndex load(File h264File) throws IOException {
+        File indexFile = new File(h264File.getPath() + SUFFIX);
+        long fileSize = h264File.length();
+        long lastModified = h264File.lastModified();
+
+        if (indexFile.exists()) {
+            try {
+                H264FileIndex index = read(indexFile, fileSize, lastModified);
+                if (index != null) {
+                    return index;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "load() invalid index file: " + indexFile, e);
+            }
+        }
+
+        H264FileIndex index = build(h264File);
+        try {
+            index.write(indexFile, fileSize, lastModified);
+        } catch (IOException e) {
+            Log.w(TAG, "load() failed to save index file: " + indexFile, e);
+        }
+        return index;
+    }
+
+    // 扫描源文件建立索引
+    public static H264FileIndex build(File h264File) throws IOException {
+        int count = 0;
+        long[] offsets = new long[1024];
+        int[] sizes = new int[1024];
+        byte[] types = new byte[1024];
+
+        try (MappedH264Reader reader = new MappedH264Reader(h264File)) {
+            NalUnit nal = new NalUnit();
+            long auStart = -1;      // 当前访问单元开始位置
+            boolean auHasSlice = false;
+            long end = 0;           // 最近一个NAL的结束位置
+            while (reader.readNextNalUnit(nal)) {
+                if (nal.length < 1) {
+                    continue;
+                }
+                long nalOffset = reader.lastNalOffset();
+                int nalType = nal.type();
+                boolean isSlice = nalType == 1 || nalType == 5;
+                // 新访问单元：slice 之后出现非 slice NAL，或 first_mb_in_slice == 0 的 slice（ue(v) 首位为1）
+                boolean startsAu = auHasSlice && (!isSlice || (nal.length > 1 && (nal.get(1) & 0x80) != 0));
+                if (auStart < 0 || startsAu) {
+                    if (auStart >= 0) {
+                        sizes[count - 1] = (int) (nalOffset - 3 - auStart);
+                    }
+                    if (count == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                        sizes = Arrays.copyOf(sizes, count * 2);
+                        types = Arrays.copyOf(types, count * 2);
+                    }
+                    auStart = nalOffset - 3;
+                    offsets[count] = auStart;
+                    types[count] = 0;
+                    count++;
+                    auHasSlice = false;
+                }
+                if (isSlice && !auHasSlice) {
+                    types[count - 1] = (byte) nalType;
+                    auHasSlice = true;
+                }
+                end = nalOffset + nal.length;
+            }
+            if (count > 0) {
+                sizes[count - 1] = (int) (end - auStart);
+            }
+        }
+
+        return new H264FileIndex(Arrays.copyOf(offsets, count), Arrays.copyOf(sizes, count),
+                Arrays.copyOf(types, count));
+    }
+
+    private static H264FileIndex read(File indexFile, long fileSize, long lastModified) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (in.readLong() != fileSize || in.readLong() != lastModified) {
+                return null; // 源文件已变化
+            }
+            int count = in.readInt();
+            // 帧数来自文件，先按文件长度检查，避免截断或损坏的索引分配负数或超大的数组
+            if (count < 0 || count > (indexFile.length() - HEADER_SIZE) / ENTRY_SIZE) {
+                throw new IOException("Invalid frame count " + count);
+            }
+            long[] offsets = new long[count];
+            int[] sizes = new int[count];
+            byte[] types = new byte[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.readLong();
+                sizes[i] = in.readInt();
+                types[i] = in.readByte();
+            }
+            return new H264FileIndex(offsets, sizes, types);
+        }
+    }
+
+    // 先写临时文件再改名，写到一半（进程被杀、磁盘满）的索引不会被读到
+    private void write(File indexFile, long fileSize, long lastModified) throws IOException {
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            writeEntries(tempFile, fileSize, lastModified);
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private void writeEntries(File file, long fileSize, long lastModified) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeInt(offsets.length);
+            for (int i = 0; i < offsets.length; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(sizes[i]);
+                out.writeByte(types[i]);
+            }
+        }
+    }
+
+    public int frameCount() {
+        return offsets.length;
+    }
+
+    public long offset(int frame) {
+        return offsets[frame];
+    }
+
+    public int size(int frame) {
+        return sizes[frame];
+    }
+
+    public int nalType(int frame) {
+        return types[frame];
+    }
+
+    public boolean isKeyFrame(int frame) {
+        return types[frame] == 5;
+    }
+
+    // 指定帧之前（含）最近的IDR帧号，没有返回-1
+    public int keyFrameBefore(int frame) {
+        if (frame < 0 || keyFrames.length == 0) {
+            return -1;
+        }
+        return keyFrames[Math.min(frame, keyFrames.length - 1)];
+    }
+}
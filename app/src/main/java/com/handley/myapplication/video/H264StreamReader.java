@@ -2,87 +2,135 @@ package com.handley.myapplication.video;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 // 流式NAL单元读取器（支持3字节和4字节起始码）
-public class H264StreamReader {
+// 两种用法：1. 从 InputStream 读取，内部缓冲区按需增长，能容纳任意大小的NAL；
+// 2. 调用 reset() 直接在调用方的数组/ByteBuffer上拆分（如每条TCP消息），不拷贝也不分配缓冲区，读取器可反复使用。
+public class H264StreamReader implements NalSource {
 
-    private static final int BUFFER_SIZE = 1024 * 1024; // 1MB 缓冲区
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024; // 初始64KB，NAL放不下时翻倍
 
-    private final InputStream inputStream;
-    private final byte[] buffer;
+    private InputStream inputStream;
+    private byte[] buffer;       // 数据所在数组，直接内存的 ByteBuffer 时为null
+    private ByteBuffer bufferView; // 数据的 ByteBuffer 视图（下标与 buffer 一致），供 NalUnit 引用
     private int bufferPos;
     private int bufferSize;
     private boolean endOfStream;
     private int bytesProcessed;
+    private int startCodeLength; // 最近一次 findStartCode() 找到的起始码长度（3或4）
 
     public H264StreamReader(InputStream is) {
         this.inputStream = is;
-        this.buffer = new byte[BUFFER_SIZE];
+        this.buffer = new byte[INITIAL_BUFFER_SIZE];
+        this.bufferView = ByteBuffer.wrap(buffer);
         this.bufferPos = 0;
         this.bufferSize = 0;
         this.endOfStream = false;
         this.bytesProcessed = 0;
     }
 
-    // 读取下一个NAL单元
+    // 不带输入流，配合 reset() 使用
+    public H264StreamReader() {
+        this.endOfStream = true;
+    }
+
+    // 在 data[offset, offset + length) 上重新开始读取，不拷贝数据。同一个数组重复使用时不分配任何对象。
+    public void reset(byte[] data, int offset, int length) {
+        if (buffer != data || bufferView == null) {
+            buffer = data;
+            bufferView = ByteBuffer.wrap(data);
+        }
+        inputStream = null;
+        bufferPos = offset;
+        bufferSize = offset + length;
+        endOfStream = true;
+        bytesProcessed = 0;
+    }
+
+    // 在 data 的 [position, limit) 上重新开始读取，不拷贝数据，不改变 data 的 position/limit
+    public void reset(ByteBuffer data) {
+        buffer = data.hasArray() && data.arrayOffset() == 0 ? data.array() : null;
+        bufferView = data;
+        inputStream = null;
+        bufferPos = data.position();
+        bufferSize = data.limit();
+        endOfStream = true;
+        bytesProcessed = 0;
+    }
+
+    // 读取下一个NAL单元（拷贝一份），兼容旧接口
     public byte[] readNextNalUnit() throws IOException {
+        NalUnit nal = new NalUnit();
+        return readNextNalUnit(nal) ? nal.toByteArray() : null;
+    }
+
+    // 读取下一个NAL单元到视图中，不拷贝数据。视图指向内部缓冲区，下一次读取前有效。
+    @Override
+    public boolean readNextNalUnit(NalUnit out) throws IOException {
         if (endOfStream && bufferSize == 0) {
-            return null; // 没有更多数据
+            return false; // 没有更多数据
         }
 
         // 查找起始码
-        StartCodeInfo startCodeInfo = findStartCode();
-        if (startCodeInfo == null) {
-            return null; // 没有找到起始码
+        int startCodePos = findStartCode();
+        if (startCodePos < 0) {
+            return false; // 没有找到起始码
         }
 
         // 跳过起始码
-        bufferPos += startCodeInfo.position + startCodeInfo.length;
-        bytesProcessed += startCodeInfo.position + startCodeInfo.length;
-
-        // 查找下一个起始码
-        StartCodeInfo nextStartCodeInfo = findStartCode();
-        if (nextStartCodeInfo == null) {
-            // 如果没有找到下一个起始码，读取剩余数据
-            return readRemainingData();
+        bufferPos += startCodePos + startCodeLength;
+        bytesProcessed += startCodePos + startCodeLength;
+
+        // 查找下一个起始码（可能触发缓冲区整理，所以之后再取 bufferPos）
+        int nalLength = findStartCode();
+        if (nalLength < 0) {
+            // 如果没有找到下一个起始码，剩余数据作为最后一个NAL单元
+            nalLength = bufferSize - bufferPos;
+            if (nalLength <= 0) {
+                return false;
+            }
         }
 
         // 提取NAL单元
-        int nalLength = nextStartCodeInfo.position;
-        byte[] nal = new byte[nalLength];
-        System.arraycopy(buffer, bufferPos, nal, 0, nalLength);
+        out.set(bufferView, bufferPos, nalLength);
         bufferPos += nalLength;
         bytesProcessed += nalLength;
-
-        return nal;
+        return true;
     }
 
-    // 查找起始码信息
-    private StartCodeInfo findStartCode() throws IOException {
+    // 查找起始码，返回相对于bufferPos的位置，没有找到返回-1。起始码长度保存在 startCodeLength。
+    private int findStartCode() throws IOException {
         while (true) {
             // 检查缓冲区中是否有足够的数据
             if (bufferSize - bufferPos < 4) {
                 if (!refillBuffer()) {
-                    return null; // 没有更多数据
+                    return -1; // 没有更多数据
                 }
             }
 
             // 在缓冲区中查找起始码
-            for (int i = bufferPos; i <= bufferSize - 4; i++) {
-                // 检测4字节起始码 (0x00000001)
-                if (buffer[i] == 0x00 && buffer[i + 1] == 0x00 && buffer[i + 2] == 0x00 && buffer[i + 3] == 0x01) {
-                    return new StartCodeInfo(i - bufferPos, 4);
+            int i = buffer != null
+                    ? StartCodeScanner.indexOf(buffer, bufferPos, bufferSize)
+                    : StartCodeScanner.indexOf(bufferView, bufferPos, bufferSize);
+            if (i >= 0) {
+                // 检测4字节起始码 (0x00000001)：0x000001 前面还有一个0x00
+                if (i > bufferPos && bufferView.get(i - 1) == 0x00) {
+                    startCodeLength = 4;
+                    return i - 1 - bufferPos;
                 }
 
-                // 检测3字节起始码 (0x000001)
-                if (buffer[i] == 0x00 && buffer[i + 1] == 0x00 && buffer[i + 2] == 0x01) {
-                    return new StartCodeInfo(i - bufferPos, 3);
+                // 检测3字节起始码 (0x000001)，最后3个字节不单独算作起始码，与逐字节扫描的结果保持一致
+                if (i <= bufferSize - 4) {
+                    startCodeLength = 3;
+                    return i - bufferPos;
                 }
             }
 
             // 如果没有找到起始码，尝试读取更多数据
             if (!refillBuffer()) {
-                return null; // 没有更多数据
+                return -1; // 没有更多数据
             }
         }
     }
@@ -93,9 +141,12 @@ public class H264StreamReader {
             return false;
         }
 
-        // 移动剩余数据到缓冲区开头
+        // 移动剩余数据到缓冲区开头，缓冲区已满（NAL比缓冲区大）时扩容
         int remaining = bufferSize - bufferPos;
-        if (remaining > 0) {
+        if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2); // 此时 bufferPos 为0
+            bufferView = ByteBuffer.wrap(buffer);
+        } else if (remaining > 0) {
             System.arraycopy(buffer, bufferPos, buffer, 0, remaining);
         }
 
@@ -112,18 +163,4 @@ public class H264StreamReader {
         bufferSize += bytesRead;
         return true;
     }
-
-    // 读取剩余数据作为最后一个NAL单元
-    private byte[] readRemainingData() {
-        int nalLength = bufferSize - bufferPos;
-        if (nalLength <= 0) {
-            return null;
-        }
-
-        byte[] nal = new byte[nalLength];
-        System.arraycopy(buffer, bufferPos, nal, 0, nalLength);
-        bufferPos += nalLength;
-        bytesProcessed += nalLength;
-        return nal;
-    }
 }
@@ -0,0 +1,81 @@
+package com.handley.myapplication.video;
+
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.Utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// 演示 MyVideoClient 向 MyVideoServer 发送(含私有协议头的) H265 文件数据流，解码播放。队列和播放控制与 H264ActivityTcpSv 相同。
+public class H265ActivityTcpSv extends TcpDecodeActivity {
+
+    private static final String TAG = Utils.TAG + "H265ActivityTcpSv";
+    private byte[] vps, sps, pps; // 最近收到的参数集（不带起始码），只在解码线程使用
+    private H265SpsInfo spsInfo; // H265 SPS 不解析VUI，使用固定帧率
+
+    public H265ActivityTcpSv() {
+        super("video/hevc", true, 23335, "dump.h265");
+    }
+
+    @Override
+    protected boolean isSupportedType(byte type) {
+        return type == MediaMessageHeader.H265 || type == MediaMessageHeader.H265_HVCC;
+    }
+
+    @Override
+    protected boolean acceptNal(NalUnit nal) {
+        int nalType = H265Nal.type(nal);
+        if (H265Nal.isParameterSet(nalType)) { // VPS/SPS/PPS
+            updateParameterSets(nal, nalType);
+        }
+        return true;
+    }
+
+    // 保存参数集，与上一次逐字节相同时忽略
+    private void updateParameterSets(NalUnit nal, int nalType) {
+        byte[] previous = nalType == H265Nal.VPS ? vps : nalType == H265Nal.SPS ? sps : pps;
+        byte[] bytes = nal.toByteArray();
+        if (Arrays.equals(previous, bytes)) {
+            return;
+        }
+        if (nalType == H265Nal.SPS) {
+            try {
+                spsInfo = H265SpsInfo.parse(bytes);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Invalid SPS " + e.getMessage());
+                return;
+            }
+            sps = bytes;
+            Log.i(TAG, "Parameter set changed: " + spsInfo);
+        } else if (nalType == H265Nal.VPS) {
+            vps = bytes;
+        } else {
+            pps = bytes;
+        }
+        parameterSetsChanged = true;
+    }
+
+    // 创建MediaFormat，H265 的 VPS/SPS/PPS 都放在 csd-0 中
+    @Override
+    protected MediaFormat createMediaFormat() {
+        if (vps == null || sps == null || pps == null) {
+            return null;
+        }
+        MediaFormat format = MediaFormat.createVideoFormat("video/hevc", spsInfo.width, spsInfo.height);
+        format.setInteger(MediaFormat.KEY_MAX_WIDTH, spsInfo.width);
+        format.setInteger(MediaFormat.KEY_MAX_HEIGHT, spsInfo.height);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, DEFAULT_FRAME_RATE);
+        byte[] csd = new byte[12 + vps.length + sps.length + pps.length];
+        int offset = 0;
+        for (byte[] parameterSet : new byte[][]{vps, sps, pps}) {
+            System.arraycopy(NalUnit.START_CODE, 0, csd, offset, 4);
+            System.arraycopy(parameterSet, 0, csd, offset + 4, parameterSet.length);
+            offset += 4 + parameterSet.length;
+        }
+        format.setByteBuffer("csd-0", ByteBuffer.wrap(csd));
+        return format;
+    }
+}
@@ -0,0 +1,66 @@
+package com.handley.myapplication.video;
+
+// H265/HEVC NAL 头（2字节）：forbidden_zero_bit(1) nal_unit_type(6) nuh_layer_id(6) nuh_temporal_id_plus1(3)
+public final class H265Nal {
+
+    public static final int TRAIL_N = 0;
+    public static final int RASL_R = 9;     // 0~9 为非IRAP的VCL
+    public static final int BLA_W_LP = 16;  // 16~23 为IRAP（BLA/IDR/CRA及保留值）
+    public static final int IDR_W_RADL = 19;
+    public static final int IDR_N_LP = 20;
+    public static final int CRA_NUT = 21;
+    public static final int VPS = 32;
+    public static final int SPS = 33;
+    public static final int PPS = 34;
+    public static final int AUD = 35;
+    public static final int EOS = 36;
+    public static final int EOB = 37;
+    public static final int FD = 38;
+    public static final int PREFIX_SEI = 39;
+    public static final int SUFFIX_SEI = 40;
+
+    private H265Nal() {
+    }
+
+    // NAL类型（第一个字节的 bit1~6）
+    public static int type(NalUnit nal) {
+        return (nal.get(0) >> 1) & 0x3F;
+    }
+
+    public static int layerId(NalUnit nal) {
+        return ((nal.get(0) & 0x01) << 5) | ((nal.get(1) >> 3) & 0x1F);
+    }
+
+    public static int temporalId(NalUnit nal) {
+        return (nal.get(1) & 0x07) - 1;
+    }
+
+    // 0~31 为 VCL（slice segment）
+    public static boolean isVcl(int type) {
+        return type < 32;
+    }
+
+    // IRAP（随机访问点，可作为关键帧开始解码）
+    public static boolean isIrap(int type) {
+        return type >= BLA_W_LP && type <= 23;
+    }
+
+    public static boolean isParameterSet(int type) {
+        return type == VPS || type == SPS || type == PPS;
+    }
+
+    // slice segment 的 first_slice_segment_in_pic_flag（NAL头后的第一个比特）
+    public static boolean isFirstSliceSegment(NalUnit nal) {
+        return nal.length > 2 && (nal.get(2) & 0x80) != 0;
+    }
+
+    // 当前帧已有slice时，该NAL是否开始新的一帧（H.265 7.4.2.4.4）
+    public static boolean startsNewAccessUnit(NalUnit nal) {
+        int type = type(nal);
+        if (isVcl(type)) {
+            return isFirstSliceSegment(nal);
+        }
+        return (type >= VPS && type <= AUD) || type == PREFIX_SEI || (type >= 41 && type <= 44)
+                || (type >= 48 && type <= 55);
+    }
+}
@@ -0,0 +1,111 @@
+package com.handley.myapplication.video;
+
+// H265 SPS 解析结果：只解析到 conformance window 和位深，足够配置解码器
+public class H265SpsInfo {
+
+    public int vpsId;
+    public int maxSubLayers;
+    public int profileSpace;
+    public boolean tierFlag; // true=High tier
+    public int profileIdc;
+    public int levelIdc;     // 等于 30 * 级别，如 93 表示 3.1
+    public int spsId;
+    public int chromaFormatIdc;
+    public boolean separateColourPlane;
+    public int codedWidth;   // pic_width_in_luma_samples
+    public int codedHeight;
+    public int width;        // 裁剪后的宽高
+    public int height;
+    public int bitDepthLuma;
+    public int bitDepthChroma;
+
+    // 解析SPS NAL（不带起始码，含2字节NAL头），解析失败抛出 IllegalArgumentException
+    public static H265SpsInfo parse(byte[] sps) {
+        BitReader reader = new BitReader();
+        reader.reset(sps, 0, sps.length);
+        return parse(reader);
+    }
+
+    public static H265SpsInfo parse(NalUnit nal) {
+        BitReader reader = new BitReader();
+        reader.reset(nal, 0);
+        return parse(reader);
+    }
+
+    static H265SpsInfo parse(BitReader reader) {
+        try {
+            int header = reader.readBits(16);
+            if (((header >> 9) & 0x3F) != H265Nal.SPS) {
+                throw new IllegalArgumentException("Not a H265 SPS NAL unit");
+            }
+            H265SpsInfo sps = new H265SpsInfo();
+            sps.parseBody(reader);
+            return sps;
+        } catch (IndexOutOfBoundsException | IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid H265 SPS: " + e.getMessage(), e);
+        }
+    }
+
+    private void parseBody(BitReader reader) {
+        vpsId = reader.readBits(4);
+        maxSubLayers = reader.readBits(3) + 1;
+        reader.readBool(); // sps_temporal_id_nesting_flag
+        parseProfileTierLevel(reader);
+        spsId = reader.readUE();
+        if (spsId > 15) {
+            throw new IllegalArgumentException("Invalid sps_seq_parameter_set_id: " + spsId);
+        }
+        chromaFormatIdc = reader.readUE();
+        if (chromaFormatIdc == 3) {
+            separateColourPlane = reader.readBool();
+        }
+        codedWidth = reader.readUE();
+        codedHeight = reader.readUE();
+        width = codedWidth;
+        height = codedHeight;
+        if (reader.readBool()) { // conformance_window_flag
+            // 裁剪单位为 SubWidthC/SubHeightC
+            int chromaArrayType = separateColourPlane ? 0 : chromaFormatIdc;
+            int subWidth = chromaArrayType == 1 || chromaArrayType == 2 ? 2 : 1;
+            int subHeight = chromaArrayType == 1 ? 2 : 1;
+            width -= (reader.readUE() + reader.readUE()) * subWidth;
+            height -= (reader.readUE() + reader.readUE()) * subHeight;
+        }
+        bitDepthLuma = reader.readUE() + 8;
+        bitDepthChroma = reader.readUE() + 8;
+    }
+
+    private void parseProfileTierLevel(BitReader reader) {
+        profileSpace = reader.readBits(2);
+        tierFlag = reader.readBool();
+        profileIdc = reader.readBits(5);
+        reader.skipBits(32); // general_profile_compatibility_flag[32]
+        reader.skipBits(48); // progressive/interlaced/non_packed/frame_only + 44位保留/约束标志
+        levelIdc = reader.readBits(8);
+
+        int subLayers = maxSubLayers - 1;
+        boolean[] profilePresent = new boolean[subLayers];
+        boolean[] levelPresent = new boolean[subLayers];
+        for (int i = 0; i < subLayers; i++) {
+            profilePresent[i] = reader.readBool();
+            levelPresent[i] = reader.readBool();
+        }
+        if (subLayers > 0) {
+            reader.skipBits(2 * (8 - subLayers)); // reserved_zero_2bits
+        }
+        for (int i = 0; i < subLayers; i++) {
+            if (profilePresent[i]) {
+                reader.skipBits(88);
+            }
+            if (levelPresent[i]) {
+                reader.skipBits(8);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "H265SpsInfo{id=" + spsId + " profile=" + profileIdc + " level=" + levelIdc + " chroma="
+                + chromaFormatIdc + " " + width + "x" + height + " bitDepth=" + bitDepthLuma + "}";
+    }
+}
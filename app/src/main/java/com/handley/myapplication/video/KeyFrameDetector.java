@@ -0,0 +1,146 @@
+package com.handley.myapplication.video;
+
+import com.handley.myapplication.common.MediaMessageHeader;
+
+// 判断一条消息能否作为解码的起点：v2帧头优先看 flags，否则查看帧数据中的NAL类型，遇到第一个VCL NAL就停止，
+// 不需要扫描整个帧。音频每一帧都可以独立解码。
+public final class KeyFrameDetector {
+
+    public static final int DELTA = 0;  // 依赖前面的帧
+    public static final int KEY = 1;    // IDR/IRAP（可能同时带参数集），可以从这里开始解码
+    public static final int CONFIG = 2; // 只有参数集（SPS/PPS/VPS）等配置数据，没有图像
+
+    private KeyFrameDetector() {
+    }
+
+    public static int classify(MediaMessageHeader header, byte[] data) {
+        if (header.isCodecConfig()) {
+            return CONFIG;
+        }
+        if (header.isKeyFrame()) {
+            return KEY;
+        }
+        switch (header.type) {
+            case MediaMessageHeader.H264:
+                return classifyAnnexB(data, header.dataLen, false);
+            case MediaMessageHeader.H265:
+                return classifyAnnexB(data, header.dataLen, true);
+            case MediaMessageHeader.H264_AVCC:
+                return classifyLengthPrefixed(data, header.dataLen, false);
+            case MediaMessageHeader.H265_HVCC:
+                return classifyLengthPrefixed(data, header.dataLen, true);
+            case MediaMessageHeader.VP8:
+                return header.dataLen > 0 && (data[0] & 0x01) == 0 ? KEY : DELTA; // 帧标签第0位为0是关键帧
+            default:
+                return KEY;
+        }
+    }
+
+    // 拥塞时可以丢弃、不影响后续解码的帧：v2帧头的 FLAG_DISCARDABLE，或第一个VCL NAL为非参考帧
+    // （H.264 nal_ref_idc 为0，H.265 子层非参考帧 TRAIL_N/TSA_N/STSA_N/RADL_N/RASL_N 等偶数类型）
+    public static boolean isDiscardable(MediaMessageHeader header, byte[] data) {
+        if (header.isDiscardable()) {
+            return true;
+        }
+        switch (header.type) {
+            case MediaMessageHeader.H264:
+            case MediaMessageHeader.H265: {
+                boolean hevc = header.type == MediaMessageHeader.H265;
+                int pos = StartCodeScanner.indexOf(data, 0, header.dataLen);
+                while (pos >= 0 && pos + 3 < header.dataLen) {
+                    if (classifyNal(data[pos + 3], hevc) != CONFIG) {
+                        return isNonReference(data[pos + 3], hevc);
+                    }
+                    pos = StartCodeScanner.indexOf(data, pos + 3, header.dataLen);
+                }
+                return false;
+            }
+            case MediaMessageHeader.H264_AVCC:
+            case MediaMessageHeader.H265_HVCC: {
+                boolean hevc = header.type == MediaMessageHeader.H265_HVCC;
+                int pos = 0;
+                while (header.dataLen - pos > AvccNalReader.LENGTH_SIZE) {
+                    int nalLength = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                            | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+                    int nalStart = pos + AvccNalReader.LENGTH_SIZE;
+                    if (nalLength <= 0 || nalLength > header.dataLen - nalStart) {
+                        return false;
+                    }
+                    if (classifyNal(data[nalStart], hevc) != CONFIG) {
+                        return isNonReference(data[nalStart], hevc);
+                    }
+                    pos = nalStart + nalLength;
+                }
+                return false;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isNonReference(byte nalHeader, boolean hevc) {
+        if (hevc) {
+            int type = (nalHeader >> 1) & 0x3F;
+            return type <= 14 && (type & 1) == 0;
+        }
+        return (nalHeader & 0x60) == 0;
+    }
+
+    private static int classifyAnnexB(byte[] data, int length, boolean hevc) {
+        boolean parameterSet = false;
+        int pos = StartCodeScanner.indexOf(data, 0, length);
+        while (pos >= 0 && pos + 3 < length) {
+            int result = classifyNal(data[pos + 3], hevc);
+            if (result != CONFIG) {
+                return result;
+            }
+            parameterSet |= isParameterSet(data[pos + 3], hevc);
+            pos = StartCodeScanner.indexOf(data, pos + 3, length);
+        }
+        return parameterSet ? CONFIG : DELTA;
+    }
+
+    private static int classifyLengthPrefixed(byte[] data, int length, boolean hevc) {
+        boolean parameterSet = false;
+        int pos = 0;
+        while (length - pos > AvccNalReader.LENGTH_SIZE) {
+            int nalLength = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                    | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            int nalStart = pos + AvccNalReader.LENGTH_SIZE;
+            if (nalLength <= 0 || nalLength > length - nalStart) {
+                break; // 数据损坏，按已看到的NAL判断
+            }
+            int result = classifyNal(data[nalStart], hevc);
+            if (result != CONFIG) {
+                return result;
+            }
+            parameterSet |= isParameterSet(data[nalStart], hevc);
+            pos = nalStart + nalLength;
+        }
+        return parameterSet ? CONFIG : DELTA;
+    }
+
+    // VCL NAL 返回 KEY/DELTA，其他NAL（参数集、SEI、AUD等）返回 CONFIG 表示继续往后看
+    private static int classifyNal(byte nalHeader, boolean hevc) {
+        if (hevc) {
+            int type = (nalHeader >> 1) & 0x3F;
+            if (H265Nal.isVcl(type)) {
+                return H265Nal.isIrap(type) ? KEY : DELTA;
+            }
+            return CONFIG;
+        }
+        int type = nalHeader & 0x1F;
+        if (type >= 1 && type <= 5) {
+            return type == 5 ? KEY : DELTA;
+        }
+        return CONFIG;
+    }
+
+    private static boolean isParameterSet(byte nalHeader, boolean hevc) {
+        if (hevc) {
+            return H265Nal.isParameterSet((nalHeader >> 1) & 0x3F);
+        }
+        int type = nalHeader & 0x1F;
+        return type == 7 || type == 8;
+    }
+}
@@ -0,0 +1,115 @@
+package com.handley.myapplication.video;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// 基于内存映射的NAL单元读取器：直接在映射区中查找起始码并切出NAL，没有堆缓冲区也没有整理拷贝。
+// 文件按窗口映射，NAL跨越窗口末尾时从该NAL开始重新映射（NAL比窗口大时窗口自动变大）。
+public class MappedH264Reader implements NalSource, Closeable {
+
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024; // 64MB 映射窗口
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int minWindowSize;
+    private MappedByteBuffer window;
+    private long windowStart; // 窗口在文件中的起始位置
+    private int windowSize;
+    private int pos;          // 当前读取位置（相对于窗口）
+    private long lastNalOffset; // 最近读取的NAL在文件中的位置（不含起始码）
+
+    public MappedH264Reader(File h264File) throws IOException {
+        this(h264File, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedH264Reader(File h264File, int windowSize) throws IOException {
+        this.file = new RandomAccessFile(h264File, "r");
+        this.channel = file.getChannel();
+        this.fileSize = channel.size();
+        this.minWindowSize = windowSize;
+        map(0, (int) Math.min(fileSize, windowSize));
+    }
+
+    @Override
+    public boolean readNextNalUnit(NalUnit out) throws IOException {
+        // 查找起始码
+        int startCode;
+        while ((startCode = StartCodeScanner.indexOf(window, pos, windowSize)) < 0) {
+            if (!remap(pos, windowSize - pos)) {
+                pos = windowSize;
+                return false; // 没有更多数据
+            }
+        }
+
+        // 跳过起始码，查找下一个起始码
+        int nalStart = startCode + 3;
+        int nextStartCode;
+        while ((nextStartCode = StartCodeScanner.indexOf(window, nalStart, windowSize)) < 0) {
+            if (!remap(nalStart, windowSize - nalStart)) {
+                break; // 剩余数据作为最后一个NAL单元
+            }
+            nalStart = 0; // 新窗口从NAL开头开始
+        }
+
+        int nalEnd;
+        if (nextStartCode < 0) {
+            nalEnd = windowSize;
+        } else if (nextStartCode > nalStart && window.get(nextStartCode - 1) == 0x00) {
+            nalEnd = nextStartCode - 1; // 4字节起始码
+        } else {
+            nalEnd = nextStartCode;
+        }
+
+        out.set(window, nalStart, nalEnd - nalStart);
+        lastNalOffset = windowStart + nalStart;
+        pos = nalEnd;
+        return true;
+    }
+
+    // 最近一次 readNextNalUnit() 读到的NAL在文件中的位置（不含起始码）
+    public long lastNalOffset() {
+        return lastNalOffset;
+    }
+
+    // 跳转到文件中的指定位置，该位置应为起始码开头（如 H264FileIndex 中记录的帧位置）
+    public void seek(long fileOffset) throws IOException {
+        if (fileOffset < 0 || fileOffset > fileSize) {
+            throw new IOException("Invalid seek offset: " + fileOffset + " fileSize=" + fileSize);
+        }
+        if (fileOffset >= windowStart && fileOffset <= windowStart + windowSize) {
+            pos = (int) (fileOffset - windowStart); // 已在当前窗口内
+            return;
+        }
+        map(fileOffset, (int) Math.min(fileSize - fileOffset, minWindowSize));
+    }
+
+    // 从窗口中 keepFrom 位置开始重新映射，至少保留 keepLength 字节并多映射一些新数据。到达文件末尾返回false。
+    private boolean remap(int keepFrom, int keepLength) throws IOException {
+        long newStart = windowStart + keepFrom;
+        if (windowStart + windowSize >= fileSize) {
+            return false;
+        }
+        long size = Math.max(minWindowSize, 2L * keepLength);
+        map(newStart, (int) Math.min(Math.min(size, Integer.MAX_VALUE), fileSize - newStart));
+        pos = 0;
+        return true;
+    }
+
+    private void map(long start, int size) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        windowSize = size;
+        pos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,10 @@
+package com.handley.myapplication.video;
+
+import java.io.IOException;
+
+// NAL单元来源，文件解码、流解析等循环只依赖这个接口
+public interface NalSource {
+
+    // 读取下一个NAL单元到视图中，没有更多数据返回false。视图在下一次读取前有效。
+    boolean readNextNalUnit(NalUnit out) throws IOException;
+}
@@ -0,0 +1,82 @@
+package com.handley.myapplication.video;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+// NAL单元视图（不带起始码），指向读取器内部缓冲区（堆内数组或文件映射区），可重复使用，避免每个NAL都拷贝一份。
+// 注意：视图只在下一次读取之前有效，需要保留数据时调用 toByteArray()。
+public class NalUnit {
+
+    public static final byte[] START_CODE = {0, 0, 0, 1};
+
+    public ByteBuffer data; // 数据所在的缓冲区，只使用绝对位置读取
+    public int offset;      // NAL在缓冲区中的起始位置
+    public int length;      // NAL长度
+
+    private ByteBuffer source;    // 非数组缓冲区的 duplicate，用于批量拷贝
+    private ByteBuffer sourceOf;  // source 对应的 data
+
+    public void set(ByteBuffer data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    // 读取NAL中的第index个字节
+    public byte get(int index) {
+        return data.get(offset + index);
+    }
+
+    // H264 NAL类型（低5位）
+    public int type() {
+        return data.get(offset) & 0x1F;
+    }
+
+    // 写入目标缓冲区（如 MediaCodec 的输入缓冲区），前面补4字节起始码，返回写入的字节数
+    public int writeTo(ByteBuffer dst) {
+        dst.put(START_CODE);
+        if (data.hasArray()) {
+            dst.put(data.array(), data.arrayOffset() + offset, length);
+        } else {
+            dst.put(slice());
+        }
+        return START_CODE.length + length;
+    }
+
+    // 追加到输出流，前面补4字节起始码
+    public void writeTo(ByteArrayOutputStream out) {
+        out.write(START_CODE, 0, START_CODE.length);
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset() + offset, length);
+        } else {
+            byte[] bytes = toByteArray();
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    // 拷贝一份独立的数据
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length];
+        copyTo(bytes, 0);
+        return bytes;
+    }
+
+    // 拷贝到目标数组的指定位置
+    public void copyTo(byte[] dst, int dstOffset) {
+        if (data.hasArray()) {
+            System.arraycopy(data.array(), data.arrayOffset() + offset, dst, dstOffset, length);
+        } else {
+            slice().get(dst, dstOffset, length);
+        }
+    }
+
+    // 返回覆盖NAL范围的缓冲区，同一个 data 只 duplicate 一次
+    private ByteBuffer slice() {
+        if (sourceOf != data) {
+            source = data.duplicate();
+            sourceOf = data;
+        }
+        source.limit(offset + length).position(offset);
+        return source;
+    }
+}
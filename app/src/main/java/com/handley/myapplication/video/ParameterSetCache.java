@@ -0,0 +1,129 @@
+package com.handley.myapplication.video;
+
+// 按 id 缓存 SPS/PPS 的原始字节和解析结果。
+// 码流中周期性重复的参数集与缓存逐字节比较，相同时不再解析，调用方据此判断是否需要重新配置解码器。
+// 非线程安全，只在解码线程中使用。
+public class ParameterSetCache {
+
+    private static final int MAX_SPS_COUNT = 32;
+    private static final int MAX_PPS_COUNT = 256;
+
+    private final byte[][] spsBytes = new byte[MAX_SPS_COUNT][];
+    private final SpsInfo[] spsInfos = new SpsInfo[MAX_SPS_COUNT];
+    private final byte[][] ppsBytes = new byte[MAX_PPS_COUNT][];
+    private final PpsInfo[] ppsInfos = new PpsInfo[MAX_PPS_COUNT];
+    private final BitReader reader = new BitReader();
+    private int lastSpsId = -1;
+    private int lastPpsId = -1;
+
+    // 放入SPS NAL（不带起始码），内容与缓存相同返回false，新增或变化返回true。
+    // 解析失败抛出 IllegalArgumentException，缓存保持不变
+    public boolean putSps(NalUnit nal) {
+        reader.reset(nal, 0);
+        int id = peekId(reader, true);
+        lastSpsId = id;
+        if (sameBytes(spsBytes[id], nal)) {
+            return false;
+        }
+        SpsInfo info = SpsInfo.parse(nal);
+        spsBytes[id] = nal.toByteArray();
+        spsInfos[id] = info;
+        // SPS变化后，引用它的PPS需要按新的 chroma_format_idc 重新解析
+        for (int i = 0; i < MAX_PPS_COUNT; i++) {
+            if (ppsInfos[i] != null && ppsInfos[i].spsId == id) {
+                ppsBytes[i] = null;
+                ppsInfos[i] = null;
+            }
+        }
+        return true;
+    }
+
+    // 放入PPS NAL（不带起始码），内容与缓存相同返回false，新增或变化返回true
+    public boolean putPps(NalUnit nal) {
+        reader.reset(nal, 0);
+        int id = peekId(reader, false);
+        lastPpsId = id;
+        if (sameBytes(ppsBytes[id], nal)) {
+            return false;
+        }
+        PpsInfo info = PpsInfo.parse(nal, 1);
+        SpsInfo sps = spsInfos[info.spsId];
+        if (sps != null && sps.chromaFormatIdc != 1) {
+            info = PpsInfo.parse(nal, sps.chromaFormatIdc);
+        }
+        ppsBytes[id] = nal.toByteArray();
+        ppsInfos[id] = info;
+        return true;
+    }
+
+    public SpsInfo getSps(int id) {
+        return id >= 0 && id < MAX_SPS_COUNT ? spsInfos[id] : null;
+    }
+
+    public PpsInfo getPps(int id) {
+        return id >= 0 && id < MAX_PPS_COUNT ? ppsInfos[id] : null;
+    }
+
+    public byte[] getSpsBytes(int id) {
+        return id >= 0 && id < MAX_SPS_COUNT ? spsBytes[id] : null;
+    }
+
+    public byte[] getPpsBytes(int id) {
+        return id >= 0 && id < MAX_PPS_COUNT ? ppsBytes[id] : null;
+    }
+
+    // 最近一次收到的SPS/PPS，没有时返回null
+    public SpsInfo lastSps() {
+        return getSps(lastSpsId);
+    }
+
+    public PpsInfo lastPps() {
+        return getPps(lastPpsId);
+    }
+
+    public byte[] lastSpsBytes() {
+        return getSpsBytes(lastSpsId);
+    }
+
+    public byte[] lastPpsBytes() {
+        return getPpsBytes(lastPpsId);
+    }
+
+    public void clear() {
+        for (int i = 0; i < MAX_SPS_COUNT; i++) {
+            spsBytes[i] = null;
+            spsInfos[i] = null;
+        }
+        for (int i = 0; i < MAX_PPS_COUNT; i++) {
+            ppsBytes[i] = null;
+            ppsInfos[i] = null;
+        }
+        lastSpsId = -1;
+        lastPpsId = -1;
+    }
+
+    private static int peekId(BitReader reader, boolean sps) {
+        int id;
+        try {
+            id = sps ? SpsInfo.peekId(reader) : PpsInfo.peekId(reader);
+        } catch (IndexOutOfBoundsException | IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid parameter set: " + e.getMessage(), e);
+        }
+        if (id < 0 || id >= (sps ? MAX_SPS_COUNT : MAX_PPS_COUNT)) {
+            throw new IllegalArgumentException("Invalid parameter set id: " + id);
+        }
+        return id;
+    }
+
+    private static boolean sameBytes(byte[] cached, NalUnit nal) {
+        if (cached == null || cached.length != nal.length) {
+            return false;
+        }
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i] != nal.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,120 @@
+package com.handley.myapplication.video;
+
+// H264 PPS 解析结果，字段名与标准中的语法元素对应
+public class PpsInfo {
+
+    public int ppsId;
+    public int spsId;
+    public boolean entropyCodingMode; // true=CABAC
+    public boolean bottomFieldPicOrderInFramePresent;
+    public int numSliceGroups;
+    public int sliceGroupMapType;
+    public int sliceGroupChangeRate;
+    public int numRefIdxL0DefaultActive;
+    public int numRefIdxL1DefaultActive;
+    public boolean weightedPred;
+    public int weightedBipredIdc;
+    public int picInitQp;
+    public int picInitQs;
+    public int chromaQpIndexOffset;
+    public boolean deblockingFilterControlPresent;
+    public boolean constrainedIntraPred;
+    public boolean redundantPicCntPresent;
+    public boolean transform8x8Mode;
+    public int secondChromaQpIndexOffset;
+
+    // 解析PPS NAL（不带起始码，含NAL头），chromaFormatIdc 来自对应的SPS（只影响缩放列表的个数）
+    public static PpsInfo parse(byte[] pps, int chromaFormatIdc) {
+        BitReader reader = new BitReader();
+        reader.reset(pps, 0, pps.length);
+        return parse(reader, chromaFormatIdc);
+    }
+
+    public static PpsInfo parse(NalUnit nal, int chromaFormatIdc) {
+        BitReader reader = new BitReader();
+        reader.reset(nal, 0);
+        return parse(reader, chromaFormatIdc);
+    }
+
+    // reader 指向NAL头，解析失败抛出 IllegalArgumentException
+    static PpsInfo parse(BitReader reader, int chromaFormatIdc) {
+        try {
+            if ((reader.readBits(8) & 0x1F) != 8) {
+                throw new IllegalArgumentException("Not a PPS NAL unit");
+            }
+            PpsInfo pps = new PpsInfo();
+            pps.parseBody(reader, chromaFormatIdc);
+            return pps;
+        } catch (IndexOutOfBoundsException | IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid PPS: " + e.getMessage(), e);
+        }
+    }
+
+    // 仅读取 pic_parameter_set_id，用于缓存比较
+    static int peekId(BitReader reader) {
+        reader.readBits(8); // NAL头
+        return reader.readUE();
+    }
+
+    private void parseBody(BitReader reader, int chromaFormatIdc) {
+        ppsId = reader.readUE();
+        spsId = reader.readUE();
+        if (ppsId > 255 || spsId > 31) {
+            throw new IllegalArgumentException("Invalid PPS id: pps=" + ppsId + " sps=" + spsId);
+        }
+        entropyCodingMode = reader.readBool();
+        bottomFieldPicOrderInFramePresent = reader.readBool();
+        numSliceGroups = reader.readUE() + 1;
+        if (numSliceGroups > 1) {
+            sliceGroupMapType = reader.readUE();
+            if (sliceGroupMapType == 0) {
+                for (int i = 0; i < numSliceGroups; i++) {
+                    reader.readUE(); // run_length_minus1
+                }
+            } else if (sliceGroupMapType == 2) {
+                for (int i = 0; i < numSliceGroups - 1; i++) {
+                    reader.readUE(); // top_left
+                    reader.readUE(); // bottom_right
+                }
+            } else if (sliceGroupMapType >= 3 && sliceGroupMapType <= 5) {
+                reader.readBool(); // slice_group_change_direction_flag
+                sliceGroupChangeRate = reader.readUE() + 1;
+            } else if (sliceGroupMapType == 6) {
+                int picSizeInMapUnits = reader.readUE() + 1;
+                int bits = 32 - Integer.numberOfLeadingZeros(numSliceGroups - 1); // Ceil(Log2(num_slice_groups))
+                for (int i = 0; i < picSizeInMapUnits; i++) {
+                    reader.readBits(bits); // slice_group_id
+                }
+            }
+        }
+        numRefIdxL0DefaultActive = reader.readUE() + 1;
+        numRefIdxL1DefaultActive = reader.readUE() + 1;
+        weightedPred = reader.readBool();
+        weightedBipredIdc = reader.readBits(2);
+        picInitQp = reader.readSE() + 26;
+        picInitQs = reader.readSE() + 26;
+        chromaQpIndexOffset = reader.readSE();
+        deblockingFilterControlPresent = reader.readBool();
+        constrainedIntraPred = reader.readBool();
+        redundantPicCntPresent = reader.readBool();
+        secondChromaQpIndexOffset = chromaQpIndexOffset;
+        if (reader.moreRbspData()) {
+            transform8x8Mode = reader.readBool();
+            if (reader.readBool()) { // pic_scaling_matrix_present_flag
+                int count = 6 + (transform8x8Mode ? (chromaFormatIdc != 3 ? 2 : 6) : 0);
+                for (int i = 0; i < count; i++) {
+                    if (reader.readBool()) { // pic_scaling_list_present_flag
+                        SpsInfo.skipScalingList(reader, i < 6 ? 16 : 64);
+                    }
+                }
+            }
+            secondChromaQpIndexOffset = reader.readSE();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PpsInfo{id=" + ppsId + " sps=" + spsId + " cabac=" + entropyCodingMode + " sliceGroups="
+                + numSliceGroups + " transform8x8=" + transform8x8Mode + "}";
+    }
+}
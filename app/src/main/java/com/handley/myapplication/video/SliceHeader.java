@@ -0,0 +1,86 @@
+package com.handley.myapplication.video;
+
+// H264 slice header 的前几个字段（到 idr_pic_id 为止），用于判断帧边界和 frame_num 连续性。
+// 可通过 parse() 反复使用，不分配内存。
+public class SliceHeader {
+
+    // slice_type % 5
+    public static final int P = 0;
+    public static final int B = 1;
+    public static final int I = 2;
+    public static final int SP = 3;
+    public static final int SI = 4;
+
+    public int nalType;
+    public int nalRefIdc;
+    public int firstMbInSlice;
+    public int sliceType;
+    public int ppsId;
+    public int colourPlaneId;
+    public int frameNum;
+    public boolean fieldPic;
+    public boolean bottomField;
+    public int idrPicId = -1; // 非IDR为-1
+    public SpsInfo sps;       // 该slice引用的SPS
+
+    private final BitReader reader = new BitReader();
+
+    public boolean isIdr() {
+        return nalType == 5;
+    }
+
+    public boolean isReference() {
+        return nalRefIdc != 0;
+    }
+
+    // 解析slice NAL（类型1或5，不带起始码）的头部，参数集从缓存中查找。
+    // 数据损坏或引用的参数集不存在时抛出 IllegalArgumentException
+    public void parse(NalUnit nal, ParameterSetCache parameterSets) {
+        int header = nal.get(0);
+        nalType = header & 0x1F;
+        nalRefIdc = (header >> 5) & 0x03;
+        if (nalType != 1 && nalType != 5) {
+            throw new IllegalArgumentException("Not a slice NAL unit: " + nalType);
+        }
+        if (nalType == 5 && nalRefIdc == 0) {
+            throw new IllegalArgumentException("IDR slice with nal_ref_idc 0");
+        }
+        try {
+            reader.reset(nal, 1);
+            firstMbInSlice = reader.readUE();
+            int type = reader.readUE();
+            if (type > 9) {
+                throw new IllegalArgumentException("Invalid slice_type: " + type);
+            }
+            sliceType = type % 5;
+            ppsId = reader.readUE();
+            PpsInfo pps = parameterSets.getPps(ppsId);
+            sps = pps == null ? null : parameterSets.getSps(pps.spsId);
+            if (sps == null) {
+                throw new IllegalArgumentException("Missing parameter set for pps " + ppsId);
+            }
+            if (firstMbInSlice >= sps.picWidthInMbs * sps.picHeightInMapUnits * (sps.frameMbsOnly ? 1 : 2)) {
+                throw new IllegalArgumentException("Invalid first_mb_in_slice: " + firstMbInSlice);
+            }
+            colourPlaneId = sps.separateColourPlane ? reader.readBits(2) : 0;
+            frameNum = reader.readBits(sps.log2MaxFrameNum);
+            fieldPic = false;
+            bottomField = false;
+            if (!sps.frameMbsOnly) {
+                fieldPic = reader.readBool();
+                if (fieldPic) {
+                    bottomField = reader.readBool();
+                }
+            }
+            idrPicId = nalType == 5 ? reader.readUE() : -1;
+        } catch (IndexOutOfBoundsException | IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid slice header: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SliceHeader{nalType=" + nalType + " ref=" + nalRefIdc + " firstMb=" + firstMbInSlice + " type="
+                + sliceType + " pps=" + ppsId + " frameNum=" + frameNum + " idrPicId=" + idrPicId + "}";
+    }
+}
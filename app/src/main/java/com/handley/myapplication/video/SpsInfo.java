@@ -0,0 +1,269 @@
+package com.handley.myapplication.video;
+
+// H264 SPS 解析结果（含 VUI），字段名与标准中的语法元素对应
+public class SpsInfo {
+
+    // aspect_ratio_idc 1~16 对应的采样宽高比（标准表 E-1），255 为 Extended_SAR
+    private static final int[][] PREDEFINED_SAR = {
+            {0, 0}, {1, 1}, {12, 11}, {10, 11}, {16, 11}, {40, 33}, {24, 11}, {20, 11}, {32, 11},
+            {80, 33}, {18, 11}, {15, 11}, {64, 33}, {160, 99}, {4, 3}, {3, 2}, {2, 1}};
+
+    public int profileIdc;
+    public int constraintFlags; // constraint_set0~5_flag + reserved_zero_2bits
+    public int levelIdc;
+    public int spsId;
+    public int chromaFormatIdc = 1;
+    public boolean separateColourPlane;
+    public int bitDepthLuma = 8;
+    public int bitDepthChroma = 8;
+    public int log2MaxFrameNum;
+    public int picOrderCntType;
+    public int log2MaxPicOrderCntLsb;
+    public boolean deltaPicOrderAlwaysZero;
+    public int maxNumRefFrames;
+    public boolean gapsInFrameNumAllowed;
+    public int picWidthInMbs;
+    public int picHeightInMapUnits;
+    public boolean frameMbsOnly;
+    public boolean mbAdaptiveFrameField;
+    public boolean direct8x8Inference;
+    public int cropLeft, cropRight, cropTop, cropBottom; // 已换算成像素
+    public int width;  // 裁剪后的宽高
+    public int height;
+
+    // VUI
+    public boolean vuiPresent;
+    public int sarWidth, sarHeight; // 未指定时为0
+    public boolean videoFullRange;
+    public int colourPrimaries = 2, transferCharacteristics = 2, matrixCoefficients = 2; // 2=未指定
+    public boolean timingInfoPresent;
+    public long numUnitsInTick;
+    public long timeScale;
+    public boolean fixedFrameRate;
+    public boolean bitstreamRestriction;
+    public int maxNumReorderFrames = -1;    // 没有 bitstream_restriction 时为-1
+    public int maxDecFrameBuffering = -1;
+
+    // 帧率（VUI timing_info 中 time_scale / (2 * num_units_in_tick)），没有时返回0
+    public float frameRate() {
+        if (!timingInfoPresent || numUnitsInTick == 0) {
+            return 0;
+        }
+        return timeScale / (2f * numUnitsInTick);
+    }
+
+    // 帧率取整，没有时返回默认值
+    public int frameRate(int defaultFrameRate) {
+        int frameRate = Math.round(frameRate());
+        return frameRate > 0 && frameRate <= 240 ? frameRate : defaultFrameRate;
+    }
+
+    // 解析SPS NAL（不带起始码，含NAL头）
+    public static SpsInfo parse(byte[] sps) {
+        BitReader reader = new BitReader();
+        reader.reset(sps, 0, sps.length);
+        return parse(reader);
+    }
+
+    public static SpsInfo parse(NalUnit nal) {
+        BitReader reader = new BitReader();
+        reader.reset(nal, 0);
+        return parse(reader);
+    }
+
+    // reader 指向NAL头，解析失败抛出 IllegalArgumentException
+    static SpsInfo parse(BitReader reader) {
+        try {
+            if ((reader.readBits(8) & 0x1F) != 7) {
+                throw new IllegalArgumentException("Not a SPS NAL unit");
+            }
+            SpsInfo sps = new SpsInfo();
+            sps.parseBody(reader);
+            return sps;
+        } catch (IndexOutOfBoundsException | IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid SPS: " + e.getMessage(), e);
+        }
+    }
+
+    // 仅读取 seq_parameter_set_id，用于缓存比较
+    static int peekId(BitReader reader) {
+        reader.readBits(8);  // NAL头
+        reader.readBits(24); // profile_idc, constraint flags, level_idc
+        return reader.readUE();
+    }
+
+    private void parseBody(BitReader reader) {
+        profileIdc = reader.readBits(8);
+        constraintFlags = reader.readBits(8);
+        levelIdc = reader.readBits(8);
+        spsId = reader.readUE();
+        if (spsId > 31) {
+            throw new IllegalArgumentException("Invalid seq_parameter_set_id: " + spsId);
+        }
+
+        // 处理不同 profile 的扩展参数
+        if (profileIdc == 100 || profileIdc == 110 || profileIdc == 122 || profileIdc == 244 || profileIdc == 44
+                || profileIdc == 83 || profileIdc == 86 || profileIdc == 118 || profileIdc == 128
+                || profileIdc == 138 || profileIdc == 139 || profileIdc == 134 || profileIdc == 135) {
+            chromaFormatIdc = reader.readUE();
+            if (chromaFormatIdc == 3) {
+                separateColourPlane = reader.readBool();
+            }
+            bitDepthLuma = reader.readUE() + 8;
+            bitDepthChroma = reader.readUE() + 8;
+            reader.readBool(); // qpprime_y_zero_transform_bypass_flag
+            if (reader.readBool()) { // seq_scaling_matrix_present_flag
+                for (int i = 0; i < (chromaFormatIdc != 3 ? 8 : 12); i++) {
+                    if (reader.readBool()) { // seq_scaling_list_present_flag
+                        skipScalingList(reader, i < 6 ? 16 : 64);
+                    }
+                }
+            }
+        }
+
+        // 解析帧相关参数
+        log2MaxFrameNum = reader.readUE() + 4;
+        if (log2MaxFrameNum > 16) { // 标准范围 4~16，后面按 1 << log2MaxFrameNum 计算
+            throw new IllegalArgumentException("Invalid log2_max_frame_num: " + log2MaxFrameNum);
+        }
+        picOrderCntType = reader.readUE();
+        if (picOrderCntType == 0) {
+            log2MaxPicOrderCntLsb = reader.readUE() + 4;
+            if (log2MaxPicOrderCntLsb > 16) {
+                throw new IllegalArgumentException("Invalid log2_max_pic_order_cnt_lsb: " + log2MaxPicOrderCntLsb);
+            }
+        } else if (picOrderCntType == 1) {
+            deltaPicOrderAlwaysZero = reader.readBool();
+            reader.readSE(); // offset_for_non_ref_pic
+            reader.readSE(); // offset_for_top_to_bottom_field
+            int numRefFramesInPicOrderCntCycle = reader.readUE();
+            for (int i = 0; i < numRefFramesInPicOrderCntCycle; i++) {
+                reader.readSE(); // offset_for_ref_frame
+            }
+        }
+
+        maxNumRefFrames = reader.readUE();
+        gapsInFrameNumAllowed = reader.readBool();
+        picWidthInMbs = reader.readUE() + 1;
+        picHeightInMapUnits = reader.readUE() + 1;
+        frameMbsOnly = reader.readBool();
+        if (!frameMbsOnly) {
+            mbAdaptiveFrameField = reader.readBool();
+        }
+        direct8x8Inference = reader.readBool();
+
+        // 计算实际宽高，场编码模式下高度加倍
+        width = picWidthInMbs * 16;
+        height = picHeightInMapUnits * 16 * (frameMbsOnly ? 1 : 2);
+
+        if (reader.readBool()) { // frame_cropping_flag
+            // 裁剪单位取决于色度格式和帧/场编码
+            int chromaArrayType = separateColourPlane ? 0 : chromaFormatIdc;
+            int cropUnitX = chromaArrayType == 0 ? 1 : (chromaArrayType == 3 ? 1 : 2);
+            int cropUnitY = (chromaArrayType == 1 ? 2 : 1) * (frameMbsOnly ? 1 : 2);
+            cropLeft = reader.readUE() * cropUnitX;
+            cropRight = reader.readUE() * cropUnitX;
+            cropTop = reader.readUE() * cropUnitY;
+            cropBottom = reader.readUE() * cropUnitY;
+            width -= cropLeft + cropRight;
+            height -= cropTop + cropBottom;
+        }
+
+        vuiPresent = reader.readBool();
+        if (vuiPresent) {
+            parseVui(reader);
+        }
+    }
+
+    private void parseVui(BitReader reader) {
+        if (reader.readBool()) { // aspect_ratio_info_present_flag
+            int aspectRatioIdc = reader.readBits(8);
+            if (aspectRatioIdc == 255) { // Extended_SAR
+                sarWidth = reader.readBits(16);
+                sarHeight = reader.readBits(16);
+            } else if (aspectRatioIdc < PREDEFINED_SAR.length) {
+                sarWidth = PREDEFINED_SAR[aspectRatioIdc][0];
+                sarHeight = PREDEFINED_SAR[aspectRatioIdc][1];
+            }
+        }
+        if (reader.readBool()) { // overscan_info_present_flag
+            reader.readBool(); // overscan_appropriate_flag
+        }
+        if (reader.readBool()) { // video_signal_type_present_flag
+            reader.readBits(3); // video_format
+            videoFullRange = reader.readBool();
+            if (reader.readBool()) { // colour_description_present_flag
+                colourPrimaries = reader.readBits(8);
+                transferCharacteristics = reader.readBits(8);
+                matrixCoefficients = reader.readBits(8);
+            }
+        }
+        if (reader.readBool()) { // chroma_loc_info_present_flag
+            reader.readUE(); // chroma_sample_loc_type_top_field
+            reader.readUE(); // chroma_sample_loc_type_bottom_field
+        }
+        timingInfoPresent = reader.readBool();
+        if (timingInfoPresent) {
+            numUnitsInTick = reader.readBits(32) & 0xFFFFFFFFL;
+            timeScale = reader.readBits(32) & 0xFFFFFFFFL;
+            fixedFrameRate = reader.readBool();
+        }
+        boolean nalHrd = reader.readBool();
+        if (nalHrd) {
+            skipHrdParameters(reader);
+        }
+        boolean vclHrd = reader.readBool();
+        if (vclHrd) {
+            skipHrdParameters(reader);
+        }
+        if (nalHrd || vclHrd) {
+            reader.readBool(); // low_delay_hrd_flag
+        }
+        reader.readBool(); // pic_struct_present_flag
+        bitstreamRestriction = reader.readBool();
+        if (bitstreamRestriction) {
+            reader.readBool(); // motion_vectors_over_pic_boundaries_flag
+            reader.readUE();   // max_bytes_per_pic_denom
+            reader.readUE();   // max_bits_per_mb_denom
+            reader.readUE();   // log2_max_mv_length_horizontal
+            reader.readUE();   // log2_max_mv_length_vertical
+            maxNumReorderFrames = reader.readUE();
+            maxDecFrameBuffering = reader.readUE();
+        }
+    }
+
+    private static void skipHrdParameters(BitReader reader) {
+        int cpbCnt = reader.readUE() + 1;
+        reader.readBits(4); // bit_rate_scale
+        reader.readBits(4); // cpb_size_scale
+        for (int i = 0; i < cpbCnt; i++) {
+            reader.readUE();   // bit_rate_value_minus1
+            reader.readUE();   // cpb_size_value_minus1
+            reader.readBool(); // cbr_flag
+        }
+        reader.readBits(5); // initial_cpb_removal_delay_length_minus1
+        reader.readBits(5); // cpb_removal_delay_length_minus1
+        reader.readBits(5); // dpb_output_delay_length_minus1
+        reader.readBits(5); // time_offset_length
+    }
+
+    // 跳过缩放列表数据
+    static void skipScalingList(BitReader reader, int size) {
+        int lastScale = 8;
+        int nextScale = 8;
+        for (int j = 0; j < size; j++) {
+            if (nextScale != 0) {
+                int deltaScale = reader.readSE();
+                nextScale = (lastScale + deltaScale + 256) % 256;
+            }
+            lastScale = (nextScale == 0) ? lastScale : nextScale;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpsInfo{id=" + spsId + " profile=" + profileIdc + " level=" + levelIdc + " chroma=" + chromaFormatIdc
+                + " " + width + "x" + height + " fps=" + frameRate() + " reorder=" + maxNumReorderFrames
+                + " dpb=" + maxDecFrameBuffering + "}";
+    }
+}
@@ -0,0 +1,59 @@
+package com.handley.myapplication.video;
+
+import java.nio.ByteBuffer;
+
+// 起始码扫描器，只负责查找 0x000001 的位置，3/4字节起始码由调用方判断（看前一个字节是否为0x00）。
+// 码流数据里0x00很稀疏，绝大部分位置不需要逐字节比较。
+public final class StartCodeScanner {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private StartCodeScanner() {
+    }
+
+    // 查找 [from, to) 范围内第一个 0x000001 的位置，没有找到返回-1。
+    // 每次检查候选的 0x01 位置，该字节不是0x00/0x01时，后面两个位置也不可能是 0x01 的位置，直接跳3字节。
+    public static int indexOf(byte[] buf, int from, int to) {
+        int i = from + 2;
+        while (i < to) {
+            int b = buf[i];
+            if ((b & 0xFE) != 0) {
+                i += 3; // 不是0x00也不是0x01
+            } else if (b == 0x01) {
+                if (buf[i - 1] == 0x00 && buf[i - 2] == 0x00) {
+                    return i - 2;
+                }
+                i += 3;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    // 查找 [from, to) 范围内第一个 0x000001 的位置（绝对位置，不改变 buf 的 position），没有找到返回-1。
+    // 每次读取8字节，用 SWAR 判断这8字节里有没有0x00，没有就整体跳过。适合 direct/mapped 缓冲区。
+    public static int indexOf(ByteBuffer buf, int from, int to) {
+        int last = to - 3; // 最后一个可能的起始位置
+        int i = from;
+        while (i <= last) {
+            if (i + 8 <= to) {
+                long word = buf.getLong(i);
+                if (((word - ONES) & ~word & HIGHS) == 0) {
+                    i += 8; // 这8字节都不是0，不可能是起始码的开头
+                    continue;
+                }
+            }
+
+            // 有0字节，逐字节检查这8个位置
+            int end = Math.min(i + 7, last);
+            for (; i <= end; i++) {
+                if (buf.get(i) == 0x00 && buf.get(i + 1) == 0x00 && buf.get(i + 2) == 0x01) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
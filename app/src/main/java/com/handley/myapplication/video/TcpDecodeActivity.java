@@ -0,0 +1,388 @@
+package com.handley.myapplication.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.View;
+import android.widget.Button;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.handley.myapplication.R;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.common.Utils;
+import com.handley.myapplication.tcp.FrameReplayer;
+import com.handley.myapplication.tcp.MyClient;
+import com.handley.myapplication.tcp.MyServer;
+import com.handley.myapplication.tcp.ReceiveWindow;
+import com.handley.myapplication.tcp.TcpTransport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// TCP 收流解码播放的公共部分：MyClient 回放 dump 文件发给本机 MyServer，收到的帧放入队列，
+// 解码线程按时间戳控制节奏，把消息拆成NAL、组装成帧后送给 MediaCodec。
+// 子类只负责编码格式相关的部分：接收哪些消息类型、逐个NAL检查（参数集、丢帧），以及创建 MediaFormat。
+public abstract class TcpDecodeActivity extends AppCompatActivity implements SurfaceHolder.Callback {
+
+    protected static final int DEFAULT_FRAME_RATE = 25; // 参数集中没有帧率信息时使用
+    private final String tag = Utils.TAG + getClass().getSimpleName();
+    private final String mimeType;
+    private final int port;
+    private final String dumpFileName;
+    private final BlockingQueue<MyFrame> frameQueue = new ArrayBlockingQueue<>(25); // 帧缓冲队列（数组实现，入队不分配节点）
+    private final H264StreamReader streamReader = new H264StreamReader(); // 以下几个只在解码线程使用，每帧复用
+    private final AvccNalReader avccReader = new AvccNalReader(); // 长度前缀格式，按长度拆分NAL
+    private final NalUnit nal = new NalUnit();
+    private final int minNalLength; // NAL头长度，H264为1字节，H265为2字节
+    protected final AccessUnitAssembler assembler; // 按帧组装NAL
+    protected boolean parameterSetsChanged = false; // 收到新的参数集，下一个关键帧前重新配置解码器
+    private Button videoBtn, audioBtn;
+    private Surface surface;
+    private MyServer myServer;
+    private MyClient myClient;
+    private MediaCodec mediaCodec;
+    private volatile long startTime = Long.MIN_VALUE; // 播放开始时间（毫秒）
+    private Thread decodeThread;
+    private volatile boolean decodeThreadRunning = false;
+
+    protected TcpDecodeActivity(String mimeType, boolean hevc, int port, String dumpFileName) {
+        this.mimeType = mimeType;
+        this.port = port;
+        this.dumpFileName = dumpFileName;
+        this.minNalLength = hevc ? 2 : 1;
+        this.assembler = new AccessUnitAssembler(hevc);
+    }
+
+    // 是否接收这种类型的消息，其他消息直接丢弃
+    protected abstract boolean isSupportedType(byte type);
+
+    // 解码线程中每个NAL调用一次（参数集在这里放入缓存），返回false表示丢弃该NAL
+    protected abstract boolean acceptNal(NalUnit nal);
+
+    // 用最近的参数集创建解码器格式，参数集还不完整时返回null
+    protected abstract MediaFormat createMediaFormat();
+
+    // 解码前检查一条消息（例如v2帧头的序号），默认不检查
+    protected void checkFrame(MyFrame frame) {
+    }
+
+    // 解码输出到布局中的 SurfaceView，子类输出到其他 Surface 时返回false并重写 createOutputSurface()
+    protected boolean rendersToSurfaceView() {
+        return true;
+    }
+
+    // 每次配置解码器时调用，返回解码输出的 Surface
+    protected Surface createOutputSurface(MediaFormat format) {
+        return surface;
+    }
+
+    // 解码器释放后调用，释放 createOutputSurface() 创建的资源
+    protected void releaseOutputSurface() {
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+        if (rendersToSurfaceView()) {
+            SurfaceView surfaceView = findViewById(R.id.surface_view);
+            surfaceView.getHolder().addCallback(this);
+        }
+        videoBtn = findViewById(R.id.video_btn);
+        audioBtn = findViewById(R.id.audio_btn);
+        videoBtn.setVisibility(View.VISIBLE);
+        audioBtn.setVisibility(View.GONE);
+
+        initTcp();
+
+        startDecodeThread();
+
+        Log.i(tag, "onCreate()");
+    }
+
+    private void initTcp() {
+        // 点击启动客户端发送文件
+        videoBtn.setOnClickListener(v -> {
+            // 按时间戳回放，解码跟不上时根据服务端的接收窗口报告在发送端丢帧
+            myClient = new MyClient(this, dumpFileName, new TcpTransport(port),
+                    new FrameReplayer(1f, TimeUnit.MILLISECONDS, false), true);
+            myClient.start();
+            videoBtn.setEnabled(false);// 防止重复点击
+        });
+
+        // 创建并启动服务器
+        myServer = new MyServer((frame) -> {
+            // 处理接收到的帧数据
+            Log.d(tag, "Received frame: type=" + frame.header.type + ", length=" + frame.header.dataLen + ", timestamp=" + frame.header.timestamp);
+            if (!isSupportedType(frame.header.type)) {
+                frame.release();
+                return;
+            }
+
+            if (startTime == Long.MIN_VALUE) {
+                long currentTime = System.nanoTime() / 1000000;
+                startTime = currentTime - frame.header.timestamp;
+                Log.i(tag, "onFrameReceived init currentTime=" + currentTime + " pts=" + frame.header.timestamp + " startTime=" + startTime);
+            }
+
+            // 将帧存入队列，视频帧不能丢失，否则后续解不出来。要丢就得一直丢到下一个i帧（由解码线程检测）。
+            try {
+                frameQueue.put(frame);
+            } catch (InterruptedException e) {
+                frame.release();
+                throw new RuntimeException(e);
+            }
+        }, port);
+        myServer.setReceiveWindow(new ReceiveWindow(frameQueue));
+        myServer.start();
+    }
+
+    // 启动解码播放线程
+    private void startDecodeThread() {
+        decodeThreadRunning = true;
+        decodeThread = new Thread(() -> {
+            while (decodeThreadRunning && !Thread.interrupted()) {
+                try {
+                    MyFrame frame = frameQueue.poll(50, TimeUnit.MILLISECONDS);
+                    if (frame == null) {
+                        continue;
+                    }
+
+                    try {
+                        // 0. 解码前检查（如v2帧头的序号）
+                        checkFrame(frame);
+
+                        // 1. 控制解码时机
+                        controlSpeed(frame.header.timestamp, 30);
+
+                        // 2. 处理视频数据
+                        decodeData(frame.frameData, frame.header.dataLen, frame.header.timestamp,
+                                frame.header.type == MediaMessageHeader.H264_AVCC
+                                        || frame.header.type == MediaMessageHeader.H265_HVCC);
+                        Log.v(tag, "decode pts=" + frame.header.timestamp);
+                    } finally {
+                        frame.release(); // NAL已拷贝到帧组装缓冲区，之后不能再访问frame
+                    }
+
+                    // 3. 处理解码输出
+                    drainOutput();
+                } catch (Exception e) {
+                    Log.e(tag, "DecodeThread ex=" + e.getMessage());
+                }
+            }
+            clearFrameQueue(); // 线程退出后没有人再取队列，剩下的帧还回缓冲池
+        }, "DecodeThread");
+        decodeThread.start();
+    }
+
+    // 处理一条消息中的视频数据
+    private void decodeData(byte[] data, int length, long pts, boolean lengthPrefixed) {
+        if (rendersToSurfaceView() && surface == null) {
+            Log.w(tag, "Decode " + " surface=" + surface);
+            return;
+        }
+
+        try {
+            // 直接在消息数据上拆分NAL，不分配缓冲区
+            NalSource source;
+            if (lengthPrefixed) {
+                avccReader.reset(data, 0, length);
+                source = avccReader;
+            } else {
+                streamReader.reset(data, 0, length);
+                source = streamReader;
+            }
+            while (true) {
+                AccessUnitAssembler.AccessUnit accessUnit;
+                if (source.readNextNalUnit(nal)) {
+                    if (nal.length < minNalLength) {
+                        continue;
+                    }
+
+                    Log.v(tag, "decodeData() nal len=" + nal.length + " pts=" + pts);
+                    if (acceptNal(nal)) {
+                        accessUnit = assembler.add(nal);
+                    } else {
+                        // 丢帧或slice损坏后，一直丢到下一个关键帧，已经组装了一部分的图像整帧丢弃
+                        accessUnit = assembler.discard(nal);
+                    }
+                } else {
+                    accessUnit = assembler.flush(); // 一条消息结束即一帧结束
+                    if (accessUnit == null) {
+                        break; // 没有更多数据
+                    }
+                }
+
+                if (accessUnit != null && accessUnit.sliceCount == 0 && !accessUnit.isCodecConfig()) {
+                    continue; // slice都被丢弃了，只剩SEI等数据
+                }
+                if (accessUnit != null) {
+                    if (accessUnit.isKeyFrame() && (mediaCodec == null || parameterSetsChanged)) {
+                        configMediaCodec();
+                    }
+                    submitFrame(accessUnit, pts);//整帧提交（多slice只提交一次）
+                }
+            }
+        } catch (IOException e) {
+            assembler.reset(); // 丢弃这条消息中不完整的帧
+            Log.e(tag, "Video processing error", e);
+        }
+    }
+
+    private synchronized void submitFrame(AccessUnitAssembler.AccessUnit accessUnit, long presentationTimeUs) {
+        if (mediaCodec == null) {
+            Log.e(tag, "submitFrame: mediaCodec is null");
+            return;
+        }
+        try {
+            int inputBufferIndex = mediaCodec.dequeueInputBuffer(10000);
+            if (inputBufferIndex >= 0) {
+                ByteBuffer inputBuffer = mediaCodec.getInputBuffer(inputBufferIndex);
+                if (inputBuffer != null) {
+                    inputBuffer.clear();
+                    inputBuffer.put(accessUnit.data, 0, accessUnit.length);
+                    mediaCodec.queueInputBuffer(inputBufferIndex, 0, accessUnit.length, presentationTimeUs,
+                            accessUnit.flags);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(tag, "submitFrame error", e);
+        }
+    }
+
+    private synchronized void drainOutput() {
+        if (mediaCodec == null) {
+            return;
+        }
+        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+        int outputBufferIndex;
+
+        while ((outputBufferIndex = mediaCodec.dequeueOutputBuffer(bufferInfo, 10000)) >= 0) {
+            // 控制渲染时机
+            controlSpeed(bufferInfo.presentationTimeUs, 2);
+
+            // 渲染帧
+            Log.v(tag, "releaseOutputBuffer pts=" + bufferInfo.presentationTimeUs);
+            mediaCodec.releaseOutputBuffer(outputBufferIndex, true);
+        }
+    }
+
+    private synchronized void configMediaCodec() {
+        MediaFormat format = createMediaFormat();
+        if (format == null) {
+            Log.w(tag, "initMediaCodecIfNeeded: parameter sets not available");
+            return;
+        }
+        try {
+            // 参数集变化（如分辨率切换）时重建解码器
+            releaseMediaCodec();
+
+            // 初始化MediaCodec
+            final boolean software = false; // 是否使用软件解码器
+            mediaCodec = software ? Utils.findSoftwareDecoder(mimeType) : MediaCodec.createDecoderByType(mimeType);
+            mediaCodec.configure(format, createOutputSurface(format), null, 0);
+            mediaCodec.start();
+
+            parameterSetsChanged = false;
+
+            Log.i(tag, "initMediaCodecIfNeeded() soft=" + software + " " + format);
+        } catch (IOException | IllegalStateException e) {
+            Log.e(tag, "initMediaCodecIfNeeded failed", e);
+        }
+    }
+
+    // 控制速度(pts 时间戳ms，ahead 提前多少ms)
+    private void controlSpeed(long pts, long ahead) {
+        long targetTime = startTime + pts;
+        long currentTime = System.nanoTime() / 1000000;
+        long sleepTime = targetTime - currentTime - ahead;
+        Log.v(tag, "controlSpeed pts=" + pts + " ahead=" + ahead + " targetTime=" + targetTime + " currentTime=" + currentTime + " sleepTime=" + sleepTime);
+
+        // 如果太快，等待一段时间
+        if (sleepTime > 1) {
+            try {
+                Thread.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        release();
+    }
+
+    private synchronized void release() {
+        // 停止 tcp
+        if (myServer != null) {
+            myServer.stop();
+            myServer = null;
+        }
+        if (myClient != null) {
+            myClient.stop();
+            myClient = null;
+        }
+
+        // 释放解码器
+        releaseMediaCodec();
+
+        // 停止线程
+        decodeThreadRunning = false;
+        if (decodeThread != null) {
+            decodeThread.interrupt();
+            try {
+                decodeThread.join(200);
+            } catch (InterruptedException ignored) {
+            }
+        }
+        clearFrameQueue(); // 解码线程没有在等待时间内退出，或者服务器停止前又放入了帧
+
+        Log.i(tag, "release()");
+    }
+
+    // 释放队列中还没有解码的帧
+    private void clearFrameQueue() {
+        MyFrame frame;
+        while ((frame = frameQueue.poll()) != null) {
+            frame.release();
+        }
+    }
+
+    private synchronized void releaseMediaCodec() {
+        if (mediaCodec != null) {
+            mediaCodec.stop();
+            mediaCodec.release();
+            mediaCodec = null;
+        }
+        releaseOutputSurface();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        surface = holder.getSurface();
+        Log.i(tag, "Surface created");
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        Log.i(tag, "Surface changed: " + width + "x" + height);
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        Log.i(tag, "Surface destroyed");
+        release();
+        finish();//此类只为了演示解码渲染，不考虑 ui 交互。
+    }
+}
@@ -0,0 +1,80 @@
+package com.handley.myapplication.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    public void obtainRoundsUpToSizeClass() {
+        FrameBufferPool pool = new FrameBufferPool();
+        assertEquals(1024, pool.obtain(1).frameData.length);
+        assertEquals(1024, pool.obtain(1024).frameData.length);
+        assertEquals(2048, pool.obtain(1500).frameData.length);
+        MyFrame frame = pool.obtain(70000);
+        assertEquals(128 * 1024, frame.frameData.length);
+        assertEquals(70000, frame.header.dataLen);
+        assertEquals(1, frame.refCount());
+    }
+
+    @Test
+    public void releasedBufferIsReused() {
+        FrameBufferPool pool = new FrameBufferPool();
+        MyFrame first = pool.obtain(1500);
+        byte[] buffer = first.frameData;
+        assertEquals(2048, pool.getOutstandingBytes());
+        assertEquals(1, pool.getOutstandingBuffers());
+
+        first.release();
+        assertNull(first.frameData);
+        assertEquals(0, pool.getOutstandingBytes());
+        assertEquals(0, pool.getOutstandingBuffers());
+
+        MyFrame second = pool.obtain(2000);
+        assertSame(first, second);
+        assertSame(buffer, second.frameData);
+        assertEquals(2000, second.header.dataLen);
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void retainKeepsBufferUntilLastRelease() {
+        FrameBufferPool pool = new FrameBufferPool();
+        MyFrame frame = pool.obtain(100);
+        frame.retain();
+        assertEquals(2, frame.refCount());
+        frame.release();
+        assertEquals(1024, pool.getOutstandingBytes());
+        frame.release();
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleReleaseThrows() {
+        MyFrame frame = new FrameBufferPool().obtain(100);
+        frame.release();
+        frame.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFrameLargerThanMax() {
+        new FrameBufferPool(4096).obtain(4097);
+    }
+
+    @Test
+    public void retainedBytesAreBounded() {
+        FrameBufferPool pool = new FrameBufferPool(4096, 4096);
+        byte[] a = pool.acquire(4096);
+        byte[] b = pool.acquire(4096);
+        pool.release(a);
+        pool.release(b); // 超出保留上限，交给GC
+        assertSame(a, pool.acquire(4096));
+        pool.acquire(4096);
+        assertEquals(1, pool.getHits());
+        assertEquals(3, pool.getMisses());
+    }
+}
@@ -0,0 +1,195 @@
+package com.handley.myapplication.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class MediaMessageHeaderTest {
+
+    @Test
+    public void parseIntoMatchesParse() {
+        MediaMessageHeader header = sample();
+        byte[] bytes = header.toBytes();
+
+        MediaMessageHeader expected = MediaMessageHeader.parse(bytes);
+        assertHeaderEquals(expected, MediaMessageHeader.parse0(bytes));
+        assertHeaderEquals(expected, MediaMessageHeader.parseInto(bytes, 0, new MediaMessageHeader()));
+
+        // 直接内存，大端和小端两种字节序，且不修改缓冲区的字节序
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(3 + MediaMessageHeader.SIZE).order(order);
+            direct.position(3);
+            direct.put(bytes);
+            direct.position(3);
+            MediaMessageHeader parsed = MediaMessageHeader.parseInto(direct, new MediaMessageHeader());
+            assertHeaderEquals(expected, parsed);
+            assertEquals(3 + MediaMessageHeader.SIZE, direct.position());
+            assertEquals(order, direct.order());
+        }
+    }
+
+    @Test
+    public void writeToMatchesToBytes() {
+        MediaMessageHeader header = sample();
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(MediaMessageHeader.SIZE).order(order);
+            header.writeTo(direct);
+            assertEquals(MediaMessageHeader.SIZE, direct.position());
+            byte[] written = new byte[MediaMessageHeader.SIZE];
+            direct.flip();
+            direct.get(written);
+            assertArrayEquals(header.toBytes(), written);
+        }
+    }
+
+    @Test
+    public void v2RoundTrip() {
+        MediaMessageHeader header = sample();
+        header.magic = MediaMessageHeader.MAGIC_V2;
+        header.flags = MediaMessageHeader.FLAG_KEY_FRAME | MediaMessageHeader.FLAG_DISCARDABLE;
+        header.streamId = 0xFFFE;
+        header.sequence = -5;
+        byte[] payload = {1, 2, 3, 4, 5};
+        header.setCrc32c(payload, 0, payload.length);
+
+        byte[] bytes = header.toBytes();
+        assertEquals(MediaMessageHeader.SIZE_V2, bytes.length);
+        MediaMessageHeader parsed = MediaMessageHeader.parse(bytes);
+        assertV2Equals(header, parsed);
+        assertTrue(parsed.isKeyFrame());
+        assertFalse(parsed.isCodecConfig());
+        assertTrue(parsed.checkCrc32c(payload, 0, payload.length));
+        payload[2] ^= 1;
+        assertFalse(parsed.checkCrc32c(payload, 0, payload.length));
+
+        // 基本字段 + 扩展分开解析
+        MediaMessageHeader split = MediaMessageHeader.parseInto(bytes, 0, new MediaMessageHeader());
+        MediaMessageHeader.parseExtensionInto(bytes, MediaMessageHeader.SIZE, split);
+        assertV2Equals(header, split);
+
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(MediaMessageHeader.SIZE_V2).order(order);
+            header.writeTo(direct);
+            assertEquals(MediaMessageHeader.SIZE_V2, direct.position());
+            direct.flip();
+            assertV2Equals(header, MediaMessageHeader.parseInto(direct, new MediaMessageHeader()));
+            assertEquals(MediaMessageHeader.SIZE_V2, direct.position());
+        }
+    }
+
+    @Test
+    public void crc32c() {
+        // RFC 3720 B.4 的检验值
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xE3069283, Crc32c.compute(check, 0, check.length));
+        assertEquals(0x8A9136AA, Crc32c.compute(new byte[32], 0, 32));
+
+        byte[] data = new byte[4099];
+        new Random(5).nextBytes(data);
+        int whole = Crc32c.compute(data, 0, data.length);
+        assertEquals(whole, Crc32c.update(Crc32c.compute(data, 0, 1000), data, 1000, data.length - 1000));
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        assertEquals(whole, Crc32c.compute(direct));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortBuffer() {
+        MediaMessageHeader.parseInto(ByteBuffer.allocate(MediaMessageHeader.SIZE - 1), new MediaMessageHeader());
+    }
+
+    // 每帧解析耗时对比（ns/次），只打印结果不做断言
+    @Ignore("基准测试，手动运行")
+    @Test
+    public void benchmark() {
+        final int frames = 1024;
+        final int rounds = 2000;
+        byte[] stream = new byte[frames * MediaMessageHeader.SIZE];
+        MediaMessageHeader header = sample();
+        for (int i = 0; i < frames; i++) {
+            header.timestamp = i * 40L;
+            System.arraycopy(header.toBytes(), 0, stream, i * MediaMessageHeader.SIZE, MediaMessageHeader.SIZE);
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(stream.length).order(ByteOrder.LITTLE_ENDIAN);
+        direct.put(stream);
+        byte[] single = new byte[MediaMessageHeader.SIZE];
+        MediaMessageHeader reused = new MediaMessageHeader();
+
+        long sink = 0;
+        long[] nanos = new long[4];
+        for (int pass = 0; pass < 2; pass++) { // 第一轮预热
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < frames; i++) {
+                    System.arraycopy(stream, i * MediaMessageHeader.SIZE, single, 0, MediaMessageHeader.SIZE);
+                    sink += MediaMessageHeader.parse(single).timestamp;
+                }
+            }
+            nanos[0] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < frames; i++) {
+                    System.arraycopy(stream, i * MediaMessageHeader.SIZE, single, 0, MediaMessageHeader.SIZE);
+                    sink += MediaMessageHeader.parse0(single).timestamp;
+                }
+            }
+            nanos[1] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < frames; i++) {
+                    sink += MediaMessageHeader.parseInto(stream, i * MediaMessageHeader.SIZE, reused).timestamp;
+                }
+            }
+            nanos[2] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                direct.clear();
+                for (int i = 0; i < frames; i++) {
+                    sink += MediaMessageHeader.parseInto(direct, reused).timestamp;
+                }
+            }
+            nanos[3] = System.nanoTime() - start;
+        }
+
+        double count = (double) frames * rounds;
+        System.out.printf("header parse (ns/op): parse %.1f, parse0 %.1f, parseInto(byte[]) %.1f, parseInto(direct) %.1f (%d)%n",
+                nanos[0] / count, nanos[1] / count, nanos[2] / count, nanos[3] / count, sink & 1);
+    }
+
+    private static MediaMessageHeader sample() {
+        MediaMessageHeader header = new MediaMessageHeader();
+        header.magic = MediaMessageHeader.MAGIC;
+        header.type = MediaMessageHeader.H264;
+        header.timestamp = 0x0102030405060708L;
+        header.rotation = -90;
+        header.dataLen = 0x7F00FF01;
+        return header;
+    }
+
+    private static void assertV2Equals(MediaMessageHeader expected, MediaMessageHeader actual) {
+        assertHeaderEquals(expected, actual);
+        assertEquals(expected.flags, actual.flags);
+        assertEquals(expected.streamId, actual.streamId);
+        assertEquals(expected.sequence, actual.sequence);
+        assertEquals(expected.crc32c, actual.crc32c);
+    }
+
+    private static void assertHeaderEquals(MediaMessageHeader expected, MediaMessageHeader actual) {
+        assertEquals(expected.magic, actual.magic);
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.rotation, actual.rotation);
+        assertEquals(expected.dataLen, actual.dataLen);
+    }
+}
@@ -0,0 +1,169 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.junit.Test;
+
+public class AdaptiveFrameSinkTest {
+
+    private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, 0x00, 0x1f};
+    private static final byte[] IDR = {0, 0, 0, 1, 0x65, (byte) 0x88, (byte) 0x84, 0x00};
+    private static final byte[] P_SLICE = {0, 0, 0, 1, 0x41, (byte) 0x9a, 0x02};
+    private static final byte[] NON_REF = {0, 0, 0, 1, 0x01, (byte) 0x9e, 0x02}; // nal_ref_idc 0
+
+    private final FrameBufferPool pool = new FrameBufferPool();
+
+    @Test
+    public void dropsByReportedFill() throws Exception {
+        LoopbackTransport transport = new LoopbackTransport(64);
+        transport.bind();
+        AdaptiveFrameSink sink = new AdaptiveFrameSink(transport.connect());
+        FrameSource source = transport.accept();
+
+        // 连接后第一条消息是报告请求，不是媒体帧
+        MyFrame request = source.readFrame();
+        assertEquals(MediaMessageHeader.FEEDBACK, request.header.type);
+        assertEquals(0, request.header.dataLen);
+        request.release();
+        FrameSink feedback = source.feedback();
+        assertNotNull(feedback);
+
+        // 还没有报告，全部发送
+        sink.send(video(1, NON_REF));
+
+        // 超过高水位：只丢非参考帧，音频不丢
+        report(sink, feedback, 6, 10);
+        sink.send(video(2, NON_REF));
+        sink.send(video(3, P_SLICE));
+        sink.send(audio(4));
+
+        // 超过严重水位：丢到下一个关键帧，参数集和音频照常发送
+        report(sink, feedback, 9, 10);
+        sink.send(video(5, P_SLICE));
+        sink.send(video(6, NON_REF));
+        sink.send(video(7, SPS));
+        sink.send(audio(8));
+        sink.send(video(9, IDR));
+        // 关键帧之后还没有新报告，旧报告只按高水位处理
+        sink.send(video(10, P_SLICE));
+        sink.send(video(11, NON_REF));
+
+        // 关键帧之后的新报告仍然严重积压，再次丢到关键帧
+        report(sink, feedback, 10, 10);
+        sink.send(video(12, P_SLICE));
+        report(sink, feedback, 1, 10);
+        sink.send(video(13, P_SLICE));
+        sink.send(video(14, IDR));
+        sink.send(video(15, NON_REF));
+        sink.send(video(16, P_SLICE));
+
+        assertEquals(2, sink.getDroppedNonReference());
+        assertEquals(4, sink.getDroppedToKeyFrame());
+        assertEquals(10, sink.getSent());
+        assertEquals(4, sink.getReports());
+        sink.close();
+
+        List<Long> received = new ArrayList<>();
+        MyFrame frame;
+        while ((frame = source.readFrame()) != null) {
+            received.add(frame.header.timestamp);
+            frame.release();
+        }
+        assertEquals(Arrays.asList(1L, 3L, 4L, 7L, 8L, 9L, 10L, 14L, 15L, 16L), received);
+        source.close();
+        transport.close();
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 传输不支持反馈时原样转发
+    @Test
+    public void passThroughWithoutFeedback() throws IOException {
+        List<MyFrame> sent = new ArrayList<>();
+        AdaptiveFrameSink sink = new AdaptiveFrameSink(new FrameSink() {
+            @Override
+            public void send(MyFrame frame) {
+                sent.add(frame);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        sink.send(video(1, NON_REF));
+        sink.send(video(2, P_SLICE));
+        sink.close();
+        assertEquals(2, sent.size());
+        assertEquals(0, sink.getReports());
+        for (MyFrame frame : sent) {
+            frame.release();
+        }
+    }
+
+    @Test
+    public void receiveWindowSnapshot() throws IOException {
+        BlockingQueue<MyFrame> queue = new ArrayBlockingQueue<>(8);
+        queue.add(video(1, P_SLICE));
+        queue.add(video(2, IDR));
+        WindowReport report = new ReceiveWindow(queue).snapshot(new WindowReport());
+        assertEquals(2, report.queuedFrames);
+        assertEquals(8, report.capacityFrames);
+        assertEquals(P_SLICE.length + IDR.length, report.queuedBytes);
+        assertEquals(0.25f, report.fillRatio(), 0f);
+
+        MyFrame frame = report.toFrame(pool);
+        WindowReport parsed = new WindowReport();
+        assertTrue(WindowReport.parseInto(frame, parsed));
+        assertEquals(report.toString(), parsed.toString());
+        frame.release();
+        MyFrame request = WindowReport.requestFrame();
+        assertFalse(WindowReport.parseInto(request, parsed));
+        for (MyFrame queued : queue) {
+            queued.release();
+        }
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 发送一条报告并等待发送端的反馈线程处理完
+    private void report(AdaptiveFrameSink sink, FrameSink feedback, int queued, int capacity)
+            throws IOException, InterruptedException {
+        long expected = sink.getReports() + 1;
+        WindowReport report = new WindowReport();
+        report.queuedFrames = queued;
+        report.capacityFrames = capacity;
+        feedback.send(report.toFrame(pool));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sink.getReports() < expected) {
+            assertTrue("report not received", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private MyFrame video(long timestamp, byte[] data) {
+        return frame(timestamp, MediaMessageHeader.H264, data);
+    }
+
+    private MyFrame audio(long timestamp) {
+        return frame(timestamp, MediaMessageHeader.OPUS, new byte[]{1, 2, 3});
+    }
+
+    private MyFrame frame(long timestamp, byte type, byte[] data) {
+        MyFrame frame = pool.obtain(data.length);
+        System.arraycopy(data, 0, frame.frameData, 0, data.length);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = type;
+        frame.header.timestamp = timestamp;
+        return frame;
+    }
+}
@@ -0,0 +1,154 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FrameDemuxerTest {
+
+    private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, 0x00, 0x1f};
+    private static final byte[] IDR = {0, 0, 0, 1, 0x65, (byte) 0x88, (byte) 0x84, 0x00};
+    private static final byte[] P_SLICE = {0, 0, 0, 1, 0x41, (byte) 0x9a, 0x02};
+
+    private final FrameBufferPool pool = new FrameBufferPool();
+
+    @Test
+    public void slowVideoDoesNotDelayAudio() throws InterruptedException {
+        FrameDemuxer demuxer = new FrameDemuxer();
+        CountDownLatch videoBlocked = new CountDownLatch(1);
+        CountDownLatch releaseVideo = new CountDownLatch(1);
+        CountDownLatch audioDone = new CountDownLatch(20);
+
+        FrameDemuxer.Route video = demuxer.addRoute("video", FrameDemuxer.ANY_STREAM, 4, Thread.NORM_PRIORITY,
+                frame -> {
+                    frame.release();
+                    videoBlocked.countDown();
+                    try {
+                        releaseVideo.await(); // 模拟解码卡住
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, MediaMessageHeader.H264, MediaMessageHeader.H264_AVCC);
+        FrameDemuxer.Route audio = demuxer.addRoute("audio", FrameDemuxer.ANY_STREAM, 50, Thread.MAX_PRIORITY,
+                frame -> {
+                    frame.release();
+                    audioDone.countDown();
+                }, MediaMessageHeader.OPUS);
+        demuxer.start();
+
+        demuxer.onFrameReceived(frame(MediaMessageHeader.H264, 0, 500 * 1024)); // 大的IDR
+        assertTrue(videoBlocked.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 20; i++) {
+            demuxer.onFrameReceived(frame(MediaMessageHeader.H264, 0, 4000)); // 视频队列满后丢到关键帧，不阻塞
+            demuxer.onFrameReceived(frame(MediaMessageHeader.OPUS, 0, 120));
+        }
+        assertTrue(audioDone.await(1, TimeUnit.SECONDS));
+        assertEquals(20, audio.getDelivered());
+        assertEquals(20, video.getDropped()); // 排队的4帧和之后的16帧，都不是关键帧
+        assertEquals(0, video.getQueued());
+
+        demuxer.onFrameReceived(frame(MediaMessageHeader.PCM, 0, 100));
+        assertEquals(1, demuxer.getUnrouted());
+
+        releaseVideo.countDown();
+        demuxer.stop();
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    @Test
+    public void routesByStreamId() throws InterruptedException {
+        FrameDemuxer demuxer = new FrameDemuxer();
+        CountDownLatch done = new CountDownLatch(6);
+        int[] counts = new int[2];
+        for (int stream = 0; stream < 2; stream++) {
+            int index = stream;
+            demuxer.addRoute("camera" + stream, stream, 10, Thread.NORM_PRIORITY, frame -> {
+                assertEquals(index, frame.header.streamId);
+                counts[index]++;
+                frame.release();
+                done.countDown();
+            }, MediaMessageHeader.H264);
+        }
+        demuxer.start();
+        for (int i = 0; i < 6; i++) {
+            demuxer.onFrameReceived(frame(MediaMessageHeader.H264, i % 3 == 0 ? 1 : 0, 100));
+        }
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        demuxer.stop();
+        assertEquals(4, counts[0]);
+        assertEquals(2, counts[1]);
+    }
+
+    // 队列满后丢掉排队的非参数集帧并丢到下一个关键帧，期间的参数集照常入队，关键帧之后恢复
+    @Test
+    public void overflowDropsToKeyFrameAndKeepsConfig() throws InterruptedException {
+        FrameDemuxer demuxer = new FrameDemuxer();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> delivered = new CopyOnWriteArrayList<>();
+        FrameDemuxer.Route video = demuxer.addRoute("video", FrameDemuxer.ANY_STREAM, 4, Thread.NORM_PRIORITY,
+                frame -> {
+                    delivered.add(frame.header.timestamp);
+                    frame.release();
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, MediaMessageHeader.H264);
+        demuxer.start();
+
+        demuxer.onFrameReceived(video(1, IDR));
+        assertTrue(blocked.await(1, TimeUnit.SECONDS)); // 投递线程卡在第1帧
+        demuxer.onFrameReceived(video(2, SPS));
+        demuxer.onFrameReceived(video(3, P_SLICE));
+        demuxer.onFrameReceived(video(4, P_SLICE));
+        demuxer.onFrameReceived(video(5, P_SLICE));
+        demuxer.onFrameReceived(video(6, P_SLICE)); // 队列满：丢掉3、4、5和自己，保留2
+        assertEquals(4, video.getDropped());
+        assertEquals(1, video.getQueued());
+        demuxer.onFrameReceived(video(7, P_SLICE)); // 等关键帧
+        demuxer.onFrameReceived(video(8, SPS));     // 参数集不丢
+        demuxer.onFrameReceived(video(9, IDR));
+        demuxer.onFrameReceived(video(10, P_SLICE));
+        assertEquals(5, video.getDropped());
+        assertEquals(4, video.getQueued());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (delivered.size() < 5) {
+            assertTrue("not delivered: " + delivered, System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        assertEquals(Arrays.asList(1L, 2L, 8L, 9L, 10L), delivered);
+        demuxer.stop();
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    private MyFrame video(long timestamp, byte[] data) {
+        MyFrame frame = pool.obtain(data.length);
+        System.arraycopy(data, 0, frame.frameData, 0, data.length);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = MediaMessageHeader.H264;
+        frame.header.timestamp = timestamp;
+        return frame;
+    }
+
+    private MyFrame frame(byte type, int streamId, int size) {
+        MyFrame frame = pool.obtain(size);
+        frame.header.magic = MediaMessageHeader.MAGIC_V2;
+        frame.header.type = type;
+        frame.header.streamId = streamId;
+        return frame;
+    }
+}
@@ -0,0 +1,236 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameRelayTest {
+
+    private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, 0x00, 0x1f};
+    private static final byte[] IDR = {0, 0, 0, 1, 0x65, (byte) 0x88, (byte) 0x84, 0x00};
+    private static final byte[] P_SLICE = {0, 0, 0, 1, 0x41, (byte) 0x9a, 0x02};
+    private static final int LARGE = 256 * 1024; // 远大于缩小后的 socket 缓冲区，不读时发送线程会阻塞
+
+    private final FrameBufferPool pool = new FrameBufferPool();
+    private final List<SocketChannel> clients = new ArrayList<>();
+    private ServerSocketChannel listener;
+    private FrameRelay relay;
+
+    @Before
+    public void setUp() throws IOException {
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (relay != null) {
+            relay.stop();
+        }
+        for (SocketChannel client : clients) {
+            client.close();
+        }
+        listener.close();
+    }
+
+    // 所有订阅者收到同样的帧，共用的缓冲区全部还回池中；中途加入的订阅者从下一个关键帧开始，先收到缓存的参数集
+    @Test
+    public void fanOutToAllSubscribers() throws Exception {
+        relay = new FrameRelay(0, 64, FrameRelay.SlowConsumerPolicy.DROP_TO_KEY_FRAME);
+        List<SocketChannel> early = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            early.add(subscribe(false));
+        }
+        relay.onFrameReceived(frame(1, SPS));
+        relay.onFrameReceived(frame(2, IDR));
+        for (int i = 3; i <= 10; i++) {
+            relay.onFrameReceived(frame(i, P_SLICE));
+        }
+        SocketChannel late = subscribe(false);
+        relay.onFrameReceived(frame(11, P_SLICE)); // 等关键帧，丢弃
+        relay.onFrameReceived(frame(12, IDR));
+        relay.onFrameReceived(frame(13, P_SLICE));
+
+        List<Long> all = new ArrayList<>();
+        for (long t = 1; t <= 13; t++) {
+            all.add(t);
+        }
+        for (SocketChannel client : early) {
+            assertEquals(all, read(client, all.size()));
+        }
+        assertEquals(Arrays.asList(1L, 12L, 13L), read(late, 3));
+        assertEquals(4, relay.getSubscriberCount());
+        assertEquals(1, relay.getSubscribers().get(3).getDropped());
+
+        waitFor(() -> pool.getOutstandingBuffers() == 1); // 只剩缓存的参数集
+        relay.stop();
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 慢订阅者队列满后丢到下一个关键帧：期间的参数集只缓存不结束等待，恢复时先补发参数集
+    @Test
+    public void dropToKeyFrameResumesAtNextKeyFrame() throws Exception {
+        relay = new FrameRelay(0, 5, FrameRelay.SlowConsumerPolicy.DROP_TO_KEY_FRAME);
+        SocketChannel client = subscribe(true);
+        FrameRelay.Subscriber subscriber = relay.getSubscribers().get(0);
+
+        relay.onFrameReceived(frame(1, SPS));
+        relay.onFrameReceived(largeFrame(2, IDR));
+        long t = 3;
+        while (subscriber.getDropped() == 0) {
+            assertTrue("queue never overflowed", t < 1000);
+            relay.onFrameReceived(largeFrame(t++, P_SLICE));
+            Thread.sleep(2);
+        }
+        long overflowAt = t;
+        relay.onFrameReceived(frame(overflowAt, P_SLICE));
+        relay.onFrameReceived(frame(overflowAt + 1, SPS));
+        relay.onFrameReceived(frame(overflowAt + 2, P_SLICE)); // 参数集之后仍在等关键帧
+        relay.onFrameReceived(frame(overflowAt + 3, IDR));
+        relay.onFrameReceived(frame(overflowAt + 4, P_SLICE));
+        assertFalse(subscriber.isClosed());
+
+        // 开始读取，发送线程恢复。按顺序收到，丢弃的帧不出现，参数集只发一次
+        List<Long> received = readUntil(client, overflowAt + 4);
+        for (int i = 1; i < received.size(); i++) {
+            assertTrue(received.toString(), received.get(i) > received.get(i - 1));
+        }
+        List<Long> tail = received.subList(received.size() - 3, received.size());
+        assertEquals(Arrays.asList(overflowAt + 1, overflowAt + 3, overflowAt + 4), tail);
+        assertFalse(received.contains(overflowAt));
+        assertFalse(received.contains(overflowAt + 2));
+        assertEquals(Arrays.asList(1L, 2L), received.subList(0, 2));
+
+        relay.stop();
+        waitFor(() -> pool.getOutstandingBuffers() == 0);
+    }
+
+    // DISCONNECT 只断开慢订阅者，正常读取的订阅者收到全部帧
+    @Test
+    public void disconnectClosesOnlySlowSubscriber() throws Exception {
+        relay = new FrameRelay(0, 5, FrameRelay.SlowConsumerPolicy.DISCONNECT);
+        subscribe(true);
+        SocketChannel fastClient = subscribe(false);
+        FrameRelay.Subscriber slow = relay.getSubscribers().get(0);
+        FrameRelay.Subscriber fast = relay.getSubscribers().get(1);
+
+        List<Long> fastReceived = Collections.synchronizedList(new ArrayList<>());
+        Thread reader = new Thread(() -> {
+            MediaFrameReader frameReader = new MediaFrameReader(fastClient, new FrameBufferPool());
+            try {
+                MyFrame frame;
+                while ((frame = frameReader.readFrame()) != null) {
+                    fastReceived.add(frame.header.timestamp);
+                    frame.release();
+                }
+            } catch (IOException e) {
+                // 测试结束时关闭
+            }
+        });
+        reader.start();
+
+        relay.onFrameReceived(largeFrame(1, IDR));
+        long t = 2;
+        while (!slow.isClosed()) {
+            assertTrue("slow subscriber never disconnected", t < 1000);
+            relay.onFrameReceived(largeFrame(t++, P_SLICE));
+            Thread.sleep(2);
+        }
+        relay.onFrameReceived(frame(t, P_SLICE));
+        final long last = t;
+        waitFor(() -> fastReceived.size() == last);
+
+        assertFalse(fast.isClosed());
+        assertEquals(1, relay.getSubscriberCount());
+        assertEquals(0, fast.getDropped());
+        for (int i = 0; i < last; i++) {
+            assertEquals(i + 1, (long) fastReceived.get(i));
+        }
+
+        relay.stop();
+        reader.join(1000);
+        waitFor(() -> pool.getOutstandingBuffers() == 0);
+    }
+
+    // 建立一个订阅连接，返回客户端一侧。slow 为 true 时缩小两端的 socket 缓冲区，客户端不读时很快阻塞
+    private SocketChannel subscribe(boolean slow) throws IOException {
+        SocketChannel client = SocketChannel.open();
+        if (slow) {
+            client.socket().setReceiveBufferSize(4096);
+        }
+        client.connect(listener.getLocalAddress());
+        SocketChannel channel = listener.accept();
+        if (slow) {
+            channel.socket().setSendBufferSize(4096);
+        }
+        clients.add(client);
+        relay.addSubscriber(channel);
+        return client;
+    }
+
+    private static List<Long> read(SocketChannel client, int count) throws IOException {
+        MediaFrameReader reader = new MediaFrameReader(client, new FrameBufferPool());
+        List<Long> timestamps = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MyFrame frame = reader.readFrame();
+            timestamps.add(frame.header.timestamp);
+            frame.release();
+        }
+        return timestamps;
+    }
+
+    private static List<Long> readUntil(SocketChannel client, long timestamp) throws IOException {
+        MediaFrameReader reader = new MediaFrameReader(client, new FrameBufferPool());
+        List<Long> timestamps = new ArrayList<>();
+        while (timestamps.isEmpty() || timestamps.get(timestamps.size() - 1) != timestamp) {
+            MyFrame frame = reader.readFrame();
+            timestamps.add(frame.header.timestamp);
+            frame.release();
+        }
+        return timestamps;
+    }
+
+    private MyFrame frame(long timestamp, byte[] data) {
+        MyFrame frame = pool.obtain(data.length);
+        System.arraycopy(data, 0, frame.frameData, 0, data.length);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = MediaMessageHeader.H264;
+        frame.header.timestamp = timestamp;
+        return frame;
+    }
+
+    // 只有开头是 NAL，后面补零
+    private MyFrame largeFrame(long timestamp, byte[] nal) {
+        MyFrame frame = pool.obtain(LARGE);
+        Arrays.fill(frame.frameData, 0, LARGE, (byte) 0);
+        System.arraycopy(nal, 0, frame.frameData, 0, nal.length);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = MediaMessageHeader.H264;
+        frame.header.timestamp = timestamp;
+        return frame;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameReplayerTest {
+
+    private static final int FRAMES = 10;
+
+    private File file;
+    private byte[][] payloads;
+
+    @Before
+    public void setUp() throws IOException {
+        // 10帧，间隔20ms（时间戳单位毫秒），v2帧头，两路流交错
+        file = File.createTempFile("replay", ".dump");
+        payloads = new byte[FRAMES][];
+        Random random = new Random(1);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < FRAMES; i++) {
+                payloads[i] = new byte[1 + random.nextInt(2000)];
+                random.nextBytes(payloads[i]);
+                MediaMessageHeader header = new MediaMessageHeader();
+                header.magic = MediaMessageHeader.MAGIC_V2;
+                header.type = MediaMessageHeader.H264;
+                header.timestamp = 1000 + i * 20L;
+                header.dataLen = payloads[i].length;
+                header.streamId = i % 2;
+                header.sequence = i / 2;
+                header.setCrc32c(payloads[i], 0, payloads[i].length);
+                out.write(header.toBytes());
+                out.write(payloads[i]);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void pacesFramesByTimestamp() throws IOException {
+        // 180ms 的媒体时长按4倍速约45ms发完
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameReplayer replayer = new FrameReplayer(4f, TimeUnit.MILLISECONDS, false);
+        long start = System.nanoTime();
+        try (FileInputStream fis = new FileInputStream(file); FileChannel channel = fis.getChannel()) {
+            replayer.replay(channel, out);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("elapsed " + elapsedMs, elapsedMs >= 44);
+        assertEquals(FRAMES, replayer.getFramesSent());
+
+        MediaFrameReader reader = new MediaFrameReader(new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < FRAMES; i++) {
+            MyFrame frame = reader.readFrame();
+            assertEquals(1000 + i * 20L, frame.header.timestamp);
+            assertArrayEquals(payloads[i], frame.frameData);
+        }
+        assertNull(reader.readFrame());
+    }
+
+    @Test
+    public void loopKeepsTimestampsAndSequencesContinuous() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            private int flushes;
+
+            @Override
+            public void flush() {
+                if (++flushes == 3 * FRAMES + 4) {
+                    Thread.currentThread().interrupt(); // 第4轮的第5帧之后停止
+                }
+            }
+        };
+        FrameReplayer replayer = new FrameReplayer(FrameReplayer.AS_FAST_AS_POSSIBLE, TimeUnit.MILLISECONDS, true);
+        try (FileInputStream fis = new FileInputStream(file); FileChannel channel = fis.getChannel()) {
+            replayer.replay(channel, out);
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(3, replayer.getLoops());
+        assertEquals(3 * FRAMES + 4, replayer.getFramesSent());
+
+        MediaFrameReader reader = new MediaFrameReader(new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < 3 * FRAMES + 4; i++) {
+            MyFrame frame = reader.readFrame();
+            assertEquals(1000 + i * 20L, frame.header.timestamp);
+            assertArrayEquals(payloads[i % FRAMES], frame.frameData);
+        }
+        assertNull(reader.readFrame());
+        assertEquals(0, reader.getLostFrames());
+        assertEquals(0, reader.getCrcErrors());
+    }
+
+    // AVCC 输出：4字节起始码原地转换，含3字节起始码的帧转换到新缓冲区，非视频帧不变；CRC 按新数据重新计算
+    @Test
+    public void avccOutputConvertsVideoFrames() throws IOException {
+        byte[][] frames = {
+                {0, 0, 0, 1, 0x67, 0x42, 0, 0, 0, 1, 0x68, (byte) 0xCE},
+                {0, 0, 1, 0x65, (byte) 0x88, 0, 0, 0, 1, 0x65, (byte) 0x99},
+                {1, 2, 3},
+        };
+        byte[] types = {MediaMessageHeader.H264, MediaMessageHeader.H265, MediaMessageHeader.OPUS};
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < frames.length; i++) {
+                MediaMessageHeader header = new MediaMessageHeader();
+                header.magic = MediaMessageHeader.MAGIC_V2;
+                header.type = types[i];
+                header.timestamp = i;
+                header.dataLen = frames[i].length;
+                header.sequence = i;
+                header.setCrc32c(frames[i], 0, frames[i].length);
+                out.write(header.toBytes());
+                out.write(frames[i]);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameReplayer replayer = new FrameReplayer(FrameReplayer.AS_FAST_AS_POSSIBLE, TimeUnit.MILLISECONDS, false);
+        replayer.setAvccOutput(true);
+        try (FileInputStream fis = new FileInputStream(file); FileChannel channel = fis.getChannel()) {
+            replayer.replay(channel, out);
+        }
+
+        MediaFrameReader reader = new MediaFrameReader(new ByteArrayInputStream(out.toByteArray()));
+        MyFrame frame = reader.readFrame();
+        assertEquals(MediaMessageHeader.H264_AVCC, frame.header.type);
+        assertArrayEquals(new byte[]{0, 0, 0, 2, 0x67, 0x42, 0, 0, 0, 2, 0x68, (byte) 0xCE}, frame.frameData);
+        frame = reader.readFrame();
+        assertEquals(MediaMessageHeader.H265_HVCC, frame.header.type);
+        assertArrayEquals(new byte[]{0, 0, 0, 2, 0x65, (byte) 0x88, 0, 0, 0, 2, 0x65, (byte) 0x99}, frame.frameData);
+        frame = reader.readFrame();
+        assertEquals(MediaMessageHeader.OPUS, frame.header.type);
+        assertArrayEquals(frames[2], frame.frameData);
+        assertNull(reader.readFrame());
+        assertEquals(0, reader.getCrcErrors());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeSpeed() {
+        new FrameReplayer(-1f, TimeUnit.MILLISECONDS, false);
+    }
+}
@@ -0,0 +1,239 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class LoopbackTransportTest {
+
+    private final FrameBufferPool pool = new FrameBufferPool();
+
+    @Test
+    public void ringKeepsOrderAcrossThreads() throws Exception {
+        FrameRing ring = new FrameRing(5);
+        assertEquals(8, ring.capacity());
+        int count = 100_000;
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    ring.put(frame(i, 16));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            ring.close();
+        });
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            MyFrame frame = ring.take();
+            assertEquals(i, frame.header.timestamp);
+            frame.release();
+        }
+        assertNull(ring.take());
+        producer.join();
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    @Test
+    public void ringOfferFailsWhenFull() throws IOException {
+        FrameRing ring = new FrameRing(2);
+        MyFrame first = frame(0, 16);
+        assertTrue(ring.offer(first));
+        assertTrue(ring.offer(frame(1, 16)));
+        MyFrame third = frame(2, 16);
+        assertFalse(ring.offer(third));
+        assertSame(first, ring.poll());
+        assertTrue(ring.offer(third));
+
+        ring.close();
+        MyFrame late = frame(3, 16);
+        try {
+            ring.put(late);
+            fail("put after close");
+        } catch (IOException expected) {
+            late.release(); // 关闭后不能再写入，帧仍归调用方
+        }
+        ring.drain();
+        first.release();
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 消费者关闭并 drain 与生产者 put、读取线程 take 同时发生：每一帧只被取走一次，没有帧泄漏
+    @Test
+    public void ringCloseRacesWithProducer() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            FrameRing ring = new FrameRing(4);
+            Thread producer = new Thread(() -> {
+                for (long i = 0; ; i++) {
+                    MyFrame frame = frame(i, 16);
+                    try {
+                        ring.put(frame);
+                    } catch (IOException e) {
+                        frame.release();
+                        return;
+                    }
+                }
+            });
+            Thread reader = new Thread(() -> {
+                try {
+                    MyFrame frame;
+                    while ((frame = ring.take()) != null) {
+                        frame.release();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            producer.start();
+            reader.start();
+            Thread.sleep(round % 3);
+            ring.close();
+            ring.drain();
+            producer.join(5000);
+            reader.join(5000);
+            assertFalse(producer.isAlive() || reader.isAlive());
+            assertEquals("round " + round, 0, pool.getOutstandingBuffers());
+        }
+    }
+
+    // connect() 与 close() 同时发生：连接要么被拒绝，要么随传输一起关闭，发送端不会永远阻塞
+    @Test
+    public void connectRacesWithClose() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            LoopbackTransport transport = new LoopbackTransport(2);
+            FrameSink[] sink = new FrameSink[1];
+            Thread connector = new Thread(() -> {
+                try {
+                    sink[0] = transport.connect();
+                } catch (IOException e) {
+                    // 已关闭
+                }
+            });
+            connector.start();
+            transport.close();
+            connector.join();
+            if (sink[0] == null) {
+                continue;
+            }
+            Thread sender = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 4; i++) {
+                        sink[0].send(frame(i, 16));
+                    }
+                } catch (IOException e) {
+                    // 连接已随传输关闭
+                }
+            });
+            sender.start();
+            sender.join(5000);
+            assertFalse("sender blocked in round " + round, sender.isAlive());
+        }
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    @Test
+    public void connectBeforeBindAndEndOfStream() throws IOException {
+        LoopbackTransport transport = new LoopbackTransport(4);
+        FrameSink sink = transport.connect();
+        transport.bind();
+        FrameSource source = transport.accept();
+
+        MyFrame sent = frame(40, 1000);
+        sink.send(sent);
+        sink.close();
+        MyFrame received = source.readFrame();
+        assertSame(sent, received); // 传递的是同一个帧对象，不拷贝
+        received.release();
+        assertNull(source.readFrame());
+        source.close();
+        transport.close();
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 对比同样的帧经过本机TCP（序列化 + 分帧）和经过环形队列的吞吐
+    @Ignore("基准测试，手动运行")
+    @Test
+    public void throughputTcpVsLoopback() throws Exception {
+        int frames = 20_000;
+        int size = 4096;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            Future<Integer> received = executor.submit(() -> {
+                try (SocketChannel channel = server.accept()) {
+                    MediaFrameReader reader = new MediaFrameReader(channel, pool);
+                    int n = 0;
+                    MyFrame frame;
+                    while ((frame = reader.readFrame()) != null) {
+                        frame.release();
+                        n++;
+                    }
+                    return n;
+                }
+            });
+            long start = System.nanoTime();
+            try (Socket socket = new Socket("127.0.0.1", server.socket().getLocalPort());
+                    FrameSink sink = new OutputStreamFrameSink(
+                            new BufferedOutputStream(socket.getOutputStream(), 64 * 1024))) {
+                for (int i = 0; i < frames; i++) {
+                    sink.send(frame(i, size));
+                }
+            }
+            assertEquals(frames, (int) received.get());
+            long tcpNs = System.nanoTime() - start;
+
+            LoopbackTransport transport = new LoopbackTransport();
+            transport.bind();
+            FrameSink sink = transport.connect();
+            FrameSource source = transport.accept();
+            received = executor.submit(() -> {
+                int n = 0;
+                MyFrame frame;
+                while ((frame = source.readFrame()) != null) {
+                    frame.release();
+                    n++;
+                }
+                return n;
+            });
+            start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                sink.send(frame(i, size));
+            }
+            sink.close();
+            assertEquals(frames, (int) received.get());
+            long loopbackNs = System.nanoTime() - start;
+            transport.close();
+
+            System.out.printf("%d frames x %d bytes: tcp %.1f us/frame, loopback ring %.1f us/frame%n", frames, size,
+                    tcpNs / 1000.0 / frames, loopbackNs / 1000.0 / frames);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private MyFrame frame(long timestamp, int size) {
+        MyFrame frame = pool.obtain(size);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = MediaMessageHeader.H264;
+        frame.header.timestamp = timestamp;
+        return frame;
+    }
+}
@@ -0,0 +1,238 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class MediaFrameReaderTest {
+
+    @Test
+    public void readsFramesWithShortReads() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[][] payloads = writeFrames(out, 20, new Random(1));
+        MediaFrameReader reader = new MediaFrameReader(new TrickleInputStream(out.toByteArray()));
+        for (int i = 0; i < payloads.length; i++) {
+            MyFrame frame = reader.readFrame();
+            assertEquals(i * 40L, frame.header.timestamp);
+            assertArrayEquals(payloads[i], frame.frameData);
+        }
+        assertNull(reader.readFrame());
+        assertEquals(0, reader.getResyncCount());
+    }
+
+    @Test
+    public void resyncAfterCorruptHeader() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[][] payloads = writeFrames(out, 10, new Random(2));
+        byte[] stream = out.toByteArray();
+
+        // 破坏第4帧的魔数，它连同帧数据一起被跳过
+        int corrupt = 0;
+        for (int i = 0; i < 3; i++) {
+            corrupt += MediaMessageHeader.SIZE + payloads[i].length;
+        }
+        stream[corrupt] ^= 0x55;
+
+        MediaFrameReader reader = new MediaFrameReader(new ByteArrayInputStream(stream));
+        for (int i = 0; i < payloads.length; i++) {
+            if (i == 3) {
+                continue;
+            }
+            MyFrame frame = reader.readFrame();
+            assertEquals(i * 40L, frame.header.timestamp);
+            assertArrayEquals(payloads[i], frame.frameData);
+        }
+        assertNull(reader.readFrame());
+        assertEquals(1, reader.getResyncCount());
+        assertEquals(MediaMessageHeader.SIZE + payloads[3].length, reader.getSkippedBytes());
+    }
+
+    @Test
+    public void invalidLengthIsResynchronized() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MediaMessageHeader header = header(0, MediaFrameReader.MAX_FRAME_SIZE + 1);
+        out.write(header.toBytes());
+        byte[][] payloads = writeFrames(out, 2, new Random(3));
+
+        MediaFrameReader reader = new MediaFrameReader(new ByteArrayInputStream(out.toByteArray()));
+        assertArrayEquals(payloads[0], reader.readFrame().frameData);
+        assertArrayEquals(payloads[1], reader.readFrame().frameData);
+        assertEquals(MediaMessageHeader.SIZE, reader.getSkippedBytes());
+    }
+
+    @Test
+    public void v2CrcAndSequence() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Random random = new Random(4);
+        byte[][] payloads = new byte[8][];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = new byte[1 + random.nextInt(3000)];
+            random.nextBytes(payloads[i]);
+            MediaMessageHeader header = header(i * 40L, payloads[i].length);
+            header.magic = MediaMessageHeader.MAGIC_V2;
+            header.streamId = i % 2; // 两路流交错
+            header.sequence = i / 2;
+            header.setCrc32c(payloads[i], 0, payloads[i].length);
+            if (i == 5) {
+                continue; // 流1丢掉 sequence 2
+            }
+            out.write(header.toBytes());
+            if (i == 2) {
+                payloads[i][0] ^= 1; // 数据损坏，CRC校验失败
+            }
+            out.write(payloads[i]);
+        }
+
+        MediaFrameReader reader = new MediaFrameReader(new ByteArrayInputStream(out.toByteArray()));
+        for (int i : new int[]{0, 1, 3, 4, 6, 7}) {
+            MyFrame frame = reader.readFrame();
+            assertEquals(i % 2, frame.header.streamId);
+            assertEquals(i / 2, frame.header.sequence);
+            assertArrayEquals(payloads[i], frame.frameData);
+        }
+        assertNull(reader.readFrame());
+        assertEquals(1, reader.getCrcErrors());
+        assertEquals(2, reader.getLostFrames()); // 流0的2因CRC丢弃，流1的2未发送
+        assertEquals(0, reader.getResyncCount());
+    }
+
+    @Test
+    public void pooledFramesReuseBuffers() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[][] payloads = writeFrames(out, 200, new Random(4));
+        FrameBufferPool pool = new FrameBufferPool(8192);
+        MediaFrameReader reader = new MediaFrameReader(new ByteArrayInputStream(out.toByteArray()), pool);
+        for (int i = 0; i < payloads.length; i++) {
+            MyFrame frame = reader.readFrame();
+            assertEquals(payloads[i].length, frame.header.dataLen);
+            assertArrayEquals(payloads[i], Arrays.copyOf(frame.frameData, frame.header.dataLen));
+            frame.release();
+        }
+        assertNull(reader.readFrame());
+        // 负载最大5000字节，只用到1KB~8KB四个级别，每级只需分配一次
+        assertTrue(pool.getMisses() <= 4);
+        assertEquals(200, pool.getHits() + pool.getMisses());
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    @Test
+    public void channelReadsBatchSmallFramesAndSplitLargeOnes() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[][] payloads = writeFrames(out, 100, new Random(5));
+        byte[] large = new byte[300 * 1024]; // 大于读缓冲区
+        new Random(6).nextBytes(large);
+        out.write(header(100 * 40L, large.length).toBytes());
+        out.write(large);
+
+        // 整块可读的通道：一次读取带回多个帧
+        MediaFrameReader reader = new MediaFrameReader(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())),
+                null, 64 * 1024);
+        for (byte[] payload : payloads) {
+            assertArrayEquals(payload, reader.readFrame().frameData);
+        }
+        assertArrayEquals(large, reader.readFrame().frameData);
+        assertNull(reader.readFrame());
+        assertEquals(101, reader.getFrameCount());
+        assertTrue(reader.getReadCount() < 20);
+
+        // 每次最多7字节的通道：大帧分很多次到达也能读满
+        reader = new MediaFrameReader(Channels.newChannel(new TrickleInputStream(out.toByteArray())), null, 64 * 1024);
+        for (byte[] payload : payloads) {
+            assertArrayEquals(payload, reader.readFrame().frameData);
+        }
+        assertArrayEquals(large, reader.readFrame().frameData);
+        assertNull(reader.readFrame());
+        assertEquals(0, reader.getResyncCount());
+    }
+
+    @Test
+    public void nonBlockingChannelKeepsPartialState() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[][] payloads = writeFrames(out, 6, new Random(7));
+        byte[] stream = out.toByteArray();
+        stream[MediaMessageHeader.SIZE + payloads[0].length] ^= 0x55; // 第2帧需要重新同步
+
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        MediaFrameReader reader = new MediaFrameReader(pipe.source(), null);
+        assertNull(reader.readFrame());
+        assertFalse(reader.isEndOfStream());
+
+        // 每次写入很少的字节，读取方每次拿到的都可能是半个帧头、半个帧数据或重新同步到一半
+        int next = 0;
+        for (int offset = 0; offset < stream.length; offset += 13) {
+            pipe.sink().write(ByteBuffer.wrap(stream, offset, Math.min(13, stream.length - offset)));
+            MyFrame frame;
+            while ((frame = reader.readFrame()) != null) {
+                if (next == 1) {
+                    next++;
+                }
+                assertArrayEquals(payloads[next++], frame.frameData);
+            }
+        }
+        pipe.sink().close();
+        assertNull(reader.readFrame());
+        assertTrue(reader.isEndOfStream());
+        assertEquals(payloads.length, next);
+        assertEquals(1, reader.getResyncCount());
+        assertEquals(MediaMessageHeader.SIZE + payloads[1].length, reader.getSkippedBytes());
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedFrameData() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header(0, 100).toBytes());
+        out.write(new byte[50]);
+        new MediaFrameReader(new ByteArrayInputStream(out.toByteArray())).readFrame();
+    }
+
+    private static byte[][] writeFrames(ByteArrayOutputStream out, int count, Random random) throws IOException {
+        byte[][] payloads = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            payloads[i] = new byte[1 + random.nextInt(5000)];
+            random.nextBytes(payloads[i]);
+            out.write(header(i * 40L, payloads[i].length).toBytes());
+            out.write(payloads[i]);
+        }
+        return payloads;
+    }
+
+    private static MediaMessageHeader header(long timestamp, int dataLen) {
+        MediaMessageHeader header = new MediaMessageHeader();
+        header.magic = MediaMessageHeader.MAGIC;
+        header.type = MediaMessageHeader.H264;
+        header.timestamp = timestamp;
+        header.dataLen = dataLen;
+        return header;
+    }
+
+    // 每次最多返回7个字节，模拟 TCP 的不完整读取
+    private static class TrickleInputStream extends FilterInputStream {
+
+        TrickleInputStream(byte[] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 7));
+        }
+    }
+}
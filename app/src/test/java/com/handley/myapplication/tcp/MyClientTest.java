@@ -0,0 +1,126 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class MyClientTest {
+
+    private static final int FILE_SIZE = 32 * 1024 * 1024;
+
+    private File file;
+    private ServerSocketChannel server;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("replay", ".bin");
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(1).nextBytes(chunk);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < FILE_SIZE / chunk.length; i++) {
+                out.write(chunk);
+            }
+        }
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        server.close();
+        file.delete();
+    }
+
+    @Test
+    public void transferFileSendsWholeFile() throws Exception {
+        Future<Long> received = drainOneClient();
+        try (SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+                FileInputStream fis = new FileInputStream(file);
+                FileChannel fileChannel = fis.getChannel()) {
+            fileChannel.position(1000); // 从当前位置开始发送
+            assertEquals(FILE_SIZE - 1000, MyClient.transferFile(fileChannel, channel));
+            assertEquals(FILE_SIZE, fileChannel.position());
+        }
+        assertEquals(FILE_SIZE - 1000, (long) received.get());
+    }
+
+    @Test
+    public void copyStreamSendsWholeFile() throws Exception {
+        Future<Long> received = drainOneClient();
+        try (Socket socket = new Socket("127.0.0.1", server.socket().getLocalPort());
+                OutputStream out = socket.getOutputStream();
+                BufferedInputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            assertEquals(FILE_SIZE, MyClient.copyStream(in, out));
+        }
+        assertEquals(FILE_SIZE, (long) received.get());
+    }
+
+    // 对比原来的 20KB 缓冲区 + flush 循环和 transferTo 在本机回环上的吞吐
+    @Ignore("基准测试，手动运行")
+    @Test
+    public void throughputStreamVsTransferTo() throws Exception {
+        long streamNs = Long.MAX_VALUE;
+        long transferNs = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            Future<Long> received = drainOneClient();
+            long start = System.nanoTime();
+            try (Socket socket = new Socket("127.0.0.1", server.socket().getLocalPort());
+                    OutputStream out = socket.getOutputStream();
+                    BufferedInputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                assertEquals(FILE_SIZE, MyClient.copyStream(in, out));
+            }
+            assertEquals(FILE_SIZE, (long) received.get());
+            streamNs = Math.min(streamNs, System.nanoTime() - start);
+
+            received = drainOneClient();
+            start = System.nanoTime();
+            try (SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+                    FileInputStream fis = new FileInputStream(file);
+                    FileChannel fileChannel = fis.getChannel()) {
+                assertEquals(FILE_SIZE, MyClient.transferFile(fileChannel, channel));
+            }
+            assertEquals(FILE_SIZE, (long) received.get());
+            transferNs = Math.min(transferNs, System.nanoTime() - start);
+        }
+        System.out.println("file replay over loopback: stream " + MyClient.formatThroughput(FILE_SIZE, streamNs)
+                + ", transferTo " + MyClient.formatThroughput(FILE_SIZE, transferNs));
+    }
+
+    // 接收端只计数丢弃数据
+    private Future<Long> drainOneClient() {
+        return executor.submit(() -> {
+            try (SocketChannel client = server.accept()) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+                long total = 0;
+                int n;
+                while ((n = client.read(buffer)) >= 0) {
+                    total += n;
+                    buffer.clear();
+                }
+                return total;
+            }
+        });
+    }
+}
@@ -0,0 +1,191 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import com.handley.myapplication.common.MyFrameCallback;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MyNioServerTest {
+
+    private static final long POISON = -1; // 回调收到这个时间戳时抛出异常
+
+    private final Map<Integer, List<Long>> received = new ConcurrentHashMap<>();
+    private final List<Integer> closed = new CopyOnWriteArrayList<>();
+    private final FrameBufferPool pool = new FrameBufferPool();
+    private int port;
+    private MyNioServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    // 多个客户端同时发送，每个连接的帧带着自己的连接号按顺序交出，断开后各自通知一次
+    @Test
+    public void concurrentClientsKeepSeparateIds() throws Exception {
+        start(2);
+        final int clients = 4;
+        final int frames = 200;
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            final long base = c * 1000L;
+            Thread thread = new Thread(() -> {
+                try (Socket socket = new Socket("127.0.0.1", port)) {
+                    OutputStream out = socket.getOutputStream();
+                    for (int i = 0; i < frames; i++) {
+                        out.write(message(base + i));
+                    }
+                } catch (IOException e) {
+                    errors.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        waitFor(() -> closed.size() == clients);
+
+        assertEquals(clients, received.size());
+        assertEquals(received.keySet(), new HashSet<>(closed));
+        Set<Long> bases = new HashSet<>();
+        for (List<Long> timestamps : received.values()) {
+            assertEquals(frames, timestamps.size());
+            long base = timestamps.get(0);
+            for (int i = 0; i < frames; i++) {
+                assertEquals(base + i, (long) timestamps.get(i));
+            }
+            bases.add(base);
+        }
+        assertEquals(clients, bases.size());
+        assertEquals(0, server.getConnectionCount());
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 回调抛出异常只关闭这个连接，I/O 线程和其他连接继续工作
+    @Test
+    public void callbackExceptionClosesOnlyThatConnection() throws Exception {
+        start(1);
+        try (Socket bad = new Socket("127.0.0.1", port); Socket good = new Socket("127.0.0.1", port)) {
+            good.getOutputStream().write(message(1));
+            waitFor(() -> received.size() == 1);
+            int goodId = received.keySet().iterator().next();
+
+            bad.getOutputStream().write(message(POISON));
+            waitFor(() -> closed.size() == 1);
+            assertFalse(closed.contains(goodId));
+            assertEquals(-1, bad.getInputStream().read()); // 服务端已关闭这个连接
+
+            good.getOutputStream().write(message(2));
+            waitFor(() -> received.get(goodId).size() == 2);
+            assertEquals(1, server.getConnectionCount());
+        }
+        waitFor(() -> closed.size() == 2);
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 一次写入的帧超过每轮上限，剩下的帧已经全部在读缓冲区中，没有新的 OP_READ 也要交出
+    @Test
+    public void backlogIsDrainedWithoutNewData() throws Exception {
+        start(1);
+        final int frames = MyNioServer.MAX_FRAMES_PER_ROUND * 3 + 5;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < frames; i++) {
+            out.write(message(i));
+        }
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.getOutputStream().write(out.toByteArray());
+            waitFor(() -> received.size() == 1 && received.values().iterator().next().size() == frames);
+            List<Long> timestamps = received.values().iterator().next();
+            for (int i = 0; i < frames; i++) {
+                assertEquals(i, (long) timestamps.get(i));
+            }
+            assertTrue(closed.isEmpty());
+        }
+        waitFor(() -> closed.size() == 1);
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    private void start(int ioThreads) {
+        server = new MyNioServer(new MyFrameCallback() {
+            @Override
+            public void onFrameReceived(MyFrame frame) {
+                throw new AssertionError("connection id expected");
+            }
+
+            @Override
+            public void onFrameReceived(int connectionId, MyFrame frame) {
+                long timestamp = frame.header.timestamp;
+                frame.release();
+                if (timestamp == POISON) {
+                    throw new IllegalStateException("poison");
+                }
+                received.computeIfAbsent(connectionId, id -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(timestamp);
+            }
+
+            @Override
+            public void onConnectionClosed(int connectionId) {
+                closed.add(connectionId);
+            }
+        }, port, ioThreads, pool);
+        server.start();
+        assertNotNull(server.getBufferPool());
+    }
+
+    private static byte[] message(long timestamp) {
+        byte[] data = {0, 0, 0, 1, 0x41, (byte) timestamp};
+        MediaMessageHeader header = new MediaMessageHeader();
+        header.magic = MediaMessageHeader.MAGIC;
+        header.type = MediaMessageHeader.H264;
+        header.timestamp = timestamp;
+        header.dataLen = data.length;
+        byte[] bytes = header.toBytes();
+        byte[] message = new byte[bytes.length + data.length];
+        System.arraycopy(bytes, 0, message, 0, bytes.length);
+        System.arraycopy(data, 0, message, bytes.length, data.length);
+        return message;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class MyServerTest {
+
+    private final FrameBufferPool pool = new FrameBufferPool();
+
+    // accept 暂时失败不会结束服务线程，之后的连接照常接收；stop() 后 accept 的异常才退出
+    @Test
+    public void acceptFailureDoesNotStopServer() throws Exception {
+        LoopbackTransport loopback = new LoopbackTransport(16);
+        AtomicInteger acceptCalls = new AtomicInteger();
+        FrameTransport transport = new FrameTransport() {
+            @Override
+            public void bind() throws IOException {
+                loopback.bind();
+            }
+
+            @Override
+            public FrameSource accept() throws IOException {
+                if (acceptCalls.incrementAndGet() <= 2) {
+                    throw new IOException("Too many open files");
+                }
+                return loopback.accept();
+            }
+
+            @Override
+            public FrameSink connect() throws IOException {
+                return loopback.connect();
+            }
+
+            @Override
+            public void close() {
+                loopback.close();
+            }
+
+            @Override
+            public boolean isClosed() {
+                return loopback.isClosed();
+            }
+        };
+        List<Long> received = new CopyOnWriteArrayList<>();
+        MyServer server = new MyServer(frame -> {
+            received.add(frame.header.timestamp);
+            frame.release();
+        }, transport);
+        server.start();
+
+        FrameSink sink = transport.connect();
+        for (long t = 1; t <= 3; t++) {
+            sink.send(frame(t));
+        }
+        sink.close();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < 3) {
+            assertTrue("frames not received", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        assertEquals(3L, (long) received.get(2));
+        assertTrue(acceptCalls.get() >= 3);
+
+        server.stop();
+        assertTrue(transport.isClosed());
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 回调阻塞在满队列上时报告照常发送，发送端看到的是满水位而不是过期的旧报告
+    @Test
+    public void reportsContinueWhileCallbackBlocks() throws Exception {
+        LoopbackTransport transport = new LoopbackTransport(16);
+        BlockingQueue<MyFrame> queue = new ArrayBlockingQueue<>(2);
+        MyServer server = new MyServer(frame -> {
+            try {
+                queue.put(frame);
+            } catch (InterruptedException e) {
+                frame.release();
+            }
+        }, transport);
+        server.setReceiveWindow(new ReceiveWindow(queue));
+        server.start();
+
+        AdaptiveFrameSink sink = new AdaptiveFrameSink(transport.connect());
+        for (long t = 1; t <= 3; t++) {
+            sink.send(frame(t)); // 第3帧时回调阻塞
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sink.getFillRatio() < 1f || sink.getReports() < 3) {
+            assertTrue("no report while blocked: " + sink, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        long reports = sink.getReports();
+        Thread.sleep(300);
+        assertTrue(sink.getReports() > reports);
+        assertEquals(1f, sink.getFillRatio(), 0f);
+
+        server.stop();
+        sink.close();
+        MyFrame queued;
+        while ((queued = queue.poll()) != null) {
+            queued.release();
+        }
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    private MyFrame frame(long timestamp) {
+        MyFrame frame = pool.obtain(4);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = MediaMessageHeader.H264;
+        frame.header.timestamp = timestamp;
+        return frame;
+    }
+}
@@ -0,0 +1,277 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class SharedMemoryTransportTest {
+
+    private static final int CAPACITY = 64 * 1024;
+    private static final int DEAD_PID = Integer.MAX_VALUE; // 大于 pid_max，不存在的进程
+
+    private final FrameBufferPool pool = new FrameBufferPool();
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("frame-ring", ".shm");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    // 服务端和客户端各自映射同一个文件，和两个进程的情况相同。帧大小不一，记录会跨过环的末尾回绕
+    @Test
+    public void framesWrapAroundRingInOrder() throws Exception {
+        SharedMemoryTransport transport = new SharedMemoryTransport(file, CAPACITY, pool);
+        transport.bind();
+        int count = 2000;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> producer = executor.submit(() -> {
+                try (FrameSink sink = new SharedMemoryTransport(file, CAPACITY, pool).connect()) {
+                    for (int i = 0; i < count; i++) {
+                        sink.send(frame(pool, i, 1 + i * 37 % 9000, i % 2 == 0));
+                    }
+                }
+                return null;
+            });
+            try (FrameSource source = transport.accept()) {
+                for (int i = 0; i < count; i++) {
+                    MyFrame frame = source.readFrame();
+                    assertEquals(i, frame.header.timestamp);
+                    assertEquals(i % 2 == 0, frame.header.isV2());
+                    assertFrameData(frame, i, 1 + i * 37 % 9000);
+                    frame.release();
+                }
+                assertNull(source.readFrame());
+            }
+            producer.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+            transport.close();
+        }
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    @Test
+    public void reconnectAfterBothEndsClose() throws IOException {
+        SharedMemoryTransport transport = new SharedMemoryTransport(file, CAPACITY, pool);
+        transport.bind();
+        for (int round = 0; round < 3; round++) {
+            FrameSink sink = transport.connect();
+            try {
+                transport.connect();
+                fail("second producer");
+            } catch (IOException expected) {
+                // 同一时间只有一个连接
+            }
+            sink.send(frame(pool, round, 100, false));
+            sink.close();
+            FrameSource source = transport.accept();
+            MyFrame frame = source.readFrame();
+            assertEquals(round, frame.header.timestamp);
+            frame.release();
+            assertNull(source.readFrame());
+            source.close();
+        }
+        transport.close();
+    }
+
+    // 接收端先关闭、发送端后关闭时，由下一次 accept() 清空环，之后可以再连接
+    @Test
+    public void reconnectAfterConsumerClosesFirst() throws Exception {
+        SharedMemoryTransport transport = new SharedMemoryTransport(file, CAPACITY, pool);
+        transport.bind();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            FrameSink sink = transport.connect();
+            FrameSource source = transport.accept();
+            source.close();
+            try {
+                sink.send(frame(pool, 0, 100, false));
+                fail("consumer closed");
+            } catch (IOException expected) {
+                // 帧已经由 sink 释放
+            }
+            sink.close();
+
+            Future<FrameSource> next = executor.submit(transport::accept);
+            FrameSink nextSink = transport.connect();
+            nextSink.send(frame(pool, 1, 100, false));
+            nextSink.close();
+            FrameSource nextSource = next.get(5, TimeUnit.SECONDS);
+            MyFrame frame = nextSource.readFrame();
+            assertEquals(1, frame.header.timestamp);
+            frame.release();
+            assertNull(nextSource.readFrame());
+            nextSource.close();
+        } finally {
+            executor.shutdownNow();
+            transport.close();
+        }
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 发送端进程没有 close() 就退出：接收端读完已写入的帧后得到流结束，之后可以再连接
+    @Test
+    public void producerDiesWithoutClose() throws IOException {
+        SharedMemoryTransport transport = new SharedMemoryTransport(file, CAPACITY, pool);
+        transport.bind();
+        FrameSink sink = transport.connect();
+        sink.send(frame(pool, 7, 100, false));
+        attach().setProducerPid(DEAD_PID); // 模拟发送端进程被杀
+
+        FrameSource source = transport.accept();
+        MyFrame frame = source.readFrame();
+        assertEquals(7, frame.header.timestamp);
+        frame.release();
+        assertNull(source.readFrame());
+        source.close();
+
+        transport.connect().close();
+        transport.close();
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 上一个发送端死在 CONNECTED 状态，新的 connect() 替它关闭，等接收端结束上一个连接后接上
+    @Test
+    public void connectReplacesDeadProducer() throws Exception {
+        SharedMemoryTransport transport = new SharedMemoryTransport(file, CAPACITY, pool);
+        transport.bind();
+        transport.connect();
+        attach().setProducerPid(DEAD_PID);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> server = executor.submit(() -> {
+                try (FrameSource source = transport.accept()) {
+                    assertNull(source.readFrame());
+                }
+                return null;
+            });
+            FrameSink sink = transport.connect();
+            server.get(5, TimeUnit.SECONDS);
+            assertEquals(SharedMemoryRing.MY_PID, attach().getProducerPid());
+            sink.close();
+        } finally {
+            executor.shutdownNow();
+            transport.close();
+        }
+    }
+
+    @Test
+    public void frameLargerThanRingIsRejected() throws IOException {
+        SharedMemoryTransport transport = new SharedMemoryTransport(file, CAPACITY, pool);
+        transport.bind();
+        FrameSink sink = transport.connect();
+        try {
+            sink.send(frame(pool, 0, CAPACITY, false));
+            fail("frame larger than ring");
+        } catch (IOException expected) {
+            // 帧已经由 sink 释放
+        }
+        assertEquals(0, pool.getOutstandingBuffers());
+        sink.close();
+        transport.close();
+    }
+
+    // 另一个 JVM 进程映射同一个文件发送帧
+    @Test
+    public void crossProcess() throws Exception {
+        receiveFromChildProcess(2000, 4096);
+    }
+
+    // 跨进程传输的每帧耗时，只打印结果
+    @Ignore("基准测试，手动运行")
+    @Test
+    public void crossProcessThroughput() throws Exception {
+        int count = 20_000;
+        int size = 4096;
+        long elapsedNs = receiveFromChildProcess(count, size);
+        System.out.printf("shared memory ring across processes: %d frames x %d bytes, %.1f us/frame%n", count, size,
+                elapsedNs / 1000.0 / count);
+    }
+
+    // 启动发送端进程并校验收到的每一帧，返回接收耗时
+    private long receiveFromChildProcess(int count, int size) throws Exception {
+        SharedMemoryTransport transport = new SharedMemoryTransport(file, CAPACITY, pool);
+        transport.bind();
+        long elapsedNs;
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                SharedMemoryTransportTest.class.getName(), file.getPath(), Integer.toString(count),
+                Integer.toString(size)).inheritIO().start();
+        try (FrameSource source = transport.accept()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                MyFrame frame = source.readFrame();
+                assertEquals(i, frame.header.timestamp);
+                assertFrameData(frame, i, size);
+                frame.release();
+            }
+            assertNull(source.readFrame());
+            elapsedNs = System.nanoTime() - start;
+        } finally {
+            transport.close();
+        }
+        assertEquals(0, process.waitFor());
+        return elapsedNs;
+    }
+
+    // crossProcess() 的发送端进程
+    public static void main(String[] args) throws IOException {
+        FrameBufferPool pool = new FrameBufferPool();
+        int count = Integer.parseInt(args[1]);
+        int size = Integer.parseInt(args[2]);
+        try (FrameSink sink = new SharedMemoryTransport(new File(args[0]), CAPACITY, pool).connect()) {
+            for (int i = 0; i < count; i++) {
+                sink.send(frame(pool, i, size, true));
+            }
+        }
+    }
+
+    // 像另一个进程一样单独映射同一个文件
+    private SharedMemoryRing attach() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return SharedMemoryRing.attach(channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+    }
+
+    private static MyFrame frame(FrameBufferPool pool, long timestamp, int size, boolean v2) {
+        MyFrame frame = pool.obtain(size);
+        frame.header.magic = v2 ? MediaMessageHeader.MAGIC_V2 : MediaMessageHeader.MAGIC;
+        frame.header.type = MediaMessageHeader.H264;
+        frame.header.timestamp = timestamp;
+        frame.header.sequence = (int) timestamp;
+        Arrays.fill(frame.frameData, 0, size, (byte) timestamp);
+        return frame;
+    }
+
+    private static void assertFrameData(MyFrame frame, long timestamp, int size) {
+        assertEquals(size, frame.header.dataLen);
+        byte[] expected = new byte[size];
+        Arrays.fill(expected, (byte) timestamp);
+        assertArrayEquals(expected, Arrays.copyOf(frame.frameData, size));
+    }
+}
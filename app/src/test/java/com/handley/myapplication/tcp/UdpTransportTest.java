@@ -0,0 +1,311 @@
+package com.handley.myapplication.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.FrameBufferPool;
+import com.handley.myapplication.common.MediaMessageHeader;
+import com.handley.myapplication.common.MyFrame;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class UdpTransportTest {
+
+    private final FrameBufferPool pool = new FrameBufferPool();
+
+    // SPS/PPS 单独成包，大的 IDR 拆成 FU-A；3字节起始码还原为4字节
+    @Test
+    public void h264FuARoundTrip() throws IOException {
+        byte[] idr = nal(0x65, 5000);
+        byte[] data = concat(new byte[]{0, 0, 0, 1}, nal(0x67, 20), new byte[]{0, 0, 1}, nal(0x68, 4),
+                new byte[]{0, 0, 0, 1}, idr);
+        MyFrame frame = frame(MediaMessageHeader.H264, 1234567890123L, data);
+        frame.header.magic = MediaMessageHeader.MAGIC_V2;
+        frame.header.streamId = 7;
+        frame.header.sequence = 42;
+        frame.header.rotation = 90;
+
+        List<byte[]> packets = packetize(frame, 1000);
+        assertEquals(2 + 6, packets.size()); // IDR 去掉NAL头后 4999 字节，按 998 字节切分为6个 FU-A
+        byte[] fu = packets.get(2);
+        assertEquals(RtpPacketizer.FU_A, fu[RtpPacket.OVERHEAD] & 0x1F);
+        assertEquals(0x80 | 5, fu[RtpPacket.OVERHEAD + 1] & 0xFF);
+        assertTrue(RtpPacket.marker(packets.get(packets.size() - 1)));
+
+        MyFrame received = depacketize(packets);
+        byte[] expected = concat(new byte[]{0, 0, 0, 1}, nal(0x67, 20), new byte[]{0, 0, 0, 1}, nal(0x68, 4),
+                new byte[]{0, 0, 0, 1}, idr);
+        assertArrayEquals(expected, Arrays.copyOf(received.frameData, received.header.dataLen));
+        assertEquals(1234567890123L, received.header.timestamp);
+        assertEquals(7, received.header.streamId);
+        assertEquals(42, received.header.sequence);
+        assertEquals(90, received.header.rotation);
+        assertTrue(received.header.isV2());
+        received.release();
+        frame.release();
+    }
+
+    @Test
+    public void opusSinglePacketAndGenericSplit() throws IOException {
+        MyFrame opus = frame(MediaMessageHeader.OPUS, 20_000, nal(0x11, 160));
+        List<byte[]> packets = packetize(opus, 1000);
+        assertEquals(1, packets.size());
+        MyFrame received = depacketize(packets);
+        assertArrayEquals(Arrays.copyOf(opus.frameData, 160), Arrays.copyOf(received.frameData, 160));
+        received.release();
+        opus.release();
+
+        // H.265 没有 FU 打包，按载荷大小直接切分
+        MyFrame hevc = frame(MediaMessageHeader.H265, 1, nal(0x26, 2500));
+        packets = packetize(hevc, 1000);
+        assertEquals(3, packets.size());
+        received = depacketize(packets);
+        assertEquals(2500, received.header.dataLen);
+        assertArrayEquals(Arrays.copyOf(hevc.frameData, 2500), Arrays.copyOf(received.frameData, 2500));
+        received.release();
+        hevc.release();
+    }
+
+    @Test
+    public void nackEncodingAcrossWrap() {
+        int[] sequences = {65530, 65531, 65535, 0, 3, 100};
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        RtpPacket.writeNack(buffer, 1, 2, sequences, sequences.length);
+        assertEquals(12 + 2 * 4, buffer.position()); // 65530 的位图覆盖到 3，100 单独一项
+        int[] out = new int[16];
+        int count = RtpPacket.readNack(buffer.array(), buffer.position(), out);
+        assertArrayEquals(sequences, Arrays.copyOf(out, count));
+        assertEquals(2, RtpPacket.nackMediaSsrc(buffer.array()));
+    }
+
+    @Test
+    public void jitterBufferReordersRequestsAndGivesUp() {
+        long budget = TimeUnit.MILLISECONDS.toNanos(100);
+        JitterBuffer buffer = new JitterBuffer(budget);
+        long now = 0;
+        buffer.insert(packet(65534), RtpPacket.OVERHEAD, now);
+        buffer.insert(packet(1), RtpPacket.OVERHEAD, now); // 65535 和 0 缺失
+        assertEquals(65534, RtpPacket.sequence(buffer.packet(buffer.poll(now))));
+        assertEquals(JitterBuffer.NONE, buffer.poll(now));
+
+        int[] nacks = new int[8];
+        assertEquals(0, buffer.collectNacks(now, nacks)); // 可能只是乱序
+        now += TimeUnit.MILLISECONDS.toNanos(10);
+        assertEquals(2, buffer.collectNacks(now, nacks));
+        assertEquals(65535, nacks[0]);
+        assertEquals(0, nacks[1]);
+        assertEquals(0, buffer.collectNacks(now, nacks)); // 间隔内不重复请求
+
+        buffer.insert(packet(65535), RtpPacket.OVERHEAD, now); // 重传到达
+        assertEquals(65535, RtpPacket.sequence(buffer.packet(buffer.poll(now))));
+        assertEquals(JitterBuffer.NONE, buffer.poll(now));
+        now += budget;
+        assertEquals(JitterBuffer.GAP, buffer.poll(now)); // 0 超过预算，放弃
+        assertEquals(1, RtpPacket.sequence(buffer.packet(buffer.poll(now))));
+        assertEquals(1, buffer.getRecovered());
+        assertEquals(1, buffer.getLost());
+
+        buffer.insert(packet(0), RtpPacket.OVERHEAD, now);
+        assertEquals(1, buffer.getLate());
+        buffer.markEnd(2, now);
+        assertTrue(buffer.isFinished());
+    }
+
+    // 本机回环 + 5%丢包 + 0~10ms抖动（乱序），所有帧靠重传按顺序收全
+    @Test
+    public void loopbackWithLossRecoversByNack() throws Exception {
+        NetworkImpairment impairment = new NetworkImpairment(0.05, 10, 1);
+        UdpTransport transport = new UdpTransport("127.0.0.1", freePort(), pool, 500, impairment);
+        List<Long> timestamps = stream(transport, 300);
+        impairment.shutdown();
+        assertEquals(300, timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals(i, (long) timestamps.get(i));
+        }
+        assertTrue(impairment.getDropped() > 0);
+        assertTrue(transport.getRecoveredPackets() > 0);
+        assertEquals(0, transport.getDroppedFrames());
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 丢包严重、预算很短时放弃丢失的帧，后面的帧继续到达，流不会卡住
+    @Test
+    public void heavyLossSkipsFramesWithoutStalling() throws Exception {
+        NetworkImpairment impairment = new NetworkImpairment(0.3, 5, 2);
+        UdpTransport transport = new UdpTransport("127.0.0.1", freePort(), pool, 30, impairment);
+        List<Long> timestamps = stream(transport, 200);
+        impairment.shutdown();
+        assertTrue(timestamps.size() > 0 && timestamps.size() <= 200);
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertTrue(timestamps.get(i) > timestamps.get(i - 1));
+        }
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 发送端发了一帧半后没有 BYE 就消失：接收端超时后结束这条流、丢掉半帧，下一次 accept 接收新的发送端
+    @Test
+    public void silentSenderTimesOut() throws Exception {
+        UdpTransport transport = new UdpTransport("127.0.0.1", freePort(), pool, 20, null);
+        transport.bind();
+        try {
+            try (DatagramSocket dead = new DatagramSocket()) {
+                MyFrame first = frame(MediaMessageHeader.H264, 1, nal(0x65, 100));
+                MyFrame second = frame(MediaMessageHeader.H264, 2, nal(0x41, 3000));
+                List<byte[]> packets = packetize(first, 1000);
+                List<byte[]> large = packetize(second, 1000);
+                first.release();
+                second.release();
+                packets.add(large.get(0)); // 只有第二帧的第一个包
+                // 两帧各自打包，序号重新编号成连续的
+                for (int i = 0; i < packets.size(); i++) {
+                    byte[] packet = packets.get(i);
+                    packet[2] = (byte) (i >> 8);
+                    packet[3] = (byte) i;
+                    dead.send(new DatagramPacket(packet, packet.length,
+                            new InetSocketAddress("127.0.0.1", transport.getPort())));
+                }
+            } // 关闭 socket，不发 BYE
+
+            long start = System.nanoTime();
+            try (FrameSource source = transport.accept()) {
+                MyFrame frame = source.readFrame();
+                assertEquals(1, frame.header.timestamp);
+                frame.release();
+                assertNull(source.readFrame());
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(1, transport.getDroppedFrames());
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<?> sender = executor.submit(() -> {
+                    try (FrameSink sink = transport.connect()) {
+                        sink.send(frame(MediaMessageHeader.OPUS, 3, nal(0x22, 120)));
+                    }
+                    return null;
+                });
+                try (FrameSource source = transport.accept()) {
+                    MyFrame frame = source.readFrame();
+                    assertEquals(3, frame.header.timestamp);
+                    frame.release();
+                    assertNull(source.readFrame());
+                }
+                sender.get(5, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            transport.close();
+        }
+        assertEquals(0, pool.getOutstandingBuffers());
+    }
+
+    // 交替发送视频帧（多个包）和音频帧（一个包），返回收到的帧的时间戳
+    private List<Long> stream(UdpTransport transport, int count) throws Exception {
+        transport.bind();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> sender = executor.submit(() -> {
+                try (FrameSink sink = transport.connect()) {
+                    for (int i = 0; i < count; i++) {
+                        byte[] data = i % 2 == 0 ? concat(new byte[]{0, 0, 0, 1}, nal(0x41, 3000 + i))
+                                : nal(0x22, 120);
+                        sink.send(frame(i % 2 == 0 ? MediaMessageHeader.H264 : MediaMessageHeader.OPUS, i, data));
+                        if (i % 20 == 0) {
+                            Thread.sleep(1);
+                        }
+                    }
+                }
+                return null;
+            });
+            List<Long> timestamps = new ArrayList<>();
+            try (FrameSource source = transport.accept()) {
+                MyFrame frame;
+                while ((frame = source.readFrame()) != null) {
+                    int i = (int) frame.header.timestamp;
+                    byte[] expected = i % 2 == 0 ? concat(new byte[]{0, 0, 0, 1}, nal(0x41, 3000 + i))
+                            : nal(0x22, 120);
+                    assertArrayEquals(expected, Arrays.copyOf(frame.frameData, frame.header.dataLen));
+                    timestamps.add(frame.header.timestamp);
+                    frame.release();
+                }
+            }
+            sender.get(10, TimeUnit.SECONDS);
+            return timestamps;
+        } finally {
+            executor.shutdownNow();
+            transport.close();
+        }
+    }
+
+    private List<byte[]> packetize(MyFrame frame, int maxPayload) throws IOException {
+        List<byte[]> packets = new ArrayList<>();
+        RtpPacketizer packetizer = new RtpPacketizer(99, maxPayload, 65533);
+        packetizer.packetize(frame, packet -> packets.add(Arrays.copyOfRange(packet.array(), 0, packet.limit())));
+        return packets;
+    }
+
+    private MyFrame depacketize(List<byte[]> packets) {
+        RtpDepacketizer depacketizer = new RtpDepacketizer(pool);
+        MyFrame frame = null;
+        for (byte[] packet : packets) {
+            assertTrue(RtpPacket.isValid(packet, packet.length));
+            frame = depacketizer.push(packet, packet.length);
+        }
+        return frame;
+    }
+
+    private MyFrame frame(byte type, long timestamp, byte[] data) {
+        MyFrame frame = pool.obtain(data.length);
+        frame.header.magic = MediaMessageHeader.MAGIC;
+        frame.header.type = type;
+        frame.header.timestamp = timestamp;
+        System.arraycopy(data, 0, frame.frameData, 0, data.length);
+        return frame;
+    }
+
+    private static byte[] packet(int sequence) {
+        byte[] packet = new byte[RtpPacket.OVERHEAD];
+        packet[2] = (byte) (sequence >> 8);
+        packet[3] = (byte) sequence;
+        return packet;
+    }
+
+    // NAL 头 + 不含0的数据
+    private static byte[] nal(int header, int length) {
+        byte[] nal = new byte[length];
+        nal[0] = (byte) header;
+        for (int i = 1; i < length; i++) {
+            nal[i] = (byte) (1 + (i * 31 + header) % 255);
+        }
+        return nal;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static int freePort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
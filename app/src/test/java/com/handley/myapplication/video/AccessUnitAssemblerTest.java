@@ -0,0 +1,97 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class AccessUnitAssemblerTest {
+
+    private static final byte[] SPS = {0x67, 0x42, 0x00, 0x1F};
+    private static final byte[] PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+    private static final byte[] IDR_FIRST = {0x65, (byte) 0x88, 0x01}; // first_mb_in_slice = 0
+    private static final byte[] IDR_NEXT = {0x65, 0x40, 0x02};         // first_mb_in_slice != 0
+    private static final byte[] P_FIRST = {0x41, (byte) 0x9A, 0x03};
+    private static final byte[] P_NEXT = {0x41, 0x20, 0x04};
+
+    private final AccessUnitAssembler assembler = new AccessUnitAssembler();
+
+    @Test
+    public void groupsParameterSetsAndSlicesIntoOneFrame() {
+        assertNull(add(SPS));
+        assertNull(add(PPS));
+        assertNull(add(IDR_FIRST));
+        assertNull(add(IDR_NEXT)); // 同一帧的第二个slice
+
+        AccessUnitAssembler.AccessUnit frame = add(P_FIRST);
+        assertEquals(2, frame.sliceCount);
+        assertTrue(frame.isKeyFrame());
+        assertFalse(frame.isCodecConfig());
+        assertEquals(4 * 4 + SPS.length + PPS.length + IDR_FIRST.length + IDR_NEXT.length, frame.length);
+
+        assertNull(add(P_NEXT));
+        frame = assembler.flush();
+        assertEquals(2, frame.sliceCount);
+        assertFalse(frame.isKeyFrame());
+        assertEquals(4 * 2 + P_FIRST.length + P_NEXT.length, frame.length);
+        assertNull(assembler.flush());
+    }
+
+    @Test
+    public void parameterSetsOnlyIsCodecConfig() {
+        assertNull(add(SPS));
+        assertNull(add(PPS));
+        AccessUnitAssembler.AccessUnit frame = assembler.flush();
+        assertEquals(0, frame.sliceCount);
+        assertTrue(frame.isCodecConfig());
+        assertFalse(frame.isKeyFrame());
+    }
+
+    @Test
+    public void audStartsNewFrame() {
+        assertNull(add(P_FIRST));
+        AccessUnitAssembler.AccessUnit frame = add(new byte[]{0x09, (byte) 0xF0});
+        assertEquals(1, frame.sliceCount);
+        assertNull(add(P_NEXT)); // AUD 之后的第一个slice属于新的一帧
+        assertEquals(1, assembler.flush().sliceCount);
+    }
+
+    @Test
+    public void discardedSliceDropsWholePicture() {
+        assertNull(add(P_FIRST));
+        assertNull(discard(P_NEXT)); // 第二个slice丢了，已经组装的第一个slice也不提交
+        assertNull(assembler.flush());
+
+        // 丢弃的slice开始新的一帧时，之前完整的帧照常返回
+        assertNull(add(SPS));
+        assertNull(add(PPS));
+        assertNull(add(IDR_FIRST));
+        AccessUnitAssembler.AccessUnit frame = discard(P_FIRST);
+        assertTrue(frame.isKeyFrame());
+        assertEquals(1, frame.sliceCount);
+        assertNull(discard(P_NEXT));
+        assertNull(assembler.flush());
+
+        // 没有slice时只丢弃slice本身，参数集保留
+        assertNull(add(SPS));
+        assertNull(discard(P_FIRST));
+        assertTrue(assembler.flush().isCodecConfig());
+    }
+
+    private AccessUnitAssembler.AccessUnit add(byte[] nalData) {
+        return assembler.add(nal(nalData));
+    }
+
+    private AccessUnitAssembler.AccessUnit discard(byte[] nalData) {
+        return assembler.discard(nal(nalData));
+    }
+
+    private static NalUnit nal(byte[] nalData) {
+        NalUnit nal = new NalUnit();
+        nal.set(ByteBuffer.wrap(nalData), 0, nalData.length);
+        return nal;
+    }
+}
@@ -0,0 +1,96 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class AvccConverterTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        byte[] annexB = randomStream(new Random(7), 200);
+        byte[] avcc = AvccConverter.annexBToAvcc(annexB, 0, annexB.length);
+        assertEquals(annexB.length, avcc.length); // 全部是4字节起始码，长度不变
+
+        // 按长度读取的NAL与查找起始码读取的完全一致
+        H264StreamReader streamReader = new H264StreamReader();
+        streamReader.reset(annexB, 0, annexB.length);
+        AvccNalReader avccReader = new AvccNalReader();
+        avccReader.reset(avcc, 0, avcc.length);
+        List<byte[]> expected = readAll(streamReader);
+        List<byte[]> actual = readAll(avccReader);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+
+        assertArrayEquals(annexB, AvccConverter.avccToAnnexB(avcc, 0, avcc.length));
+
+        byte[] inPlace = annexB.clone();
+        assertTrue(AvccConverter.annexBToAvccInPlace(inPlace, 0, inPlace.length));
+        assertArrayEquals(avcc, inPlace);
+        AvccConverter.avccToAnnexBInPlace(inPlace, 0, inPlace.length);
+        assertArrayEquals(annexB, inPlace);
+    }
+
+    @Test
+    public void threeByteStartCode() {
+        byte[] annexB = {0, 0, 0, 1, 0x67, 0x42, 0, 0, 1, 0x68, (byte) 0xCE, 0, 0, 0, 1, 0x65, (byte) 0x88};
+        byte[] copy = annexB.clone();
+        assertFalse(AvccConverter.annexBToAvccInPlace(copy, 0, copy.length));
+        assertArrayEquals(annexB, copy); // 不能原地转换时不修改数据
+
+        byte[] avcc = AvccConverter.annexBToAvcc(annexB, 0, annexB.length);
+        assertArrayEquals(new byte[]{0, 0, 0, 2, 0x67, 0x42, 0, 0, 0, 2, 0x68, (byte) 0xCE, 0, 0, 0, 2, 0x65,
+                (byte) 0x88}, avcc);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidLength() throws IOException {
+        byte[] avcc = {0, 0, 0, 2, 0x67, 0x42, 0, 0, 0, 9, 0x68};
+        AvccNalReader reader = new AvccNalReader();
+        reader.reset(avcc, 0, avcc.length);
+        NalUnit nal = new NalUnit();
+        assertTrue(reader.readNextNalUnit(nal));
+        reader.readNextNalUnit(nal);
+    }
+
+    private static List<byte[]> readAll(NalSource source) throws IOException {
+        List<byte[]> nals = new ArrayList<>();
+        NalUnit nal = new NalUnit();
+        while (source.readNextNalUnit(nal)) {
+            nals.add(nal.toByteArray());
+        }
+        return nals;
+    }
+
+    // 随机NAL（4字节起始码），内容中插入防竞争字节，避免出现起始码
+    private static byte[] randomStream(Random random, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            out.write(NalUnit.START_CODE, 0, 4);
+            out.write(0x41);
+            int length = 1 + random.nextInt(3000);
+            int zeros = 0;
+            for (int j = 0; j < length; j++) {
+                int b = random.nextInt(4) == 0 ? 0 : random.nextInt(256);
+                if (zeros >= 2 && b <= 3) {
+                    out.write(3);
+                    zeros = 0;
+                }
+                out.write(b);
+                zeros = b == 0 ? zeros + 1 : 0;
+            }
+            out.write(0x80); // rbsp_stop_one_bit，NAL不以0结尾
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,161 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class BitReaderTest {
+
+    @Test
+    public void readBitsAcrossBytes() {
+        BitReader reader = new BitReader(new byte[]{(byte) 0xA5, (byte) 0xF0, 0x0F, 0x12, 0x34, 0x56, 0x78, (byte) 0x9A, (byte) 0xBC}, 0);
+        assertEquals(0x5, reader.readBits(3));  // 101
+        assertEquals(0x5, reader.readBits(5));  // 00101
+        assertEquals(0xF00, reader.readBits(12));
+        assertEquals(0xF, reader.readBits(4));
+        assertEquals(0x12345678, reader.readBits(32));
+        assertEquals(0x9ABC, reader.readBits(16));
+        assertEquals(72, reader.bitPosition());
+    }
+
+    @Test
+    public void readUeSe() {
+        // ue: 0=1, 1=010, 2=011, 3=00100, 7=0001000；se: 1=010, -1=011, 2=00100, -2=00101
+        // 1 010 011 00100 0001000 010 011 00100 00101 -> 补齐到字节
+        BitReader reader = new BitReader(bits("1010011001000001000010011001000010100000"), 0);
+        assertEquals(0, reader.readUE());
+        assertEquals(1, reader.readUE());
+        assertEquals(2, reader.readUE());
+        assertEquals(3, reader.readUE());
+        assertEquals(7, reader.readUE());
+        assertEquals(1, reader.readSE());
+        assertEquals(-1, reader.readSE());
+        assertEquals(2, reader.readSE());
+        assertEquals(-2, reader.readSE());
+    }
+
+    // 随机生成的码字（含超过缓存长度的长码字）逐个读回
+    @Test
+    public void randomExpGolombRoundTrip() {
+        Random random = new Random(5);
+        StringBuilder sb = new StringBuilder();
+        long[] values = new long[2000];
+        for (int i = 0; i < values.length; i++) {
+            int bits = random.nextInt(32);
+            values[i] = bits == 0 ? 0 : (random.nextLong() & ((1L << bits) - 1));
+            values[i] = Math.min(values[i], 0xFFFFFFFEL);
+            String code = Long.toBinaryString(values[i] + 1);
+            for (int z = 1; z < code.length(); z++) {
+                sb.append('0');
+            }
+            sb.append(code);
+            sb.append(i % 2 == 0 ? "1" : "0"); // 插入1位普通数据
+        }
+        sb.append("1"); // 结束后补1，避免末尾出现连续的0x00
+        while (sb.length() % 8 != 0) {
+            sb.append('0');
+        }
+
+        BitReader reader = new BitReader(escape(bits(sb.toString())), 0);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals((int) values[i], reader.readUE());
+            assertEquals(i % 2 == 0, reader.readBool());
+        }
+    }
+
+    @Test
+    public void skipsEmulationPrevention() {
+        // 00 00 03 01 -> 00 00 01，00 00 03 03 -> 00 00 03
+        BitReader reader = new BitReader(new byte[]{0x11, 0, 0, 3, 1, 0, 0, 3, 3, 0x22}, 0);
+        assertEquals(0x11, reader.readBits(8));
+        assertEquals(0x000001, reader.readBits(24));
+        assertEquals(0x000003, reader.readBits(24));
+        assertEquals(0x22, reader.readBits(8));
+        assertEquals(64, reader.bitPosition());
+    }
+
+    @Test
+    public void resetOnNalUnit() {
+        NalUnit nal = new NalUnit();
+        nal.set(ByteBuffer.wrap(new byte[]{(byte) 0xFF, 0x67, (byte) 0x80, (byte) 0xFF}), 1, 2);
+        BitReader reader = new BitReader();
+        reader.reset(nal, 1);
+        assertEquals(0, reader.readUE());
+        assertEquals(0, reader.readBits(7));
+    }
+
+    @Test
+    public void moreRbspData() {
+        // 数据 1010，第5位是停止位：1010 1000，后面跟一个 cabac_zero_word
+        BitReader reader = new BitReader(new byte[]{(byte) 0xA8, 0, 0, 3}, 0);
+        reader.readBits(3);
+        assertTrue(reader.moreRbspData());
+        reader.readBits(1);
+        assertFalse(reader.moreRbspData());
+
+        // 停止位前有防竞争字节：00 00 03 01 80 -> 数据 00 00 01，停止位 0x80
+        reader = new BitReader(new byte[]{0, 0, 3, 0x01, (byte) 0x80}, 0);
+        reader.readBits(16);
+        assertTrue(reader.moreRbspData());
+        reader.readBits(8);
+        assertFalse(reader.moreRbspData());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void overrunThrows() {
+        BitReader reader = new BitReader(new byte[]{0x12}, 0);
+        reader.readBits(4);
+        reader.readBits(5);
+    }
+
+    @Test
+    public void invalidBitCountThrows() {
+        BitReader reader = new BitReader(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, 0);
+        for (int numBits : new int[]{-1, 33, 64}) {
+            try {
+                reader.readBits(numBits);
+                fail("readBits(" + numBits + ")");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertEquals(0x01020304, reader.readBits(32)); // 没有消耗数据
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void truncatedExpGolombThrows() {
+        new BitReader(new byte[]{0, 0}, 0).readUE();
+    }
+
+    private static byte[] bits(String bits) {
+        byte[] data = new byte[bits.length() / 8];
+        for (int i = 0; i < bits.length(); i++) {
+            if (bits.charAt(i) == '1') {
+                data[i / 8] |= (byte) (0x80 >>> (i % 8));
+            }
+        }
+        return data;
+    }
+
+    // 加入防竞争字节：连续两个0x00后如果是0x00~0x03，插入0x03
+    private static byte[] escape(byte[] rbsp) {
+        ByteBuffer out = ByteBuffer.allocate(rbsp.length * 3 / 2 + 4);
+        int zeros = 0;
+        for (byte b : rbsp) {
+            if (zeros >= 2 && (b & 0xFF) <= 3) {
+                out.put((byte) 3);
+                zeros = 0;
+            }
+            out.put(b);
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        byte[] data = new byte[out.position()];
+        out.flip();
+        out.get(data);
+        return data;
+    }
+}
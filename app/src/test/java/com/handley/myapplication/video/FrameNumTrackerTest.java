@@ -0,0 +1,110 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class FrameNumTrackerTest {
+
+    @Test
+    public void continuousStreamIsAccepted() throws IOException {
+        List<byte[]> nals = readNals();
+        FrameNumTracker tracker = new FrameNumTracker();
+        ParameterSetCache parameterSets = new ParameterSetCache();
+        for (byte[] bytes : nals) {
+            assertTrue(feed(tracker, parameterSets, bytes));
+        }
+        assertEquals(0, tracker.gapCount());
+        assertEquals(0, tracker.corruptCount());
+        assertFalse(tracker.isDiscarding());
+    }
+
+    @Test
+    public void lostFrameDiscardsUntilIdr() throws IOException {
+        List<byte[]> nals = readNals();
+        FrameNumTracker tracker = new FrameNumTracker();
+        ParameterSetCache parameterSets = new ParameterSetCache();
+        int slices = 0;
+        int lost = -1;
+        for (int i = 0; i < nals.size(); i++) {
+            byte[] bytes = nals.get(i);
+            int type = bytes[0] & 0x1F;
+            if (type == 1 && ++slices == 10) {
+                lost = i; // 模拟丢失一个参考P帧
+                continue;
+            }
+            boolean accepted = feed(tracker, parameterSets, bytes);
+            if (type == 1 || type == 5) {
+                assertEquals("nal " + i, lost < 0, accepted);
+            }
+        }
+        assertTrue(lost > 0);
+        assertEquals(1, tracker.gapCount());
+        assertTrue(tracker.isDiscarding());
+
+        // 下一个IDR恢复
+        assertTrue(feed(tracker, parameterSets, firstIdr(nals)));
+        assertFalse(tracker.isDiscarding());
+    }
+
+    @Test
+    public void sliceBeforeIdrOrCorruptIsDropped() throws IOException {
+        List<byte[]> nals = readNals();
+        FrameNumTracker tracker = new FrameNumTracker();
+        ParameterSetCache parameterSets = new ParameterSetCache();
+        byte[] pSlice = null;
+        for (byte[] bytes : nals) {
+            int type = bytes[0] & 0x1F;
+            if (type == 7 || type == 8) {
+                assertTrue(feed(tracker, parameterSets, bytes));
+            } else if (type == 1 && pSlice == null) {
+                pSlice = bytes;
+            }
+        }
+        assertFalse(feed(tracker, parameterSets, pSlice)); // 还没有收到IDR
+        assertTrue(feed(tracker, parameterSets, firstIdr(nals)));
+        assertFalse(feed(tracker, parameterSets, new byte[]{0x41})); // 截断的slice
+        assertEquals(1, tracker.corruptCount());
+        assertTrue(tracker.isDiscarding());
+    }
+
+    private static boolean feed(FrameNumTracker tracker, ParameterSetCache parameterSets, byte[] bytes) {
+        NalUnit nal = new NalUnit();
+        nal.set(ByteBuffer.wrap(bytes), 0, bytes.length);
+        if (nal.type() == 7) {
+            parameterSets.putSps(nal);
+        } else if (nal.type() == 8) {
+            parameterSets.putPps(nal);
+        }
+        return tracker.accept(nal, parameterSets);
+    }
+
+    private static byte[] firstIdr(List<byte[]> nals) {
+        for (byte[] bytes : nals) {
+            if ((bytes[0] & 0x1F) == 5) {
+                return bytes;
+            }
+        }
+        throw new AssertionError("no IDR");
+    }
+
+    private static List<byte[]> readNals() throws IOException {
+        List<byte[]> nals = new ArrayList<>();
+        try (MappedH264Reader reader = new MappedH264Reader(new File("src/main/assets/test.h264"))) {
+            NalUnit nal = new NalUnit();
+            while (reader.readNextNalUnit(nal)) {
+                if (nal.length > 0) {
+                    nals.add(nal.toByteArray());
+                }
+            }
+        }
+        return nals;
+    }
+}
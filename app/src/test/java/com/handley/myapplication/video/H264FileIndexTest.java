@@ -0,0 +1,169 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class H264FileIndexTest {
+
+    private static final byte[] SPS = {0x67, 0x42, 0x00, 0x1f};
+    private static final byte[] PPS = {0x68, (byte) 0xce, 0x3c, (byte) 0x80};
+    private static final byte[] IDR = {0x65, (byte) 0x88, (byte) 0x84, 0x21};        // first_mb_in_slice = 0
+    private static final byte[] P_SLICE = {0x41, (byte) 0x9a, 0x02, 0x11};           // first_mb_in_slice = 0
+    private static final byte[] P_SLICE_SECOND = {0x41, 0x40, (byte) 0x9a, 0x11};    // first_mb_in_slice = 1
+
+    private File file;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("index", ".h264");
+        indexFile = new File(file.getPath() + ".idx");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        indexFile.delete();
+    }
+
+    // 帧边界在起始码处，参数集归入后面的帧，同一帧的第二个 slice 不开始新帧
+    @Test
+    public void buildsFramesAndKeyFrames() throws IOException {
+        int[] starts = writeStream(IDR);
+        H264FileIndex index = H264FileIndex.build(file);
+
+        assertEquals(5, index.frameCount());
+        for (int i = 0; i < index.frameCount(); i++) {
+            assertEquals(starts[i] + 1, index.offset(i)); // 指向4字节起始码中的 0x000001
+            long end = i + 1 < index.frameCount() ? index.offset(i + 1) : file.length();
+            assertEquals(end - index.offset(i), index.size(i));
+        }
+        assertTrue(index.isKeyFrame(0));
+        assertEquals(1, index.nalType(1));
+        assertFalse(index.isKeyFrame(2));
+        assertTrue(index.isKeyFrame(3));
+        assertEquals(0, index.keyFrameBefore(2));
+        assertEquals(3, index.keyFrameBefore(3));
+        assertEquals(3, index.keyFrameBefore(100));
+        assertEquals(-1, index.keyFrameBefore(-1));
+    }
+
+    @Test
+    public void sidecarIsWrittenAndReused() throws IOException {
+        writeStream(IDR);
+        file.setLastModified(1_000_000_000L);
+        H264FileIndex built = H264FileIndex.load(file);
+        assertTrue(indexFile.exists());
+        assertTrue(built.isKeyFrame(3));
+
+        // 大小和修改时间都没变时直接读索引文件，不重新扫描（内容换成没有IDR的码流也看不出来）
+        writeStream(P_SLICE);
+        file.setLastModified(1_000_000_000L);
+        H264FileIndex loaded = H264FileIndex.load(file);
+        assertEquals(built.frameCount(), loaded.frameCount());
+        for (int i = 0; i < built.frameCount(); i++) {
+            assertEquals(built.offset(i), loaded.offset(i));
+            assertEquals(built.size(i), loaded.size(i));
+            assertEquals(built.nalType(i), loaded.nalType(i));
+        }
+        assertEquals(3, loaded.keyFrameBefore(4));
+    }
+
+    @Test
+    public void rebuildsWhenModifiedTimeChanges() throws IOException {
+        writeStream(IDR);
+        file.setLastModified(1_000_000_000L);
+        assertTrue(H264FileIndex.load(file).isKeyFrame(3));
+
+        writeStream(P_SLICE); // 大小不变
+        file.setLastModified(2_000_000_000L);
+        H264FileIndex index = H264FileIndex.load(file);
+        assertFalse(index.isKeyFrame(3));
+        assertEquals(-1, index.keyFrameBefore(4));
+
+        // 重建后的索引已保存，再次加载得到同样的结果
+        assertEquals(-1, H264FileIndex.load(file).keyFrameBefore(4));
+    }
+
+    @Test
+    public void rebuildsWhenSizeChanges() throws IOException {
+        writeStream(IDR);
+        file.setLastModified(1_000_000_000L);
+        assertEquals(5, H264FileIndex.load(file).frameCount());
+
+        byte[] data = Files.readAllBytes(file.toPath());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(data);
+        appendNal(out, P_SLICE);
+        Files.write(file.toPath(), out.toByteArray());
+        file.setLastModified(1_000_000_000L);
+        H264FileIndex index = H264FileIndex.load(file);
+        assertEquals(6, index.frameCount());
+        assertEquals(3, index.keyFrameBefore(5));
+    }
+
+    // 索引文件中的帧数损坏（负数、超过文件长度）或文件被截断时重建，不会分配异常大小的数组
+    @Test
+    public void corruptIndexIsRebuilt() throws IOException {
+        writeStream(IDR);
+        file.setLastModified(1_000_000_000L);
+        H264FileIndex.load(file);
+        assertFalse(new File(indexFile.getPath() + ".tmp").exists());
+
+        for (int count : new int[]{-1, Integer.MAX_VALUE, 6}) {
+            try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+                raf.seek(24); // 帧数字段
+                raf.writeInt(count);
+            }
+            H264FileIndex index = H264FileIndex.load(file);
+            assertEquals(5, index.frameCount());
+            assertTrue(index.isKeyFrame(3));
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+        assertEquals(5, H264FileIndex.load(file).frameCount());
+    }
+
+    // 写入5帧：SPS PPS key | P | P P(第二个slice) | SPS PPS key | P，返回每帧起始码的位置
+    private int[] writeStream(byte[] key) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] starts = new int[5];
+        starts[0] = out.size();
+        appendNal(out, SPS);
+        appendNal(out, PPS);
+        appendNal(out, key);
+        starts[1] = out.size();
+        appendNal(out, P_SLICE);
+        starts[2] = out.size();
+        appendNal(out, P_SLICE);
+        appendNal(out, P_SLICE_SECOND);
+        starts[3] = out.size();
+        appendNal(out, SPS);
+        appendNal(out, PPS);
+        appendNal(out, key);
+        starts[4] = out.size();
+        appendNal(out, P_SLICE);
+        Files.write(file.toPath(), out.toByteArray());
+        return starts;
+    }
+
+    private static void appendNal(ByteArrayOutputStream out, byte[] nal) {
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(1);
+        out.write(nal, 0, nal.length);
+    }
+}
@@ -0,0 +1,85 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class H264StreamReaderTest {
+
+    @Test
+    public void nalLargerThanBuffer() throws IOException {
+        byte[] big = new byte[3 * 1024 * 1024];
+        Arrays.fill(big, (byte) 0x55);
+        big[0] = 0x65;
+        byte[] data = concat(new byte[]{0, 0, 0, 1}, big, new byte[]{0, 0, 1, 0x41, 0x11});
+
+        H264StreamReader reader = new H264StreamReader(new ByteArrayInputStream(data));
+        assertArrayEquals(big, reader.readNextNalUnit());
+        assertArrayEquals(new byte[]{0x41, 0x11}, reader.readNextNalUnit());
+        assertEquals(null, reader.readNextNalUnit());
+    }
+
+    @Test
+    public void resetOnArrayRange() throws IOException {
+        byte[] message = {9, 9, 0, 0, 0, 1, 0x67, 0x42, 0, 0, 1, 0x68, 0x33, 0, 0, 0, 1, 0x65, 0x77, 9};
+        H264StreamReader reader = new H264StreamReader();
+        NalUnit nal = new NalUnit();
+        for (int round = 0; round < 2; round++) {
+            reader.reset(message, 2, message.length - 3); // 去掉前两个和最后一个字节
+            assertTrue(reader.readNextNalUnit(nal));
+            assertArrayEquals(new byte[]{0x67, 0x42}, nal.toByteArray());
+            assertViewsInto(message, nal);
+            assertTrue(reader.readNextNalUnit(nal));
+            assertArrayEquals(new byte[]{0x68, 0x33}, nal.toByteArray());
+            assertTrue(reader.readNextNalUnit(nal));
+            assertArrayEquals(new byte[]{0x65, 0x77}, nal.toByteArray());
+            assertFalse(reader.readNextNalUnit(nal));
+        }
+    }
+
+    @Test
+    public void resetOnDirectBuffer() throws IOException {
+        ByteBuffer message = ByteBuffer.allocateDirect(16);
+        message.put(new byte[]{0, 0, 0, 1, 0x67, 0x42, 0, 0, 1, 0x65, 0x77});
+        message.flip();
+
+        H264StreamReader reader = new H264StreamReader();
+        reader.reset(message);
+        NalUnit nal = new NalUnit();
+        assertTrue(reader.readNextNalUnit(nal));
+        assertEquals(7, nal.type());
+        assertArrayEquals(new byte[]{0x67, 0x42}, nal.toByteArray());
+        assertTrue(reader.readNextNalUnit(nal));
+        assertArrayEquals(new byte[]{0x65, 0x77}, nal.toByteArray());
+        assertFalse(reader.readNextNalUnit(nal));
+        assertEquals(0, message.position());
+        assertEquals(11, message.limit());
+    }
+
+    // NAL视图直接指向消息数组，没有拷贝
+    private static void assertViewsInto(byte[] message, NalUnit nal) {
+        assertTrue(nal.data.hasArray());
+        assertTrue(nal.data.array() == message);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] data = new byte[length];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, data, pos, part.length);
+            pos += part.length;
+        }
+        return data;
+    }
+}
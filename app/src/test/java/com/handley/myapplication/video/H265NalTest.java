@@ -0,0 +1,141 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class H265NalTest {
+
+    @Test
+    public void nalHeader() {
+        NalUnit nal = nal(0x40, 0x01); // VPS
+        assertEquals(H265Nal.VPS, H265Nal.type(nal));
+        assertEquals(0, H265Nal.layerId(nal));
+        assertEquals(0, H265Nal.temporalId(nal));
+        assertTrue(H265Nal.isIrap(H265Nal.IDR_W_RADL));
+        assertTrue(H265Nal.isIrap(H265Nal.CRA_NUT));
+        assertFalse(H265Nal.isIrap(H265Nal.TRAIL_N));
+        assertFalse(H265Nal.isVcl(H265Nal.PREFIX_SEI));
+    }
+
+    @Test
+    public void assembleAccessUnits() {
+        AccessUnitAssembler assembler = new AccessUnitAssembler(true);
+        assertNull(assembler.add(nal(0x40, 0x01, 0x0C)));             // VPS
+        assertNull(assembler.add(nal(0x42, 0x01, 0x01)));             // SPS
+        assertNull(assembler.add(nal(0x44, 0x01, 0xC1)));             // PPS
+        assertNull(assembler.add(nal(0x26, 0x01, 0xAF, 0x11)));       // IDR_W_RADL，第一个slice segment
+        assertNull(assembler.add(nal(0x26, 0x01, 0x40, 0x22)));       // 同一帧的第二个slice segment
+        assertNull(assembler.add(nal(0x50, 0x01, 0x05)));             // 后缀SEI 属于当前帧
+
+        AccessUnitAssembler.AccessUnit idr = assembler.add(nal(0x02, 0x01, 0xD0, 0x33)); // TRAIL_R，新的一帧
+        assertEquals(2, idr.sliceCount);
+        assertTrue(idr.hasParameterSets);
+        assertTrue(idr.isKeyFrame());
+        assertEquals(6 * 4 + 3 + 3 + 3 + 4 + 4 + 3, idr.length);
+
+        AccessUnitAssembler.AccessUnit trail = assembler.add(nal(0x4E, 0x01, 0x05)); // 前缀SEI 开始新的一帧
+        assertEquals(1, trail.sliceCount);
+        assertFalse(trail.isKeyFrame());
+    }
+
+    @Test
+    public void parseSps() {
+        // 1920x1088 编码，conformance window 下边裁掉8行，Main profile，level 3.1
+        BitWriter writer = new BitWriter();
+        writer.write(0x4201, 16);             // NAL头
+        writer.write(0, 4);                   // sps_video_parameter_set_id
+        writer.write(0, 3);                   // sps_max_sub_layers_minus1
+        writer.write(1, 1);                   // sps_temporal_id_nesting_flag
+        writer.write(0, 2);                   // general_profile_space
+        writer.write(0, 1);                   // general_tier_flag
+        writer.write(1, 5);                   // general_profile_idc
+        writer.write(0x60000000, 32);         // general_profile_compatibility_flag
+        writer.write(0x9000, 16);             // progressive/interlaced/non_packed/frame_only...
+        writer.write(0, 32);
+        writer.write(93, 8);                  // general_level_idc
+        writer.writeUe(0);                    // sps_seq_parameter_set_id
+        writer.writeUe(1);                    // chroma_format_idc
+        writer.writeUe(1920);
+        writer.writeUe(1088);
+        writer.write(1, 1);                   // conformance_window_flag
+        writer.writeUe(0);
+        writer.writeUe(0);
+        writer.writeUe(0);
+        writer.writeUe(4);                    // 4 * SubHeightC = 8行
+        writer.writeUe(0);                    // bit_depth_luma_minus8
+        writer.writeUe(2);                    // bit_depth_chroma_minus8
+        writer.write(1, 1);                   // rbsp_stop_one_bit
+
+        H265SpsInfo sps = H265SpsInfo.parse(writer.toNal());
+        assertEquals(1, sps.profileIdc);
+        assertEquals(93, sps.levelIdc);
+        assertEquals(1, sps.chromaFormatIdc);
+        assertEquals(1920, sps.codedWidth);
+        assertEquals(1920, sps.width);
+        assertEquals(1080, sps.height);
+        assertEquals(8, sps.bitDepthLuma);
+        assertEquals(10, sps.bitDepthChroma);
+    }
+
+    private static NalUnit nal(int... bytes) {
+        byte[] data = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            data[i] = (byte) bytes[i];
+        }
+        NalUnit nal = new NalUnit();
+        nal.set(ByteBuffer.wrap(data), 0, data.length);
+        return nal;
+    }
+
+    // 按位写入，输出时插入防竞争字节
+    private static class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current;
+        private int bits;
+
+        void write(long value, int numBits) {
+            for (int i = numBits - 1; i >= 0; i--) {
+                current = (current << 1) | (int) ((value >>> i) & 1);
+                if (++bits == 8) {
+                    out.write(current);
+                    current = 0;
+                    bits = 0;
+                }
+            }
+        }
+
+        void writeUe(int value) {
+            int length = 32 - Integer.numberOfLeadingZeros(value + 1);
+            write(0, length - 1);
+            write(value + 1, length);
+        }
+
+        NalUnit toNal() {
+            if (bits > 0) {
+                write(0, 8 - bits);
+            }
+            byte[] rbsp = out.toByteArray();
+            ByteArrayOutputStream nal = new ByteArrayOutputStream();
+            int zeros = 0;
+            for (int i = 0; i < rbsp.length; i++) {
+                int b = rbsp[i] & 0xFF;
+                if (zeros >= 2 && b <= 3 && i > 2) {
+                    nal.write(3);
+                    zeros = 0;
+                }
+                nal.write(b);
+                zeros = b == 0 ? zeros + 1 : 0;
+            }
+            byte[] data = nal.toByteArray();
+            NalUnit unit = new NalUnit();
+            unit.set(ByteBuffer.wrap(data), 0, data.length);
+            return unit;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.MediaMessageHeader;
+import org.junit.Test;
+
+public class KeyFrameDetectorTest {
+
+    private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, 0x00, 0x1f};
+    private static final byte[] PPS = {0, 0, 0, 1, 0x68, (byte) 0xce, 0x3c, (byte) 0x80};
+    private static final byte[] IDR = {0, 0, 1, 0x65, (byte) 0x88, (byte) 0x84, 0x00};
+    private static final byte[] P_SLICE = {0, 0, 0, 1, 0x41, (byte) 0x9a, 0x02};
+    private static final byte[] SEI = {0, 0, 0, 1, 0x06, 0x05, 0x01, (byte) 0x80};
+
+    @Test
+    public void h264AnnexB() {
+        assertEquals(KeyFrameDetector.CONFIG, classify(MediaMessageHeader.H264, concat(SPS, PPS)));
+        assertEquals(KeyFrameDetector.KEY, classify(MediaMessageHeader.H264, concat(SPS, PPS, SEI, IDR)));
+        assertEquals(KeyFrameDetector.DELTA, classify(MediaMessageHeader.H264, concat(SEI, P_SLICE)));
+        assertEquals(KeyFrameDetector.DELTA, classify(MediaMessageHeader.H264, new byte[0]));
+    }
+
+    @Test
+    public void h264LengthPrefixed() {
+        byte[] annexB = concat(SPS, PPS, IDR);
+        byte[] avcc = AvccConverter.annexBToAvcc(annexB, 0, annexB.length);
+        assertEquals(KeyFrameDetector.KEY, classify(MediaMessageHeader.H264_AVCC, avcc));
+        byte[] delta = AvccConverter.annexBToAvcc(P_SLICE, 0, P_SLICE.length);
+        assertEquals(KeyFrameDetector.DELTA, classify(MediaMessageHeader.H264_AVCC, delta));
+    }
+
+    @Test
+    public void h265AnnexB() {
+        byte[] vps = {0, 0, 0, 1, 0x40, 0x01, 0x0c};
+        byte[] cra = {0, 0, 0, 1, 0x2a, 0x01, (byte) 0xaf}; // type 21
+        byte[] trail = {0, 0, 0, 1, 0x02, 0x01, (byte) 0xd0}; // type 1
+        assertEquals(KeyFrameDetector.CONFIG, classify(MediaMessageHeader.H265, vps));
+        assertEquals(KeyFrameDetector.KEY, classify(MediaMessageHeader.H265, concat(vps, cra)));
+        assertEquals(KeyFrameDetector.DELTA, classify(MediaMessageHeader.H265, trail));
+    }
+
+    @Test
+    public void v2FlagsAndAudio() {
+        MediaMessageHeader header = header(MediaMessageHeader.H264, P_SLICE.length);
+        header.magic = MediaMessageHeader.MAGIC_V2;
+        header.flags = MediaMessageHeader.FLAG_KEY_FRAME;
+        assertEquals(KeyFrameDetector.KEY, KeyFrameDetector.classify(header, P_SLICE));
+        header.flags = MediaMessageHeader.FLAG_CODEC_CONFIG;
+        assertEquals(KeyFrameDetector.CONFIG, KeyFrameDetector.classify(header, P_SLICE));
+
+        assertEquals(KeyFrameDetector.KEY, classify(MediaMessageHeader.OPUS, new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void discardable() {
+        byte[] nonRefSlice = {0, 0, 0, 1, 0x01, (byte) 0x9e, 0x02}; // nal_ref_idc 0
+        assertTrue(discardable(MediaMessageHeader.H264, concat(SEI, nonRefSlice)));
+        assertFalse(discardable(MediaMessageHeader.H264, concat(SEI, P_SLICE)));
+        assertFalse(discardable(MediaMessageHeader.H264, concat(SPS, PPS, IDR)));
+        assertFalse(discardable(MediaMessageHeader.H264, concat(SPS, PPS)));
+        byte[] avcc = AvccConverter.annexBToAvcc(nonRefSlice, 0, nonRefSlice.length);
+        assertTrue(discardable(MediaMessageHeader.H264_AVCC, avcc));
+
+        byte[] trailN = {0, 0, 0, 1, 0x00, 0x01, (byte) 0xd0}; // type 0
+        byte[] trailR = {0, 0, 0, 1, 0x02, 0x01, (byte) 0xd0}; // type 1
+        assertTrue(discardable(MediaMessageHeader.H265, trailN));
+        assertFalse(discardable(MediaMessageHeader.H265, trailR));
+
+        MediaMessageHeader header = header(MediaMessageHeader.H264, P_SLICE.length);
+        header.magic = MediaMessageHeader.MAGIC_V2;
+        header.flags = MediaMessageHeader.FLAG_DISCARDABLE;
+        assertTrue(KeyFrameDetector.isDiscardable(header, P_SLICE));
+        assertFalse(discardable(MediaMessageHeader.OPUS, new byte[]{1, 2, 3}));
+    }
+
+    private static boolean discardable(byte type, byte[] data) {
+        return KeyFrameDetector.isDiscardable(header(type, data.length), data);
+    }
+
+    private static int classify(byte type, byte[] data) {
+        return KeyFrameDetector.classify(header(type, data.length), data);
+    }
+
+    private static MediaMessageHeader header(byte type, int dataLen) {
+        MediaMessageHeader header = new MediaMessageHeader();
+        header.magic = MediaMessageHeader.MAGIC;
+        header.type = type;
+        header.dataLen = dataLen;
+        return header;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] out = new byte[length];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, pos, part.length);
+            pos += part.length;
+        }
+        return out;
+    }
+}
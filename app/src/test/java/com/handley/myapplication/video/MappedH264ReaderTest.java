@@ -0,0 +1,84 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class MappedH264ReaderTest {
+
+    @Test
+    public void matchesStreamReader() throws IOException {
+        Random random = new Random(4);
+        File file = File.createTempFile("mapped", ".h264");
+        try {
+            for (int round = 0; round < 200; round++) {
+                byte[] data = randomAnnexB(random, 1 + random.nextInt(20));
+                Files.write(file.toPath(), data);
+
+                List<byte[]> expected = readAll(new H264StreamReader(new ByteArrayInputStream(data)));
+                // 小窗口，覆盖NAL跨窗口、NAL比窗口大的情况
+                try (MappedH264Reader reader = new MappedH264Reader(file, 16 + random.nextInt(64))) {
+                    List<byte[]> actual = readAll(reader);
+                    assertEquals(expected.size(), actual.size());
+                    for (int i = 0; i < expected.size(); i++) {
+                        assertArrayEquals(expected.get(i), actual.get(i));
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        File file = File.createTempFile("mapped", ".h264");
+        try (MappedH264Reader reader = new MappedH264Reader(file)) {
+            assertFalse(reader.readNextNalUnit(new NalUnit()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static List<byte[]> readAll(NalSource source) throws IOException {
+        List<byte[]> nals = new ArrayList<>();
+        NalUnit nal = new NalUnit();
+        while (source.readNextNalUnit(nal)) {
+            if (nal.length > 0) {
+                nals.add(nal.toByteArray());
+            }
+        }
+        return nals;
+    }
+
+    // 随机生成以3/4字节起始码分隔的NAL，NAL内部不含起始码
+    private static byte[] randomAnnexB(Random random, int nalCount) {
+        ByteBuffer out = ByteBuffer.allocate(nalCount * 300);
+        for (int n = 0; n < nalCount; n++) {
+            if (random.nextBoolean()) {
+                out.put((byte) 0);
+            }
+            out.put(new byte[]{0, 0, 1});
+            int length = 1 + random.nextInt(250);
+            for (int i = 0; i < length; i++) {
+                int b = random.nextInt(8) == 0 ? 0 : 2 + random.nextInt(254);
+                out.put((byte) b);
+            }
+            out.put((byte) (1 + random.nextInt(255))); // NAL 以非0字节结尾
+        }
+        byte[] data = new byte[out.position()];
+        out.flip();
+        out.get(data);
+        return data;
+    }
+}
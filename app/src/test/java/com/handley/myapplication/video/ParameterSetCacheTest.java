@@ -0,0 +1,135 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.handley.myapplication.common.Utils;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ParameterSetCacheTest {
+
+    // test.h264 中的SPS/PPS：Baseline 3.1，540x960，VUI 中带 timing_info 和 bitstream_restriction
+    private static final byte[] SPS = hex("6742c01fd900881e7bf016e020202800412e380f47220078c19240");
+    private static final byte[] PPS = hex("68cb83cb20");
+
+    @Test
+    public void parseSpsWithVui() {
+        SpsInfo sps = SpsInfo.parse(SPS);
+        assertEquals(66, sps.profileIdc);
+        assertEquals(31, sps.levelIdc);
+        assertEquals(0, sps.spsId);
+        assertEquals(1, sps.chromaFormatIdc);
+        assertEquals(540, sps.width);
+        assertEquals(960, sps.height);
+        assertTrue(sps.frameMbsOnly);
+        assertTrue(sps.vuiPresent);
+        assertTrue(sps.timingInfoPresent);
+        assertEquals(30, sps.frameRate(25));
+        assertEquals(0, sps.maxNumReorderFrames);
+        assertEquals(3, sps.maxDecFrameBuffering);
+
+        // 不带NAL头的SPS同样可以解析
+        SpsInfo withoutHeader = Utils.parseSpsInfo(Arrays.copyOfRange(SPS, 1, SPS.length));
+        assertEquals(540, withoutHeader.width);
+        assertEquals(960, withoutHeader.height);
+    }
+
+    // 解析失败抛出异常，不返回 0x0 的默认宽高
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedSpsWithoutHeaderIsRejected() {
+        Utils.parseSpsInfo(new byte[]{0x42, (byte) 0xC0});
+    }
+
+    @Test
+    public void parsePps() {
+        PpsInfo pps = PpsInfo.parse(PPS, 1);
+        assertEquals(0, pps.ppsId);
+        assertEquals(0, pps.spsId);
+        assertFalse(pps.entropyCodingMode);
+        assertEquals(1, pps.numSliceGroups);
+        assertFalse(pps.transform8x8Mode);
+    }
+
+    @Test
+    public void repeatedParameterSetsAreNotChanges() {
+        ParameterSetCache cache = new ParameterSetCache();
+        assertNull(cache.lastSps());
+        assertTrue(cache.putSps(nal(SPS)));
+        assertTrue(cache.putPps(nal(PPS)));
+        assertFalse(cache.putSps(nal(SPS)));
+        assertFalse(cache.putPps(nal(PPS)));
+        assertEquals(540, cache.lastSps().width);
+        assertEquals(SPS.length, cache.lastSpsBytes().length);
+
+        // 同一id内容变化（改 level_idc）视为变化，引用它的PPS被清掉
+        byte[] changed = SPS.clone();
+        changed[3] = 40;
+        assertTrue(cache.putSps(nal(changed)));
+        assertEquals(40, cache.getSps(0).levelIdc);
+        assertNull(cache.getPps(0));
+        assertTrue(cache.putPps(nal(PPS)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedSpsIsRejected() {
+        SpsInfo.parse(new byte[]{0x67, 0x42, (byte) 0xC0});
+    }
+
+    @Test
+    public void predefinedAspectRatio() {
+        // aspect_ratio_idc = 14 (4:3)
+        SpsInfo sps = SpsInfo.parse(sps("1", "1" + "1" + "00001110" + "00000000"));
+        assertEquals(4, sps.sarWidth);
+        assertEquals(3, sps.sarHeight);
+        assertEquals(16, sps.width);
+
+        // Extended_SAR
+        sps = SpsInfo.parse(sps("1", "1" + "1" + "11111111" + "0000000000101000" + "0000000000100001" + "00000000"));
+        assertEquals(40, sps.sarWidth);
+        assertEquals(33, sps.sarHeight);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void log2MaxFrameNumOutOfRangeIsRejected() {
+        SpsInfo.parse(sps("0001110", "0")); // log2_max_frame_num_minus4 = 13
+    }
+
+    // Baseline 16x16 SPS：pic_order_cnt_type = 2，后面接 vui_parameters_present_flag 和 VUI 的位串
+    private static byte[] sps(String log2MaxFrameNumMinus4, String vui) {
+        String bits = "01100111" + "01000010" + "11000000" + "00011111" // NAL头，profile 66，level 31
+                + "1" + log2MaxFrameNumMinus4 + "011" + "010" + "0" // sps_id，poc type 2，1个参考帧
+                + "1" + "1" + "1" + "1" + "0" // 1x1 个宏块，frame_mbs_only，direct_8x8，不裁剪
+                + vui + "1"; // rbsp 停止位
+        while (bits.length() % 8 != 0) {
+            bits += "0";
+        }
+        byte[] bytes = new byte[bits.length() / 8];
+        for (int i = 0; i < bits.length(); i++) {
+            if (bits.charAt(i) == '1') {
+                bytes[i / 8] |= (byte) (0x80 >>> (i % 8));
+            }
+        }
+        return bytes;
+    }
+
+    private static NalUnit nal(byte[] bytes) {
+        // 放在缓冲区中间，验证 offset 生效
+        byte[] buf = new byte[bytes.length + 8];
+        System.arraycopy(bytes, 0, buf, 4, bytes.length);
+        NalUnit nal = new NalUnit();
+        nal.set(ByteBuffer.wrap(buf), 4, bytes.length);
+        return nal;
+    }
+
+    private static byte[] hex(String s) {
+        byte[] bytes = new byte[s.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
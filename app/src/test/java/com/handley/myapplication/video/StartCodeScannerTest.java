@@ -0,0 +1,274 @@
+package com.handley.myapplication.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class StartCodeScannerTest {
+
+    @Test
+    public void indexOf_findsFirstStartCode() {
+        byte[] data = {5, 0, 0, 2, 0, 0, 0, 1, 9, 0, 0, 1};
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        assertEquals(5, StartCodeScanner.indexOf(data, 0, data.length));
+        assertEquals(9, StartCodeScanner.indexOf(data, 6, data.length));
+        assertEquals(-1, StartCodeScanner.indexOf(data, 0, 7));
+        assertEquals(-1, StartCodeScanner.indexOf(data, 10, data.length));
+        assertEquals(5, StartCodeScanner.indexOf(buf, 0, data.length));
+        assertEquals(9, StartCodeScanner.indexOf(buf, 6, data.length));
+        assertEquals(-1, StartCodeScanner.indexOf(buf, 0, 7));
+        assertEquals(-1, StartCodeScanner.indexOf(buf, 10, data.length));
+    }
+
+    @Test
+    public void indexOf_matchesByteLoop() {
+        Random random = new Random(1);
+        for (int round = 0; round < 2000; round++) {
+            byte[] data = randomStream(random, 1 + random.nextInt(200));
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            int from = random.nextInt(data.length);
+            int to = from + random.nextInt(data.length - from + 1);
+            int expected = byteLoopIndexOf(data, from, to);
+            assertEquals(expected, StartCodeScanner.indexOf(data, from, to));
+            assertEquals(expected, StartCodeScanner.indexOf(buf, from, to));
+        }
+    }
+
+    // 与旧的逐字节扫描实现比较拆分出来的NAL（含3/4字节起始码、缓冲区边界）
+    @Test
+    public void reader_matchesLegacyReader() throws IOException {
+        Random random = new Random(2);
+        for (int round = 0; round < 500; round++) {
+            byte[] data = randomStream(random, 1 + random.nextInt(4096));
+            int chunk = 1 + random.nextInt(64);
+            List<byte[]> expected = readAll(new LegacyReader(new ChunkedInputStream(data, chunk)));
+
+            H264StreamReader reader = new H264StreamReader(new ChunkedInputStream(data, chunk));
+            List<byte[]> actual = new ArrayList<>();
+            byte[] nal;
+            while ((nal = reader.readNextNalUnit()) != null) {
+                actual.add(nal);
+            }
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    // 吞吐量对比（MB/s），只打印结果不做断言
+    @Ignore("基准测试，手动运行")
+    @Test
+    public void benchmark() throws IOException {
+        byte[] data = loadSample();
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        int rounds = Math.max(1, (256 * 1024 * 1024) / data.length); // 每种实现扫描约256MB
+
+        ScanFunction legacy = from -> legacyIndexOf(data, from, data.length);
+        ScanFunction bytes = from -> StartCodeScanner.indexOf(data, from, data.length);
+        ScanFunction buffer = from -> StartCodeScanner.indexOf(direct, from, data.length);
+        for (int warmup = 0; warmup < 3; warmup++) {
+            scanAll(legacy);
+            scanAll(bytes);
+            scanAll(buffer);
+        }
+
+        double mb = (double) data.length * rounds / (1024 * 1024);
+        System.out.printf("start code scan (%d bytes x %d): legacy %.1f MB/s, byte[] %.1f MB/s, direct ByteBuffer %.1f MB/s%n",
+                data.length, rounds, mb * 1e9 / time(legacy, rounds), mb * 1e9 / time(bytes, rounds),
+                mb * 1e9 / time(buffer, rounds));
+    }
+
+    private interface ScanFunction {
+
+        int indexOf(int from);
+    }
+
+    private static long time(ScanFunction function, int rounds) {
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            scanAll(function);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static int scanAll(ScanFunction function) {
+        int count = 0;
+        int i = function.indexOf(0);
+        while (i >= 0) {
+            count++;
+            i = function.indexOf(i + 3);
+        }
+        return count;
+    }
+
+    // 原 findStartCode() 的逐字节扫描（先判断4字节再判断3字节）
+    private static int legacyIndexOf(byte[] data, int from, int to) {
+        for (int i = from; i <= to - 4; i++) {
+            if (data[i] == 0x00 && data[i + 1] == 0x00 && data[i + 2] == 0x00 && data[i + 3] == 0x01) {
+                return i + 1;
+            }
+            if (data[i] == 0x00 && data[i + 1] == 0x00 && data[i + 2] == 0x01) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int byteLoopIndexOf(byte[] data, int from, int to) {
+        for (int i = from; i <= to - 3; i++) {
+            if (data[i] == 0x00 && data[i + 1] == 0x00 && data[i + 2] == 0x01) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 优先使用 assets/test.h264，找不到时用随机码流
+    private static byte[] loadSample() throws IOException {
+        File file = new File("src/main/assets/test.h264");
+        if (file.exists()) {
+            return Files.readAllBytes(file.toPath());
+        }
+        return randomStream(new Random(3), 1024 * 1024);
+    }
+
+    // 随机数据中混入较多的0x00以及3/4字节起始码
+    private static byte[] randomStream(Random random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(100);
+            if (r < 10) {
+                data[i] = 0;
+            } else if (r < 13 && i + 4 <= length) {
+                data[i] = 0;
+                data[i + 1] = 0;
+                data[i + 2] = 0;
+                data[i + 3] = 1;
+            } else if (r < 16 && i + 3 <= length) {
+                data[i] = 0;
+                data[i + 1] = 0;
+                data[i + 2] = 1;
+            }
+        }
+        return data;
+    }
+
+    private static List<byte[]> readAll(LegacyReader reader) throws IOException {
+        List<byte[]> nals = new ArrayList<>();
+        byte[] nal;
+        while ((nal = reader.readNextNalUnit()) != null) {
+            nals.add(nal);
+        }
+        return nals;
+    }
+
+    // 每次最多返回 chunk 字节，模拟分段到达的数据
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+
+        private final int chunk;
+
+        ChunkedInputStream(byte[] data, int chunk) {
+            super(data);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+
+    // 原逐字节扫描实现，作为对照
+    private static class LegacyReader {
+
+        private final InputStream inputStream;
+        private final byte[] buffer = new byte[1024 * 1024];
+        private int bufferPos;
+        private int bufferSize;
+        private boolean endOfStream;
+
+        LegacyReader(InputStream is) {
+            this.inputStream = is;
+        }
+
+        byte[] readNextNalUnit() throws IOException {
+            if (endOfStream && bufferSize == 0) {
+                return null;
+            }
+            int[] startCode = findStartCode();
+            if (startCode == null) {
+                return null;
+            }
+            bufferPos += startCode[0] + startCode[1];
+            int[] next = findStartCode();
+            int nalLength;
+            if (next == null) {
+                nalLength = bufferSize - bufferPos;
+                if (nalLength <= 0) {
+                    return null;
+                }
+            } else {
+                nalLength = next[0];
+            }
+            byte[] nal = new byte[nalLength];
+            System.arraycopy(buffer, bufferPos, nal, 0, nalLength);
+            bufferPos += nalLength;
+            return nal;
+        }
+
+        private int[] findStartCode() throws IOException {
+            while (true) {
+                if (bufferSize - bufferPos < 4) {
+                    if (!refillBuffer()) {
+                        return null;
+                    }
+                }
+                for (int i = bufferPos; i <= bufferSize - 4; i++) {
+                    if (buffer[i] == 0x00 && buffer[i + 1] == 0x00 && buffer[i + 2] == 0x00 && buffer[i + 3] == 0x01) {
+                        return new int[]{i - bufferPos, 4};
+                    }
+                    if (buffer[i] == 0x00 && buffer[i + 1] == 0x00 && buffer[i + 2] == 0x01) {
+                        return new int[]{i - bufferPos, 3};
+                    }
+                }
+                if (!refillBuffer()) {
+                    return null;
+                }
+            }
+        }
+
+        private boolean refillBuffer() throws IOException {
+            if (endOfStream) {
+                return false;
+            }
+            int remaining = bufferSize - bufferPos;
+            if (remaining > 0) {
+                System.arraycopy(buffer, bufferPos, buffer, 0, remaining);
+            }
+            bufferPos = 0;
+            bufferSize = remaining;
+            int bytesRead = inputStream.read(buffer, bufferSize, buffer.length - bufferSize);
+            if (bytesRead == -1) {
+                endOfStream = true;
+                return bufferSize > 0;
+            }
+            bufferSize += bytesRead;
+            return true;
+        }
+    }
+}